@@ -6,27 +6,23 @@ package com.franz.agraph.http;
 
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGErrorHandler;
-import com.franz.agraph.http.handler.AGMethodRetryHandler;
 import com.franz.agraph.http.handler.AGResponseHandler;
 import com.franz.agraph.http.handler.AGStringHandler;
 import com.franz.agraph.http.handler.AGTQRHandler;
+import com.franz.agraph.http.transport.AGCommonsHttpTransport;
+import com.franz.agraph.http.transport.AGHttpRequest;
+import com.franz.agraph.http.transport.AGHttpResponse;
+import com.franz.agraph.http.transport.AGHttpTransport;
+import com.franz.agraph.http.transport.AGJdkHttpTransport;
 import com.franz.agraph.repository.AGValueFactory;
 
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpMethod;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NameValuePair;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
-import org.apache.commons.httpclient.methods.DeleteMethod;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
-import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.eclipse.rdf4j.http.protocol.Protocol;
 import org.eclipse.rdf4j.http.protocol.UnauthorizedException;
 import org.eclipse.rdf4j.query.TupleQueryResult;
@@ -36,11 +32,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.franz.agraph.http.AGProtocol.AMOUNT_PARAM_NAME;
 import static com.franz.agraph.http.AGProtocol.OVERRIDE_PARAM_NAME;
@@ -49,7 +50,12 @@ import static org.eclipse.rdf4j.http.protocol.Protocol.ACCEPT_PARAM_NAME;
 /**
  * Class responsible for handling HTTP connections.
  * <p>
- * Uses an unlimited pool of connections to allow safe, concurrent access.</p>
+ * Requests are sent through an {@link AGHttpTransport}. By default this is
+ * an {@link AGCommonsHttpTransport} using a pool of connections
+ * to allow safe, concurrent access. The number of requests in flight
+ * is bounded by an {@link AGHttpConnectionLimiter}. The default can be changed with the
+ * {@value #PROP_HTTP_TRANSPORT} system property, or a transport can
+ * be passed to {@link #AGHTTPClient(String, AGHttpTransport)}.</p>
  * <p>
  * Also contains methods for accessing AG services that operate above
  * the repository level - such as managing repositories.</p>
@@ -70,71 +76,139 @@ public class AGHTTPClient implements AutoCloseable {
     public static final String PROP_HTTP_NUM_RETRIES = "com.franz.agraph.http.numRetries";
     private static final int DEFAULT_HTTP_NUM_RETRIES = 1;
 
+    /**
+     * Transport used by clients created without an explicit transport
+     * or connection manager. Possible values are
+     * {@value #TRANSPORT_COMMONS} (the default) and {@value #TRANSPORT_JDK}.
+     *
+     * @since v3.0.6
+     */
+    public static final String PROP_HTTP_TRANSPORT = "com.franz.agraph.http.transport";
+    /**
+     * Value of {@value #PROP_HTTP_TRANSPORT} that selects {@link AGCommonsHttpTransport}.
+     */
+    public static final String TRANSPORT_COMMONS = "commons";
+    /**
+     * Value of {@value #PROP_HTTP_TRANSPORT} that selects {@link AGJdkHttpTransport}.
+     */
+    public static final String TRANSPORT_JDK = "jdk";
+
     private final String serverURL;
-    private final HttpClient httpClient;
+    private final AGHttpTransport transport;
+    private final AGHttpConnectionLimiter limiter;
 
-    private AuthScope authScope;
+    private String username;
+    private String password;
     private String masqueradeAsUser;
 
     private boolean isClosed = false;
 
-    private HttpConnectionManager mManager = null;
-    private final AGMethodRetryHandler retryHandler = new AGMethodRetryHandler();
-
     private final int httpNumRetries;
 
-    private AGHTTPClient(String serverURL, HttpClient client) {
+    /**
+     * Creates a client that sends requests using the given transport.
+     * The transport will be closed when this client is closed.
+     *
+     * @param serverURL URL of the AllegroGraph server.
+     * @param transport Transport used to send requests.
+     * @param limiter   Limits the number of requests in flight.
+     * @since v3.0.6
+     */
+    public AGHTTPClient(String serverURL, AGHttpTransport transport, AGHttpConnectionLimiter limiter) {
         this.serverURL = serverURL.replaceAll("/$", "");
-        this.httpClient = client;
+        this.transport = transport;
+        this.limiter = limiter;
         this.httpNumRetries = Integer.parseInt(
             System.getProperty(PROP_HTTP_NUM_RETRIES, "" + DEFAULT_HTTP_NUM_RETRIES));
         if (logger.isDebugEnabled()) {
-            logger.debug("connect: " + serverURL + " " + client);
+            logger.debug("connect: " + serverURL + " " + transport + " " + limiter);
         }
     }
 
+    /**
+     * Creates a client that sends requests using the given transport,
+     * with the default connection limits.
+     * The transport will be closed when this client is closed.
+     *
+     * @param serverURL URL of the AllegroGraph server.
+     * @param transport Transport used to send requests.
+     * @see AGHttpConnectionLimiter#createDefault()
+     * @since v3.0.6
+     */
+    public AGHTTPClient(String serverURL, AGHttpTransport transport) {
+        this(serverURL, transport, AGHttpConnectionLimiter.createDefault());
+    }
+
     public AGHTTPClient(String serverURL) {
-        this(serverURL, (MultiThreadedHttpConnectionManager) null);
+        this(serverURL, AGHttpConnectionLimiter.createDefault());
+    }
+
+    private AGHTTPClient(String serverURL, AGHttpConnectionLimiter limiter) {
+        this(serverURL, createDefaultTransport(limiter), limiter);
     }
 
+    /**
+     * Creates a client using commons-httpclient.
+     *
+     * @param serverURL URL of the AllegroGraph server.
+     * @param manager   Connection manager. If null, a new manager will be created
+     *                  and shut down when this client is closed.
+     */
     public AGHTTPClient(String serverURL, HttpConnectionManager manager) {
-        this(serverURL, new HttpClient(manager == null ? createManager() : manager));
-        if (manager == null) {
-            mManager = this.getHttpClient().getHttpConnectionManager();
-        }
+        this(serverURL, new AGCommonsHttpTransport(manager, false));
     }
 
     // This is used for clients created by the connection pool.
     public AGHTTPClient(String serverURL, HttpConnectionManagerParams params) {
-        this(serverURL, createManager(params));
+        this(serverURL, params, AGHttpConnectionLimiter.createDefault());
     }
 
-    private static HttpConnectionManager createManager() {
-        return createManager(null);
+    /**
+     * Creates a client with a new transport, selected by {@value #PROP_HTTP_TRANSPORT}.
+     * <p>
+     * The JDK transport has no socket timeout: the socket timeout in the
+     * parameters is used as its {@link AGJdkHttpTransport#setRequestTimeout(Duration)
+     * request timeout} instead, and the connection timeout as its connect timeout.</p>
+     *
+     * @param serverURL URL of the AllegroGraph server.
+     * @param params    Connection manager parameters, may be null.
+     * @param limiter   Limits the number of requests in flight.
+     * @since v3.0.6
+     */
+    public AGHTTPClient(String serverURL, HttpConnectionManagerParams params,
+                        AGHttpConnectionLimiter limiter) {
+        this(serverURL, createDefaultTransport(params, limiter), limiter);
     }
 
-    private static HttpConnectionManager createManager(HttpConnectionManagerParams params) {
-        // Use MultiThreadedHttpConnectionManager to allow concurrent access
-        // on HttpClient
-        final MultiThreadedHttpConnectionManager manager =
-                new MultiThreadedHttpConnectionManager();
+    private static AGHttpTransport createDefaultTransport(AGHttpConnectionLimiter limiter) {
+        return createDefaultTransport(null, limiter);
+    }
 
-        if (params == null) {
-            params = new HttpConnectionManagerParams();
+    private static AGHttpTransport createDefaultTransport(HttpConnectionManagerParams params,
+                                                          AGHttpConnectionLimiter limiter) {
+        final String name = System.getProperty(PROP_HTTP_TRANSPORT, TRANSPORT_COMMONS);
+        if (TRANSPORT_JDK.equalsIgnoreCase(name)) {
+            if (params == null) {
+                return new AGJdkHttpTransport();
+            }
+            final AGJdkHttpTransport jdk = new AGJdkHttpTransport(
+                    params.getConnectionTimeout() > 0 ? Duration.ofMillis(params.getConnectionTimeout()) : null);
+            if (params.getSoTimeout() > 0) {
+                jdk.setRequestTimeout(Duration.ofMillis(params.getSoTimeout()));
+            }
+            return jdk;
+        } else if (TRANSPORT_COMMONS.equalsIgnoreCase(name)) {
+            return new AGCommonsHttpTransport(params, limiter.getMaxConnections());
+        } else {
+            throw new IllegalArgumentException("Unknown value of " + PROP_HTTP_TRANSPORT + ": " + name);
         }
-
-        // Allow "unlimited" concurrent connections to the same host (default is 2)
-        params.setDefaultMaxConnectionsPerHost(Integer.MAX_VALUE);
-        params.setMaxTotalConnections(Integer.MAX_VALUE);
-        manager.setParams(params);
-        return manager;
     }
 
     @Override
     public String toString() {
         return "{" + super.toString()
                 + " " + serverURL
-                + " " + httpClient
+                + " " + transport
                 + "}";
     }
 
@@ -142,31 +216,99 @@ public class AGHTTPClient implements AutoCloseable {
         return serverURL;
     }
 
+    /**
+     * @return The transport used to send requests.
+     * @since v3.0.6
+     */
+    public AGHttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Returns the object limiting the number of requests in flight.
+     * Its counters can be used to monitor the connection wait queue.
+     *
+     * @return The connection limiter.
+     * @since v3.0.6
+     */
+    public AGHttpConnectionLimiter getConnectionLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Returns the underlying commons-httpclient object.
+     *
+     * @return An HTTP client or null if this client does not use
+     *         {@link AGCommonsHttpTransport}.
+     */
     public HttpClient getHttpClient() {
-        return httpClient;
+        if (transport instanceof AGCommonsHttpTransport) {
+            return ((AGCommonsHttpTransport) transport).getHttpClient();
+        }
+        return null;
+    }
+
+    private static boolean useGzip() {
+        return System.getProperty("com.franz.agraph.http.useGzip", "true").equals("true");
+    }
+
+    private AGHttpRequest createRequest(String method, String url, Header[] headers) {
+        AGHttpRequest request = new AGHttpRequest(method, url);
+        if (masqueradeAsUser != null) {
+            request.addHeader("x-masquerade-as-user", masqueradeAsUser);
+        }
+        request.addHeader("Connection", "keep-alive");
+        if (headers != null) {
+            for (Header header : headers) {
+                request.addHeader(header);
+            }
+        }
+        return request;
     }
 
     public void post(String url, Header[] headers, NameValuePair[] params,
                      RequestEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
-        PostMethod post = new PostMethod(url);
-        setDoAuthentication(post);
-        for (Header header : headers) {
-            post.addRequestHeader(header);
-        }
+        executeMethod(createPostRequest(url, headers, params, requestEntity), handler);
+    }
 
-        if (System.getProperty("com.franz.agraph.http.useGzip", "true").equals("true")) {
-            post.addRequestHeader("Accept-encoding", "gzip");
+    /**
+     * Sends a POST request without blocking the calling thread.
+     * <p>
+     * The response is processed by the handler on a thread of the given executor.
+     * Cancelling the returned future aborts the request.</p>
+     *
+     * @param url           request URL
+     * @param headers       request headers
+     * @param params        request parameters
+     * @param requestEntity request body, may be null
+     * @param handler       response handler, may be null
+     * @param executor      executor used to process the response
+     * @return A future that completes once the handler has processed the response.
+     *         Errors are reported as {@link AGHttpException}.
+     * @since v3.0.6
+     */
+    public CompletableFuture<Void> postAsync(String url, Header[] headers, NameValuePair[] params,
+                                             RequestEntity requestEntity, AGResponseHandler handler,
+                                             Executor executor) {
+        return executeMethodAsync(createPostRequest(url, headers, params, requestEntity), handler, executor);
+    }
+
+    private AGHttpRequest createPostRequest(String url, Header[] headers, NameValuePair[] params,
+                                            RequestEntity requestEntity) {
+        AGHttpRequest post = createRequest(AGHttpRequest.POST, url, headers);
+        if (useGzip()) {
+            post.addHeader("Accept-encoding", "gzip");
         }
         // bug21953. Only write params to body if content-type is appropriate.
-        Header contentType = post.getRequestHeader("Content-Type");
+        String contentType = post.getHeader("Content-Type");
         if (requestEntity == null && (contentType == null
-                || contentType.getValue().contains(Protocol.FORM_MIME_TYPE))) {
-            post.setRequestBody(params);
+                || contentType.contains(Protocol.FORM_MIME_TYPE))) {
+            post.setFormParams(params);
         } else {
-            post.setQueryString(params);
-            post.setRequestEntity(requestEntity);
+            post.setQueryParams(params);
+            post.setEntity(requestEntity);
         }
-        executeMethod(url, post, handler);
+        return post;
     }
 
     /**
@@ -183,21 +325,13 @@ public class AGHTTPClient implements AutoCloseable {
                     AGResponseHandler handler) throws AGHttpException {
         int numTries = httpNumRetries + 1; // Always make at least one attempt
         for (int i = 0; i < numTries; i++) {
-            GetMethod get = new GetMethod(url);
-            setDoAuthentication(get);
-            if (headers != null) {
-                for (Header header : headers) {
-                    get.addRequestHeader(header);
-                }
-            }
-            if (System.getProperty("com.franz.agraph.http.useGzip", "true").equals("true")) {
-                get.addRequestHeader("Accept-encoding", "gzip");
-            }
-            if (params != null) {
-                get.setQueryString(params);
+            AGHttpRequest get = createRequest(AGHttpRequest.GET, url, headers);
+            if (useGzip()) {
+                get.addHeader("Accept-encoding", "gzip");
             }
+            get.setQueryParams(params);
             boolean mightRetry = (i < numTries - 1);
-            if (executeMethod(url, get, handler, mightRetry) == ExecuteResult.SUCCESS) {
+            if (executeMethod(get, handler, mightRetry) == ExecuteResult.SUCCESS) {
                 return;
             }
         }
@@ -207,49 +341,30 @@ public class AGHTTPClient implements AutoCloseable {
 
     public void delete(String url, Header[] headers, NameValuePair[] params, AGResponseHandler handler)
             throws AGHttpException {
-        DeleteMethod delete = new DeleteMethod(url);
-        setDoAuthentication(delete);
-        if (headers != null) {
-            for (Header header : headers) {
-                delete.addRequestHeader(header);
-            }
-        }
-        if (params != null) {
-            delete.setQueryString(params);
-        }
-        executeMethod(url, delete, handler);
+        AGHttpRequest delete = createRequest(AGHttpRequest.DELETE, url, headers);
+        delete.setQueryParams(params);
+        executeMethod(delete, handler);
     }
 
     public void put(String url, Header[] headers, NameValuePair[] params, RequestEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
-        PutMethod put = new PutMethod(url);
-        setDoAuthentication(put);
-        if (headers != null) {
-            for (Header header : headers) {
-                put.addRequestHeader(header);
-            }
-        }
-        if (params != null) {
-            put.setQueryString(params);
-        }
-        if (requestEntity != null) {
-            put.setRequestEntity(requestEntity);
-        }
-        executeMethod(url, put, handler);
+        AGHttpRequest put = createRequest(AGHttpRequest.PUT, url, headers);
+        put.setQueryParams(params);
+        put.setEntity(requestEntity);
+        executeMethod(put, handler);
     }
 
-    private void executeMethod(String url,
-                               HttpMethod method,
+    private void executeMethod(AGHttpRequest request,
                                AGResponseHandler handler) {
-      executeMethod(url, method, handler, false);
+      executeMethod(request, handler, false);
     }
 
     private enum ExecuteResult { SUCCESS, RETRY };
 
     /**
-     * Run the HTTP request given by the method.
+     * Send the HTTP request and process the response.
      *
-     * @param method of the HTTP request
-     * @param handler in case of 200 response status, it will be called on the method
+     * @param request the HTTP request
+     * @param handler in case of 200 response status, it will be called on the response
      *        (note that it will NOT be called for other 2xx success status responses,
      *        which might be debatable)
      * @param returnRetryOn408 if true and server replied 408, then RETRY is returned
@@ -257,28 +372,130 @@ public class AGHTTPClient implements AutoCloseable {
      * @return either SUCCESS (for 2xx response), RETRY (for 408 response + returnRetryOn408),
      *         or throws an AGHttpException
      */
-    private ExecuteResult executeMethod(String url,
-                                        HttpMethod method,
+    private ExecuteResult executeMethod(AGHttpRequest request,
                                         AGResponseHandler handler,
                                         boolean returnRetryOn408) throws AGHttpException {
         // A note about retrying requests:
-        // a difficuty with HttpMethod is that once the request is attempted, you can't
-        // reuse it for a second attempt. This method is unable to do the retry itself,
-        // therefore returns ExecuteResult.RETRY.
-
-        // This retry handler takes care of retrying the HTTP request in case of
-        // connection problems. It does not deal with retrying in case of HTTP error codes.
-        method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, retryHandler);
-        // Will be set to false if the handler takes ownership of the method object.
-        // Otherwise we must close the method by the end of this procedure.
+        // a request entity might not be repeatable, so a request is never
+        // resent here. Instead ExecuteResult.RETRY is returned and the caller
+        // builds a new request.
+        limiter.acquire();
+        AGHttpResponse response;
+        try {
+            response = new LimitedResponse(transport.execute(request), limiter);
+        } catch (IOException e) {
+            limiter.release();
+            throw new AGHttpException(e);
+        } catch (RuntimeException e) {
+            limiter.release();
+            throw e;
+        }
+        return processResponse(response, handler, returnRetryOn408);
+    }
+
+    /**
+     * Asynchronous version of {@link #executeMethod(AGHttpRequest, AGResponseHandler)}.
+     * Requests sent this way are never retried.
+     */
+    private CompletableFuture<Void> executeMethodAsync(AGHttpRequest request,
+                                                       AGResponseHandler handler,
+                                                       Executor executor) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        // Only block a thread if we have to wait for a connection.
+        final CompletableFuture<Void> permit;
+        if (limiter.tryAcquire()) {
+            permit = CompletableFuture.completedFuture(null);
+        } else {
+            permit = CompletableFuture.runAsync(limiter::acquire, executor);
+        }
+        permit.whenComplete((ignored, permitError) -> {
+            if (permitError != null) {
+                result.completeExceptionally(unwrap(permitError));
+                return;
+            }
+            if (result.isDone()) {
+                // Cancelled while waiting for a connection.
+                limiter.release();
+                return;
+            }
+            final CompletableFuture<AGHttpResponse> sent;
+            try {
+                sent = transport.executeAsync(request);
+            } catch (RuntimeException e) {
+                limiter.release();
+                result.completeExceptionally(e);
+                return;
+            }
+            final AtomicReference<AGHttpResponse> current = new AtomicReference<>();
+            result.whenComplete((r, e) -> {
+                if (result.isCancelled()) {
+                    sent.cancel(true);
+                    // Stops a handler that is still reading the response.
+                    AGHttpResponse response = current.get();
+                    if (response != null) {
+                        response.abort();
+                    }
+                }
+            });
+            sent.whenCompleteAsync((rawResponse, sendError) -> {
+                if (sendError != null) {
+                    limiter.release();
+                    result.completeExceptionally(unwrap(sendError));
+                    return;
+                }
+                final AGHttpResponse response = new LimitedResponse(rawResponse, limiter);
+                current.set(response);
+                if (result.isCancelled()) {
+                    response.abort();
+                    return;
+                }
+                try {
+                    processResponse(response, handler, false);
+                    result.complete(null);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            }, executor);
+        });
+        return result;
+    }
+
+    /**
+     * Converts an exception thrown by an asynchronous task
+     * to the exception the synchronous code would have thrown.
+     */
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof IOException) {
+            return new AGHttpException((IOException) error);
+        }
+        return error;
+    }
+
+    /**
+     * Checks the status of a response and passes it to the handler.
+     *
+     * @param response         the HTTP response
+     * @param handler          called in case of 200 response status
+     * @param returnRetryOn408 if true and server replied 408, then RETRY is returned
+     * @return either SUCCESS (for 2xx response), RETRY (for 408 response + returnRetryOn408),
+     *         or throws an AGHttpException
+     */
+    private ExecuteResult processResponse(AGHttpResponse response,
+                                          AGResponseHandler handler,
+                                          boolean returnRetryOn408) throws AGHttpException {
+        // Will be set to false if the handler takes ownership of the response.
+        // Otherwise we must release the response by the end of this procedure.
         boolean release = true;
         try {
-            int httpCode = getHttpClient().executeMethod(method);
+            int httpCode = response.getStatusCode();
             if (httpCode == HttpURLConnection.HTTP_OK
                 || httpCode == HttpURLConnection.HTTP_NO_CONTENT) {
                 if (handler != null) {
                     release = handler.releaseConnection();
-                    handler.handleResponse(method);
+                    handler.handleResponse(response);
                 }
                 return ExecuteResult.SUCCESS;
             } else if (httpCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
@@ -294,7 +511,7 @@ public class AGHTTPClient implements AutoCloseable {
             } else {
                 AGErrorHandler errHandler = new AGErrorHandler();
                 release = errHandler.releaseConnection();
-                errHandler.handleResponse(method);
+                errHandler.handleResponse(response);
                 throw errHandler.getResult();
             }
         } catch (IOException e) {
@@ -303,7 +520,7 @@ public class AGHTTPClient implements AutoCloseable {
             if (release) {
                 // Note: this will read the response body if necessary
                 // to allow connection reuse.
-                method.releaseConnection();
+                response.release();
             }
         }
     }
@@ -319,23 +536,15 @@ public class AGHTTPClient implements AutoCloseable {
      * @param password the password
      */
     public void setUsernameAndPassword(String username, String password) {
-
         if (username != null && password != null) {
             logger.debug("Setting username '{}' and password for server at {}.", username, serverURL);
-            try {
-                URL server = new URL(serverURL);
-                authScope = new AuthScope(server.getHost(), AuthScope.ANY_PORT);
-                httpClient.getState().setCredentials(authScope,
-                        new UsernamePasswordCredentials(username, password));
-                httpClient.getParams().setAuthenticationPreemptive(true);
-            } catch (MalformedURLException e) {
-                logger.warn("Unable to set username and password for malformed URL " + serverURL, e);
-            }
+            this.username = username;
+            this.password = password;
         } else {
-            authScope = null;
-            httpClient.getState().clearCredentials();
-            httpClient.getParams().setAuthenticationPreemptive(false);
+            this.username = null;
+            this.password = null;
         }
+        transport.setCredentials(serverURL, this.username, this.password);
     }
 
     /**
@@ -345,16 +554,7 @@ public class AGHTTPClient implements AutoCloseable {
      *         and the second element is the password (or null).
      */
     public String[] getUsernameAndPassword() {
-        String[] res = new String[2];
-
-        // WARNING: The call to getCredentials will throw an IllegalArgumentException of credentials have not previously
-        // been set with a call to setUsernameAndPassword
-        UsernamePasswordCredentials cred = (UsernamePasswordCredentials) httpClient.getState().getCredentials(authScope);
-
-        res[0] = cred.getUserName();
-        res[1] = cred.getPassword();
-
-        return res;
+        return new String[] {username, password};
     }
 
     /**
@@ -369,18 +569,23 @@ public class AGHTTPClient implements AutoCloseable {
         masqueradeAsUser = user;
     }
 
+    /**
+     * Prepares a commons-httpclient method to be sent on behalf of this client:
+     * enables authentication if credentials are set and adds the headers
+     * sent with every request.
+     *
+     * @param method the method to prepare
+     * @deprecated Requests are prepared by the {@link AGHttpTransport},
+     * this client no longer sends methods itself.
+     */
+    @Deprecated
     protected final void setDoAuthentication(HttpMethod method) {
-        if (authScope != null
-                && httpClient.getState().getCredentials(authScope) != null) {
+        if (username != null && password != null) {
             method.setDoAuthentication(true);
-        } else {
-            //method.setDoAuthentication(false);
         }
         if (masqueradeAsUser != null) {
             method.addRequestHeader(new Header("x-masquerade-as-user", masqueradeAsUser));
         }
-        // TODO probably doesn't belong here, need another method that
-        // HttpMethod objects pass through.
         method.addRequestHeader(new Header("Connection", "keep-alive"));
     }
 
@@ -476,10 +681,9 @@ public class AGHTTPClient implements AutoCloseable {
 
     @Override
     public void close() {
-        logger.debug("close: " + serverURL + " " + mManager);
-        if (mManager instanceof MultiThreadedHttpConnectionManager) {
-            ((MultiThreadedHttpConnectionManager) mManager).shutdown();
-            mManager = null;
+        logger.debug("close: " + serverURL + " " + transport);
+        if (!isClosed) {
+            transport.close();
         }
         isClosed = true;
     }
@@ -498,4 +702,71 @@ public class AGHTTPClient implements AutoCloseable {
         post(url, headers, data, null, handler);
         return handler.getResult().split("\n");
     }
+
+    /**
+     * Returns the connection permit to the limiter once
+     * the response has been released or aborted.
+     */
+    private static final class LimitedResponse implements AGHttpResponse {
+        private final AGHttpResponse response;
+        private final AGHttpConnectionLimiter limiter;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+
+        LimitedResponse(AGHttpResponse response, AGHttpConnectionLimiter limiter) {
+            this.response = response;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() {
+            return response.getStatusText();
+        }
+
+        @Override
+        public String getResponseHeader(String name) {
+            return response.getResponseHeader(name);
+        }
+
+        @Override
+        public InputStream getResponseBody() throws IOException {
+            return response.getResponseBody();
+        }
+
+        @Override
+        public String getURI() throws IOException {
+            return response.getURI();
+        }
+
+        @Override
+        public void release() {
+            try {
+                response.release();
+            } finally {
+                if (done.compareAndSet(false, true)) {
+                    limiter.release();
+                }
+            }
+        }
+
+        @Override
+        public void abort() {
+            try {
+                response.abort();
+            } finally {
+                if (done.compareAndSet(false, true)) {
+                    limiter.release();
+                }
+            }
+        }
+
+        @Override
+        public HttpMethod getHttpMethod() {
+            return response.getHttpMethod();
+        }
+    }
 }
@@ -0,0 +1,220 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import com.franz.agraph.http.exception.AGHttpException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of requests an {@link AGHTTPClient} has in flight
+ * to its server at the same time.
+ * <p>
+ * A request holds a permit from the moment it is sent until its response
+ * has been released, so a streaming result holds a permit until it is
+ * closed. Requests that can not get a permit wait in a first-come,
+ * first-served queue for at most {@link #getMaxWaitMillis()} milliseconds,
+ * after which an {@link AGHttpException} is thrown. This keeps bursts of
+ * requests from overwhelming the server with new sockets.</p>
+ * <p>
+ * Clients are not limited unless a limit is configured, see
+ * {@link #createDefault()}.</p>
+ * <p>
+ * With {@link com.franz.agraph.http.transport.AGCommonsHttpTransport}
+ * each request in flight uses a socket. With HTTP/2 transports the
+ * limit applies to streams, which may share a socket.</p>
+ *
+ * @since v3.0.6
+ */
+public class AGHttpConnectionLimiter {
+
+    /**
+     * System property for the default maximum number of requests in flight
+     * per {@link AGHTTPClient}. A value of 0 or less means no limit, which
+     * is the default.
+     */
+    public static final String PROP_MAX_CONNECTIONS = "com.franz.agraph.http.maxConnections";
+    /**
+     * System property for the default number of milliseconds a request waits
+     * for a free connection. A value of 0 or less means wait forever.
+     */
+    public static final String PROP_MAX_WAIT = "com.franz.agraph.http.maxConnectionWait";
+
+    /**
+     * No limit: requests are only limited when asked for, since streaming
+     * results and HTTP/2 transports may legitimately keep many requests open.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 0;
+    /**
+     * Default wait for a free connection, when there is a limit.
+     */
+    public static final long DEFAULT_MAX_WAIT = 60000;
+
+    private final int maxConnections;
+    private final long maxWaitMillis;
+    // Null if there is no limit.
+    private final Semaphore permits;
+
+    private final AtomicInteger queueLength = new AtomicInteger();
+    private final AtomicInteger peakQueueLength = new AtomicInteger();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * Creates a limiter.
+     *
+     * @param maxConnections Maximum number of requests in flight,
+     *                       0 or less for no limit.
+     * @param maxWaitMillis  Maximum time to wait for a free connection,
+     *                       0 or less to wait forever.
+     */
+    public AGHttpConnectionLimiter(int maxConnections, long maxWaitMillis) {
+        this.maxConnections = maxConnections;
+        this.maxWaitMillis = maxWaitMillis;
+        // Fair, so that requests are served in arrival order.
+        this.permits = maxConnections > 0 ? new Semaphore(maxConnections, true) : null;
+    }
+
+    /**
+     * Creates a limiter configured by the {@value #PROP_MAX_CONNECTIONS}
+     * and {@value #PROP_MAX_WAIT} system properties. Unless the first
+     * one is set, the limiter never blocks.
+     *
+     * @return A new limiter.
+     */
+    public static AGHttpConnectionLimiter createDefault() {
+        return new AGHttpConnectionLimiter(
+                Integer.parseInt(System.getProperty(PROP_MAX_CONNECTIONS, "" + DEFAULT_MAX_CONNECTIONS)),
+                Long.parseLong(System.getProperty(PROP_MAX_WAIT, "" + DEFAULT_MAX_WAIT)));
+    }
+
+    /**
+     * Creates a limiter that never blocks.
+     *
+     * @return A new limiter.
+     */
+    public static AGHttpConnectionLimiter unlimited() {
+        return new AGHttpConnectionLimiter(0, 0);
+    }
+
+    /**
+     * Waits for a free connection.
+     *
+     * @throws AGHttpException if no connection became free in time,
+     *                         or the thread was interrupted.
+     */
+    public void acquire() throws AGHttpException {
+        if (permits == null) {
+            return;
+        }
+        if (tryAcquire()) {
+            return;
+        }
+        try {
+            peakQueueLength.accumulateAndGet(queueLength.incrementAndGet(), Math::max);
+            boolean acquired;
+            try {
+                if (maxWaitMillis > 0) {
+                    acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    permits.acquire();
+                    acquired = true;
+                }
+            } finally {
+                queueLength.decrementAndGet();
+            }
+            if (!acquired) {
+                timeoutCount.incrementAndGet();
+                throw new AGHttpException("Timed out after " + maxWaitMillis
+                        + " ms waiting for one of " + maxConnections + " HTTP connections");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AGHttpException(e);
+        }
+    }
+
+    /**
+     * Takes a free connection if there is one and no other request is waiting.
+     *
+     * @return True if a connection was acquired.
+     */
+    public boolean tryAcquire() {
+        if (permits == null) {
+            return true;
+        }
+        try {
+            // A zero timeout (unlike tryAcquire()) respects the queue order.
+            return permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Returns a connection acquired with {@link #acquire()} or {@link #tryAcquire()}.
+     */
+    public void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return Maximum number of requests in flight, 0 or less if unlimited.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return Maximum time to wait for a connection, 0 or less if unlimited.
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * @return Number of requests currently in flight (always 0 if unlimited).
+     */
+    public int getActiveConnections() {
+        return permits == null ? 0 : maxConnections - permits.availablePermits();
+    }
+
+    /**
+     * @return Number of requests currently waiting for a connection.
+     */
+    public int getQueueLength() {
+        return queueLength.get();
+    }
+
+    /**
+     * @return Highest number of requests that were waiting at the same time.
+     */
+    public int getPeakQueueLength() {
+        return peakQueueLength.get();
+    }
+
+    /**
+     * @return Number of requests that failed because no connection became free in time.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "{AGHttpConnectionLimiter"
+                + " max=" + maxConnections
+                + " active=" + getActiveConnections()
+                + " waiting=" + getQueueLength()
+                + " peakWaiting=" + getPeakQueueLength()
+                + " timeouts=" + getTimeoutCount()
+                + "}";
+    }
+}
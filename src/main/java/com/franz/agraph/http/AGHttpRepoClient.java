@@ -11,11 +11,14 @@ import com.franz.agraph.http.handler.AGJSONHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
 import com.franz.agraph.http.handler.AGRDFHandler;
 import com.franz.agraph.http.handler.AGResponseHandler;
+import com.franz.agraph.http.handler.AGResultBuffer;
 import com.franz.agraph.http.handler.AGStringHandler;
 import com.franz.agraph.http.handler.AGBooleanHandler;
 import com.franz.agraph.http.handler.AGTQRHandler;
+import com.franz.agraph.http.handler.AGTupleResultBuffer;
 import com.franz.agraph.http.storedproc.AGDeserializer;
 import com.franz.agraph.http.storedproc.AGSerializer;
+import com.franz.agraph.pool.AGPoolMetrics;
 import com.franz.agraph.repository.AGAbstractRepository;
 import com.franz.agraph.repository.AGMaterializer;
 import com.franz.agraph.repository.AGQuery;
@@ -76,10 +79,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.transaction.xa.Xid;
 
 /**
@@ -121,7 +127,7 @@ public class AGHttpRepoClient implements AutoCloseable {
     private static AGServerVersion supportedContextOverridingVersion = new AGServerVersion("7.0.0");
     private static AGServerVersion supportedQueryOptionsVersion = new AGServerVersion("7.1.0");
     final Logger logger = LoggerFactory.getLogger(this.getClass());
-    // Used to create the pinger task
+    // Runs the keep-alive pings
     private final ScheduledExecutorService executor;
     public ConcurrentLinkedQueue<String> savedQueryDeleteQueue;
     private int lifetimeInSeconds = defaultSessionLifetimeInSeconds;
@@ -141,8 +147,14 @@ public class AGHttpRepoClient implements AutoCloseable {
     private AGHTTPClient client;
     private AGAbstractRepository repo;
     private boolean allowExternalBlankNodeIds = false;
-    // Pinger task handle
-    private ScheduledFuture<?> pinger;
+    private long resultMemoryLimit = Long.getLong(AGResultBuffer.PROP_MEMORY_LIMIT, AGResultBuffer.DEFAULT_MEMORY_LIMIT);
+    // Keeps the dedicated session alive, null if there is none
+    // or if maintenance tasks are disabled.
+    private volatile AGSessionKeepAlive.Session keepAlive;
+    // Hands out sessions opened in advance, may be null.
+    private AGSessionPool sessionPool;
+    // Records the time taken to open the dedicated session.
+    private AGPoolMetrics metrics = AGPoolMetrics.NONE;
     /**
      * When set, pass the contents of this field in the x-user-attributes Header of any request.
      * Assumes that AGHttpRepoClient only delivers requests to repo-based REST services in AG.
@@ -160,6 +172,13 @@ public class AGHttpRepoClient implements AutoCloseable {
     private TransactionSettings transactionSettings;
     // When true, any request made by this instance will include an `x-rollback' header.
     private boolean sendRollbackHeader = false;
+    // When true, the next request will include an `x-rollback' header.
+    private final AtomicBoolean pendingRollback = new AtomicBoolean();
+    // Requests that could have performed a pending rollback.
+    private final AtomicLong requestCount = new AtomicLong();
+    // Serializes close(). A lock rather than a monitor, so that
+    // virtual threads waiting for the server are not pinned.
+    private final ReentrantLock closeLock = new ReentrantLock();
 
     // Cached to avoid querying the server each time.
     private Boolean hasWarmupBug = null;
@@ -348,6 +367,40 @@ public class AGHttpRepoClient implements AutoCloseable {
         this.scripts.add(scriptName);
     }
 
+    /**
+     * Returns the pool of sessions opened in advance used by this instance.
+     *
+     * @return the session pool, or null if sessions are opened on demand
+     * @since v3.0.6
+     */
+    public AGSessionPool getSessionPool() {
+        return sessionPool;
+    }
+
+    /**
+     * Sets the pool from which this instance takes its dedicated session,
+     * when it needs one. Sessions are only taken from the pool if they were
+     * opened with the same lifetime, autoCommit mode, init file and scripts
+     * as this instance would use; otherwise a session is opened as usual.
+     *
+     * @param sessionPool the session pool, or null to always open sessions on demand
+     * @since v3.0.6
+     */
+    public void setSessionPool(AGSessionPool sessionPool) {
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * Sets the metrics that record how long opening the dedicated session
+     * takes, as {@link AGPoolMetrics.Phase#SESSION_OPEN}.
+     *
+     * @param metrics the metrics, or null to record nothing
+     * @since v3.0.6
+     */
+    public void setMetrics(AGPoolMetrics metrics) {
+        this.metrics = metrics == null ? AGPoolMetrics.NONE : metrics;
+    }
+
     /**
      * Fetch the preferred {@link TupleQueryResultFormat}.
      *
@@ -366,6 +419,12 @@ public class AGHttpRepoClient implements AutoCloseable {
 
     /**
      * Set the preferred {@link TupleQueryResultFormat}
+     * <p>
+     * TSV, SPARQL/XML, JSON and {@link TupleQueryResultFormat#BINARY} are supported.
+     * The binary format avoids decoding and unescaping text; when it is
+     * preferred, TSV and SPARQL/XML are accepted as well, so that servers
+     * which do not offer it can still answer.
+     * </p>
      *
      * @param preferredTQRFormat the new value to set as preferred
      */
@@ -373,6 +432,44 @@ public class AGHttpRepoClient implements AutoCloseable {
         this.preferredTQRFormat = preferredTQRFormat;
     }
 
+    /**
+     * Gets the memory budget of query results that are collected
+     * before they are returned, such as those of
+     * {@link com.franz.agraph.repository.AGTupleQuery#evaluate()}.
+     *
+     * @return estimated number of bytes kept on the heap per result
+     * @see #setResultMemoryLimit(long)
+     * @since v3.0.6
+     */
+    public long getResultMemoryLimit() {
+        return resultMemoryLimit;
+    }
+
+    /**
+     * Sets the memory budget of query results that are collected
+     * before they are returned.
+     * <p>
+     * Rows beyond the budget are written to a temporary file, which is
+     * deleted when the result is closed or read to the end. Streamed
+     * results ({@link com.franz.agraph.repository.AGStreamTupleQuery})
+     * are not collected and do not need a budget.
+     * </p>
+     * <p>
+     * Defaults to the value of System property
+     * {@value AGResultBuffer#PROP_MEMORY_LIMIT}, or 64 MiB.
+     * </p>
+     *
+     * @param resultMemoryLimit estimated number of bytes kept on the heap per result
+     * @see AGResultBuffer
+     * @since v3.0.6
+     */
+    public void setResultMemoryLimit(long resultMemoryLimit) {
+        if (resultMemoryLimit < 0) {
+            throw new IllegalArgumentException("Memory limit must not be negative: " + resultMemoryLimit);
+        }
+        this.resultMemoryLimit = resultMemoryLimit;
+    }
+
     public BooleanQueryResultFormat getPreferredBQRFormat() {
         return preferredBQRFormat;
     }
@@ -387,15 +484,23 @@ public class AGHttpRepoClient implements AutoCloseable {
      * return RDF statements; the format should support contexts.
      * <p>
      * Gets System property com.franz.agraph.http.defaultRDFFormat
-     * (NQUADS and TRIX are currently supported), defaults to TRIX
+     * (NQUADS, TRIX and BINARY are currently supported), defaults to TRIX
      * if the property is not present, and returns the corresponding
      * RDFFormat.
      * </p>
      *
-     * @return an RDFFormat, either NQUADS or TRIX
+     * @return an RDFFormat, either NQUADS, TRIX or BINARY
      */
     public RDFFormat getDefaultRDFFormat() {
-        RDFFormat format = System.getProperty("com.franz.agraph.http.defaultRDFFormat", "TRIX").equalsIgnoreCase("NQUADS") ? RDFFormat.NQUADS : RDFFormat.TRIX;
+        String name = System.getProperty("com.franz.agraph.http.defaultRDFFormat", "TRIX");
+        RDFFormat format;
+        if (name.equalsIgnoreCase("NQUADS")) {
+            format = RDFFormat.NQUADS;
+        } else if (name.equalsIgnoreCase("BINARY")) {
+            format = RDFFormat.BINARY;
+        } else {
+            format = RDFFormat.TRIX;
+        }
         logger.debug("Defaulting to " + format.getDefaultMIMEType() + " for requests that return RDF statements.");
         return format;
     }
@@ -417,7 +522,9 @@ public class AGHttpRepoClient implements AutoCloseable {
      * Sets the RDFFormat to use in making requests that return
      * RDF statements; the format must support contexts.
      * <p>
-     * AGRDFFormat.NQUADS and RDFFormat.TRIX are currently supported.
+     * AGRDFFormat.NQUADS, RDFFormat.TRIX and RDFFormat.BINARY are currently
+     * supported. When RDFFormat.BINARY is preferred, N-Quads and TriX are
+     * accepted as well, for servers that do not offer binary RDF.
      * Defaults to the format returned by {@link #getDefaultRDFFormat()}
      * </p>
      *
@@ -449,6 +556,16 @@ public class AGHttpRepoClient implements AutoCloseable {
      * @return headers[], the headers converted to an array
      */
     private Header[] prepareHeaders(List<Header> headers) {
+        return prepareHeaders(headers, false);
+    }
+
+    /**
+     * @param headers  a List<Header> of headers
+     * @param rollback whether this request performs a pending rollback,
+     *                 see {@link #takePendingRollback()}
+     * @return headers[], the headers converted to an array
+     */
+    private Header[] prepareHeaders(List<Header> headers, boolean rollback) {
 
         if (headers == null) {
             headers = new ArrayList<>(0);
@@ -457,7 +574,12 @@ public class AGHttpRepoClient implements AutoCloseable {
         if (userAttributes != null) {
             headers.add(new Header(AGProtocol.USER_ATTRIBUTE_HEADER, userAttributes));
         }
-        if (sendRollbackHeader) {
+        final AGSessionKeepAlive.Session session = keepAlive;
+        if (session != null) {
+            // Postpones the next ping.
+            session.touch();
+        }
+        if (sendRollbackHeader || rollback) {
             headers.add(new Header(AGProtocol.X_ROLLBACK_HEADER, "yes"));
         }
         addReplHeader(headers);
@@ -517,40 +639,135 @@ public class AGHttpRepoClient implements AutoCloseable {
         return emptyParams;
     }
 
+    /**
+     * Sends a request that may perform a pending rollback.
+     */
+    @FunctionalInterface
+    private interface Request<T> {
+        T send(Header[] headers) throws AGHttpException;
+    }
+
+    /**
+     * Sends a request with the pending rollback, if any. If the request
+     * fails the server may not have seen it, so the rollback stays pending.
+     */
+    private <T> T send(List<Header> headers, Request<T> request) throws AGHttpException {
+        final long pending = takePendingRollback();
+        final T result;
+        try {
+            result = request.send(prepareHeaders(headers, pending >= 0));
+        } catch (RuntimeException e) {
+            restorePendingRollback(pending);
+            throw e;
+        }
+        if (result instanceof CompletableFuture) {
+            ((CompletableFuture<?>) result).whenComplete((r, e) -> {
+                if (e != null) {
+                    restorePendingRollback(pending);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of the request taking the pending rollback, or -1 if none is pending.
+     */
+    private long takePendingRollback() {
+        final long request = requestCount.incrementAndGet();
+        return pendingRollback.getAndSet(false) ? request : -1;
+    }
+
+    /**
+     * Makes a rollback pending again, unless another request has been sent since.
+     * That one did not roll back, so it is too late for the next one to do it.
+     */
+    private void restorePendingRollback(long request) {
+        if (request >= 0 && requestCount.get() == request) {
+            pendingRollback.set(true);
+        }
+    }
+
     protected void get(String url, List<Header> headers,
                        Collection<? extends NameValuePair> params,
                        AGResponseHandler handler) throws AGHttpException {
 
-        getHTTPClient().get(url, prepareHeaders(headers), prepareParams(params),
-                handler);
+        send(headers, prepared -> {
+            getHTTPClient().get(url, prepared, prepareParams(params), handler);
+            return null;
+        });
     }
 
     protected void post(String url, List<Header> headers,
                         Collection<? extends NameValuePair> params,
                         RequestEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
 
-        getHTTPClient().post(url, prepareHeaders(headers), prepareParams(params),
-                requestEntity, handler);
+        send(headers, prepared -> {
+            getHTTPClient().post(url, prepared, prepareParams(params), requestEntity, handler);
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #post(String, List, Collection, RequestEntity, AGResponseHandler)}.
+     *
+     * @see AGHTTPClient#postAsync(String, Header[], NameValuePair[], RequestEntity, AGResponseHandler, Executor)
+     * @since v3.0.6
+     */
+    protected CompletableFuture<Void> postAsync(String url, List<Header> headers,
+                                                Collection<? extends NameValuePair> params,
+                                                RequestEntity requestEntity, AGResponseHandler handler,
+                                                Executor executor) throws AGHttpException {
+
+        return send(headers, prepared -> getHTTPClient().postAsync(url, prepared, prepareParams(params),
+                requestEntity, handler, executor));
     }
 
     protected void put(String url, List<Header> headers,
                        Collection<? extends NameValuePair> params,
                        RequestEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
 
-        getHTTPClient().put(url, prepareHeaders(headers), prepareParams(params),
-                requestEntity, handler);
+        send(headers, prepared -> {
+            getHTTPClient().put(url, prepared, prepareParams(params), requestEntity, handler);
+            return null;
+        });
     }
 
     protected void delete(String url, List<Header> headers,
                           Collection<? extends NameValuePair> params,
                           AGResponseHandler handler) throws AGHttpException {
 
-        getHTTPClient().delete(url, prepareHeaders(headers), prepareParams(params),
-                handler);
+        send(headers, prepared -> {
+            getHTTPClient().delete(url, prepared, prepareParams(params), handler);
+            return null;
+        });
     }
 
     private void useDedicatedSession(boolean autoCommit)
             throws AGHttpException {
+        if (sessionRoot != null) {
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            openDedicatedSession(autoCommit);
+        } finally {
+            metrics.recordTime(AGPoolMetrics.Phase.SESSION_OPEN, System.nanoTime() - start);
+        }
+    }
+
+    private void openDedicatedSession(boolean autoCommit) throws AGHttpException {
+        if (sessionPool != null) {
+            final String warmSession = sessionPool.take(lifetimeInSeconds, autoCommit, loadInitFile, scripts);
+            if (warmSession != null) {
+                usingDedicatedSession = true;
+                sessionRoot = warmSession;
+                startPinger();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("openSession (from pool): {}", sessionRoot);
+                }
+            }
+        }
         if (sessionRoot == null) {
             String url = AGProtocol.getSessionURL(getRoot());
             List<NameValuePair> params = new ArrayList<>(3);
@@ -577,42 +794,57 @@ public class AGHttpRepoClient implements AutoCloseable {
     }
 
     /**
-     * Starts the periodic pinger task.
+     * Opens a dedicated session for an {@link AGSessionPool}.
+     *
+     * @param autoCommit the autoCommit mode of the session
+     */
+    void openSession(boolean autoCommit) throws AGHttpException {
+        useDedicatedSession(autoCommit);
+    }
+
+    /**
+     * Hands the dedicated session over to another instance,
+     * without closing it.
+     *
+     * @return The session url.
+     */
+    String detachSession() {
+        stopPinger();
+        final String root = sessionRoot;
+        sessionRoot = null;
+        usingDedicatedSession = false;
+        return root;
+    }
+
+    /**
+     * Starts keeping the session alive, with the keep-alive service
+     * shared by the connections using the same executor.
      * This must be invoked at most once.
      */
     private void startPinger() {
-        assert pinger == null;
+        assert keepAlive == null;
 
         // Exit if disabled.
         if (executor == null) {
             return;
         }
 
-        // Convert to ms, cut in half to avoid timeouts if the task
-        // is executed a bit later than expected.
-        final long delay = getSessionLifetime() * 1000 / 2;
-        // Randomize the initial delay
-        final long initialDelay = (long) (Math.random() * delay);
-        pinger = executor.scheduleWithFixedDelay(() -> {
-            try {
-                // Note - this will execute concurrently with other
-                // connection activity. This is ok, since
-                // AGHttpClient uses a connection pool to allow
-                // concurrent access.
-                ping();
-            } catch (final AGHttpException e) {
-                // Pinger errors are normal when shutting down...
-                logger.debug("Pinger exception", e);
-            }
-        }, initialDelay, delay, TimeUnit.MILLISECONDS);
+        // Note - pings will execute concurrently with other
+        // connection activity. This is ok, since
+        // AGHttpClient uses a connection pool to allow
+        // concurrent access.
+        keepAlive = AGSessionKeepAlive.forExecutor(executor)
+                .register(getSessionLifetime() * 1000L, this::ping);
     }
 
     /**
-     * Cancel the periodic pinger task if it exists.
+     * Stops keeping the session alive.
      */
     private void stopPinger() {
-        if (pinger != null) {
-            pinger.cancel(false);
+        final AGSessionKeepAlive.Session session = keepAlive;
+        if (session != null) {
+            session.cancel();
+            keepAlive = null;
         }
     }
 
@@ -1033,6 +1265,31 @@ public class AGHttpRepoClient implements AutoCloseable {
         this.sendRollbackHeader = sendRollbackHeader;
     }
 
+    /**
+     * When set to true, an x-rollback header will be passed with the next
+     * request made by this AGHttpRepoClient instance, other than a
+     * {@link #ping()}, so that the server rolls back before processing it.
+     * <p>
+     * This refreshes the view of a dedicated session without a request of
+     * its own, e.g. when a connection is borrowed from a pool. If that
+     * request fails, the rollback is sent with the request after it.</p>
+     *
+     * @param pendingRollback whether the next request should roll back first
+     * @since v3.0.6
+     */
+    public void setPendingRollback(boolean pendingRollback) {
+        this.pendingRollback.set(pendingRollback);
+    }
+
+    /**
+     * @return True if the next request will include an x-rollback header.
+     * @see #setPendingRollback(boolean)
+     * @since v3.0.6
+     */
+    public boolean isPendingRollback() {
+        return pendingRollback.get();
+    }
+
     public void clearNamespaces() throws AGHttpException {
         String url = Protocol.getNamespacesLocation(getRoot());
 
@@ -1124,6 +1381,50 @@ public class AGHttpRepoClient implements AutoCloseable {
         }
     }
 
+    /**
+     * Uploads statements encoded as a JSON array of rows by the given entity.
+     * Unlike {@link #uploadJSON(JSONArray, Resource...)} the rows do not
+     * need to be in memory, the entity may encode them as it is sent.
+     *
+     * @param rows     entity producing the JSON rows
+     * @param contexts contexts to add the statements to
+     * @throws AGHttpException if the upload fails
+     * @since v3.0.6
+     */
+    public void uploadJSON(RequestEntity rows, Resource... contexts)
+            throws AGHttpException {
+        uploadJSON(rows, null, contexts);
+    }
+
+    /**
+     * Uploads statements encoded as a JSON array of rows by the given entity,
+     * setting the same attributes on all of them.
+     *
+     * @param rows       entity producing the JSON rows
+     * @param attributes attributes for all statements, sent once rather than
+     *                   in each row; may be null
+     * @param contexts   contexts to add the statements to
+     * @throws AGHttpException if the upload fails
+     * @since v3.0.6
+     */
+    public void uploadJSON(RequestEntity rows, JSONObject attributes, Resource... contexts)
+            throws AGHttpException {
+        String url = Protocol.getStatementsLocation(getRoot());
+        upload(url, rows, null, false, null, null, null, attributes, contexts);
+    }
+
+    /**
+     * Deletes statements encoded as a JSON array of rows by the given entity.
+     *
+     * @param rows entity producing the JSON rows
+     * @throws AGHttpException if the request fails
+     * @since v3.0.6
+     */
+    public void deleteJSON(RequestEntity rows) throws AGHttpException {
+        upload(AGProtocol.getStatementsDeleteLocation(getRoot()), rows, null, false,
+                null, null, null);
+    }
+
     public void deleteJSON(JSONArray rows, Resource... contexts)
             throws AGHttpException {
         uploadJSON(AGProtocol.getStatementsDeleteLocation(getRoot()), rows, contexts);
@@ -1251,14 +1552,17 @@ public class AGHttpRepoClient implements AutoCloseable {
 
     public TupleQueryResult getContextIDs() throws
             AGHttpException {
+        AGTupleResultBuffer buffer = new AGTupleResultBuffer(getValueFactory(), getResultMemoryLimit());
         try {
-            TupleQueryResultBuilder builder = new TupleQueryResultBuilder();
-            getContextIDs(builder);
-            return builder.getQueryResult();
+            getContextIDs(buffer);
         } catch (TupleQueryResultHandlerException e) {
-            // Found a bug in TupleQueryResultBuilder?
-            throw new RuntimeException(e);
+            buffer.close();
+            throw new AGHttpException(e);
+        } catch (RuntimeException e) {
+            buffer.close();
+            throw e;
         }
+        return buffer.getQueryResult(true);
     }
 
     public void getContextIDs(TupleQueryResultHandler handler)
@@ -1395,11 +1699,47 @@ public class AGHttpRepoClient implements AutoCloseable {
     public void query(AGQuery q, boolean analyzeOnly, AGResponseHandler handler) throws
             AGHttpException {
 
+        String url = getQueryURL(q);
+        post(url, getQueryHeaders(handler), getQueryParameters(q, analyzeOnly), null, handler);
+        if (sessionRoot != null && q.getName() != null) {
+            q.setPrepared(true);
+        }
+    }
+
+    /**
+     * Sends a query without waiting for the response.
+     *
+     * @param q           the query
+     * @param analyzeOnly if true, only analyze the query
+     * @param handler     processes the response
+     * @param executor    executor used to run the handler
+     * @return A future that completes once the handler has processed the response.
+     * Cancelling the future aborts the HTTP request.
+     * @throws AGHttpException if the request could not be prepared
+     * @since v3.0.6
+     */
+    public CompletableFuture<Void> queryAsync(AGQuery q, boolean analyzeOnly, AGResponseHandler handler,
+                                              Executor executor) throws AGHttpException {
+
+        String url = getQueryURL(q);
+        CompletableFuture<Void> result = postAsync(url, getQueryHeaders(handler),
+                getQueryParameters(q, analyzeOnly), null, handler, executor);
+        if (sessionRoot != null && q.getName() != null) {
+            result.thenRun(() -> q.setPrepared(true));
+        }
+        return result;
+    }
+
+    private String getQueryURL(AGQuery q) throws AGHttpException {
         String url = getRoot();
         if (q.isPrepared()) {
             processSavedQueryDeleteQueue();
             url = AGProtocol.getSavedQueryLocation(url, q.getName());
         }
+        return url;
+    }
+
+    private List<Header> getQueryHeaders(AGResponseHandler handler) {
         List<Header> headers = new ArrayList<>(5);
         headers.add(new Header("Content-Type", Protocol.FORM_MIME_TYPE
                 + "; charset=utf-8"));
@@ -1407,14 +1747,15 @@ public class AGHttpRepoClient implements AutoCloseable {
             headers.add(new Header(Protocol.ACCEPT_PARAM_NAME, handler
                     .getRequestMIMEType()));
         }
+        return headers;
+    }
+
+    private List<NameValuePair> getQueryParameters(AGQuery q, boolean analyzeOnly) {
         List<NameValuePair> queryParams = getQueryMethodParameters(q);
         if (analyzeOnly) {
             queryParams.add(new NameValuePair("analyzeIndicesUsed", "true"));
         }
-        post(url, headers, queryParams, null, handler);
-        if (sessionRoot != null && q.getName() != null) {
-            q.setPrepared(true);
-        }
+        return queryParams;
     }
 
     protected List<NameValuePair> getQueryMethodParameters(AGQuery q) {
@@ -1534,9 +1875,14 @@ public class AGHttpRepoClient implements AutoCloseable {
         delete(url, null, null, null);
     }
 
-    public synchronized void close() throws AGHttpException {
-        if (sessionRoot != null) {
-            closeSession();
+    public void close() throws AGHttpException {
+        closeLock.lock();
+        try {
+            if (sessionRoot != null) {
+                closeSession();
+            }
+        } finally {
+            closeLock.unlock();
         }
     }
 
@@ -1843,7 +2189,10 @@ public class AGHttpRepoClient implements AutoCloseable {
         if (usingDedicatedSession) {
             String url = AGProtocol.getSessionPingLocation(getRoot());
 
-            get(url, null, null, null);
+            // Pings are sent from another thread, so they must not perform
+            // a pending rollback: it could reach the server after a request
+            // made by the application.
+            getHTTPClient().get(url, prepareHeaders(null), emptyParams, null);
         }
     }
 
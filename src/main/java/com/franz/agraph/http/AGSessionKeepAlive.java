@@ -0,0 +1,264 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps dedicated sessions alive by pinging them before they time out.
+ * <p>
+ * A single task, run every tick on a scheduled executor, serves all the
+ * sessions registered with it. Sessions are kept in a timer wheel by the
+ * time their next ping is due: half their lifetime after their last
+ * request. Sessions that have made a request since are not pinged, but
+ * moved to their new due time. The pings due in a tick are sent together
+ * by one task on the executor.</p>
+ * <p>
+ * Connections share the keep-alive service of their executor,
+ * see {@link #forExecutor(ScheduledExecutorService)}.</p>
+ *
+ * @since v3.0.6
+ */
+public class AGSessionKeepAlive {
+    /**
+     * Default interval between checks for sessions to ping, in milliseconds.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 1000;
+
+    private static final int WHEEL_SIZE = 512;
+
+    // Services shared by the connections using each executor.
+    private static final Map<ScheduledExecutorService, AGSessionKeepAlive> services = new WeakHashMap<>();
+
+    private static final Logger logger = LoggerFactory.getLogger(AGSessionKeepAlive.class);
+
+    // Weak, so that shared services do not keep their executor alive.
+    private final WeakReference<ScheduledExecutorService> executor;
+    private final long tickNanos;
+    private final long start = System.nanoTime();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final LongAdder pingsSent = new LongAdder();
+    private final LongAdder pingsSuppressed = new LongAdder();
+    private final LongAdder pingsFailed = new LongAdder();
+
+    // Sessions by the tick at which they are next checked, modulo WHEEL_SIZE.
+    // Guarded by this, like the fields below.
+    private final List<List<Session>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private long lastTick;
+    private ScheduledFuture<?> task;
+
+    /**
+     * Creates a keep-alive service that is not shared.
+     *
+     * @param executor   runs the periodic check and sends the pings
+     * @param tickMillis interval between checks for sessions to ping
+     */
+    public AGSessionKeepAlive(ScheduledExecutorService executor, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.executor = new WeakReference<>(executor);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Returns the keep-alive service shared by the sessions whose
+     * maintenance tasks run on an executor.
+     *
+     * @param executor a scheduled executor, such as {@link
+     *                 com.franz.agraph.repository.AGServer#getExecutor()}
+     * @return The service, created on first use.
+     */
+    public static AGSessionKeepAlive forExecutor(ScheduledExecutorService executor) {
+        synchronized (services) {
+            return services.computeIfAbsent(executor, e -> new AGSessionKeepAlive(e, DEFAULT_TICK_MILLIS));
+        }
+    }
+
+    /**
+     * Starts keeping a session alive.
+     *
+     * @param lifetimeMillis time after its last request at which the server
+     *                       closes the session; pings are sent after half of it
+     * @param ping           pings the session
+     * @return A handle used to report requests made in the session,
+     *         and to cancel the pings when the session is closed.
+     */
+    public synchronized Session register(long lifetimeMillis, Runnable ping) {
+        final Session session = new Session(TimeUnit.MILLISECONDS.toNanos(lifetimeMillis) / 2, ping);
+        schedule(session, session.lastActivity + session.idleNanos);
+        sessionCount.incrementAndGet();
+        if (task == null) {
+            final ScheduledExecutorService executor = this.executor.get();
+            if (executor == null) {
+                throw new IllegalStateException("The executor of this keep-alive service is gone");
+            }
+            lastTick = elapsedTicks(System.nanoTime());
+            task = executor.scheduleWithFixedDelay(this::check, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        }
+        return session;
+    }
+
+    /**
+     * @return Number of sessions kept alive.
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * @return Number of pings sent, including those that failed.
+     */
+    public long getPingsSent() {
+        return pingsSent.sum();
+    }
+
+    /**
+     * @return Number of times a ping was not needed because the session
+     *         had made a request since it was scheduled.
+     */
+    public long getPingsSuppressed() {
+        return pingsSuppressed.sum();
+    }
+
+    /**
+     * @return Number of pings that failed, e.g. because the session was gone.
+     */
+    public long getPingsFailed() {
+        return pingsFailed.sum();
+    }
+
+    /**
+     * @return Number of ticks that have passed at a time.
+     */
+    private long elapsedTicks(long nanos) {
+        return (nanos - start) / tickNanos;
+    }
+
+    // Called with the lock held.
+    private void schedule(Session session, long dueNanos) {
+        // The first tick at or after the due time, in a slot not yet visited.
+        final long tick = (dueNanos - start + tickNanos - 1) / tickNanos;
+        session.dueTick = Math.max(tick, lastTick + 1);
+        wheel.get((int) (session.dueTick % WHEEL_SIZE)).add(session);
+    }
+
+    /**
+     * Visits the slots of the wheel for the ticks since the last check,
+     * and sends the pings that are due.
+     */
+    private void check() {
+        final List<Session> due = new ArrayList<>();
+        synchronized (this) {
+            final long now = System.nanoTime();
+            final long tick = elapsedTicks(now);
+            // Each slot needs to be visited at most once.
+            final long first = Math.max(lastTick + 1, tick - WHEEL_SIZE + 1);
+            lastTick = tick;
+            for (long t = first; t <= tick; t++) {
+                final int slot = (int) (t % WHEEL_SIZE);
+                final List<Session> sessions = wheel.get(slot);
+                wheel.set(slot, new ArrayList<>());
+                for (final Session session : sessions) {
+                    if (session.cancelled.get()) {
+                        continue;
+                    }
+                    if (session.dueTick > tick) {
+                        // Due in a later turn of the wheel.
+                        wheel.get(slot).add(session);
+                        continue;
+                    }
+                    final long nextPing = session.lastActivity + session.idleNanos;
+                    if (nextPing - now <= 0) {
+                        due.add(session);
+                        schedule(session, now + session.idleNanos);
+                    } else {
+                        pingsSuppressed.increment();
+                        schedule(session, nextPing);
+                    }
+                }
+            }
+            if (sessionCount.get() == 0 && task != null) {
+                task.cancel(false);
+                task = null;
+                for (int i = 0; i < WHEEL_SIZE; i++) {
+                    wheel.set(i, new ArrayList<>());
+                }
+            }
+        }
+        if (!due.isEmpty()) {
+            final ScheduledExecutorService executor = this.executor.get();
+            if (executor != null) {
+                executor.execute(() -> ping(due));
+            }
+        }
+    }
+
+    private void ping(List<Session> sessions) {
+        for (final Session session : sessions) {
+            if (session.cancelled.get()) {
+                continue;
+            }
+            pingsSent.increment();
+            try {
+                session.ping.run();
+            } catch (final RuntimeException e) {
+                // Ping errors are normal when shutting down...
+                pingsFailed.increment();
+                logger.debug("Pinger exception", e);
+            }
+        }
+    }
+
+    /**
+     * A session kept alive by a {@link AGSessionKeepAlive}.
+     */
+    public final class Session {
+        private final long idleNanos;
+        private final Runnable ping;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile long lastActivity = System.nanoTime();
+        // Guarded by the keep-alive service.
+        private long dueTick;
+
+        private Session(long idleNanos, Runnable ping) {
+            this.idleNanos = idleNanos;
+            this.ping = ping;
+        }
+
+        /**
+         * Records that a request has been made in the session,
+         * which postpones the next ping.
+         */
+        public void touch() {
+            lastActivity = System.nanoTime();
+        }
+
+        /**
+         * Stops pinging the session.
+         */
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                sessionCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import com.franz.agraph.repository.AGRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a number of dedicated sessions open in advance, so that a
+ * connection that needs a session does not wait for the server to
+ * start one and to load its init file and scripts.
+ * <p>
+ * Sessions are opened on an executor, and a new one is opened each time
+ * one is taken. Sessions waiting in the pool are kept alive by
+ * {@link AGSessionKeepAlive}; those that cannot be pinged are dropped.
+ * A connection only takes a session that was opened with the settings
+ * it would have used itself, see
+ * {@link AGHttpRepoClient#setSessionPool(AGSessionPool)}.</p>
+ * <p>
+ * The settings of the sessions must be made before the pool is
+ * {@link #start() started}.</p>
+ *
+ * @see AGRepository#setSessionPool(AGSessionPool)
+ * @since v3.0.6
+ */
+public class AGSessionPool implements Closeable {
+    /**
+     * Delay before trying again to open a session after a failure, in milliseconds.
+     */
+    public static final long RETRY_DELAY_MILLIS = 5000;
+
+    private static final Logger logger = LoggerFactory.getLogger(AGSessionPool.class);
+
+    private final AGHTTPClient client;
+    private final String repoRoot;
+    private final int size;
+    private final ScheduledExecutorService executor;
+    private final LongAdder taken = new LongAdder();
+    private final LongAdder missed = new LongAdder();
+
+    // Guarded by this, like the fields below.
+    private final Deque<WarmSession> idle = new ArrayDeque<>();
+    private int opening;
+    private boolean started;
+    private boolean closed;
+
+    // Settings of the sessions.
+    private int lifetimeInSeconds = (int) AGHttpRepoClient.getDefaultSessionLifetime();
+    private boolean autoCommit = false;
+    private boolean loadInitFile = false;
+    private final List<String> scripts = new ArrayList<>();
+
+    /**
+     * Creates a session pool.
+     *
+     * @param client   the http client used to open the sessions
+     * @param repoRoot the url of the repository
+     * @param size     number of sessions to keep open
+     * @param executor opens the sessions and keeps them alive
+     */
+    public AGSessionPool(AGHTTPClient client, String repoRoot, int size,
+                         ScheduledExecutorService executor) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Session pool size must be positive: " + size);
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("A session pool needs an executor");
+        }
+        this.client = client;
+        this.repoRoot = repoRoot;
+        this.size = size;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a session pool for a repository, using the executor
+     * of its server.
+     *
+     * @param repository the repository
+     * @param size       number of sessions to keep open
+     */
+    public AGSessionPool(AGRepository repository, int size) {
+        this(repository.getHTTPClient(), repository.getRepositoryURL(), size,
+                repository.getServer().getExecutor());
+    }
+
+    /**
+     * Sets the lifetime of the sessions, defaults to
+     * {@link AGHttpRepoClient#getDefaultSessionLifetime()}.
+     *
+     * @param lifetimeInSeconds an integer number of seconds
+     */
+    public synchronized void setSessionLifetime(int lifetimeInSeconds) {
+        checkNotStarted();
+        this.lifetimeInSeconds = lifetimeInSeconds;
+    }
+
+    /**
+     * Sets the autoCommit mode of the sessions. Defaults to false,
+     * the mode of the sessions opened to start a transaction.
+     *
+     * @param autoCommit the autoCommit mode
+     */
+    public synchronized void setAutoCommit(boolean autoCommit) {
+        checkNotStarted();
+        this.autoCommit = autoCommit;
+    }
+
+    /**
+     * When true, the sessions will load the initfile upon creation.
+     *
+     * @param loadInitFile boolean indicating the new value to set
+     */
+    public synchronized void setSessionLoadInitFile(boolean loadInitFile) {
+        checkNotStarted();
+        this.loadInitFile = loadInitFile;
+    }
+
+    /**
+     * Adds a script loaded by the sessions upon creation.
+     *
+     * @param scriptName the name of the script
+     */
+    public synchronized void addSessionLoadScript(String scriptName) {
+        checkNotStarted();
+        scripts.add(scriptName);
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("Session pool already started");
+        }
+    }
+
+    /**
+     * Starts opening sessions. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if (!started) {
+            started = true;
+            fill();
+        }
+    }
+
+    /**
+     * @return Number of sessions ready to be taken.
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return Number of sessions taken from the pool.
+     */
+    public long getTakenCount() {
+        return taken.sum();
+    }
+
+    /**
+     * @return Number of times a session was needed while the pool was empty.
+     */
+    public long getMissedCount() {
+        return missed.sum();
+    }
+
+    /**
+     * Takes a session, if there is one opened with the given settings.
+     *
+     * @return The session url, or null.
+     */
+    String take(int lifetimeInSeconds, boolean autoCommit,
+                boolean loadInitFile, List<String> scripts) {
+        final WarmSession session;
+        synchronized (this) {
+            if (closed
+                    || lifetimeInSeconds != this.lifetimeInSeconds
+                    || autoCommit != this.autoCommit
+                    || loadInitFile != this.loadInitFile
+                    || !this.scripts.equals(scripts == null ? Collections.emptyList() : scripts)) {
+                return null;
+            }
+            session = idle.poll();
+            if (session == null) {
+                missed.increment();
+                return null;
+            }
+            taken.increment();
+            fill();
+        }
+        session.keepAlive.cancel();
+        return session.client.detachSession();
+    }
+
+    // Called with the lock held.
+    private void fill() {
+        while (started && !closed && idle.size() + opening < size) {
+            opening++;
+            executor.execute(this::open);
+        }
+    }
+
+    private void open() {
+        final AGHttpRepoClient sessionClient;
+        final boolean sessionAutoCommit;
+        synchronized (this) {
+            // Without an executor: the pool keeps the session alive
+            // until it is taken.
+            sessionClient = new AGHttpRepoClient(null, client, repoRoot, null, null);
+            sessionClient.setSessionLifetime(lifetimeInSeconds);
+            sessionClient.setSessionLoadInitFile(loadInitFile);
+            for (String script : scripts) {
+                sessionClient.addSessionLoadScript(script);
+            }
+            sessionAutoCommit = autoCommit;
+        }
+        try {
+            sessionClient.openSession(sessionAutoCommit);
+        } catch (RuntimeException e) {
+            logger.warn("Could not open a session for the pool, retrying in {} ms", RETRY_DELAY_MILLIS, e);
+            synchronized (this) {
+                opening--;
+            }
+            executor.schedule(this::retry, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        final boolean keep;
+        synchronized (this) {
+            opening--;
+            keep = !closed;
+            if (keep) {
+                final WarmSession session = new WarmSession(sessionClient);
+                session.keepAlive = AGSessionKeepAlive.forExecutor(executor)
+                        .register(lifetimeInSeconds * 1000L, () -> ping(session));
+                idle.add(session);
+            }
+        }
+        if (!keep) {
+            closeSession(sessionClient);
+        }
+    }
+
+    private synchronized void retry() {
+        fill();
+    }
+
+    private void ping(WarmSession session) {
+        try {
+            session.client.ping();
+        } catch (RuntimeException e) {
+            discard(session);
+            throw e;
+        }
+    }
+
+    /**
+     * Drops a session that can no longer be used, and opens another.
+     */
+    private synchronized void discard(WarmSession session) {
+        if (idle.remove(session)) {
+            session.keepAlive.cancel();
+            fill();
+        }
+    }
+
+    /**
+     * Closes the sessions waiting in the pool and stops opening new ones.
+     * Sessions already taken are not affected.
+     */
+    @Override
+    public void close() {
+        final List<WarmSession> sessions;
+        synchronized (this) {
+            closed = true;
+            sessions = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (WarmSession session : sessions) {
+            session.keepAlive.cancel();
+            closeSession(session.client);
+        }
+    }
+
+    private static void closeSession(AGHttpRepoClient sessionClient) {
+        try {
+            sessionClient.close();
+        } catch (RuntimeException e) {
+            logger.debug("Error closing pooled session", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{AGSessionPool"
+                + " repo=" + repoRoot
+                + " size=" + size
+                + " idle=" + getIdleCount()
+                + " taken=" + getTakenCount()
+                + " missed=" + getMissedCount()
+                + "}";
+    }
+
+    /**
+     * A session waiting in the pool.
+     */
+    private final class WarmSession {
+        final AGHttpRepoClient client;
+        // Guarded by the pool.
+        AGSessionKeepAlive.Session keepAlive;
+
+        WarmSession(AGHttpRepoClient client) {
+            this.client = client;
+        }
+    }
+}
@@ -5,7 +5,7 @@
 package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.exception.AGHttpException;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.eclipse.rdf4j.query.resultio.BooleanQueryResultFormat;
 import org.eclipse.rdf4j.query.resultio.BooleanQueryResultParser;
 import org.eclipse.rdf4j.query.resultio.QueryResultIO;
@@ -24,16 +24,16 @@ public class AGBQRHandler extends AGResponseHandler {
     }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
-        String mimeType = getResponseMIMEType(method);
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        String mimeType = getResponseMIMEType(response);
         if (!mimeType.equals(getRequestMIMEType())) {
             throw new AGHttpException("unexpected response MIME type: " + mimeType);
         }
-        InputStream response = getInputStream(method);
+        InputStream in = getInputStream(response);
         try {
             BooleanQueryResultFormat format = BooleanQueryResultFormat.TEXT;
             BooleanQueryResultParser parser = QueryResultIO.createBooleanParser(format);
-            result = parser.parse(response);
+            result = parser.parse(in);
         } catch (QueryResultParseException e) {
             throw new AGHttpException(e);
         }
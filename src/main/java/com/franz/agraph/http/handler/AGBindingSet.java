@@ -0,0 +1,178 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.AbstractBindingSet;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.impl.SimpleBinding;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A binding set that keeps its values in an array.
+ * <p>
+ * The position of each binding name is looked up in an {@link Index}
+ * that is created once per query result and shared by all of its rows,
+ * so a row costs one array instead of a map with an entry per binding.
+ * Unbound variables are null slots.</p>
+ *
+ * @since v3.0.6
+ */
+public class AGBindingSet extends AbstractBindingSet {
+
+    private static final long serialVersionUID = 2735164019286471305L;
+
+    private final Index index;
+    private final Value[] values;
+
+    /**
+     * @param index  binding names of the result
+     * @param values one value per binding name, in the order of the index;
+     *               null for unbound names. The array is not copied.
+     */
+    public AGBindingSet(Index index, Value[] values) {
+        if (values.length != index.size()) {
+            throw new IllegalArgumentException("Expected " + index.size() + " values, got " + values.length);
+        }
+        this.index = index;
+        this.values = values;
+    }
+
+    /**
+     * @return The index shared with the other rows of the result.
+     */
+    public Index getIndex() {
+        return index;
+    }
+
+    @Override
+    public Iterator<Binding> iterator() {
+        return new Iterator<Binding>() {
+            private int next = advance(0);
+
+            private int advance(int slot) {
+                while (slot < values.length && values[slot] == null) {
+                    slot++;
+                }
+                return slot;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < values.length;
+            }
+
+            @Override
+            public Binding next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Binding binding = new SimpleBinding(index.names.get(next), values[next]);
+                next = advance(next + 1);
+                return binding;
+            }
+        };
+    }
+
+    @Override
+    public Set<String> getBindingNames() {
+        if (size() == values.length) {
+            return index.nameSet;
+        }
+        final Set<String> names = new LinkedHashSet<>();
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                names.add(index.names.get(slot));
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public Binding getBinding(String bindingName) {
+        final Value value = getValue(bindingName);
+        return value == null ? null : new SimpleBinding(bindingName, value);
+    }
+
+    @Override
+    public boolean hasBinding(String bindingName) {
+        return getValue(bindingName) != null;
+    }
+
+    @Override
+    public Value getValue(String bindingName) {
+        final int slot = index.slot(bindingName);
+        return slot < 0 ? null : values[slot];
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Value value : values) {
+            if (value != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Maps the binding names of a result to positions in the value arrays
+     * of its rows. Immutable.
+     */
+    public static final class Index implements Serializable {
+
+        private static final long serialVersionUID = -3188253367620919622L;
+
+        private final List<String> names;
+        private final Set<String> nameSet;
+        private final Map<String, Integer> slots;
+
+        /**
+         * @param names binding names, in the order of the values
+         */
+        public Index(List<String> names) {
+            this.names = Collections.unmodifiableList(new ArrayList<>(names));
+            this.nameSet = Collections.unmodifiableSet(new LinkedHashSet<>(names));
+            this.slots = new HashMap<>(names.size() * 2);
+            for (int slot = 0; slot < names.size(); slot++) {
+                slots.putIfAbsent(names.get(slot), slot);
+            }
+        }
+
+        /**
+         * @return Binding names, in the order of the values.
+         */
+        public List<String> getNames() {
+            return names;
+        }
+
+        /**
+         * @return Number of binding names.
+         */
+        public int size() {
+            return names.size();
+        }
+
+        /**
+         * @param name binding name
+         * @return Position of the name, or -1 if it is not part of the result.
+         */
+        public int slot(String name) {
+            final Integer slot = slots.get(name);
+            return slot == null ? -1 : slot;
+        }
+    }
+}
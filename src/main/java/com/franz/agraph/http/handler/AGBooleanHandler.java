@@ -5,7 +5,7 @@
 package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.exception.AGHttpException;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 
 import java.io.IOException;
 
@@ -18,12 +18,12 @@ public class AGBooleanHandler extends AGResponseHandler {
     }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
-        String mimeType = getResponseMIMEType(method);
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        String mimeType = getResponseMIMEType(response);
         if (!mimeType.equals(getRequestMIMEType())) {
             throw new AGHttpException("unexpected response MIME type: " + mimeType);
         }
-        result = Boolean.parseBoolean(streamToString(getInputStream(method)));
+        result = Boolean.parseBoolean(streamToString(getInputStream(response)));
     }
 
     public boolean getResult() {
@@ -0,0 +1,903 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The solutions of a tuple query, held as one column per binding name.
+ * <p>
+ * Each column holds values of a single kind in an array:</p>
+ * <ul>
+ * <li>{@link LongColumn}: integers of any of the xsd integer types,</li>
+ * <li>{@link DoubleColumn}: xsd:decimal, xsd:double and xsd:float, and
+ * integers mixed with these,</li>
+ * <li>{@link DateTimeColumn}: xsd:dateTime as milliseconds since the epoch,</li>
+ * <li>{@link IRIColumn}: IRIs as codes in a dictionary that is shared by
+ * all IRI columns of the result, so the same IRI has the same code in
+ * every column,</li>
+ * <li>{@link ValueColumn}: anything else, and columns that mix kinds.</li>
+ * </ul>
+ * <p>
+ * Unbound cells are marked in a bitmap and hold 0 in primitive arrays.
+ * The kind of a column is decided by its values, so it may differ between
+ * evaluations of the same query.</p>
+ * <p>
+ * Converting values to primitives loses their lexical form, and decimals
+ * with more digits than a double holds lose precision. Date-times without
+ * a timezone are taken to be in UTC, and fractions of a millisecond are
+ * dropped. Use {@link com.franz.agraph.repository.AGTupleQuery#evaluate()}
+ * when exact values are needed.</p>
+ *
+ * @see com.franz.agraph.repository.AGTupleQuery#evaluateColumnar()
+ * @since v3.0.6
+ */
+public class AGColumnarResult {
+
+    // Kinds of columns while they are built.
+    private static final int NONE = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private static final int DATE_TIME = 3;
+    private static final int IRI_CODE = 4;
+    private static final int VALUE = 5;
+
+    /**
+     * Returned by {@link #parseDateTime(char[], int, int)} for text that
+     * is not a date-time it can convert.
+     */
+    static final long NOT_A_DATE_TIME = Long.MIN_VALUE;
+
+    private static final String XSD = XMLSchema.NAMESPACE;
+
+    // Datatypes held in primitive columns, and the kind of column for each.
+    private static final IRI[] DATATYPES = {
+            XMLSchema.INTEGER, XMLSchema.INT, XMLSchema.LONG, XMLSchema.SHORT, XMLSchema.BYTE,
+            XMLSchema.NON_NEGATIVE_INTEGER, XMLSchema.POSITIVE_INTEGER,
+            XMLSchema.NON_POSITIVE_INTEGER, XMLSchema.NEGATIVE_INTEGER,
+            XMLSchema.UNSIGNED_LONG, XMLSchema.UNSIGNED_INT, XMLSchema.UNSIGNED_SHORT, XMLSchema.UNSIGNED_BYTE,
+            XMLSchema.DECIMAL, XMLSchema.DOUBLE, XMLSchema.FLOAT,
+            XMLSchema.DATETIME
+    };
+    private static final int[] DATATYPE_KINDS = {
+            LONG, LONG, LONG, LONG, LONG,
+            LONG, LONG,
+            LONG, LONG,
+            LONG, LONG, LONG, LONG,
+            DOUBLE, DOUBLE, DOUBLE,
+            DATE_TIME
+    };
+    private static final String[] LOCAL_NAMES = new String[DATATYPES.length];
+
+    static {
+        for (int i = 0; i < DATATYPES.length; i++) {
+            LOCAL_NAMES[i] = DATATYPES[i].getLocalName();
+        }
+    }
+
+    private final List<String> bindingNames;
+    private final Column[] columns;
+    private final int size;
+
+    AGColumnarResult(List<String> bindingNames, Column[] columns, int size) {
+        this.bindingNames = bindingNames;
+        this.columns = columns;
+        this.size = size;
+    }
+
+    /**
+     * @return The binding names, in the order of the columns.
+     */
+    public List<String> getBindingNames() {
+        return bindingNames;
+    }
+
+    /**
+     * @return Number of solutions, which is the size of every column.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index position of the binding name
+     * @return The column.
+     */
+    public Column getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * @param name binding name
+     * @return The column, or null if there is no such binding name.
+     */
+    public Column getColumn(String name) {
+        final int index = bindingNames.indexOf(name);
+        return index < 0 ? null : columns[index];
+    }
+
+    /**
+     * The values bound to one binding name.
+     */
+    public abstract static class Column {
+        private final String name;
+        private final long[] nulls;
+        private final int size;
+        final ValueFactory vf;
+
+        Column(String name, long[] nulls, int size, ValueFactory vf) {
+            this.name = name;
+            this.nulls = nulls;
+            this.size = size;
+            this.vf = vf;
+        }
+
+        /**
+         * @return The binding name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Number of cells.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param row index of the solution
+         * @return True if the binding name is not bound in the solution.
+         */
+        public boolean isNull(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+            }
+            return (nulls[row >>> 6] & 1L << row) != 0;
+        }
+
+        /**
+         * Returns the bitmap of unbound cells: bit {@code row % 64} of
+         * element {@code row / 64} is set if the cell is unbound.
+         * The array must not be modified.
+         *
+         * @return The bitmap.
+         */
+        public long[] getNullBitmap() {
+            return nulls;
+        }
+
+        /**
+         * Creates the value of a cell. For primitive columns, this
+         * creates a new literal each time.
+         *
+         * @param row index of the solution
+         * @return The value, or null if the cell is unbound.
+         */
+        public Value getValue(int row) {
+            return isNull(row) ? null : value(row);
+        }
+
+        abstract Value value(int row);
+    }
+
+    /**
+     * Integers.
+     */
+    public static final class LongColumn extends Column {
+        private final long[] values;
+        private final IRI datatype;
+
+        LongColumn(String name, long[] nulls, int size, ValueFactory vf, long[] values, IRI datatype) {
+            super(name, nulls, size, vf);
+            this.values = values;
+            this.datatype = datatype;
+        }
+
+        /**
+         * @param row index of the solution
+         * @return The value of the cell, 0 if it is unbound.
+         */
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        /**
+         * @return The values, one per cell. The array must not be modified.
+         */
+        public long[] getValues() {
+            return values;
+        }
+
+        /**
+         * @return The datatype of the values, or xsd:integer if they have several.
+         */
+        public IRI getDatatype() {
+            return datatype;
+        }
+
+        @Override
+        Value value(int row) {
+            return vf.createLiteral(Long.toString(values[row]), datatype);
+        }
+    }
+
+    /**
+     * Decimals and floating point numbers.
+     */
+    public static final class DoubleColumn extends Column {
+        private final double[] values;
+        private final IRI datatype;
+
+        DoubleColumn(String name, long[] nulls, int size, ValueFactory vf, double[] values, IRI datatype) {
+            super(name, nulls, size, vf);
+            this.values = values;
+            this.datatype = datatype;
+        }
+
+        /**
+         * @param row index of the solution
+         * @return The value of the cell, 0 if it is unbound.
+         */
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        /**
+         * @return The values, one per cell. The array must not be modified.
+         */
+        public double[] getValues() {
+            return values;
+        }
+
+        /**
+         * @return The datatype of the values. If they have several, this is
+         * xsd:double if any of them is a double or float, else xsd:decimal.
+         */
+        public IRI getDatatype() {
+            return datatype;
+        }
+
+        @Override
+        Value value(int row) {
+            final double value = values[row];
+            final String label;
+            if (XMLSchema.DECIMAL.equals(datatype)) {
+                label = BigDecimal.valueOf(value).toPlainString();
+            } else if (Double.isNaN(value)) {
+                label = "NaN";
+            } else if (Double.isInfinite(value)) {
+                label = value > 0 ? "INF" : "-INF";
+            } else if (XMLSchema.FLOAT.equals(datatype)) {
+                label = Float.toString((float) value);
+            } else {
+                label = Double.toString(value);
+            }
+            return vf.createLiteral(label, datatype);
+        }
+    }
+
+    /**
+     * xsd:dateTime values.
+     */
+    public static final class DateTimeColumn extends Column {
+        private final long[] values;
+
+        DateTimeColumn(String name, long[] nulls, int size, ValueFactory vf, long[] values) {
+            super(name, nulls, size, vf);
+            this.values = values;
+        }
+
+        /**
+         * @param row index of the solution
+         * @return Milliseconds since 1970-01-01T00:00:00Z, 0 if the cell is unbound.
+         */
+        public long getEpochMilli(int row) {
+            return values[row];
+        }
+
+        /**
+         * @return Milliseconds since the epoch, one per cell. The array must not be modified.
+         */
+        public long[] getValues() {
+            return values;
+        }
+
+        @Override
+        Value value(int row) {
+            return vf.createLiteral(Instant.ofEpochMilli(values[row]).toString(), XMLSchema.DATETIME);
+        }
+    }
+
+    /**
+     * IRIs, as codes in the dictionary of the result.
+     */
+    public static final class IRIColumn extends Column {
+        private final int[] codes;
+        private final List<String> dictionary;
+
+        IRIColumn(String name, long[] nulls, int size, ValueFactory vf, int[] codes, List<String> dictionary) {
+            super(name, nulls, size, vf);
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * @param row index of the solution
+         * @return The code of the IRI, 0 if the cell is unbound.
+         */
+        public int getCode(int row) {
+            return codes[row];
+        }
+
+        /**
+         * @return The codes, one per cell. The array must not be modified.
+         */
+        public int[] getCodes() {
+            return codes;
+        }
+
+        /**
+         * @param row index of the solution
+         * @return The IRI, or null if the cell is unbound.
+         */
+        public String getIRI(int row) {
+            return isNull(row) ? null : dictionary.get(codes[row]);
+        }
+
+        /**
+         * @return The IRIs of all IRI columns of the result, by code.
+         */
+        public List<String> getDictionary() {
+            return dictionary;
+        }
+
+        @Override
+        Value value(int row) {
+            return vf.createIRI(dictionary.get(codes[row]));
+        }
+    }
+
+    /**
+     * Values of any kind.
+     */
+    public static final class ValueColumn extends Column {
+        private final Value[] values;
+
+        ValueColumn(String name, long[] nulls, int size, ValueFactory vf, Value[] values) {
+            super(name, nulls, size, vf);
+            this.values = values;
+        }
+
+        /**
+         * @return The values, null for unbound cells. The array must not be modified.
+         */
+        public Value[] getValues() {
+            return values;
+        }
+
+        @Override
+        Value value(int row) {
+            return values[row];
+        }
+    }
+
+    /**
+     * @param chars holds the IRI of a datatype
+     * @param start index of the first character
+     * @param end   index after the last character
+     * @return The position of the datatype in {@link #DATATYPES}, or -1.
+     */
+    static int datatypeIndex(char[] chars, int start, int end) {
+        final int local = start + XSD.length();
+        if (local >= end) {
+            return -1;
+        }
+        for (int i = 0; i < XSD.length(); i++) {
+            if (chars[start + i] != XSD.charAt(i)) {
+                return -1;
+            }
+        }
+        for (int d = 0; d < DATATYPES.length; d++) {
+            final String name = LOCAL_NAMES[d];
+            if (name.length() == end - local) {
+                int i = 0;
+                while (i < name.length() && name.charAt(i) == chars[local + i]) {
+                    i++;
+                }
+                if (i == name.length()) {
+                    return d;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index position returned by {@link #datatypeIndex(char[], int, int)}
+     * @return The datatype.
+     */
+    static IRI datatype(int index) {
+        return DATATYPES[index];
+    }
+
+    /**
+     * @return The most specific datatype of both a and b.
+     */
+    private static IRI generalize(IRI a, IRI b) {
+        if (a.equals(b)) {
+            return a;
+        }
+        if (XMLSchema.DOUBLE.equals(a) || XMLSchema.FLOAT.equals(a)
+                || XMLSchema.DOUBLE.equals(b) || XMLSchema.FLOAT.equals(b)) {
+            return XMLSchema.DOUBLE;
+        }
+        if (XMLSchema.DECIMAL.equals(a) || XMLSchema.DECIMAL.equals(b)) {
+            return XMLSchema.DECIMAL;
+        }
+        return XMLSchema.INTEGER;
+    }
+
+    /**
+     * Converts the lexical form yyyy-MM-ddTHH:mm:ss[.S+][Z|(+|-)HH:mm]
+     * to milliseconds since the epoch, without creating objects.
+     *
+     * @param chars holds the date-time
+     * @param start index of the first character
+     * @param end   index after the last character
+     * @return Milliseconds since the epoch, or {@link #NOT_A_DATE_TIME}.
+     */
+    static long parseDateTime(char[] chars, int start, int end) {
+        if (end - start < 19 || chars[start + 4] != '-' || chars[start + 7] != '-'
+                || chars[start + 10] != 'T' || chars[start + 13] != ':' || chars[start + 16] != ':') {
+            return NOT_A_DATE_TIME;
+        }
+        final int year = digits(chars, start, 4);
+        final int month = digits(chars, start + 5, 2);
+        final int day = digits(chars, start + 8, 2);
+        final int hour = digits(chars, start + 11, 2);
+        final int minute = digits(chars, start + 14, 2);
+        final int second = digits(chars, start + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > monthLength(year, month)
+                || hour < 0 || hour > 24 || minute < 0 || minute > 59 || second < 0 || second > 59
+                || (hour == 24 && (minute != 0 || second != 0))) {
+            return NOT_A_DATE_TIME;
+        }
+        int i = start + 19;
+        int millis = 0;
+        if (i < end && chars[i] == '.') {
+            i++;
+            final int fraction = i;
+            int scale = 100;
+            while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+                millis += (chars[i] - '0') * scale;
+                scale /= 10;
+                i++;
+            }
+            if (i == fraction || (hour == 24 && millis != 0)) {
+                return NOT_A_DATE_TIME;
+            }
+        }
+        long offset = 0;
+        if (i < end) {
+            final char c = chars[i];
+            if (c == 'Z' && i + 1 == end) {
+                offset = 0;
+            } else if ((c == '+' || c == '-') && end - i == 6 && chars[i + 3] == ':') {
+                final int offsetHours = digits(chars, i + 1, 2);
+                final int offsetMinutes = digits(chars, i + 4, 2);
+                if (offsetHours < 0 || offsetHours > 14 || offsetMinutes < 0 || offsetMinutes > 59) {
+                    return NOT_A_DATE_TIME;
+                }
+                offset = (offsetHours * 60 + offsetMinutes) * 60000L;
+                if (c == '-') {
+                    offset = -offset;
+                }
+            } else {
+                return NOT_A_DATE_TIME;
+            }
+        }
+        final long days = daysFromCivil(year, month, day);
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis - offset;
+    }
+
+    /**
+     * @return The number of n digits, or -1 if one of the characters is not a digit.
+     */
+    private static int digits(char[] chars, int start, int n) {
+        int value = 0;
+        for (int i = start; i < start + n; i++) {
+            final char c = chars[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static int monthLength(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * @return Days since 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final long era = (y >= 0 ? y : y - 399) / 400;
+        final long yearOfEra = y - era * 400;
+        final long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Maps IRIs to codes. Looking up an IRI that was seen before creates
+     * no objects.
+     */
+    static final class Dictionary {
+        private final List<String> iris = new ArrayList<>();
+        // Code + 1 of the IRI in each slot, 0 for an empty slot.
+        private int[] table = new int[64];
+
+        int code(char[] chars, int start, int end) {
+            final int length = end - start;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            final int mask = table.length - 1;
+            int slot = spread(hash) & mask;
+            while (true) {
+                final int entry = table[slot];
+                if (entry == 0) {
+                    return add(new String(chars, start, length), slot);
+                }
+                final String iri = iris.get(entry - 1);
+                if (iri.length() == length && iri.hashCode() == hash && matches(iri, chars, start)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        int code(String iri) {
+            final int mask = table.length - 1;
+            int slot = spread(iri.hashCode()) & mask;
+            while (true) {
+                final int entry = table[slot];
+                if (entry == 0) {
+                    return add(iri, slot);
+                }
+                if (iris.get(entry - 1).equals(iri)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        List<String> getIRIs() {
+            return Collections.unmodifiableList(iris);
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(String iri, char[] chars, int start) {
+            for (int i = 0; i < iri.length(); i++) {
+                if (iri.charAt(i) != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int add(String iri, int slot) {
+            final int code = iris.size();
+            iris.add(iri);
+            table[slot] = code + 1;
+            if (iris.size() * 2 > table.length) {
+                rehash();
+            }
+            return code;
+        }
+
+        private void rehash() {
+            final int[] old = table;
+            table = new int[old.length * 2];
+            final int mask = table.length - 1;
+            for (int entry : old) {
+                if (entry != 0) {
+                    int slot = spread(iris.get(entry - 1).hashCode()) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = entry;
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the cells of a result row by row. Each row must add
+     * exactly one cell to every column, then call {@link #endRow()}.
+     */
+    static final class Builder {
+        private final ValueFactory vf;
+        private final Dictionary dictionary = new Dictionary();
+        private List<String> names = Collections.emptyList();
+        private ColumnBuilder[] columns = new ColumnBuilder[0];
+        private int size;
+
+        Builder(ValueFactory vf) {
+            this.vf = vf;
+        }
+
+        void start(List<String> bindingNames) {
+            names = Collections.unmodifiableList(new ArrayList<>(bindingNames));
+            columns = new ColumnBuilder[names.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = new ColumnBuilder();
+            }
+            size = 0;
+        }
+
+        int width() {
+            return columns.length;
+        }
+
+        ColumnBuilder column(int index) {
+            return columns[index];
+        }
+
+        void endRow() {
+            size++;
+        }
+
+        AGColumnarResult build() {
+            final List<String> iris = dictionary.getIRIs();
+            final Column[] built = new Column[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                built[i] = columns[i].build(names.get(i), iris);
+            }
+            return new AGColumnarResult(names, built, size);
+        }
+
+        /**
+         * The cells of one column. The add methods other than
+         * {@link #addNull()} and {@link #addValue(Value)} return false,
+         * and add nothing, if the column holds another kind of value.
+         */
+        final class ColumnBuilder {
+            private int kind = NONE;
+            private int size;
+            private int capacity = 16;
+            private long[] nulls = new long[1];
+            private long[] longs;
+            private double[] doubles;
+            private int[] codes;
+            private Value[] values;
+            private IRI datatype;
+
+            /**
+             * @return True if values of any kind are added as {@link Value}s.
+             */
+            boolean isGeneric() {
+                return kind == VALUE;
+            }
+
+            void addNull() {
+                ensureCapacity();
+                nulls[size >>> 6] |= 1L << size;
+                size++;
+            }
+
+            boolean addLong(long value, IRI type) {
+                if (kind == NONE) {
+                    begin(LONG);
+                    datatype = type;
+                }
+                if (kind == LONG) {
+                    ensureCapacity();
+                    longs[size++] = value;
+                } else if (kind == DOUBLE) {
+                    ensureCapacity();
+                    doubles[size++] = value;
+                } else {
+                    return false;
+                }
+                datatype = generalize(datatype, type);
+                return true;
+            }
+
+            boolean addDouble(double value, IRI type) {
+                if (kind == NONE) {
+                    begin(DOUBLE);
+                    datatype = type;
+                } else if (kind == LONG) {
+                    doubles = new double[capacity];
+                    for (int i = 0; i < size; i++) {
+                        doubles[i] = longs[i];
+                    }
+                    longs = null;
+                    kind = DOUBLE;
+                }
+                if (kind != DOUBLE) {
+                    return false;
+                }
+                ensureCapacity();
+                doubles[size++] = value;
+                datatype = generalize(datatype, type);
+                return true;
+            }
+
+            boolean addDateTime(long epochMilli) {
+                if (kind == NONE) {
+                    begin(DATE_TIME);
+                }
+                if (kind != DATE_TIME) {
+                    return false;
+                }
+                ensureCapacity();
+                longs[size++] = epochMilli;
+                return true;
+            }
+
+            boolean addIRI(char[] chars, int start, int end) {
+                if (kind == NONE) {
+                    begin(IRI_CODE);
+                }
+                if (kind != IRI_CODE) {
+                    return false;
+                }
+                ensureCapacity();
+                codes[size++] = dictionary.code(chars, start, end);
+                return true;
+            }
+
+            /**
+             * Adds a value of any kind. If the column can not hold it,
+             * the column is changed to hold {@link Value}s.
+             *
+             * @param value the value, or null for an unbound cell
+             */
+            void addValue(Value value) {
+                if (value == null) {
+                    addNull();
+                } else if (kind == VALUE || !addTyped(value)) {
+                    toValues();
+                    ensureCapacity();
+                    values[size++] = value;
+                }
+            }
+
+            private boolean addTyped(Value value) {
+                if (value instanceof IRI) {
+                    if (kind == NONE) {
+                        begin(IRI_CODE);
+                    }
+                    if (kind != IRI_CODE) {
+                        return false;
+                    }
+                    ensureCapacity();
+                    codes[size++] = dictionary.code(value.stringValue());
+                    return true;
+                }
+                if (!(value instanceof Literal)) {
+                    return false;
+                }
+                final Literal literal = (Literal) value;
+                final IRI type = literal.getDatatype();
+                int index = DATATYPES.length - 1;
+                while (index >= 0 && !DATATYPES[index].equals(type)) {
+                    index--;
+                }
+                try {
+                    if (index < 0) {
+                        return false;
+                    } else if (DATATYPE_KINDS[index] == LONG) {
+                        return (kind == NONE || kind == LONG || kind == DOUBLE)
+                                && addLong(literal.longValue(), DATATYPES[index]);
+                    } else if (DATATYPE_KINDS[index] == DOUBLE) {
+                        return (kind == NONE || kind == LONG || kind == DOUBLE)
+                                && addDouble(literal.doubleValue(), DATATYPES[index]);
+                    } else {
+                        final char[] label = literal.getLabel().toCharArray();
+                        final long epochMilli = parseDateTime(label, 0, label.length);
+                        return epochMilli != NOT_A_DATE_TIME && addDateTime(epochMilli);
+                    }
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+
+            private void begin(int newKind) {
+                kind = newKind;
+                if (newKind == LONG || newKind == DATE_TIME) {
+                    longs = new long[capacity];
+                } else if (newKind == DOUBLE) {
+                    doubles = new double[capacity];
+                } else if (newKind == IRI_CODE) {
+                    codes = new int[capacity];
+                } else {
+                    values = new Value[capacity];
+                }
+            }
+
+            /**
+             * Changes the column to hold {@link Value}s.
+             */
+            private void toValues() {
+                if (kind == VALUE) {
+                    return;
+                }
+                final Column column = build(null, dictionary.getIRIs());
+                final Value[] converted = new Value[capacity];
+                for (int i = 0; i < size; i++) {
+                    converted[i] = column.getValue(i);
+                }
+                longs = null;
+                doubles = null;
+                codes = null;
+                datatype = null;
+                kind = VALUE;
+                values = converted;
+            }
+
+            private void ensureCapacity() {
+                if (size < capacity) {
+                    return;
+                }
+                capacity *= 2;
+                nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+                if (longs != null) {
+                    longs = Arrays.copyOf(longs, capacity);
+                }
+                if (doubles != null) {
+                    doubles = Arrays.copyOf(doubles, capacity);
+                }
+                if (codes != null) {
+                    codes = Arrays.copyOf(codes, capacity);
+                }
+                if (values != null) {
+                    values = Arrays.copyOf(values, capacity);
+                }
+            }
+
+            private Column build(String name, List<String> iris) {
+                final long[] bitmap = Arrays.copyOf(nulls, (size + 63) >>> 6);
+                if (kind == LONG) {
+                    return new LongColumn(name, bitmap, size, vf, Arrays.copyOf(longs, size), datatype);
+                } else if (kind == DOUBLE) {
+                    return new DoubleColumn(name, bitmap, size, vf, Arrays.copyOf(doubles, size), datatype);
+                } else if (kind == DATE_TIME) {
+                    return new DateTimeColumn(name, bitmap, size, vf, Arrays.copyOf(longs, size));
+                } else if (kind == IRI_CODE) {
+                    return new IRIColumn(name, bitmap, size, vf, Arrays.copyOf(codes, size), iris);
+                } else if (kind == VALUE) {
+                    return new ValueColumn(name, bitmap, size, vf, Arrays.copyOf(values, size));
+                }
+                return new ValueColumn(name, bitmap, size, vf, new Value[size]);
+            }
+        }
+    }
+}
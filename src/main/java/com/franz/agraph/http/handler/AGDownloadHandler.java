@@ -5,21 +5,78 @@
 package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.exception.AGHttpException;
-import org.apache.commons.httpclient.HttpMethod;
-import org.apache.commons.io.FileUtils;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.eclipse.rdf4j.query.resultio.BooleanQueryResultFormat;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.eclipse.rdf4j.rio.RDFFormat;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A response handler that writes the returned body to a file.
+ * <p>
+ * The body is written to a {@link FileChannel} through large direct
+ * buffers. A gzip-compressed body is decompressed with a pooled
+ * {@link java.util.zip.Inflater}, or, with {@link Compression#GZIP},
+ * written to the file as it was received.</p>
  */
 public class AGDownloadHandler extends AGResponseHandler {
+
+    /**
+     * How the body is written to the file.
+     *
+     * @since v3.0.6
+     */
+    public enum Compression {
+        /**
+         * Writes the body decompressed. This is the default.
+         */
+        DECOMPRESS,
+        /**
+         * Writes the body gzip-compressed, such as to a {@code .gz} file.
+         * A body the server sent compressed is written without
+         * decompressing it; other bodies are compressed while they are
+         * written.
+         */
+        GZIP
+    }
+
+    /**
+     * Receives the progress of a download.
+     *
+     * @see #setProgressListener(ProgressListener)
+     * @since v3.0.6
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * Called periodically while the body is read, and once when it
+         * has been read completely.
+         *
+         * @param file           the file being written
+         * @param bytes          number of bytes of the body received so far,
+         *                       before any decompression
+         * @param contentLength  length of the body, or -1 if it is not known
+         * @param bytesPerSecond average rate since the download started
+         */
+        void progress(File file, long bytes, long contentLength, double bytesPerSecond);
+    }
+
     // Output file.
     private final File file;
+    private Compression compression = Compression.DECOMPRESS;
+    private ProgressListener progressListener;
+    private long progressInterval = 1000;
 
     /**
      * Creates a download handler.
@@ -124,8 +181,142 @@ public class AGDownloadHandler extends AGResponseHandler {
         this(new File(file), format);
     }
 
+    /**
+     * @return How the body is written to the file.
+     * @since v3.0.6
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets how the body is written to the file.
+     *
+     * @param compression {@link Compression#DECOMPRESS} (the default) or
+     *                    {@link Compression#GZIP}
+     * @since v3.0.6
+     */
+    public void setCompression(final Compression compression) {
+        if (compression == null) {
+            throw new IllegalArgumentException("Compression must not be null");
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * Sets a listener that receives the number of bytes received
+     * and the rate of the download.
+     *
+     * @param listener the listener, or null for none
+     * @see #setProgressInterval(long)
+     * @since v3.0.6
+     */
+    public void setProgressListener(final ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Sets how often the progress listener is called while the body is read.
+     *
+     * @param millis minimum time between calls, 1000 by default
+     * @since v3.0.6
+     */
+    public void setProgressInterval(final long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Progress interval must not be negative: " + millis);
+        }
+        this.progressInterval = millis;
+    }
+
     @Override
-    public void handleResponse(final HttpMethod method) throws IOException, AGHttpException {
-        FileUtils.copyInputStreamToFile(getInputStream(method), file);
+    public void handleResponse(final AGHttpResponse response) throws IOException, AGHttpException {
+        InputStream body = response.getResponseBody();
+        if (body == null) {
+            body = new ByteArrayInputStream(new byte[0]);
+        }
+        final boolean gzipped = "gzip".equals(response.getResponseHeader("Content-Encoding"));
+        final Path path = file.toPath().toAbsolutePath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        final ByteBuffer input = AGGzip.acquireBuffer();
+        final ByteBuffer output = AGGzip.acquireBuffer();
+        final Progress in = new Progress(Channels.newChannel(body), contentLength(response));
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (gzipped == (compression == Compression.GZIP)) {
+                AGGzip.copy(in, out, input);
+            } else if (gzipped) {
+                AGGzip.gunzip(in, out, input, output);
+            } else {
+                AGGzip.gzip(in, out, input, output);
+            }
+            in.report();
+        } finally {
+            in.close();
+            AGGzip.releaseBuffer(input);
+            AGGzip.releaseBuffer(output);
+        }
+    }
+
+    private static long contentLength(final AGHttpResponse response) {
+        final String length = response.getResponseHeader("Content-Length");
+        if (length != null) {
+            try {
+                return Long.parseLong(length.trim());
+            } catch (NumberFormatException e) {
+                // unknown
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the bytes read from the body and reports them to the
+     * progress listener.
+     */
+    private class Progress implements ReadableByteChannel {
+        private final ReadableByteChannel channel;
+        private final long contentLength;
+        private final long start = System.nanoTime();
+        private long lastReport = start;
+        private long bytes;
+
+        Progress(final ReadableByteChannel channel, final long contentLength) {
+            this.channel = channel;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            final int n = channel.read(dst);
+            if (n > 0) {
+                bytes += n;
+                if (progressListener != null
+                        && System.nanoTime() - lastReport >= progressInterval * 1000000L) {
+                    report();
+                }
+            }
+            return n;
+        }
+
+        void report() {
+            if (progressListener != null) {
+                final long now = System.nanoTime();
+                lastReport = now;
+                final double seconds = Math.max(now - start, 1) / 1e9;
+                progressListener.progress(file, bytes, contentLength, bytes / seconds);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
     }
 }
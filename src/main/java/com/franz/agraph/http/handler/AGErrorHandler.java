@@ -11,7 +11,7 @@ import com.franz.agraph.http.exception.AGPreconditionFailedException;
 import com.franz.agraph.http.exception.AGQueryTimeoutException;
 import com.franz.agraph.http.exception.AGUnsupportedFileFormatException;
 import com.franz.agraph.http.exception.AGUnsupportedQueryLanguageException;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -60,14 +60,14 @@ public class AGErrorHandler extends AGResponseHandler {
     }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
-        InputStream response = getInputStream(method);
-        String errorString = streamToString(response);
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        InputStream in = getInputStream(response);
+        String errorString = streamToString(in);
         if (!errorString.isEmpty()) {
             result = newException(errorString);
         } else {
             // Could be e.g. "HTTP 408 Request Timeout"
-            result = new AGHttpException("" + method.getStatusCode() + " " + method.getStatusText());
+            result = new AGHttpException("" + response.getStatusCode() + " " + response.getStatusText().trim());
         }
     }
 
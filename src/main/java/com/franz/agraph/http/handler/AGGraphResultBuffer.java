@@ -0,0 +1,138 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.impl.IteratingGraphQueryResult;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects statements in an {@link AGResultBuffer}, like
+ * {@link org.eclipse.rdf4j.rio.helpers.StatementCollector} but
+ * within a memory budget.
+ *
+ * @since v3.0.6
+ */
+public class AGGraphResultBuffer extends AbstractRDFHandler implements Closeable {
+
+    private final ValueFactory vf;
+    private final long memoryLimit;
+    private final Map<String, String> namespaces = new LinkedHashMap<>();
+    private AGResultBuffer buffer;
+
+    /**
+     * @param vf          creates the statements, and the values of statements read back from disk
+     * @param memoryLimit estimated number of bytes to keep on the heap
+     */
+    public AGGraphResultBuffer(ValueFactory vf, long memoryLimit) {
+        this.vf = vf;
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public void startRDF() throws RDFHandlerException {
+        close();
+        namespaces.clear();
+        buffer = new AGResultBuffer(4, vf, memoryLimit);
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri) throws RDFHandlerException {
+        namespaces.putIfAbsent(prefix, uri);
+    }
+
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        try {
+            buffer.add(new Value[]{st.getSubject(), st.getPredicate(), st.getObject(), st.getContext()});
+        } catch (IOException e) {
+            throw new RDFHandlerException(e);
+        }
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        try {
+            buffer.finish();
+        } catch (IOException e) {
+            throw new RDFHandlerException(e);
+        }
+    }
+
+    /**
+     * @return The namespaces reported with the statements.
+     */
+    public Map<String, String> getNamespaces() {
+        return Collections.unmodifiableMap(namespaces);
+    }
+
+    /**
+     * @return The underlying buffer, null before the result started.
+     */
+    public AGResultBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns a result over the collected statements. May be called more
+     * than once, each result starts from the first statement.
+     *
+     * @param closeBuffer whether closing the result, or reading it to the
+     *                    end, also closes this buffer
+     * @return A new result.
+     */
+    public GraphQueryResult getQueryResult(boolean closeBuffer) {
+        if (buffer == null) {
+            return new IteratingGraphQueryResult(namespaces, Collections.<Statement>emptyList());
+        }
+        final AGResultBuffer rows = buffer;
+        final Iterator<Value[]> it = rows.iterator();
+        final Iterator<Statement> statements = new Iterator<Statement>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Statement next() {
+                final Value[] row = it.next();
+                return vf.createStatement((Resource) row[0], (IRI) row[1], row[2], (Resource) row[3]);
+            }
+        };
+        return new IteratingGraphQueryResult(namespaces, statements) {
+            @Override
+            protected void handleClose() throws QueryEvaluationException {
+                super.handleClose();
+                if (closeBuffer) {
+                    rows.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Deletes the file of the buffer, if any.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Copies, compresses and decompresses gzip data between channels through
+ * direct buffers, and reads response bodies as channels.
+ * <p>
+ * Inflaters, deflaters and buffers are kept in small pools, since
+ * creating them allocates native memory that is only released by
+ * {@link Inflater#end()} or the garbage collector.</p>
+ */
+final class AGGzip {
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    // Largest read from a stream into a buffer without an array.
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int MAX_POOLED = 4;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private static final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private static final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    private AGGzip() {
+    }
+
+    static ByteBuffer acquireBuffer() {
+        final ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        if (buffers.size() < MAX_POOLED) {
+            buffers.offer(buffer);
+        }
+    }
+
+    static Inflater acquireInflater() {
+        final Inflater inflater = inflaters.poll();
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (inflaters.size() < MAX_POOLED) {
+            inflaters.offer(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    static Deflater acquireDeflater() {
+        final Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (deflaters.size() < MAX_POOLED) {
+            deflaters.offer(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Copies all bytes of in to out.
+     *
+     * @return Number of bytes copied.
+     */
+    static long copy(ReadableByteChannel in, WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        long total = 0;
+        buffer.clear();
+        while (in.read(buffer) >= 0) {
+            if (!buffer.hasRemaining()) {
+                total += drain(buffer, out);
+            }
+        }
+        return total + drain(buffer, out);
+    }
+
+    /**
+     * Compresses all bytes of in to a gzip member in out.
+     *
+     * @return Number of bytes before compression.
+     */
+    static long gzip(ReadableByteChannel in, WritableByteChannel out,
+                     ByteBuffer input, ByteBuffer output) throws IOException {
+        final Deflater deflater = acquireDeflater();
+        try {
+            final CRC32 crc = new CRC32();
+            output.clear();
+            output.putShort((short) GZIP_MAGIC).put((byte) Deflater.DEFLATED).put((byte) 0)
+                    .putInt(0).put((byte) 0).put((byte) 0xff);
+            input.clear();
+            while (in.read(input) >= 0) {
+                if (!input.hasRemaining()) {
+                    deflate(deflater, crc, input, output, out);
+                }
+            }
+            deflate(deflater, crc, input, output, out);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflater.deflate(output);
+                if (!output.hasRemaining()) {
+                    drain(output, out);
+                }
+            }
+            if (output.remaining() < 8) {
+                drain(output, out);
+            }
+            output.putInt((int) crc.getValue()).putInt((int) deflater.getBytesRead());
+            drain(output, out);
+            return deflater.getBytesRead();
+        } finally {
+            releaseDeflater(deflater);
+        }
+    }
+
+    private static void deflate(Deflater deflater, CRC32 crc, ByteBuffer input, ByteBuffer output,
+                                WritableByteChannel out) throws IOException {
+        input.flip();
+        crc.update(input.duplicate());
+        deflater.setInput(input);
+        while (!deflater.needsInput()) {
+            deflater.deflate(output);
+            if (!output.hasRemaining()) {
+                drain(output, out);
+            }
+        }
+        // The deflater keeps reading from the buffer it was given.
+        deflater.setInput(EMPTY);
+        input.clear();
+    }
+
+    /**
+     * Decompresses the gzip members in, like {@link java.util.zip.GZIPInputStream},
+     * and writes the data to out.
+     *
+     * @return Number of bytes after decompression.
+     * @throws ZipException if in is not valid gzip data
+     */
+    static long gunzip(ReadableByteChannel in, WritableByteChannel out,
+                       ByteBuffer input, ByteBuffer output) throws IOException {
+        try (GunzipChannel gunzip = new GunzipChannel(in, input)) {
+            return copy(gunzip, out, output);
+        }
+    }
+
+    /**
+     * Returns a channel that reads from a stream. Reads into a buffer
+     * backed by an array go directly to the array.
+     *
+     * @param in the stream, closed with the channel
+     * @return A new channel.
+     */
+    static ReadableByteChannel channel(InputStream in) {
+        return new StreamChannel(in);
+    }
+
+    private static final class StreamChannel implements ReadableByteChannel {
+        private final InputStream in;
+        private byte[] chunk;
+        private boolean open = true;
+
+        StreamChannel(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            final int length = dst.remaining();
+            if (length == 0) {
+                return 0;
+            }
+            if (dst.hasArray()) {
+                final int n = in.read(dst.array(), dst.arrayOffset() + dst.position(), length);
+                if (n > 0) {
+                    dst.position(dst.position() + n);
+                }
+                return n;
+            }
+            if (chunk == null) {
+                chunk = new byte[CHUNK_SIZE];
+            }
+            final int n = in.read(chunk, 0, Math.min(length, chunk.length));
+            if (n > 0) {
+                dst.put(chunk, 0, n);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            in.close();
+        }
+    }
+
+    /**
+     * Decompresses gzip members as they are read, with a pooled
+     * {@link Inflater} that inflates directly into the buffers passed to
+     * {@link #read(ByteBuffer)}.
+     */
+    static final class GunzipChannel implements ReadableByteChannel {
+        private final ReadableByteChannel in;
+        private final ByteBuffer input;
+        private final CRC32 crc = new CRC32();
+        private Inflater inflater;
+        private boolean first = true;
+        private boolean member;
+        private boolean eof;
+
+        /**
+         * @param in    the compressed data, closed with this channel
+         * @param input holds compressed data, owned by the caller
+         */
+        GunzipChannel(ReadableByteChannel in, ByteBuffer input) {
+            this.in = in;
+            this.input = input;
+            this.inflater = acquireInflater();
+            input.clear().flip();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (inflater == null) {
+                throw new ClosedChannelException();
+            }
+            if (eof) {
+                return -1;
+            }
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+            while (true) {
+                if (!member) {
+                    if (!readHeader(in, input, first)) {
+                        eof = true;
+                        return -1;
+                    }
+                    first = false;
+                    member = true;
+                    inflater.reset();
+                    crc.reset();
+                }
+                if (inflater.needsInput()) {
+                    if (!input.hasRemaining() && !fill(in, input)) {
+                        throw new EOFException("Unexpected end of ZLIB input stream");
+                    }
+                    inflater.setInput(input);
+                }
+                final int start = dst.position();
+                try {
+                    inflater.inflate(dst);
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage() == null ? "Invalid ZLIB data format" : e.getMessage());
+                }
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Invalid ZLIB data format");
+                }
+                final int n = dst.position() - start;
+                if (n > 0) {
+                    final ByteBuffer inflated = dst.duplicate();
+                    inflated.limit(dst.position());
+                    inflated.position(start);
+                    crc.update(inflated);
+                }
+                if (inflater.finished()) {
+                    if (readInt(in, input) != (int) crc.getValue()
+                            || readInt(in, input) != (int) inflater.getBytesWritten()) {
+                        throw new ZipException("Corrupt GZIP trailer");
+                    }
+                    member = false;
+                }
+                if (n > 0) {
+                    return n;
+                }
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return inflater != null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inflater != null) {
+                releaseInflater(inflater);
+                inflater = null;
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the header of a gzip member.
+     *
+     * @param first whether this is the first member, which must be present
+     * @return False if there is no further member.
+     */
+    private static boolean readHeader(ReadableByteChannel in, ByteBuffer input, boolean first) throws IOException {
+        if (!input.hasRemaining() && !fill(in, input)) {
+            if (first) {
+                throw new EOFException();
+            }
+            return false;
+        }
+        if (readUnsignedShort(in, input) != GZIP_MAGIC) {
+            if (first) {
+                throw new ZipException("Not in GZIP format");
+            }
+            // Trailing garbage is ignored, as by GZIPInputStream.
+            input.position(input.limit());
+            return false;
+        }
+        if (readUnsignedByte(in, input) != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        final int flags = readUnsignedByte(in, input);
+        // Modification time, extra flags and operating system.
+        skip(in, input, 6);
+        if ((flags & FEXTRA) != 0) {
+            skip(in, input, readUnsignedShort(in, input));
+        }
+        if ((flags & FNAME) != 0) {
+            while (readUnsignedByte(in, input) != 0) {
+                // skip the name
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readUnsignedByte(in, input) != 0) {
+                // skip the comment
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(in, input, 2);
+        }
+        return true;
+    }
+
+    /**
+     * Reads more bytes into input, which is kept ready for reading.
+     *
+     * @return False at the end of in.
+     */
+    private static boolean fill(ReadableByteChannel in, ByteBuffer input) throws IOException {
+        input.compact();
+        try {
+            int n;
+            do {
+                n = in.read(input);
+            } while (n == 0 && input.hasRemaining());
+            return n > 0 || input.position() > 0;
+        } finally {
+            input.flip();
+        }
+    }
+
+    private static int readUnsignedByte(ReadableByteChannel in, ByteBuffer input) throws IOException {
+        if (!input.hasRemaining() && !fill(in, input)) {
+            throw new EOFException();
+        }
+        return input.get() & 0xff;
+    }
+
+    private static int readUnsignedShort(ReadableByteChannel in, ByteBuffer input) throws IOException {
+        return readUnsignedByte(in, input) | readUnsignedByte(in, input) << 8;
+    }
+
+    private static int readInt(ReadableByteChannel in, ByteBuffer input) throws IOException {
+        return readUnsignedShort(in, input) | readUnsignedShort(in, input) << 16;
+    }
+
+    private static void skip(ReadableByteChannel in, ByteBuffer input, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readUnsignedByte(in, input);
+        }
+    }
+
+    /**
+     * Writes the bytes in buffer to out and clears it.
+     *
+     * @return Number of bytes written.
+     */
+    private static int drain(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        buffer.flip();
+        final int n = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+        return n;
+    }
+}
@@ -5,7 +5,7 @@
 package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.exception.AGHttpException;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -27,16 +27,16 @@ public class AGJSONHandler extends AGResponseHandler {
      * response contains an array or an object.
      */
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
         /* TODO: server sometimes responds with text/plain, not application/json
-        String mimeType = getResponseMIMEType(method);
+        String mimeType = getResponseMIMEType(response);
         if (!mimeType.equals(getRequestMIMEType())) {
             throw new AGHttpException("unexpected response MIME type: " + mimeType);
         }*/
 
         try {
-            InputStream response = getInputStream(method);
-            String resp = streamToString(response);
+            InputStream in = getInputStream(response);
+            String resp = streamToString(in);
 
             /*
              *  try parsing responses as a JSONArray first, and then a JSONObject if that fails.
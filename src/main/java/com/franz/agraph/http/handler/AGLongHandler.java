@@ -5,7 +5,7 @@
 package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.exception.AGHttpException;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -19,18 +19,18 @@ public class AGLongHandler extends AGResponseHandler {
     }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
         /* TODO: server responds with text/plain here, not text/integer
-        String mimeType = getResponseMIMEType(method);
+        String mimeType = getResponseMIMEType(response);
         if (!mimeType.equals(getRequestMIMEType())) {
             throw new AGHttpException("unexpected response MIME type: " + mimeType);
         }*/
-        InputStream response = getInputStream(method);
+        InputStream in = getInputStream(response);
         try {
-            if (response == null) {
+            if (in == null) {
                 result = 0;
             } else {
-                String str = streamToString(response);
+                String str = streamToString(in);
                 result = Long.parseLong(str);
             }
         } catch (NumberFormatException e) {
@@ -0,0 +1,397 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.transport.AGHttpResponse;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decodes a line-based response on several threads.
+ * <p>
+ * The consumer's thread reads the response and cuts it into batches of
+ * whole lines, held as byte arrays. Each batch is handed to the executor
+ * to be turned into objects with {@link #decode(String)}, and the consumer
+ * takes the objects a batch at a time, either in the order of the response
+ * or in the order in which the batches were decoded. At most
+ * {@code 2 * threads} batches are in flight, so memory use does not depend
+ * on the size of the response.</p>
+ * <p>
+ * Decoding tasks never wait for each other or for the consumer. A batch
+ * that no executor thread has started yet when the consumer needs it is
+ * decoded by the consumer, so any executor works, even one without a
+ * free thread, at the cost of less parallelism.</p>
+ * <p>
+ * Like {@link AGRDFStreamer}'s background parser, the response is released
+ * if it was read to the end and aborted if the consumer closes it early.</p>
+ *
+ * @param <T> type of the decoded lines
+ */
+abstract class AGParallelDecoder<T> {
+    static final int BATCH_SIZE = 64 * 1024;
+
+    private final AGHttpResponse response;
+    private final InputStream in;
+    private final boolean ordered;
+    private final int maxBatches;
+    private final Executor executor;
+
+    // Batches handed to the executor, in the order of the response.
+    private final Deque<Batch> inFlight = new ArrayDeque<>();
+    // Decoded batches, in the order they were decoded, if not ordered.
+    private final BlockingQueue<Batch> decoded = new LinkedBlockingQueue<>();
+    private final Deque<byte[]> arrays = new ArrayDeque<>();
+
+    private volatile boolean closed;
+    private Exception failure;
+    private boolean headerRead;
+    private String headerLine;
+    // Read but not yet submitted: the start of an incomplete line.
+    private byte[] bytes;
+    private int length;
+    private boolean eof;
+    private boolean done;
+    private Batch current;
+    private int index;
+    private T next;
+
+    /**
+     * Prepares to read and decode the response. Nothing is read until
+     * the header or the first object is requested.
+     *
+     * @param response the response, released when done
+     * @param in       the body of the response
+     * @param header   whether the first line is a header, passed to {@link #header(String)}
+     * @param threads  number of batches decoded at the same time
+     * @param ordered  whether to return the objects in the order of the response
+     * @param executor runs the decoding tasks
+     */
+    AGParallelDecoder(AGHttpResponse response, InputStream in, boolean header,
+                      int threads, boolean ordered, Executor executor) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        this.response = response;
+        this.in = in;
+        this.ordered = ordered;
+        this.maxBatches = 2 * threads;
+        this.executor = executor;
+        this.headerRead = !header;
+    }
+
+    /**
+     * Called on the consumer's thread with the first line, before any
+     * other line is decoded.
+     *
+     * @param line the header line, or null if the response is empty
+     */
+    protected void header(String line) {
+    }
+
+    /**
+     * Decodes a line. Called concurrently on the decoding threads.
+     *
+     * @param line without the line terminator
+     * @return The object, or null to skip the line.
+     */
+    protected abstract T decode(String line);
+
+    /**
+     * Reads the header line, if not done yet.
+     *
+     * @return The header line, or null if there is none.
+     */
+    String getHeader() throws QueryEvaluationException {
+        while (!headerRead && readBatch()) {
+            // Reads until the first line is complete.
+        }
+        return headerLine;
+    }
+
+    boolean hasNext() throws QueryEvaluationException {
+        while (next == null && !done) {
+            if (current != null && index < current.count) {
+                next = current.get(index++);
+                continue;
+            }
+            if (current != null) {
+                recycle(current.bytes);
+                current = null;
+            }
+            while (inFlight.size() < maxBatches && readBatch()) {
+                // Keeps the executor busy.
+            }
+            if (inFlight.isEmpty()) {
+                done = true;
+                final Exception e = failure;
+                close();
+                if (e != null) {
+                    throw new QueryEvaluationException(e);
+                }
+                break;
+            }
+            final Batch batch;
+            try {
+                batch = ordered ? inFlight.peekFirst() : takeDecoded();
+                // Decodes it here unless an executor thread has started it.
+                batch.run();
+                batch.decoded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new QueryEvaluationException(e);
+            }
+            inFlight.remove(batch);
+            if (batch.failure != null) {
+                close();
+                throw new QueryEvaluationException(batch.failure);
+            }
+            current = batch;
+            index = 0;
+        }
+        return next != null;
+    }
+
+    /**
+     * @return A decoded batch. If there is none yet, decodes the oldest
+     *         batch that was not started first.
+     */
+    private Batch takeDecoded() throws InterruptedException {
+        if (decoded.isEmpty()) {
+            for (Batch batch : inFlight) {
+                if (!batch.started.get()) {
+                    batch.run();
+                    break;
+                }
+            }
+        }
+        return decoded.take();
+    }
+
+    T next() throws QueryEvaluationException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final T result = next;
+        next = null;
+        return result;
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (done && failure == null) {
+            response.release();
+        } else {
+            response.abort();
+        }
+    }
+
+    /**
+     * Reads the response until a batch of whole lines can be submitted,
+     * or to the end.
+     *
+     * @return False if there is nothing more to read.
+     */
+    private boolean readBatch() {
+        if (eof || closed) {
+            return false;
+        }
+        if (bytes == null) {
+            bytes = array();
+        }
+        try {
+            while (true) {
+                while (length < bytes.length) {
+                    final int n = in.read(bytes, length, bytes.length - length);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    length += n;
+                }
+                if (length == 0) {
+                    endHeader();
+                    return false;
+                }
+                final int lineEnd = eof ? length : lastLineEnd(bytes, length);
+                if (lineEnd == 0 && !eof) {
+                    // A line longer than the array.
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    continue;
+                }
+                int start = 0;
+                if (!headerRead) {
+                    start = nextLine(bytes, 0, lineEnd);
+                    headerLine = line(bytes, 0, start);
+                    headerRead = true;
+                    header(headerLine);
+                }
+                final int rest = length - lineEnd;
+                final byte[] nextBytes = rest > BATCH_SIZE / 2 ? new byte[bytes.length] : array();
+                System.arraycopy(bytes, lineEnd, nextBytes, 0, rest);
+                if (start < lineEnd) {
+                    submit(new Batch(bytes, start, lineEnd));
+                } else {
+                    recycle(bytes);
+                }
+                bytes = nextBytes;
+                length = rest;
+                return true;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                failure = e;
+            }
+            eof = true;
+            endHeader();
+            return false;
+        }
+    }
+
+    private void endHeader() {
+        if (!headerRead) {
+            headerRead = true;
+            header(null);
+        }
+    }
+
+    /**
+     * Hands a batch over to the executor.
+     */
+    private void submit(Batch batch) {
+        inFlight.add(batch);
+        try {
+            executor.execute(batch);
+        } catch (RejectedExecutionException e) {
+            // Decoded by the consumer.
+        }
+    }
+
+    private byte[] array() {
+        final byte[] bytes = arrays.poll();
+        return bytes != null ? bytes : new byte[BATCH_SIZE];
+    }
+
+    private void recycle(byte[] bytes) {
+        if (bytes.length == BATCH_SIZE) {
+            arrays.add(bytes);
+        }
+    }
+
+    /**
+     * @return Index just past the last line feed, or 0 if there is none.
+     */
+    private static int lastLineEnd(byte[] bytes, int length) {
+        int i = length;
+        while (i > 0 && bytes[i - 1] != '\n') {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * @return Index just past the line feed ending the line at start, or end.
+     */
+    private static int nextLine(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && bytes[i] != '\n') {
+            i++;
+        }
+        return i < end ? i + 1 : end;
+    }
+
+    /**
+     * @return The line from start to next, without the line terminator.
+     */
+    private static String line(byte[] bytes, int start, int next) {
+        int lineEnd = next;
+        if (lineEnd > start && bytes[lineEnd - 1] == '\n') {
+            lineEnd--;
+        }
+        if (lineEnd > start && bytes[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+        return new String(bytes, start, lineEnd - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Whole lines of the response, and what they decode to.
+     * Decoded by whichever thread runs it first.
+     */
+    private final class Batch implements Runnable {
+        final byte[] bytes;
+        final int start;
+        final int end;
+        final AtomicBoolean started = new AtomicBoolean();
+        final CountDownLatch decoded = new CountDownLatch(1);
+        Object[] results;
+        int count;
+        Exception failure;
+
+        Batch(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (!closed) {
+                    decode();
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                decoded.countDown();
+                if (!ordered) {
+                    AGParallelDecoder.this.decoded.add(this);
+                }
+            }
+        }
+
+        private void decode() {
+            results = new Object[256];
+            int pos = start;
+            while (pos < end) {
+                final int lineNext = nextLine(bytes, pos, end);
+                final T decoded = AGParallelDecoder.this.decode(line(bytes, pos, lineNext));
+                if (decoded != null) {
+                    if (count == results.length) {
+                        results = Arrays.copyOf(results, count * 2);
+                    }
+                    results[count++] = decoded;
+                }
+                pos = lineNext;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int i) {
+            final T result = (T) results[i];
+            results[i] = null;
+            return result;
+        }
+    }
+}
@@ -7,7 +7,7 @@ package com.franz.agraph.http.handler;
 import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.repository.AGValueFactory;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
@@ -31,7 +31,7 @@ public class AGRDFHandler extends AGResponseHandler {
     private final AGValueFactory vf;
 
     public AGRDFHandler(RDFFormat format, RDFHandler rdfhandler, AGValueFactory vf, boolean recoverExternalBNodes) {
-        super(format.getDefaultMIMEType());
+        super(AGResultFormats.accept(format));
         this.format = format;
         if (recoverExternalBNodes) {
             this.rdfhandler = recoverBNodesRDFHandler(rdfhandler);
@@ -42,26 +42,34 @@ public class AGRDFHandler extends AGResponseHandler {
     }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
         /* TODO: server responds with text/plain here, not text/integer
-        String mimeType = getResponseMIMEType(method);
+        String mimeType = getResponseMIMEType(response);
         if (!mimeType.equals(getRequestMIMEType())) {
             throw new AGHttpException("unexpected response MIME type: " + mimeType);
         }
         */
-        InputStream response = getInputStream(method);
+        RDFFormat sent = AGResultFormats.responseFormat(getResponseMIMEType(response), format);
+        if (sent == null) {
+            sent = format;
+        }
+        InputStream in = getInputStream(response);
 
         // 204 response, no statements
-        if (response == null) {
+        if (in == null) {
             rdfhandler.endRDF();
         } else {
-            // Note: we ignore charset specified in the response.
-            Reader reader = new InputStreamReader(response, StandardCharsets.UTF_8);
             try {
-                RDFParser parser = Rio.createParser(format, vf);
+                RDFParser parser = Rio.createParser(sent, vf);
                 parser.setPreserveBNodeIDs(true);
                 parser.setRDFHandler(rdfhandler);
-                parser.parse(reader, method.getURI().getURI());
+                if (AGResultFormats.isBinary(sent)) {
+                    parser.parse(in, response.getURI());
+                } else {
+                    // Note: we ignore charset specified in the response.
+                    Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+                    parser.parse(reader, response.getURI());
+                }
             } catch (RDFParseException | RDFHandlerException e) {
                 throw new AGHttpException(e);
             }
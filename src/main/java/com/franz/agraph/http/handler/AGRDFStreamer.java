@@ -0,0 +1,636 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.transport.AGHttpResponse;
+import com.franz.agraph.repository.AGRDFFormat;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the statements in an RDF response as a {@link GraphQueryResult}
+ * that pulls them from the HTTP response when they are requested,
+ * like {@link AGTQRStreamer} does for tuple results.
+ * <p>
+ * N-Triples, N-Quads and binary RDF are parsed a statement at a time
+ * on the caller's thread, unless N-Triples and N-Quads are decoded by
+ * several threads, see {@link #setParallelDecoding(int, boolean)}.
+ * Other formats are parsed by a Rio parser on a background thread, which
+ * hands statements over through a bounded queue. Either way memory use
+ * does not depend on the size of the response.</p>
+ * <p>
+ * When {@link RDFFormat#BINARY} is requested, N-Quads and TriX are
+ * accepted as well, for servers that do not offer the binary format.</p>
+ * <p>
+ * The HTTP response is released when the result has been read to the
+ * end or is closed. Results must therefore always be closed.</p>
+ *
+ * @since v3.0.6
+ */
+public class AGRDFStreamer extends AGResponseHandler {
+
+    private static final int QUEUE_SIZE = 1024;
+    // Marks the end of the statements in the queue.
+    private static final Statement END = SimpleValueFactory.getInstance().createStatement(
+            RDF.NIL, RDF.NIL, RDF.NIL);
+
+    // Records and value types of binary RDF.
+    private static final byte[] BINARY_MAGIC_NUMBER = {'B', 'R', 'D', 'F'};
+    private static final int BINARY_FORMAT_VERSION = 1;
+    private static final int NAMESPACE_DECL = 0;
+    private static final int STATEMENT = 1;
+    private static final int COMMENT = 2;
+    private static final int VALUE_DECL = 3;
+    private static final int END_OF_DATA = 127;
+    private static final int NULL_VALUE = 0;
+    private static final int URI_VALUE = 1;
+    private static final int BNODE_VALUE = 2;
+    private static final int PLAIN_LITERAL_VALUE = 3;
+    private static final int LANG_LITERAL_VALUE = 4;
+    private static final int DATATYPE_LITERAL_VALUE = 5;
+    private static final int VALUE_REF = 6;
+
+    private final AGValueFactory vf;
+    private final boolean recoverExternalBNodes;
+    private final Executor executor;
+
+    private RDFFormat format;
+    private AGHttpResponse response;
+    private InputStream in;
+    private int decodeThreads;
+    private boolean ordered = true;
+
+    /**
+     * @param format                format to request
+     * @param vf                    factory for the values in the result
+     * @param recoverExternalBNodes whether to convert stored external blank nodes back
+     * @param executor              runs the parser for formats that can not be pulled
+     */
+    public AGRDFStreamer(RDFFormat format, AGValueFactory vf, boolean recoverExternalBNodes, Executor executor) {
+        super(AGResultFormats.accept(format));
+        this.format = format;
+        this.vf = vf;
+        this.recoverExternalBNodes = recoverExternalBNodes;
+        this.executor = executor;
+    }
+
+    /**
+     * Decodes N-Triples and N-Quads responses on several threads.
+     * <p>
+     * The caller's thread reads the response and cuts it into batches of
+     * lines, which are parsed into statements by tasks on the executor.
+     * Responses in other formats are parsed as usual,
+     * so {@link RDFFormat#NQUADS} should be requested.</p>
+     *
+     * @param threads number of decoding threads, 0 to parse on the caller's thread
+     * @param ordered whether statements are returned in the order of the
+     *                response; if false, they are returned as soon as
+     *                they are decoded
+     * @since v3.0.6
+     */
+    public void setParallelDecoding(int threads, boolean ordered) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Number of threads must not be negative: " + threads);
+        }
+        this.decodeThreads = threads;
+        this.ordered = ordered;
+    }
+
+    /**
+     * False because the result will release the HTTP resources.
+     */
+    @Override
+    public boolean releaseConnection() {
+        return false;
+    }
+
+    @Override
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        this.response = response;
+        final RDFFormat sent = AGResultFormats.responseFormat(getResponseMIMEType(response), format);
+        if (sent != null) {
+            format = sent;
+        }
+        in = getInputStream(response);
+    }
+
+    /**
+     * @return A result reading from the response. Must be closed.
+     */
+    public GraphQueryResult getResult() {
+        if (in == null) {
+            // 204 response, no statements
+            response.release();
+            return new LineResult(null);
+        }
+        if (format.equals(RDFFormat.BINARY)) {
+            return new BinaryResult(new DataInputStream(new BufferedInputStream(in)));
+        }
+        if (isLineBased(format) && decodeThreads > 0) {
+            return new ParallelResult();
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        if (isLineBased(format)) {
+            return new LineResult(reader);
+        }
+        return new BackgroundResult(reader);
+    }
+
+    private static boolean isLineBased(RDFFormat format) {
+        return format.equals(RDFFormat.NTRIPLES)
+                || format.equals(RDFFormat.NQUADS)
+                || format.equals(AGRDFFormat.NQUADS);
+    }
+
+    private Statement toApplicationStatement(Resource s, IRI p, Value o, Resource c) {
+        if (recoverExternalBNodes) {
+            s = AGHttpRepoClient.getApplicationResource(s, vf);
+            o = AGHttpRepoClient.getApplicationValue(o, vf);
+            c = AGHttpRepoClient.getApplicationResource(c, vf);
+        }
+        return c == null ? vf.createStatement(s, p, o) : vf.createStatement(s, p, o, c);
+    }
+
+    /**
+     * Parses a line of N-Triples or N-Quads.
+     * Called concurrently when decoding in parallel.
+     *
+     * @return The statement on the line, or null for blank and comment lines.
+     */
+    private Statement parseLine(String line) throws QueryEvaluationException {
+        int pos = skipWhitespace(line, 0);
+        if (pos == line.length() || line.charAt(pos) == '#') {
+            return null;
+        }
+        try {
+            int end = endOfTerm(line, pos);
+            final Resource s = NTriplesUtil.parseResource(line.substring(pos, end), vf);
+            pos = skipWhitespace(line, end);
+            end = endOfTerm(line, pos);
+            final IRI p = NTriplesUtil.parseURI(line.substring(pos, end), vf);
+            pos = skipWhitespace(line, end);
+            end = endOfTerm(line, pos);
+            final Value o = NTriplesUtil.parseValue(line.substring(pos, end), vf);
+            pos = skipWhitespace(line, end);
+            Resource c = null;
+            if (pos < line.length() && line.charAt(pos) != '.') {
+                end = endOfTerm(line, pos);
+                c = NTriplesUtil.parseResource(line.substring(pos, end), vf);
+            }
+            return toApplicationStatement(s, p, o, c);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new QueryEvaluationException("Invalid statement: " + line, e);
+        }
+    }
+
+    private static int skipWhitespace(String line, int pos) {
+        while (pos < line.length() && (line.charAt(pos) == ' ' || line.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @return Index just past the N-Triples term starting at pos.
+     */
+    private static int endOfTerm(String line, int pos) {
+        final char first = line.charAt(pos);
+        if (first == '<') {
+            return line.indexOf('>', pos) + 1;
+        }
+        if (first == '"') {
+            pos++;
+            while (line.charAt(pos) != '"') {
+                pos += line.charAt(pos) == '\\' ? 2 : 1;
+            }
+            pos++;
+            if (pos < line.length() && line.charAt(pos) == '^') {
+                return line.indexOf('>', pos) + 1;
+            }
+        }
+        // Blank node label or language tag.
+        while (pos < line.length() && line.charAt(pos) != ' ' && line.charAt(pos) != '\t') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Parses one statement per line of N-Triples or N-Quads.
+     */
+    private class LineResult implements GraphQueryResult {
+        // Null when there are no more lines.
+        private BufferedReader reader;
+        private Statement next;
+
+        LineResult(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Map<String, String> getNamespaces() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            while (next == null && reader != null) {
+                final String line;
+                try {
+                    line = reader.readLine();
+                } catch (IOException e) {
+                    close();
+                    throw new QueryEvaluationException(e);
+                }
+                if (line == null) {
+                    close();
+                } else {
+                    try {
+                        next = parseLine(line);
+                    } catch (QueryEvaluationException e) {
+                        close();
+                        throw e;
+                    }
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Statement next() throws QueryEvaluationException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Statement st = next;
+            next = null;
+            return st;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (reader != null) {
+                reader = null;
+                response.releaseOrAbort(in, getDrainLimit());
+            }
+        }
+    }
+
+    /**
+     * Parses lines of N-Triples or N-Quads on several threads.
+     */
+    private class ParallelResult implements GraphQueryResult {
+        private final AGParallelDecoder<Statement> decoder = new AGParallelDecoder<Statement>(
+                response, in, false, decodeThreads, ordered, executor) {
+            @Override
+            protected Statement decode(String line) {
+                return parseLine(line);
+            }
+        };
+
+        @Override
+        public Map<String, String> getNamespaces() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            return decoder.hasNext();
+        }
+
+        @Override
+        public Statement next() throws QueryEvaluationException {
+            return decoder.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            decoder.close();
+        }
+    }
+
+    /**
+     * Reads binary RDF records.
+     */
+    private class BinaryResult implements GraphQueryResult {
+        private final DataInputStream data;
+        private final Map<String, String> namespaces = new HashMap<>();
+        private Value[] declaredValues = new Value[16];
+        private byte[] buffer = new byte[256];
+        private boolean started;
+        private boolean done;
+        private Statement next;
+
+        BinaryResult(DataInputStream data) {
+            this.data = data;
+        }
+
+        @Override
+        public Map<String, String> getNamespaces() {
+            return namespaces;
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (next == null && !done) {
+                try {
+                    if (!started) {
+                        started = true;
+                        readHeader();
+                    }
+                    next = readStatement();
+                } catch (IOException | IllegalArgumentException e) {
+                    close();
+                    throw new QueryEvaluationException(e);
+                } catch (QueryEvaluationException e) {
+                    close();
+                    throw e;
+                }
+                if (next == null) {
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Statement next() throws QueryEvaluationException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Statement st = next;
+            next = null;
+            return st;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (!done) {
+                done = true;
+                response.releaseOrAbort(data, getDrainLimit());
+            }
+        }
+
+        private void readHeader() throws IOException, QueryEvaluationException {
+            final byte[] magic = new byte[BINARY_MAGIC_NUMBER.length];
+            data.readFully(magic);
+            if (!Arrays.equals(magic, BINARY_MAGIC_NUMBER)) {
+                throw new QueryEvaluationException("Response does not contain binary RDF");
+            }
+            final int version = data.readInt();
+            if (version != BINARY_FORMAT_VERSION) {
+                throw new QueryEvaluationException("Incompatible format version: " + version);
+            }
+        }
+
+        /**
+         * @return The next statement or null at the end of the data.
+         */
+        private Statement readStatement() throws IOException, QueryEvaluationException {
+            while (true) {
+                final int record = data.readByte();
+                if (record == STATEMENT) {
+                    final Value s = readValue();
+                    final Value p = readValue();
+                    final Value o = readValue();
+                    final Value c = readValue();
+                    if (!(s instanceof Resource) || !(p instanceof IRI) || o == null
+                            || (c != null && !(c instanceof Resource))) {
+                        throw new QueryEvaluationException("Invalid statement: " + s + " " + p + " " + o + " " + c);
+                    }
+                    return toApplicationStatement((Resource) s, (IRI) p, o, (Resource) c);
+                } else if (record == VALUE_DECL) {
+                    final int id = data.readInt();
+                    if (id < 0) {
+                        throw new QueryEvaluationException("Invalid value id: " + id);
+                    }
+                    final Value value = readValue();
+                    if (id >= declaredValues.length) {
+                        declaredValues = Arrays.copyOf(declaredValues, Math.max(id + 1, declaredValues.length * 2));
+                    }
+                    declaredValues[id] = value;
+                } else if (record == NAMESPACE_DECL) {
+                    final String prefix = readString();
+                    namespaces.put(prefix, readString());
+                } else if (record == COMMENT) {
+                    readString();
+                } else if (record == END_OF_DATA) {
+                    return null;
+                } else {
+                    throw new QueryEvaluationException("Unknown record type: " + record);
+                }
+            }
+        }
+
+        private Value readValue() throws IOException, QueryEvaluationException {
+            final int type = data.readByte();
+            if (type == NULL_VALUE) {
+                return null;
+            } else if (type == VALUE_REF) {
+                final int id = data.readInt();
+                if (id < 0 || id >= declaredValues.length || declaredValues[id] == null) {
+                    throw new QueryEvaluationException("Reference to an undeclared value: " + id);
+                }
+                return declaredValues[id];
+            } else if (type == URI_VALUE) {
+                return vf.createIRI(readString());
+            } else if (type == BNODE_VALUE) {
+                return vf.createBNode(readString());
+            } else if (type == PLAIN_LITERAL_VALUE) {
+                return vf.createLiteral(readString());
+            } else if (type == LANG_LITERAL_VALUE) {
+                final String label = readString();
+                return vf.createLiteral(label, readString());
+            } else if (type == DATATYPE_LITERAL_VALUE) {
+                final String label = readString();
+                return vf.createLiteral(label, vf.createIRI(readString()));
+            }
+            throw new QueryEvaluationException("Unknown value type: " + type);
+        }
+
+        /**
+         * Strings are sent as a number of chars followed by UTF-16 code units.
+         */
+        private String readString() throws IOException, QueryEvaluationException {
+            final int chars = data.readInt();
+            if (chars < 0 || chars > Integer.MAX_VALUE / 2) {
+                throw new QueryEvaluationException("Invalid string length: " + chars);
+            }
+            final int length = chars * 2;
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            data.readFully(buffer, 0, length);
+            return new String(buffer, 0, length, StandardCharsets.UTF_16BE);
+        }
+    }
+
+    /**
+     * Runs a Rio parser on a separate thread.
+     */
+    private class BackgroundResult extends AbstractRDFHandler implements GraphQueryResult, Runnable {
+        private final BlockingQueue<Statement> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final Map<String, String> namespaces = new ConcurrentHashMap<>();
+        private final BufferedReader reader;
+        private volatile boolean closed;
+        private volatile Exception failure;
+        private Statement next;
+        private boolean done;
+
+        BackgroundResult(BufferedReader reader) {
+            this.reader = reader;
+            executor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                final RDFParser parser = Rio.createParser(format, vf);
+                parser.setPreserveBNodeIDs(true);
+                parser.setRDFHandler(this);
+                parser.parse(reader, response.getURI());
+            } catch (Exception e) {
+                if (!closed) {
+                    failure = e;
+                }
+            } finally {
+                put(END);
+            }
+        }
+
+        @Override
+        public void handleNamespace(String prefix, String uri) {
+            namespaces.put(prefix, uri);
+        }
+
+        @Override
+        public void handleStatement(Statement st) throws RDFHandlerException {
+            if (!put(toApplicationStatement(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext()))) {
+                throw new RDFHandlerException("Result closed");
+            }
+        }
+
+        /**
+         * @return False if the result was closed before the statement could be queued.
+         */
+        private boolean put(Statement st) {
+            try {
+                while (!closed) {
+                    if (queue.offer(st, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        @Override
+        public Map<String, String> getNamespaces() {
+            return namespaces;
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (next == null && !done) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new QueryEvaluationException(e);
+                }
+                if (next == END) {
+                    next = null;
+                    done = true;
+                    final Exception e = failure;
+                    close();
+                    if (e != null) {
+                        throw new QueryEvaluationException(e);
+                    }
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Statement next() throws QueryEvaluationException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Statement st = next;
+            next = null;
+            return st;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (done) {
+                response.release();
+            } else {
+                // The parser may still be reading from the stream,
+                // it must not be drained concurrently.
+                response.abort();
+            }
+        }
+    }
+}
@@ -5,20 +5,52 @@
 package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.exception.AGHttpException;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.apache.commons.io.input.AutoCloseInputStream;
 import org.eclipse.rdf4j.query.resultio.BooleanQueryResultFormat;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.eclipse.rdf4j.rio.RDFFormat;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * A handler that allows access to raw response stream.
+ * <p>
+ * The response can be read as an {@link InputStream} with {@link #getStream()},
+ * or without intermediate byte array copies as a {@link ReadableByteChannel}
+ * with {@link #getChannel(boolean)}, or pushed through pooled direct buffers
+ * with {@link #transferTo(WritableByteChannel, boolean)} and
+ * {@link #transferTo(BufferConsumer, boolean)}. Only one of these may be
+ * used for a single response.
  */
 public class AGRawStreamer extends AGResponseHandler {
-    private HttpMethod method;
+    private AGHttpResponse response;
+
+    /**
+     * Receives the response in buffers.
+     *
+     * @since v3.0.6
+     */
+    @FunctionalInterface
+    public interface BufferConsumer {
+        /**
+         * Processes the next part of the response.
+         * <p>
+         * The buffer is only valid for the duration of the call; it is
+         * reused for the next part, so its contents must be consumed or
+         * copied before returning. The buffer may be direct.
+         *
+         * @param buffer the bytes between its position and limit
+         * @throws IOException to stop the transfer
+         */
+        void accept(ByteBuffer buffer) throws IOException;
+    }
 
     /**
      * Creates a streaming handler.
@@ -75,18 +107,24 @@ public class AGRawStreamer extends AGResponseHandler {
      */
     public InputStream getStream() throws AGHttpException {
         // Return the stream, but make sure that:
-        //   1. It releases the connection once closed
+        //   1. It releases the connection once closed,
+        //      without downloading a large remainder
         //   2. It is closed once exhausted
         try {
-            return new AutoCloseInputStream(getInputStream(method)) {
+            final InputStream in = getInputStream(response);
+            return new AutoCloseInputStream(in) {
                 private boolean closed = false;
 
                 @Override
                 public void close() throws IOException {
                     if (!closed) {
-                        super.close();
                         closed = true;
-                        method.releaseConnection();
+                        response.releaseOrAbort(in, getDrainLimit());
+                        try {
+                            super.close();
+                        } catch (IOException e) {
+                            // The connection is gone already.
+                        }
                     }
                 }
             };
@@ -96,10 +134,116 @@ public class AGRawStreamer extends AGResponseHandler {
         }
     }
 
+    /**
+     * Returns the value of the Content-Encoding header of the response.
+     *
+     * @return The encoding, e.g. "gzip", or null if the body is not encoded.
+     * @since v3.0.6
+     */
+    public String getContentEncoding() {
+        return response.getResponseHeader("Content-Encoding");
+    }
+
+    /**
+     * Gets a channel with the decoded server's response.
+     *
+     * @return A channel. It must be closed by the caller.
+     * @since v3.0.6
+     * @see #getChannel(boolean)
+     */
+    public ReadableByteChannel getChannel() throws AGHttpException {
+        return getChannel(true);
+    }
+
+    /**
+     * Gets a channel with the server's response.
+     * <p>
+     * Reading into heap buffers copies directly from the connection into
+     * the buffer's array. A gzip encoded response is inflated directly into
+     * the buffers passed to the channel. Like the stream returned by
+     * {@link #getStream()}, the channel releases the connection when it is
+     * closed, and closes itself at the end of the response.
+     *
+     * @param decompress if false, a gzip encoded response is returned
+     *                   as sent, see {@link #getContentEncoding()}
+     * @return A channel. It must be closed by the caller.
+     * @throws AGHttpException if the response cannot be read.
+     * @since v3.0.6
+     */
+    public ReadableByteChannel getChannel(boolean decompress) throws AGHttpException {
+        try {
+            return new ResponseChannel(decompress);
+        } catch (final IOException e) {
+            throw new AGHttpException(e);
+        }
+    }
+
+    /**
+     * Writes the server's response to a channel through a pooled direct buffer.
+     * <p>
+     * The connection is released once the response has been written,
+     * or if writing fails. The target is not closed.
+     *
+     * @param target     the channel to write to, e.g. a file or socket
+     * @param decompress if false, a gzip encoded response is written as sent
+     * @return Number of bytes written.
+     * @throws AGHttpException if the response cannot be read or written.
+     * @since v3.0.6
+     */
+    public long transferTo(WritableByteChannel target, boolean decompress) throws AGHttpException {
+        return transferTo(buffer -> {
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }, decompress);
+    }
+
+    /**
+     * Passes the server's response to a consumer in pooled direct buffers.
+     * <p>
+     * The connection is released once the response has been consumed,
+     * or if the consumer throws.
+     *
+     * @param consumer   receives the response, one buffer at a time
+     * @param decompress if false, a gzip encoded response is passed as sent
+     * @return Number of bytes passed to the consumer.
+     * @throws AGHttpException if the response cannot be read, or the consumer
+     *                         throws an IOException.
+     * @since v3.0.6
+     */
+    public long transferTo(BufferConsumer consumer, boolean decompress) throws AGHttpException {
+        final ByteBuffer buffer = AGGzip.acquireBuffer();
+        try (ReadableByteChannel in = getChannel(decompress)) {
+            long total = 0;
+            buffer.clear();
+            while (in.read(buffer) >= 0) {
+                if (buffer.position() == buffer.capacity()) {
+                    total += consume(buffer, consumer);
+                }
+            }
+            total += consume(buffer, consumer);
+            return total;
+        } catch (final IOException e) {
+            throw new AGHttpException(e);
+        } finally {
+            AGGzip.releaseBuffer(buffer);
+        }
+    }
+
+    private static int consume(ByteBuffer buffer, BufferConsumer consumer) throws IOException {
+        buffer.flip();
+        final int n = buffer.remaining();
+        if (n > 0) {
+            consumer.accept(buffer);
+        }
+        buffer.clear();
+        return n;
+    }
+
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
         // Just save the method (it includes the input stream).
-        this.method = method;
+        this.response = response;
     }
 
     // Do not release request resources after handleResponse.
@@ -109,4 +253,73 @@ public class AGRawStreamer extends AGResponseHandler {
     public boolean releaseConnection() {
         return false;
     }
+
+    /**
+     * Reads the response body, inflating it if needed.
+     * Releases the connection and any pooled resources when closed.
+     */
+    private final class ResponseChannel implements ReadableByteChannel {
+        private final InputStream body;
+        private final ReadableByteChannel in;
+        private ByteBuffer input;
+        private boolean open = true;
+        private boolean eof;
+
+        ResponseChannel(boolean decompress) throws IOException {
+            final InputStream raw;
+            try {
+                raw = response.getResponseBody();
+            } catch (IOException | RuntimeException e) {
+                // Nothing will close this channel to free the connection.
+                response.abort();
+                throw e;
+            }
+            body = raw == null ? new ByteArrayInputStream(new byte[0]) : raw;
+            final ReadableByteChannel channel = AGGzip.channel(body);
+            if (decompress && "gzip".equals(getContentEncoding())) {
+                input = AGGzip.acquireBuffer();
+                in = new AGGzip.GunzipChannel(channel, input);
+            } else {
+                in = channel;
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                if (eof) {
+                    return -1;
+                }
+                throw new ClosedChannelException();
+            }
+            final int n = in.read(dst);
+            if (n < 0) {
+                eof = true;
+                close();
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (open) {
+                open = false;
+                response.releaseOrAbort(body, getDrainLimit());
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // The connection is gone already.
+                }
+                if (input != null) {
+                    AGGzip.releaseBuffer(input);
+                    input = null;
+                }
+            }
+        }
+    }
 }
@@ -5,8 +5,8 @@
 package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.exception.AGHttpException;
-import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HeaderElement;
+import com.franz.agraph.http.transport.AGCommonsHttpResponse;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.io.IOUtils;
 
@@ -17,21 +17,47 @@ import java.util.zip.GZIPInputStream;
 
 public abstract class AGResponseHandler {
 
+    /**
+     * Number of bytes a streaming result reads from the rest of the response
+     * when it is closed early, hoping to reach the end so that the connection
+     * can be reused. If the response is longer the connection is closed
+     * instead. Defaults to {@value #DEFAULT_DRAIN_LIMIT}.
+     *
+     * @see #setDrainLimit(long)
+     * @see AGHttpResponse#releaseOrAbort(InputStream, long)
+     * @since v3.0.6
+     */
+    public static final String PROP_DRAIN_LIMIT = "com.franz.agraph.http.drainLimit";
+    public static final long DEFAULT_DRAIN_LIMIT = 64 * 1024;
+
     private final String requestMIMEType;
+    private long drainLimit = Long.getLong(PROP_DRAIN_LIMIT, DEFAULT_DRAIN_LIMIT);
 
     public AGResponseHandler(String mimeType) {
         requestMIMEType = mimeType;
     }
 
-    protected static InputStream getInputStream(HttpMethod method) throws IOException {
-        InputStream is = method.getResponseBodyAsStream();
-        Header h = method.getResponseHeader("Content-Encoding");
-        if (h != null && h.getValue().equals("gzip")) {
+    /**
+     * Returns the response body, decompressed if necessary.
+     *
+     * @param response HTTP response
+     * @return Body stream or null if the response has no body.
+     * @throws IOException if the body can not be accessed.
+     * @since v3.0.6
+     */
+    protected static InputStream getInputStream(AGHttpResponse response) throws IOException {
+        InputStream is = response.getResponseBody();
+        String encoding = response.getResponseHeader("Content-Encoding");
+        if (is != null && "gzip".equals(encoding)) {
             is = new GZIPInputStream(is);
         }
         return is;
     }
 
+    protected static InputStream getInputStream(HttpMethod method) throws IOException {
+        return getInputStream(new AGCommonsHttpResponse(method));
+    }
+
     protected static String streamToString(InputStream in) throws IOException {
         // TODO: protect against buffering very large streams
         return IOUtils.toString(in, StandardCharsets.UTF_8);
@@ -41,11 +67,71 @@ public abstract class AGResponseHandler {
         return requestMIMEType;
     }
 
-    public abstract void handleResponse(HttpMethod method) throws IOException, AGHttpException;
+    /**
+     * Processes a successful response.
+     * <p>
+     * Subclasses should override this method. The default implementation
+     * delegates to {@link #handleResponse(HttpMethod)}, which only works
+     * for responses received through commons-httpclient.</p>
+     *
+     * @param response HTTP response
+     * @throws IOException     if the response can not be read
+     * @throws AGHttpException if the response is not valid
+     * @since v3.0.6
+     */
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        HttpMethod method = response.getHttpMethod();
+        if (method == null || response instanceof LegacyResponse) {
+            throw new UnsupportedOperationException(
+                    getClass().getName() + " does not implement handleResponse(AGHttpResponse)");
+        }
+        handleResponse(method);
+    }
+
+    /**
+     * Processes a successful response.
+     *
+     * @param method HTTP method with a response
+     * @throws IOException     if the response can not be read
+     * @throws AGHttpException if the response is not valid
+     * @deprecated Override {@link #handleResponse(AGHttpResponse)} instead,
+     * so that the handler works with any {@link com.franz.agraph.http.transport.AGHttpTransport}.
+     */
+    @Deprecated
+    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
+        handleResponse(new LegacyResponse(method));
+    }
+
+    /**
+     * @return Number of bytes read from the rest of a streamed response
+     *         that is closed early before the connection is closed instead.
+     * @see #PROP_DRAIN_LIMIT
+     * @since v3.0.6
+     */
+    public long getDrainLimit() {
+        return drainLimit;
+    }
+
+    /**
+     * Sets the number of bytes read from the rest of a streamed response
+     * that is closed early before the connection is closed instead.
+     * Use 0 to close the connection whenever the response has not been
+     * read to the end.
+     *
+     * @param drainLimit number of bytes, 0 or more
+     * @see #PROP_DRAIN_LIMIT
+     * @since v3.0.6
+     */
+    public void setDrainLimit(long drainLimit) {
+        if (drainLimit < 0) {
+            throw new IllegalArgumentException("Drain limit must not be negative: " + drainLimit);
+        }
+        this.drainLimit = drainLimit;
+    }
 
     /**
      * For most responses, AGHTTPClient releases resources after
-     * calling {@link #handleResponse(HttpMethod)}; this can be
+     * calling {@link #handleResponse(AGHttpResponse)}; this can be
      * overridden in subclasses that stream results.
      *
      * @return Boolean  always returns true
@@ -64,21 +150,43 @@ public abstract class AGResponseHandler {
      * @return the response MIME type, or <code>null</code> if not available
      */
     protected String getResponseMIMEType(HttpMethod method) throws IOException {
-        Header[] headers = method.getResponseHeaders("Content-Type");
-
-        for (Header header : headers) {
-            HeaderElement[] headerElements = header.getElements();
+        return getResponseMIMEType(new AGCommonsHttpResponse(method));
+    }
 
-            for (HeaderElement headerEl : headerElements) {
-                String mimeType = headerEl.getName();
-                if (mimeType != null) {
-                    // TODO: logger.debug("response MIME type is {}", mimeType);
-                    return mimeType;
-                }
+    /**
+     * Gets the MIME type specified in the response headers, if any.
+     *
+     * @param response the response to get the MIME type from
+     * @return the response MIME type, or <code>null</code> if not available
+     * @see #getResponseMIMEType(HttpMethod)
+     * @since v3.0.6
+     */
+    protected String getResponseMIMEType(AGHttpResponse response) throws IOException {
+        String contentType = response.getResponseHeader("Content-Type");
+        if (contentType == null) {
+            return null;
+        }
+        int end = contentType.length();
+        for (int i = 0; i < contentType.length(); i++) {
+            char c = contentType.charAt(i);
+            if (c == ';' || c == ',') {
+                end = i;
+                break;
             }
         }
+        String mimeType = contentType.substring(0, end).trim();
+        return mimeType.isEmpty() ? null : mimeType;
+    }
 
-        return null;
+    /**
+     * Marks responses created to call {@link #handleResponse(AGHttpResponse)}
+     * from the deprecated method, so that a handler which implements
+     * neither method fails instead of recursing forever.
+     */
+    private static final class LegacyResponse extends AGCommonsHttpResponse {
+        LegacyResponse(HttpMethod method) {
+            super(method);
+        }
     }
 
 }
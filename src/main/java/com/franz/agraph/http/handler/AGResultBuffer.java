@@ -0,0 +1,458 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Holds rows of values, such as the solutions of a tuple query or the
+ * statements of a graph query, within a memory budget.
+ * <p>
+ * Rows are kept on the heap until their estimated size reaches three
+ * quarters of the budget. Further rows are written to a temporary file,
+ * which is memory-mapped for reading once all rows have been added.
+ * In the file, a value that was seen before is written as the number of
+ * its first occurrence, so repeated predicates, classes and datatypes
+ * take a few bytes each. At most a quarter of the budget is used to
+ * remember those numbers.</p>
+ * <p>
+ * The rows can be iterated any number of times after {@link #finish()}.
+ * {@link #close()} deletes the file. A buffer that is dropped without
+ * being closed deletes its file when it is garbage collected.
+ * Instances are not thread-safe.</p>
+ *
+ * @see AGTupleResultBuffer
+ * @see AGGraphResultBuffer
+ * @since v3.0.6
+ */
+public class AGResultBuffer implements Closeable, Iterable<Value[]> {
+
+    /**
+     * Memory budget in bytes of a buffered query result, unless set with
+     * {@link com.franz.agraph.http.AGHttpRepoClient#setResultMemoryLimit(long)}.
+     * Defaults to {@value #DEFAULT_MEMORY_LIMIT}.
+     */
+    public static final String PROP_MEMORY_LIMIT = "com.franz.agraph.http.resultMemoryLimit";
+    public static final long DEFAULT_MEMORY_LIMIT = 64 * 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(AGResultBuffer.class);
+
+    // Record types in the spill file. DEFINE marks a value that is added
+    // to the dictionary.
+    private static final int NULL = 0;
+    private static final int REF = 1;
+    private static final int IRI_VALUE = 2;
+    private static final int BNODE_VALUE = 3;
+    private static final int TYPED_LITERAL = 4;
+    private static final int LANG_LITERAL = 5;
+    private static final int DEFINE = 0x80;
+
+    // Largest region that is mapped at once.
+    private static final int MAX_MAPPING = 1 << 30;
+
+    // Deletes the files of buffers that were not closed.
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private final int width;
+    private final ValueFactory vf;
+    private final long heapLimit;
+    private final long dictionaryLimit;
+
+    private final List<Value[]> rows = new ArrayList<>();
+    private long heapSize;
+    private long size;
+
+    private Path file;
+    private DataOutputStream out;
+    private Cleaner.Cleanable spill;
+    private Map<Value, Integer> dictionary;
+    private long dictionarySize;
+    private ByteBuffer[] mappings;
+
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * @param width       number of values in each row
+     * @param vf          creates the values of spilled rows when they are read
+     * @param memoryLimit estimated number of bytes to use on the heap
+     */
+    public AGResultBuffer(int width, ValueFactory vf, long memoryLimit) {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Memory limit must not be negative: " + memoryLimit);
+        }
+        this.width = width;
+        this.vf = vf;
+        this.heapLimit = memoryLimit / 4 * 3;
+        this.dictionaryLimit = memoryLimit / 4;
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param row one value, or null, per column; not copied
+     * @throws IOException if the row could not be written to the file
+     */
+    public void add(Value[] row) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Buffer is finished");
+        }
+        if (row.length != width) {
+            throw new IllegalArgumentException("Expected " + width + " values, got " + row.length);
+        }
+        size++;
+        if (out == null) {
+            final long rowSize = estimate(row);
+            if (heapSize + rowSize <= heapLimit) {
+                heapSize += rowSize;
+                rows.add(row);
+                return;
+            }
+            startSpilling();
+        }
+        for (Value value : row) {
+            writeValue(value);
+        }
+    }
+
+    /**
+     * Ends adding rows and prepares the file for reading.
+     *
+     * @throws IOException if the file could not be mapped
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        dictionary = null;
+        if (out == null) {
+            return;
+        }
+        out.close();
+        out = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long length = channel.size();
+            final List<ByteBuffer> mapped = new ArrayList<>();
+            for (long position = 0; position < length; position += MAX_MAPPING) {
+                mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAX_MAPPING, length - position)));
+            }
+            mappings = mapped.toArray(new ByteBuffer[0]);
+        }
+    }
+
+    /**
+     * @return Number of rows.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return Whether rows were written to a file.
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Returns the rows in the order they were added.
+     * The arrays must not be modified.
+     *
+     * @return A new iterator.
+     */
+    @Override
+    public Iterator<Value[]> iterator() {
+        if (!finished) {
+            throw new IllegalStateException("Buffer is not finished");
+        }
+        if (closed) {
+            throw new IllegalStateException("Buffer is closed");
+        }
+        final Iterator<Value[]> heap = rows.iterator();
+        if (mappings == null) {
+            return heap;
+        }
+        final SpillReader spilled = new SpillReader(size - rows.size());
+        return new Iterator<Value[]>() {
+            @Override
+            public boolean hasNext() {
+                return heap.hasNext() || spilled.hasNext();
+            }
+
+            @Override
+            public Value[] next() {
+                return heap.hasNext() ? heap.next() : spilled.next();
+            }
+        };
+    }
+
+    /**
+     * Drops the rows and deletes the file.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        finished = true;
+        rows.clear();
+        dictionary = null;
+        mappings = null;
+        out = null;
+        if (spill != null) {
+            spill.clean();
+        }
+    }
+
+    private void startSpilling() throws IOException {
+        file = Files.createTempFile("agraph-result-", ".tmp");
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        } finally {
+            // Must not refer to this buffer.
+            spill = cleaner.register(this, new SpillCleanup(file, out));
+        }
+        dictionary = new HashMap<>();
+        logger.debug("Result exceeds {} bytes, writing rows to {}", heapLimit, file);
+    }
+
+    private static long estimate(Value[] row) {
+        long bytes = 16 + 4 * row.length;
+        for (Value value : row) {
+            if (value != null) {
+                bytes += estimate(value);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return A rough estimate of the bytes used by a value and its strings.
+     */
+    private static long estimate(Value value) {
+        long bytes = 64 + value.stringValue().length();
+        if (value instanceof Literal) {
+            bytes += 24;
+        }
+        return bytes;
+    }
+
+    private void writeValue(Value value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        final Integer id = dictionary.get(value);
+        if (id != null) {
+            out.writeByte(REF);
+            writeVarInt(id);
+            return;
+        }
+        int define = 0;
+        final long valueSize = estimate(value) + 32;
+        if (dictionarySize + valueSize <= dictionaryLimit) {
+            dictionarySize += valueSize;
+            define = DEFINE;
+        }
+        if (value instanceof IRI) {
+            out.writeByte(IRI_VALUE | define);
+            writeString(value.stringValue());
+        } else if (value instanceof BNode) {
+            out.writeByte(BNODE_VALUE | define);
+            writeString(((BNode) value).getID());
+        } else if (value instanceof Literal) {
+            final Literal literal = (Literal) value;
+            if (literal.getLanguage().isPresent()) {
+                out.writeByte(LANG_LITERAL | define);
+                writeString(literal.getLabel());
+                writeString(literal.getLanguage().get());
+            } else {
+                out.writeByte(TYPED_LITERAL | define);
+                writeString(literal.getLabel());
+                writeValue(literal.getDatatype());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported value: " + value);
+        }
+        if (define != 0) {
+            // After the datatype, which the reader also defines first.
+            dictionary.put(value, dictionary.size());
+        }
+    }
+
+    private void writeVarInt(int n) throws IOException {
+        while ((n & ~0x7F) != 0) {
+            out.writeByte((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte(n);
+    }
+
+    private void writeString(String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Closes and deletes the file of a buffer, when the buffer is closed
+     * or has become unreachable.
+     */
+    private static final class SpillCleanup implements Runnable {
+        private final Path file;
+        private final Closeable out;
+
+        SpillCleanup(Path file, Closeable out) {
+            this.file = file;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    logger.debug("Error closing " + file, e);
+                }
+            }
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Some platforms do not delete mapped files.
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Reads the rows in the file. Each reader rebuilds the dictionary
+     * as it reads the values that define it.
+     */
+    private class SpillReader implements Iterator<Value[]> {
+        private final List<Value> values = new ArrayList<>();
+        private long remaining;
+        private int mapping;
+        private ByteBuffer buf;
+
+        SpillReader(long rows) {
+            this.remaining = rows;
+            this.buf = mappings.length == 0 ? ByteBuffer.allocate(0) : mappings[0].duplicate();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Value[] next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            if (mappings == null) {
+                throw new IllegalStateException("Buffer is closed");
+            }
+            remaining--;
+            final Value[] row = new Value[width];
+            for (int i = 0; i < width; i++) {
+                row[i] = readValue();
+            }
+            return row;
+        }
+
+        private Value readValue() {
+            final int type = readByte();
+            final int kind = type & ~DEFINE;
+            final Value value;
+            if (kind == NULL) {
+                return null;
+            } else if (kind == REF) {
+                return values.get(readVarInt());
+            } else if (kind == IRI_VALUE) {
+                value = vf.createIRI(readString());
+            } else if (kind == BNODE_VALUE) {
+                value = vf.createBNode(readString());
+            } else if (kind == LANG_LITERAL) {
+                final String label = readString();
+                value = vf.createLiteral(label, readString());
+            } else if (kind == TYPED_LITERAL) {
+                final String label = readString();
+                value = vf.createLiteral(label, (IRI) readValue());
+            } else {
+                throw new UncheckedIOException(new IOException("Corrupt result file " + file + ": record type " + type));
+            }
+            if ((type & DEFINE) != 0) {
+                values.add(value);
+            }
+            return value;
+        }
+
+        private int readByte() {
+            while (!buf.hasRemaining()) {
+                if (mapping + 1 >= mappings.length) {
+                    throw new UncheckedIOException(new IOException("Unexpected end of result file " + file));
+                }
+                mapping++;
+                buf = mappings[mapping].duplicate();
+            }
+            return buf.get() & 0xFF;
+        }
+
+        private int readVarInt() {
+            int n = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                n |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return n;
+        }
+
+        private String readString() {
+            final int length = readVarInt();
+            final byte[] bytes = new byte[length];
+            if (buf.remaining() >= length) {
+                buf.get(bytes);
+            } else {
+                // Crosses into the next mapping.
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = (byte) readByte();
+                }
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
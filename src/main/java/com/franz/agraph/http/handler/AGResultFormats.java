@@ -0,0 +1,104 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.repository.AGRDFFormat;
+import org.eclipse.rdf4j.common.lang.FileFormat;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Content negotiation for result formats.
+ * <p>
+ * The binary formats are not offered by every server. When one of them
+ * is requested, text formats are listed in the Accept header as well,
+ * with a lower preference, and the handlers parse whichever of these
+ * formats the server chose to send.</p>
+ */
+final class AGResultFormats {
+
+    private static final List<TupleQueryResultFormat> TQR_FALLBACKS =
+            Arrays.asList(TupleQueryResultFormat.TSV, TupleQueryResultFormat.SPARQL);
+    private static final List<RDFFormat> RDF_FALLBACKS =
+            Arrays.asList(AGRDFFormat.NQUADS, RDFFormat.TRIX);
+
+    private AGResultFormats() {
+    }
+
+    /**
+     * @param format requested format
+     * @return True if the format is read directly from the byte stream.
+     */
+    static boolean isBinary(FileFormat format) {
+        return format.equals(TupleQueryResultFormat.BINARY) || format.equals(RDFFormat.BINARY);
+    }
+
+    /**
+     * @param format requested format
+     * @return Value for the Accept header.
+     */
+    static String accept(TupleQueryResultFormat format) {
+        return accept(format, TQR_FALLBACKS);
+    }
+
+    /**
+     * @param format requested format
+     * @return Value for the Accept header.
+     */
+    static String accept(RDFFormat format) {
+        return accept(format, RDF_FALLBACKS);
+    }
+
+    private static String accept(FileFormat format, List<? extends FileFormat> fallbacks) {
+        if (!isBinary(format)) {
+            return format.getDefaultMIMEType();
+        }
+        final StringBuilder accept = new StringBuilder(format.getDefaultMIMEType());
+        int quality = 9;
+        for (FileFormat fallback : fallbacks) {
+            accept.append(", ").append(fallback.getDefaultMIMEType()).append(";q=0.").append(quality--);
+        }
+        return accept.toString();
+    }
+
+    /**
+     * Determines the format of a tuple query response.
+     *
+     * @param mimeType  MIME type of the response, may be null
+     * @param requested format that was requested
+     * @return The format of the response or null if it is not one of the accepted formats.
+     */
+    static TupleQueryResultFormat responseFormat(String mimeType, TupleQueryResultFormat requested) {
+        return responseFormat(mimeType, requested, TQR_FALLBACKS);
+    }
+
+    /**
+     * Determines the format of an RDF response.
+     *
+     * @param mimeType  MIME type of the response, may be null
+     * @param requested format that was requested
+     * @return The format of the response or null if it is not one of the accepted formats.
+     */
+    static RDFFormat responseFormat(String mimeType, RDFFormat requested) {
+        return responseFormat(mimeType, requested, RDF_FALLBACKS);
+    }
+
+    private static <F extends FileFormat> F responseFormat(String mimeType, F requested, List<F> fallbacks) {
+        if (mimeType == null || requested.hasMIMEType(mimeType)) {
+            return requested;
+        }
+        if (isBinary(requested)) {
+            for (F fallback : fallbacks) {
+                if (fallback.hasMIMEType(mimeType)) {
+                    return fallback;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -5,7 +5,7 @@
 package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.exception.AGHttpException;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -19,13 +19,13 @@ public class AGStringHandler extends AGResponseHandler {
     }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
-        String mimeType = getResponseMIMEType(method);
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        String mimeType = getResponseMIMEType(response);
         if (!mimeType.equals(getRequestMIMEType())) {
             throw new AGHttpException("unexpected response MIME type: " + mimeType);
         }
-        InputStream response = getInputStream(method);
-        result = streamToString(response);
+        InputStream in = getInputStream(response);
+        result = streamToString(in);
     }
 
     public String getResult() {
@@ -0,0 +1,309 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.transport.AGHttpResponse;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams tuple results in the binary result table format
+ * ({@link TupleQueryResultFormat#BINARY}), reading rows from the
+ * http response as they are requested.
+ * <p>
+ * Values are read from length-prefixed UTF-8 strings; there is no
+ * escaping to undo and no text to tokenize. A value that is the same as
+ * in the previous row is sent only once.</p>
+ * <p>
+ * The binary format is also requested with text formats as a fallback.
+ * If the server sends one of those instead, the response is handed to
+ * the matching streamer.</p>
+ *
+ * @since v3.0.6
+ */
+public class AGTQRBinaryStreamer extends AGTQRStreamer {
+
+    private static final byte[] MAGIC_NUMBER = {'B', 'R', 'T', 'R'};
+    private static final int MAX_FORMAT_VERSION = 4;
+
+    private static final int NULL_RECORD_MARKER = 0;
+    private static final int REPEAT_RECORD_MARKER = 1;
+    private static final int NAMESPACE_RECORD_MARKER = 2;
+    private static final int QNAME_RECORD_MARKER = 3;
+    private static final int URI_RECORD_MARKER = 4;
+    private static final int BNODE_RECORD_MARKER = 5;
+    private static final int PLAIN_LITERAL_RECORD_MARKER = 6;
+    private static final int LANG_LITERAL_RECORD_MARKER = 7;
+    private static final int DATATYPE_LITERAL_RECORD_MARKER = 8;
+    private static final int EMPTY_ROW_RECORD_MARKER = 9;
+    private static final int ERROR_RECORD_MARKER = 126;
+    private static final int TABLE_END_RECORD_MARKER = 127;
+
+    private DataInputStream in;
+    // Set if the server sent a text format.
+    private AGTQRStreamer fallback;
+
+    public AGTQRBinaryStreamer(AGValueFactory vf) {
+        super(AGResultFormats.accept(TupleQueryResultFormat.BINARY));
+        this.vf = vf;
+    }
+
+    @Override
+    public String getRequestMIMEType() {
+        return AGResultFormats.accept(TupleQueryResultFormat.BINARY);
+    }
+
+    @Override
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        this.response = response;
+        final String mimeType = getResponseMIMEType(response);
+        final TupleQueryResultFormat format =
+                AGResultFormats.responseFormat(mimeType, TupleQueryResultFormat.BINARY);
+        if (format == null) {
+            response.abort();
+            throw new AGHttpException("unexpected response MIME type: " + mimeType);
+        }
+        if (!format.equals(TupleQueryResultFormat.BINARY)) {
+            fallback = createStreamer(format, vf, getRecoverExternalBNodes());
+            fallback.setDrainLimit(getDrainLimit());
+            fallback.handleResponse(response);
+            return;
+        }
+        final InputStream body = AGResponseHandler.getInputStream(response);
+        if (body != null) {
+            in = new DataInputStream(new BufferedInputStream(body));
+        }
+    }
+
+    @Override
+    public TupleQueryResult getResult() {
+        if (fallback != null) {
+            return fallback.getResult();
+        }
+        return new Result();
+    }
+
+    private class Result implements TupleQueryResult {
+        private List<String> bindingNames;
+        private AGBindingSet.Index index;
+        private int formatVersion;
+        private String[] namespaces = new String[32];
+        private Value[] previous;
+        private BindingSet next;
+        private boolean done = in == null;
+        private boolean closed;
+
+        @Override
+        public List<String> getBindingNames() throws QueryEvaluationException {
+            parseHeader();
+            return bindingNames;
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (next == null && !done) {
+                try {
+                    parseHeader();
+                    next = parseRow();
+                } catch (IOException e) {
+                    close();
+                    throw new QueryEvaluationException(e);
+                } catch (QueryEvaluationException e) {
+                    close();
+                    throw e;
+                }
+                if (next == null) {
+                    done = true;
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final BindingSet curr = next;
+            next = null;
+            return curr;
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            if (!closed) {
+                closed = true;
+                response.releaseOrAbort(in, getDrainLimit());
+            }
+        }
+
+        private void parseHeader() throws QueryEvaluationException {
+            if (bindingNames != null) {
+                return;
+            }
+            if (in == null) {
+                // 204 response, no results
+                bindingNames = Collections.emptyList();
+                return;
+            }
+            try {
+                final byte[] magic = new byte[MAGIC_NUMBER.length];
+                in.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC_NUMBER)) {
+                    throw new QueryEvaluationException("Response does not contain a binary result table");
+                }
+                formatVersion = in.readInt();
+                if (formatVersion < 1 || formatVersion > MAX_FORMAT_VERSION) {
+                    throw new QueryEvaluationException("Incompatible format version: " + formatVersion);
+                }
+                if (formatVersion == 2) {
+                    // Unused flags.
+                    in.readByte();
+                }
+                final int columns = in.readInt();
+                if (columns < 0) {
+                    throw new QueryEvaluationException("Illegal column count: " + columns);
+                }
+                final List<String> names = new ArrayList<>(columns);
+                for (int i = 0; i < columns; i++) {
+                    names.add(readString());
+                }
+                bindingNames = Collections.unmodifiableList(names);
+                index = new AGBindingSet.Index(bindingNames);
+                previous = new Value[columns];
+            } catch (IOException e) {
+                close();
+                throw new QueryEvaluationException(e);
+            } catch (QueryEvaluationException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return The next row or null at the end of the table.
+         */
+        private BindingSet parseRow() throws IOException, QueryEvaluationException {
+            final Value[] row = new Value[previous.length];
+            int column = 0;
+            while (true) {
+                final int marker = in.readByte();
+                if (marker == TABLE_END_RECORD_MARKER) {
+                    return null;
+                } else if (marker == ERROR_RECORD_MARKER) {
+                    throw readError();
+                } else if (marker == NAMESPACE_RECORD_MARKER) {
+                    readNamespace();
+                } else if (marker == EMPTY_ROW_RECORD_MARKER) {
+                    return EmptyBindingSet.getInstance();
+                } else {
+                    row[column] = readValue(marker, column);
+                    column++;
+                    if (column == row.length) {
+                        previous = row;
+                        return new AGBindingSet(index, row);
+                    }
+                }
+            }
+        }
+
+        private Value readValue(int marker, int column) throws IOException, QueryEvaluationException {
+            if (marker == NULL_RECORD_MARKER) {
+                return null;
+            } else if (marker == REPEAT_RECORD_MARKER) {
+                return previous[column];
+            } else if (marker == QNAME_RECORD_MARKER) {
+                return applicationValue(readQName());
+            } else if (marker == URI_RECORD_MARKER) {
+                return applicationValue(vf.createIRI(readString()));
+            } else if (marker == BNODE_RECORD_MARKER) {
+                return vf.createBNode(readString());
+            } else if (marker == PLAIN_LITERAL_RECORD_MARKER) {
+                return vf.createLiteral(readString());
+            } else if (marker == LANG_LITERAL_RECORD_MARKER) {
+                final String label = readString();
+                return vf.createLiteral(label, readString());
+            } else if (marker == DATATYPE_LITERAL_RECORD_MARKER) {
+                final String label = readString();
+                final int datatypeMarker = in.readByte();
+                final IRI datatype;
+                if (datatypeMarker == QNAME_RECORD_MARKER) {
+                    datatype = readQName();
+                } else if (datatypeMarker == URI_RECORD_MARKER) {
+                    datatype = vf.createIRI(readString());
+                } else {
+                    throw new QueryEvaluationException("Illegal record type for a datatype: " + datatypeMarker);
+                }
+                return vf.createLiteral(label, datatype);
+            }
+            throw new QueryEvaluationException("Unknown record type: " + marker);
+        }
+
+        private void readNamespace() throws IOException, QueryEvaluationException {
+            final int id = in.readInt();
+            if (id < 0) {
+                throw new QueryEvaluationException("Invalid namespace id: " + id);
+            }
+            final String namespace = readString();
+            if (id >= namespaces.length) {
+                namespaces = Arrays.copyOf(namespaces, Math.max(id + 1, namespaces.length * 2));
+            }
+            namespaces[id] = namespace;
+        }
+
+        private IRI readQName() throws IOException, QueryEvaluationException {
+            final int id = in.readInt();
+            if (id < 0 || id >= namespaces.length || namespaces[id] == null) {
+                throw new QueryEvaluationException("Reference to an undeclared namespace: " + id);
+            }
+            final String localName = readString();
+            return vf.createIRI(namespaces[id], localName);
+        }
+
+        private QueryEvaluationException readError() throws IOException, QueryEvaluationException {
+            final int type = in.readByte();
+            final String message = readString();
+            return new QueryEvaluationException(
+                    (type == 1 ? "Malformed query: " : "Query evaluation error: ") + message);
+        }
+
+        private String readString() throws IOException, QueryEvaluationException {
+            if (formatVersion == 1) {
+                return in.readUTF();
+            }
+            final int length = in.readInt();
+            if (length < 0) {
+                throw new QueryEvaluationException("Invalid string length: " + length);
+            }
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
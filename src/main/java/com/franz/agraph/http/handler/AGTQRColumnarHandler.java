@@ -0,0 +1,454 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.transport.AGHttpResponse;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryResultHandlerException;
+import org.eclipse.rdf4j.query.TupleQueryResultHandler;
+import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
+import org.eclipse.rdf4j.query.resultio.QueryResultIO;
+import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decodes a tuple query result into an {@link AGColumnarResult}.
+ * <p>
+ * TSV is requested. Its cells are decoded in place in the character
+ * buffer: numbers and date-times are converted to primitives and IRIs
+ * are looked up in the dictionary of the result without creating a
+ * string, a literal or a binding set per cell. Other cells are parsed
+ * as in {@link AGTQRTSVStreamer}. If the server answers in another
+ * format, the result is parsed with rdf4j and converted value by value.</p>
+ *
+ * @since v3.0.6
+ */
+public class AGTQRColumnarHandler extends AGResponseHandler {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Powers of ten that are exact as doubles.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final TupleQueryResultFormat format;
+    private final ValueFactory vf;
+    private final AGColumnarResult.Builder builder;
+    private AGColumnarResult result;
+
+    private Reader reader;
+    private char[] buffer;
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private int lineStart;
+    private int lineEnd;
+
+    private long parsedLong;
+    private double parsedDouble;
+
+    /**
+     * @param format accepted if the server does not send TSV
+     * @param vf     creates the values that are not held in primitive columns
+     */
+    public AGTQRColumnarHandler(TupleQueryResultFormat format, ValueFactory vf) {
+        super(accept(format));
+        this.format = format;
+        this.vf = vf;
+        this.builder = new AGColumnarResult.Builder(vf);
+    }
+
+    private static String accept(TupleQueryResultFormat format) {
+        final String tsv = TupleQueryResultFormat.TSV.getDefaultMIMEType();
+        if (format.equals(TupleQueryResultFormat.TSV)) {
+            return tsv;
+        }
+        return tsv + ", " + format.getDefaultMIMEType() + ";q=0.9";
+    }
+
+    @Override
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        final String mimeType = getResponseMIMEType(response);
+        final TupleQueryResultFormat sent = TupleQueryResultFormat.TSV.hasMIMEType(mimeType)
+                ? TupleQueryResultFormat.TSV : AGResultFormats.responseFormat(mimeType, format);
+        if (mimeType == null || sent == null) {
+            throw new AGHttpException("unexpected response MIME type: " + mimeType);
+        }
+        final InputStream in = getInputStream(response);
+        if (in != null) {
+            if (sent.equals(TupleQueryResultFormat.TSV)) {
+                decode(new InputStreamReader(in, StandardCharsets.UTF_8));
+            } else {
+                try {
+                    final TupleQueryResultParser parser = QueryResultIO.createTupleParser(sent, vf);
+                    parser.setQueryResultHandler(new ValueHandler());
+                    parser.parseQueryResult(in);
+                } catch (QueryResultParseException | TupleQueryResultHandlerException e) {
+                    throw new AGHttpException(e);
+                }
+            }
+        }
+        result = builder.build();
+    }
+
+    /**
+     * @return The decoded result, null before the response was handled.
+     */
+    public AGColumnarResult getResult() {
+        return result;
+    }
+
+    private void decode(Reader in) throws IOException {
+        reader = in;
+        buffer = new char[BUFFER_SIZE];
+        pos = 0;
+        limit = 0;
+        eof = false;
+        if (!nextLine()) {
+            builder.start(Collections.<String>emptyList());
+            return;
+        }
+        final List<String> names = new ArrayList<>();
+        int start = lineStart;
+        while (true) {
+            int end = start;
+            while (end < lineEnd && buffer[end] != '\t') {
+                end++;
+            }
+            if (end > start && buffer[start] == '?') {
+                names.add(new String(buffer, start + 1, end - start - 1));
+            } else {
+                names.add(new String(buffer, start, end - start));
+            }
+            if (end >= lineEnd) {
+                break;
+            }
+            start = end + 1;
+        }
+        builder.start(names);
+        final int width = builder.width();
+        while (nextLine()) {
+            int column = 0;
+            start = lineStart;
+            while (true) {
+                int end = start;
+                while (end < lineEnd && buffer[end] != '\t') {
+                    end++;
+                }
+                if (column < width) {
+                    decodeCell(builder.column(column), start, end);
+                }
+                column++;
+                if (end >= lineEnd) {
+                    break;
+                }
+                start = end + 1;
+            }
+            for (; column < width; column++) {
+                builder.column(column).addNull();
+            }
+            builder.endRow();
+        }
+    }
+
+    /**
+     * Makes the next line available in the buffer, between
+     * {@link #lineStart} and {@link #lineEnd}.
+     *
+     * @return False at the end of the input.
+     */
+    private boolean nextLine() throws IOException {
+        int scan = pos;
+        while (true) {
+            while (scan < limit) {
+                if (buffer[scan] == '\n') {
+                    setLine(scan);
+                    pos = scan + 1;
+                    return true;
+                }
+                scan++;
+            }
+            if (eof) {
+                if (pos == limit) {
+                    return false;
+                }
+                setLine(limit);
+                pos = limit;
+                return true;
+            }
+            if (pos > 0) {
+                // Keep the start of the line.
+                System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+                scan -= pos;
+                limit -= pos;
+                pos = 0;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            final int n = reader.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+        }
+    }
+
+    private void setLine(int end) {
+        lineStart = pos;
+        lineEnd = end > pos && buffer[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    private void decodeCell(AGColumnarResult.Builder.ColumnBuilder column, int start, int end) {
+        if (start == end) {
+            column.addNull();
+            return;
+        }
+        if (!column.isGeneric()) {
+            final char first = buffer[start];
+            if (first == '<') {
+                if (buffer[end - 1] == '>' && column.addIRI(buffer, start + 1, end - 1)) {
+                    return;
+                }
+            } else if (first == '"') {
+                if (decodeTypedLiteral(column, start, end)) {
+                    return;
+                }
+            } else if (decodeNumber(column, start, end)) {
+                return;
+            }
+        }
+        column.addValue(AGTQRTSVStreamer.parseValue(new String(buffer, start, end - start), vf));
+    }
+
+    /**
+     * Decodes a quoted literal with a numeric or date-time datatype.
+     *
+     * @return False if the literal has another datatype or can not be
+     *         converted, or the column holds another kind of value.
+     */
+    private boolean decodeTypedLiteral(AGColumnarResult.Builder.ColumnBuilder column, int start, int end) {
+        int quote = end - 1;
+        while (quote > start && buffer[quote] != '"') {
+            quote--;
+        }
+        final int type = quote + 1;
+        if (quote == start || end - type < 5 || buffer[type] != '^' || buffer[type + 1] != '^'
+                || buffer[type + 2] != '<' || buffer[end - 1] != '>') {
+            return false;
+        }
+        final int index = AGColumnarResult.datatypeIndex(buffer, type + 3, end - 1);
+        if (index < 0) {
+            return false;
+        }
+        final IRI datatype = AGColumnarResult.datatype(index);
+        if (datatype.equals(XMLSchema.DATETIME)) {
+            final long epochMilli = AGColumnarResult.parseDateTime(buffer, start + 1, quote);
+            return epochMilli != AGColumnarResult.NOT_A_DATE_TIME && column.addDateTime(epochMilli);
+        } else if (datatype.equals(XMLSchema.DECIMAL) || datatype.equals(XMLSchema.DOUBLE)
+                || datatype.equals(XMLSchema.FLOAT)) {
+            return parseDouble(start + 1, quote) && column.addDouble(parsedDouble, datatype);
+        }
+        return parseLong(start + 1, quote) && column.addLong(parsedLong, datatype);
+    }
+
+    /**
+     * Decodes an unquoted number, with the datatypes that
+     * {@link AGTQRTSVStreamer} gives it.
+     *
+     * @return False if the cell is not a number, or the column holds another kind of value.
+     */
+    private boolean decodeNumber(AGColumnarResult.Builder.ColumnBuilder column, int start, int end) {
+        boolean point = false;
+        for (int i = start; i < end; i++) {
+            final char c = buffer[i];
+            if (c == 'e' || c == 'E') {
+                return parseDouble(start, end) && column.addDouble(parsedDouble, XMLSchema.DOUBLE);
+            }
+            point |= c == '.';
+        }
+        if (point) {
+            return parseDouble(start, end) && column.addDouble(parsedDouble, XMLSchema.DECIMAL);
+        }
+        if (!parseLong(start, end)) {
+            return false;
+        }
+        final IRI datatype = parsedLong < 0 ? XMLSchema.NEGATIVE_INTEGER : XMLSchema.INTEGER;
+        return column.addLong(parsedLong, datatype);
+    }
+
+    /**
+     * Parses an integer of at most 18 digits into {@link #parsedLong}.
+     * Longer integers are left to the slower path, which handles overflow.
+     *
+     * @return False if the text is not such an integer.
+     */
+    private boolean parseLong(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '+' || buffer[i] == '-')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return false;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            final char c = buffer[i];
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + c - '0';
+        }
+        parsedLong = negative ? -value : value;
+        return true;
+    }
+
+    /**
+     * Parses a decimal or a double in scientific notation into
+     * {@link #parsedDouble}. Numbers of at most 15 significant digits and
+     * small exponents are computed exactly with one multiplication or
+     * division; others are left to {@link Double#parseDouble(String)}.
+     *
+     * @return False if the text is not a number.
+     */
+    private boolean parseDouble(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '+' || buffer[i] == '-')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int scale = 0;
+        boolean exact = true;
+        boolean digits = false;
+        char c;
+        while (i < end && (c = buffer[i]) >= '0' && c <= '9') {
+            digits = true;
+            if (significant < 15) {
+                mantissa = mantissa * 10 + c - '0';
+                if (mantissa != 0) {
+                    significant++;
+                }
+            } else {
+                exact &= c == '0';
+                scale++;
+            }
+            i++;
+        }
+        if (i < end && buffer[i] == '.') {
+            i++;
+            while (i < end && (c = buffer[i]) >= '0' && c <= '9') {
+                digits = true;
+                if (significant < 15) {
+                    mantissa = mantissa * 10 + c - '0';
+                    if (mantissa != 0) {
+                        significant++;
+                    }
+                    scale--;
+                } else {
+                    exact &= c == '0';
+                }
+                i++;
+            }
+        }
+        if (!digits) {
+            return false;
+        }
+        int exponent = 0;
+        if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buffer[i] == '+' || buffer[i] == '-')) {
+                negativeExponent = buffer[i] == '-';
+                i++;
+            }
+            final int exponentStart = i;
+            while (i < end && (c = buffer[i]) >= '0' && c <= '9') {
+                if (exponent < 10000) {
+                    exponent = exponent * 10 + c - '0';
+                }
+                i++;
+            }
+            if (i == exponentStart) {
+                return false;
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        if (i != end) {
+            return false;
+        }
+        final int power = scale + exponent;
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (exact && power >= -22 && power <= 22) {
+            value = power >= 0 ? mantissa * POWERS_OF_TEN[power] : mantissa / POWERS_OF_TEN[-power];
+        } else {
+            value = Math.abs(Double.parseDouble(new String(buffer, start, end - start)));
+        }
+        parsedDouble = negative ? -value : value;
+        return true;
+    }
+
+    /**
+     * Adds the solutions of formats other than TSV.
+     */
+    private class ValueHandler implements TupleQueryResultHandler {
+        private List<String> names = Collections.emptyList();
+
+        @Override
+        public void startQueryResult(List<String> bindingNames) throws TupleQueryResultHandlerException {
+            names = bindingNames;
+            builder.start(bindingNames);
+        }
+
+        @Override
+        public void handleSolution(BindingSet bindingSet) throws TupleQueryResultHandlerException {
+            for (int i = 0; i < names.size(); i++) {
+                builder.column(i).addValue(bindingSet.getValue(names.get(i)));
+            }
+            builder.endRow();
+        }
+
+        @Override
+        public void endQueryResult() throws TupleQueryResultHandlerException {
+            // nothing to do
+        }
+
+        @Override
+        public void handleBoolean(boolean value) throws QueryResultHandlerException {
+            throw new QueryResultHandlerException("Unexpected boolean result");
+        }
+
+        @Override
+        public void handleLinks(List<String> linkUrls) throws QueryResultHandlerException {
+            // ignore
+        }
+    }
+}
@@ -7,13 +7,12 @@ package com.franz.agraph.http.handler;
 import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.repository.AGValueFactory;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryResultHandlerException;
 import org.eclipse.rdf4j.query.TupleQueryResultHandler;
 import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
-import org.eclipse.rdf4j.query.impl.MapBindingSet;
 import org.eclipse.rdf4j.query.resultio.QueryResultIO;
 import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
@@ -22,7 +21,6 @@ import org.eclipse.rdf4j.query.resultio.TupleQueryResultParser;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
-import java.util.Set;
 
 public class AGTQRHandler extends AGResponseHandler {
 
@@ -31,7 +29,7 @@ public class AGTQRHandler extends AGResponseHandler {
     private final AGValueFactory vf;
 
     public AGTQRHandler(TupleQueryResultFormat format, TupleQueryResultHandler tqrhandler, AGValueFactory vf, boolean recoverExternalBNodes) {
-        super(format.getDefaultMIMEType());
+        super(AGResultFormats.accept(format));
         this.format = format;
         if (recoverExternalBNodes) {
             this.tqrhandler = recoverBNodesTQRHandler(tqrhandler);
@@ -42,16 +40,17 @@ public class AGTQRHandler extends AGResponseHandler {
     }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
-        String mimeType = getResponseMIMEType(method);
-        if (!mimeType.equals(getRequestMIMEType())) {
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        String mimeType = getResponseMIMEType(response);
+        TupleQueryResultFormat sent = AGResultFormats.responseFormat(mimeType, format);
+        if (mimeType == null || sent == null) {
             throw new AGHttpException("unexpected response MIME type: " + mimeType);
         }
-        InputStream response = getInputStream(method);
+        InputStream in = getInputStream(response);
         try {
-            TupleQueryResultParser parser = QueryResultIO.createTupleParser(format, vf);
-            parser.setQueryResultHandler(recoverBNodesTQRHandler(tqrhandler));
-            parser.parseQueryResult(response);
+            TupleQueryResultParser parser = QueryResultIO.createTupleParser(sent, vf);
+            parser.setQueryResultHandler(tqrhandler);
+            parser.parseQueryResult(in);
         } catch (QueryResultParseException | TupleQueryResultHandlerException e) {
             throw new AGHttpException(e);
         }
@@ -59,10 +58,12 @@ public class AGTQRHandler extends AGResponseHandler {
 
     private TupleQueryResultHandler recoverBNodesTQRHandler(final TupleQueryResultHandler handler) {
         return new TupleQueryResultHandler() {
+            private AGBindingSet.Index index;
 
             @Override
             public void startQueryResult(List<String> arg0)
                     throws TupleQueryResultHandlerException {
+                index = new AGBindingSet.Index(arg0);
                 handler.startQueryResult(arg0);
             }
 
@@ -75,15 +76,24 @@ public class AGTQRHandler extends AGResponseHandler {
             @Override
             public void handleSolution(BindingSet arg0)
                     throws TupleQueryResultHandlerException {
-                Set<String> names = arg0.getBindingNames();
-                MapBindingSet sol = new MapBindingSet(names.size());
-                for (String n : names) {
-                    Value v = AGHttpRepoClient.getApplicationValue(arg0.getValue(n), vf);
-                    if (v != null) {
-                        sol.addBinding(n, v);
+                // Most solutions contain no external blank nodes,
+                // only copy the ones that do.
+                Value[] values = null;
+                List<String> names = index.getNames();
+                for (int i = 0; i < names.size(); i++) {
+                    Value stored = arg0.getValue(names.get(i));
+                    Value v = AGHttpRepoClient.getApplicationValue(stored, vf);
+                    if (v != stored && values == null) {
+                        values = new Value[names.size()];
+                        for (int j = 0; j < i; j++) {
+                            values[j] = arg0.getValue(names.get(j));
+                        }
+                    }
+                    if (values != null) {
+                        values[i] = v;
                     }
                 }
-                handler.handleSolution(sol);
+                handler.handleSolution(values == null ? arg0 : new AGBindingSet(index, values));
             }
 
             @Override
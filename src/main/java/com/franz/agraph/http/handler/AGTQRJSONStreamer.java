@@ -7,16 +7,14 @@ package com.franz.agraph.http.handler;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
-import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.repository.AGValueFactory;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryResultHandlerException;
 import org.eclipse.rdf4j.query.TupleQueryResult;
-import org.eclipse.rdf4j.query.impl.MapBindingSet;
 import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.eclipse.rdf4j.query.resultio.UnsupportedQueryResultFormatException;
@@ -27,6 +25,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -50,9 +49,9 @@ public class AGTQRJSONStreamer extends AGTQRStreamer {
     public String getRequestMIMEType() { return TupleQueryResultFormat.JSON.getDefaultMIMEType(); }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
-        this.method = method;
-        in = AGResponseHandler.getInputStream(method);
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        this.response = response;
+        in = AGResponseHandler.getInputStream(response);
     }
 
     @Override
@@ -65,6 +64,7 @@ public class AGTQRJSONStreamer extends AGTQRStreamer {
         private InputStreamReader r;
         private BufferedReader reader;
         private List<String> bindingNames;
+        private AGBindingSet.Index index;
 
         private final JsonParser jp;
         private final JsonFactory JSON_FACTORY;
@@ -124,7 +124,7 @@ public class AGTQRJSONStreamer extends AGTQRStreamer {
 
         @Override
         public void close() throws QueryEvaluationException {
-            method.releaseConnection();
+            response.releaseOrAbort(in, getDrainLimit());
         }
 
         private void parseBindingNames() throws IOException {
@@ -157,9 +157,12 @@ public class AGTQRJSONStreamer extends AGTQRStreamer {
             }
         }
 
-        private MapBindingSet parseNext() throws IOException, QueryResultParseException, QueryResultHandlerException {
-            MapBindingSet bindings = null;
+        private BindingSet parseNext() throws IOException, QueryResultParseException, QueryResultHandlerException {
+            Value[] values = null;
             parseBindingNames();
+            if (index == null) {
+                index = new AGBindingSet.Index(bindingNames == null ? Collections.emptyList() : bindingNames);
+            }
             while (jp.nextToken() != JsonToken.END_OBJECT) {
                 if (jp.getCurrentName().equals("bindings")) {
                     if (jp.nextToken() != JsonToken.START_ARRAY) {
@@ -167,7 +170,7 @@ public class AGTQRJSONStreamer extends AGTQRStreamer {
                     }
 
                     while (jp.nextToken() != JsonToken.END_ARRAY) {
-                        bindings = new MapBindingSet();
+                        values = new Value[index.size()];
                         if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
                             throw new QueryResultParseException("Did not find object in bindings array: " + jp.getCurrentName(), (long) jp.getCurrentLocation().getLineNr(), (long) jp.getCurrentLocation().getColumnNr());
                         }
@@ -209,14 +212,18 @@ public class AGTQRJSONStreamer extends AGTQRStreamer {
                                 }
                             }
 
-                            bindings.addBinding(bindingStr, AGHttpRepoClient.getApplicationValue(parseValue(type, value, lang, datatype), vf));
+                            final int slot = index.slot(bindingStr);
+                            if (slot < 0) {
+                                throw new QueryResultParseException("Unknown binding name: " + bindingStr, (long) jp.getCurrentLocation().getLineNr(), (long) jp.getCurrentLocation().getColumnNr());
+                            }
+                            values[slot] = applicationValue(parseValue(type, value, lang, datatype));
                         }
                     }
                 } else {
                     jp.nextToken();
                 }
             }
-            return bindings;
+            return values == null ? null : new AGBindingSet(index, values);
         }
 
         private Value parseValue(String type, String value, String language, String datatype) {
@@ -1,8 +1,10 @@
 package com.franz.agraph.http.handler;
 
+import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.repository.AGValueFactory;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
+import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.slf4j.Logger;
@@ -14,19 +16,49 @@ public abstract class AGTQRStreamer extends AGResponseHandler {
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
     protected AGValueFactory vf;
-    protected HttpMethod method;
+    protected AGHttpResponse response;
+    private boolean recoverExternalBNodes = true;
 
     public AGTQRStreamer(String mimeType) {
         super(mimeType);
     }
 
+    /**
+     * @return Whether values that encode external blank nodes are converted back.
+     * @since v3.0.6
+     */
+    public boolean getRecoverExternalBNodes() {
+        return recoverExternalBNodes;
+    }
+
+    /**
+     * Sets whether values that encode external blank nodes are converted
+     * back to blank nodes. Only needed if the repository allows external
+     * blank node ids, see {@link AGHttpRepoClient#getAllowExternalBlankNodeIds()};
+     * otherwise the check can be skipped. Defaults to true.
+     *
+     * @param recoverExternalBNodes whether to convert stored external blank nodes back
+     * @since v3.0.6
+     */
+    public void setRecoverExternalBNodes(boolean recoverExternalBNodes) {
+        this.recoverExternalBNodes = recoverExternalBNodes;
+    }
+
+    /**
+     * @param stored value as sent by the server
+     * @return The value to return to the application.
+     */
+    protected Value applicationValue(Value stored) {
+        return recoverExternalBNodes ? AGHttpRepoClient.getApplicationValue(stored, vf) : stored;
+    }
+
     @Override
     public abstract String getRequestMIMEType();
 
     /**
      * False because the Result will release the HTTP resources.
      * For most responses, AGHTTPClient releases resources after
-     * calling {@link #handleResponse(HttpMethod)},
+     * calling {@link #handleResponse(AGHttpResponse)},
      * but here the results are pulled when needed from the Result class,
      * which is an inner class of child classes.
      */
@@ -36,10 +68,26 @@ public abstract class AGTQRStreamer extends AGResponseHandler {
     }
 
     @Override
-    public abstract void handleResponse(HttpMethod method) throws IOException, AGHttpException;
+    public abstract void handleResponse(AGHttpResponse response) throws IOException, AGHttpException;
 
     public abstract TupleQueryResult getResult();
 
+    /**
+     * Creates a streamer for a format.
+     *
+     * @param format                format to request
+     * @param vf                    factory for the values in the result
+     * @param recoverExternalBNodes whether to convert stored external blank nodes back
+     * @return A new streamer.
+     * @since v3.0.6
+     */
+    public static AGTQRStreamer createStreamer(TupleQueryResultFormat format, AGValueFactory vf,
+                                               boolean recoverExternalBNodes) {
+        final AGTQRStreamer streamer = createStreamer(format, vf);
+        streamer.setRecoverExternalBNodes(recoverExternalBNodes);
+        return streamer;
+    }
+
     public static AGTQRStreamer createStreamer(TupleQueryResultFormat format, AGValueFactory vf) {
         if (format.equals(TupleQueryResultFormat.TSV)) {
             return new AGTQRTSVStreamer(vf);
@@ -47,6 +95,8 @@ public abstract class AGTQRStreamer extends AGResponseHandler {
             return new AGTQRXMLStreamer(vf);
         } else if (format.equals(TupleQueryResultFormat.JSON)) {
             return new AGTQRJSONStreamer(vf);
+        } else if (format.equals(TupleQueryResultFormat.BINARY)) {
+            return new AGTQRBinaryStreamer(vf);
         } else {
             throw new IllegalArgumentException("Unable to find AGTQRStreamer for format " + format);
         }
@@ -1,42 +1,54 @@
 package com.franz.agraph.http.handler;
 
-import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.repository.AGValueFactory;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Value;
-import org.eclipse.rdf4j.model.datatypes.XMLDatatypeUtil;
+import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
-import org.eclipse.rdf4j.query.impl.ListBindingSet;
 import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.eclipse.rdf4j.query.resultio.UnsupportedQueryResultFormatException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
 
 /**
  * Similar to {@link org.eclipse.rdf4j.query.resultio.sparqlxml.SPARQLResultsXMLParser}
  * but uses rdf4j-like TSV parsing instead of SAXParser so the results
  * streaming in the http response can be processed in a
  * {@link TupleQueryResult} pulling from the TSV stream.
+ * <p>
+ * Rows are tokenized in a single pass over a reusable character buffer,
+ * without regular expressions, and unquoted numbers are classified while
+ * they are scanned. All rows share the list of binding names.</p>
+ * <p>
+ * Rows can also be decoded by several threads, see
+ * {@link #setParallelDecoding(int, boolean, Executor)}.</p>
  *
  * @since v2.1.0
  */
 public class AGTQRTSVStreamer extends AGTQRStreamer {
+    private static final int BUFFER_SIZE = 8192;
+
     private InputStream in;
+    private int decodeThreads;
+    private boolean ordered = true;
+    private Executor executor;
 
     public AGTQRTSVStreamer(AGValueFactory vf) {
         super(TupleQueryResultFormat.TSV.getDefaultMIMEType());
@@ -49,25 +61,126 @@ public class AGTQRTSVStreamer extends AGTQRStreamer {
     }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
-        this.method = method;
-        in = AGResponseHandler.getInputStream(method);
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        this.response = response;
+        in = AGResponseHandler.getInputStream(response);
+    }
+
+    /**
+     * Decodes the rows on several threads.
+     * <p>
+     * The caller's thread reads the response and cuts it into batches of
+     * rows, which are turned into binding sets by tasks on the executor.</p>
+     *
+     * @param threads  number of decoding threads, 0 to decode on the caller's thread
+     * @param ordered  whether solutions are returned in the order of the
+     *                 response; if false, they are returned as soon as
+     *                 they are decoded
+     * @param executor runs the decoding tasks, which do not block
+     * @since v3.0.6
+     */
+    public void setParallelDecoding(int threads, boolean ordered, Executor executor) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Number of threads must not be negative: " + threads);
+        }
+        this.decodeThreads = threads;
+        this.ordered = ordered;
+        this.executor = executor;
     }
 
     @Override
     public TupleQueryResult getResult() {
-        return new Result();
+        return decodeThreads > 0 ? new ParallelResult() : new Result();
+    }
+
+    /**
+     * Decodes rows on several threads.
+     */
+    private class ParallelResult implements TupleQueryResult {
+        private List<String> bindingNames;
+        private AGBindingSet.Index index;
+        private final AGParallelDecoder<BindingSet> decoder = new AGParallelDecoder<BindingSet>(
+                response, in, true, decodeThreads, ordered, executor) {
+            @Override
+            protected void header(String line) {
+                List<String> names = new ArrayList<>();
+                if (line != null) {
+                    int start = 0;
+                    while (true) {
+                        int end = line.indexOf('\t', start);
+                        String name = line.substring(start, end < 0 ? line.length() : end);
+                        names.add(!name.isEmpty() && name.charAt(0) == '?' ? name.substring(1) : name);
+                        if (end < 0) {
+                            break;
+                        }
+                        start = end + 1;
+                    }
+                }
+                bindingNames = Collections.unmodifiableList(names);
+                index = new AGBindingSet.Index(bindingNames);
+            }
+
+            @Override
+            protected BindingSet decode(String line) {
+                Value[] values = new Value[index.size()];
+                int start = 0;
+                int column = 0;
+                while (column < values.length) {
+                    int end = line.indexOf('\t', start);
+                    values[column++] = applicationValue(parseValue(
+                            line.substring(start, end < 0 ? line.length() : end), vf));
+                    if (end < 0) {
+                        break;
+                    }
+                    start = end + 1;
+                }
+                return new AGBindingSet(index, values);
+            }
+        };
+
+        @Override
+        public List<String> getBindingNames() {
+            decoder.getHeader();
+            return bindingNames;
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return decoder.hasNext();
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+            return decoder.next();
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            decoder.close();
+        }
     }
 
     private class Result implements TupleQueryResult {
         private BindingSet next;
-        private InputStreamReader r;
-        private BufferedReader reader;
+        private final Reader reader;
         private List<String> bindingNames;
+        private AGBindingSet.Index index;
+
+        // Characters read from the response, scanned in place.
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int pos;
+        private int limit;
+        // Holds the start of a cell that spans a refill of the buffer.
+        private final StringBuilder pending = new StringBuilder();
+        private boolean endOfLine;
 
         public Result() {
-            r = new InputStreamReader(in, Charset.forName("UTF-8"));
-            reader = new BufferedReader(r);
+            reader = new InputStreamReader(in, StandardCharsets.UTF_8);
         }
 
         @Override
@@ -102,194 +215,304 @@ public class AGTQRTSVStreamer extends AGTQRStreamer {
 
         @Override
         public void close() throws QueryEvaluationException {
-            method.releaseConnection();
+            response.releaseOrAbort(in, getDrainLimit());
         }
 
         private void parseBindingNames() {
             if (bindingNames == null) {
-                String nextLine = readNextLine();
-                String[] lineTokens = nextLine.split("\t", -1);
-                bindingNames = new ArrayList<>(lineTokens.length);
-                for (String name : lineTokens) {
-                    if ('?' == name.charAt(0)) {
-                        bindingNames.add(name.substring(1));
-                    } else {
-                        bindingNames.add(name);
-                    }
+                List<String> names = new ArrayList<>();
+                if (startLine()) {
+                    do {
+                        String name = readCell();
+                        names.add(!name.isEmpty() && name.charAt(0) == '?' ? name.substring(1) : name);
+                    } while (!endOfLine);
                 }
+                bindingNames = Collections.unmodifiableList(names);
+                index = new AGBindingSet.Index(bindingNames);
             }
         }
 
-        private String readNextLine() {
+        /**
+         * Checks for another line and prepares to read its cells.
+         *
+         * @return False at the end of the input.
+         */
+        private boolean startLine() {
+            endOfLine = false;
+            return pos < limit || fill();
+        }
+
+        private boolean fill() {
             try {
-                return reader.readLine();
+                int n = reader.read(buffer, 0, buffer.length);
+                pos = 0;
+                limit = Math.max(n, 0);
+                return n > 0;
             } catch (IOException e) {
                 throw new UnsupportedQueryResultFormatException(e);
             }
         }
 
-        public BindingSet parse() throws QueryResultParseException, TupleQueryResultHandlerException {
-            parseBindingNames();
-
-            String nextLine = readNextLine();
-            if (nextLine == null) return null;
-
-            String[] lineTokens;
-            lineTokens = nextLine.split("\t", -1);
-            List<Value> values = new ArrayList<>();
-
-            for (String valueString : lineTokens) {
-                Value v = null;
-                if (valueString.startsWith("_:")) {
-                    v = vf.createBNode(valueString.substring(2));
-                } else if (valueString.startsWith("<") && valueString.endsWith(">")) {
-                    try {
-                        v = vf.createIRI(valueString.substring(1, valueString.length() - 1));
-                    } catch (IllegalArgumentException var14) {
-                        v = vf.createLiteral(valueString);
+        /**
+         * Reads the cell at the current position, up to the next tab or
+         * line break, and sets {@link #endOfLine} when the line is done.
+         */
+        private String readCell() {
+            int start = pos;
+            while (true) {
+                if (pos == limit) {
+                    pending.append(buffer, start, pos - start);
+                    if (!fill()) {
+                        endOfLine = true;
+                        return takePending();
                     }
-                } else if (valueString.startsWith("\"")) {
-                    v = this.parseLiteral(valueString);
-                } else if (!"".equals(valueString)) {
-                    if (valueString.matches("^[+\\-]?[\\d.].*")) {
-                        IRI datatype = null;
-                        if (XMLDatatypeUtil.isValidInteger(valueString)) {
-                            if (XMLDatatypeUtil.isValidNegativeInteger(valueString)) {
-                                datatype = XMLSchema.NEGATIVE_INTEGER;
-                            } else {
-                                datatype = XMLSchema.INTEGER;
-                            }
-                        } else if (XMLDatatypeUtil.isValidDecimal(valueString)) {
-                            datatype = XMLSchema.DECIMAL;
-                        } else if (XMLDatatypeUtil.isValidDouble(valueString)) {
-                            datatype = XMLSchema.DOUBLE;
-                        }
-
-                        if (datatype != null) {
-                            v = vf.createLiteral(valueString, datatype);
-                        } else {
-                            v = vf.createLiteral(valueString);
+                    start = 0;
+                }
+                char c = buffer[pos];
+                if (c == '\t' || c == '\n') {
+                    int end = pos;
+                    pos++;
+                    if (c == '\n') {
+                        endOfLine = true;
+                        if (end > start && buffer[end - 1] == '\r') {
+                            end--;
                         }
-                    } else {
-                        v = vf.createLiteral(valueString);
                     }
+                    if (pending.length() == 0) {
+                        return new String(buffer, start, end - start);
+                    }
+                    pending.append(buffer, start, end - start);
+                    return takePending();
                 }
-                values.add(AGHttpRepoClient.getApplicationValue(v, vf));
+                pos++;
             }
-
-            return new ListBindingSet(bindingNames, values.toArray(new Value[values.size()]));
         }
 
-        private Literal parseLiteral(String literal) throws IllegalArgumentException {
-            if (literal.startsWith("\"")) {
-                int endLabelIdx = this.findEndOfLabel(literal);
-                if (endLabelIdx != -1) {
-                    int startLangIdx = literal.indexOf("@", endLabelIdx);
-                    int startDtIdx = literal.indexOf("^^", endLabelIdx);
-                    if (startLangIdx != -1 && startDtIdx != -1) {
-                        throw new IllegalArgumentException("Literals can not have both a language and a datatype");
-                    }
+        private String takePending() {
+            int length = pending.length();
+            if (endOfLine && length > 0 && pending.charAt(length - 1) == '\r') {
+                length--;
+            }
+            String cell = pending.substring(0, length);
+            pending.setLength(0);
+            return cell;
+        }
 
-                    String label = literal.substring(1, endLabelIdx);
-                    label = decodeString(label);
-                    String datatype;
-                    if (startLangIdx != -1) {
-                        datatype = literal.substring(startLangIdx + 1);
-                        return vf.createLiteral(label, datatype);
-                    }
+        public BindingSet parse() throws QueryResultParseException, TupleQueryResultHandlerException {
+            parseBindingNames();
 
-                    if (startDtIdx != -1) {
-                        datatype = literal.substring(startDtIdx + 2);
-                        datatype = datatype.substring(1, datatype.length() - 1);
-                        IRI dtURI = vf.createIRI(datatype);
-                        return vf.createLiteral(label, dtURI);
-                    }
+            if (!startLine()) {
+                return null;
+            }
 
-                    return vf.createLiteral(label);
+            Value[] values = new Value[index.size()];
+            int column = 0;
+            do {
+                String valueString = readCell();
+                if (column < values.length) {
+                    values[column] = applicationValue(parseValue(valueString, vf));
                 }
+                column++;
+            } while (!endOfLine);
+
+            return new AGBindingSet(index, values);
+        }
+    }
+
+    /**
+     * Parses a cell of a TSV result.
+     *
+     * @param valueString the cell, without the separators
+     * @param vf          creates the value
+     * @return The value, or null if the cell is empty.
+     */
+    static Value parseValue(String valueString, ValueFactory vf) {
+        if (valueString.isEmpty()) {
+            return null;
+        }
+        char first = valueString.charAt(0);
+        if (first == '_' && valueString.startsWith("_:")) {
+            return vf.createBNode(valueString.substring(2));
+        } else if (first == '<' && valueString.endsWith(">")) {
+            try {
+                return vf.createIRI(valueString.substring(1, valueString.length() - 1));
+            } catch (IllegalArgumentException e) {
+                return vf.createLiteral(valueString);
             }
+        } else if (first == '"') {
+            return parseLiteral(valueString, vf);
+        }
+        IRI datatype = numericDatatype(valueString);
+        if (datatype != null) {
+            return vf.createLiteral(valueString, datatype);
+        }
+        return vf.createLiteral(valueString);
+    }
 
-            throw new IllegalArgumentException("Not a legal literal: " + literal);
+    /**
+     * Classifies an unquoted number in a single pass.
+     *
+     * @return xsd:integer (xsd:negativeInteger if less than zero),
+     *         xsd:decimal, xsd:double, or null if the cell is not a number.
+     */
+    private static IRI numericDatatype(String s) {
+        int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        char c = s.charAt(0);
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            i++;
+        }
+        boolean nonZero = false;
+        int digits = 0;
+        while (i < length && (c = s.charAt(i)) >= '0' && c <= '9') {
+            nonZero |= c != '0';
+            digits++;
+            i++;
+        }
+        boolean point = i < length && s.charAt(i) == '.';
+        if (point) {
+            i++;
+            while (i < length && (c = s.charAt(i)) >= '0' && c <= '9') {
+                digits++;
+                i++;
+            }
+        }
+        if (digits == 0) {
+            return null;
         }
+        if (i == length) {
+            if (point) {
+                return XMLSchema.DECIMAL;
+            }
+            return negative && nonZero ? XMLSchema.NEGATIVE_INTEGER : XMLSchema.INTEGER;
+        }
+        c = s.charAt(i);
+        if (c != 'e' && c != 'E') {
+            return null;
+        }
+        i++;
+        if (i < length && ((c = s.charAt(i)) == '+' || c == '-')) {
+            i++;
+        }
+        int exponentDigits = 0;
+        while (i < length && (c = s.charAt(i)) >= '0' && c <= '9') {
+            exponentDigits++;
+            i++;
+        }
+        return exponentDigits > 0 && i == length ? XMLSchema.DOUBLE : null;
+    }
 
-        private int findEndOfLabel(String literal) {
-            return literal.lastIndexOf("\"");
+    private static Literal parseLiteral(String literal, ValueFactory vf) throws IllegalArgumentException {
+        if (literal.startsWith("\"")) {
+            int endLabelIdx = findEndOfLabel(literal);
+            if (endLabelIdx != -1) {
+                int startLangIdx = literal.indexOf("@", endLabelIdx);
+                int startDtIdx = literal.indexOf("^^", endLabelIdx);
+                if (startLangIdx != -1 && startDtIdx != -1) {
+                    throw new IllegalArgumentException("Literals can not have both a language and a datatype");
+                }
+
+                String label = literal.substring(1, endLabelIdx);
+                label = decodeString(label);
+                String datatype;
+                if (startLangIdx != -1) {
+                    datatype = literal.substring(startLangIdx + 1);
+                    return vf.createLiteral(label, datatype);
+                }
+
+                if (startDtIdx != -1) {
+                    datatype = literal.substring(startDtIdx + 2);
+                    datatype = datatype.substring(1, datatype.length() - 1);
+                    IRI dtURI = vf.createIRI(datatype);
+                    return vf.createLiteral(label, dtURI);
+                }
+
+                return vf.createLiteral(label);
+            }
         }
 
-        private String decodeString(String s) {
-            int backSlashIdx = s.indexOf('\\');
-            if (backSlashIdx == -1) {
-                return s;
-            } else {
-                int startIdx = 0;
-                int sLength = s.length();
-
-                StringBuilder sb;
-                for (sb = new StringBuilder(sLength); backSlashIdx != -1; backSlashIdx = s.indexOf('\\', startIdx)) {
-                    sb.append(s.substring(startIdx, backSlashIdx));
-                    if (backSlashIdx + 1 >= sLength) {
-                        throw new IllegalArgumentException("Unescaped backslash in: " + s);
-                    }
+        throw new IllegalArgumentException("Not a legal literal: " + literal);
+    }
 
-                    char c = s.charAt(backSlashIdx + 1);
-                    if (c == 't') {
-                        sb.append('\t');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == 'r') {
-                        sb.append('\r');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == 'n') {
-                        sb.append('\n');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == '"') {
-                        sb.append('"');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == '>') {
-                        sb.append('>');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == '\\') {
-                        sb.append('\\');
-                        startIdx = backSlashIdx + 2;
+    private static int findEndOfLabel(String literal) {
+        return literal.lastIndexOf("\"");
+    }
+
+    private static String decodeString(String s) {
+        int backSlashIdx = s.indexOf('\\');
+        if (backSlashIdx == -1) {
+            return s;
+        } else {
+            int startIdx = 0;
+            int sLength = s.length();
+
+            StringBuilder sb;
+            for (sb = new StringBuilder(sLength); backSlashIdx != -1; backSlashIdx = s.indexOf('\\', startIdx)) {
+                sb.append(s.substring(startIdx, backSlashIdx));
+                if (backSlashIdx + 1 >= sLength) {
+                    throw new IllegalArgumentException("Unescaped backslash in: " + s);
+                }
+
+                char c = s.charAt(backSlashIdx + 1);
+                if (c == 't') {
+                    sb.append('\t');
+                    startIdx = backSlashIdx + 2;
+                } else if (c == 'r') {
+                    sb.append('\r');
+                    startIdx = backSlashIdx + 2;
+                } else if (c == 'n') {
+                    sb.append('\n');
+                    startIdx = backSlashIdx + 2;
+                } else if (c == '"') {
+                    sb.append('"');
+                    startIdx = backSlashIdx + 2;
+                } else if (c == '>') {
+                    sb.append('>');
+                    startIdx = backSlashIdx + 2;
+                } else if (c == '\\') {
+                    sb.append('\\');
+                    startIdx = backSlashIdx + 2;
+                } else {
+                    String xx;
+                    if (c == 'u') {
+                        if (backSlashIdx + 5 >= sLength) {
+                            throw new IllegalArgumentException("Incomplete Unicode escape sequence in: " + s);
+                        }
+
+                        xx = s.substring(backSlashIdx + 2, backSlashIdx + 6);
+
+                        try {
+                            c = (char) Integer.parseInt(xx, 16);
+                            sb.append(c);
+                            startIdx = backSlashIdx + 6;
+                        } catch (NumberFormatException var9) {
+                            throw new IllegalArgumentException("Illegal Unicode escape sequence '\\u" + xx + "' in: " + s);
+                        }
                     } else {
-                        String xx;
-                        if (c == 'u') {
-                            if (backSlashIdx + 5 >= sLength) {
-                                throw new IllegalArgumentException("Incomplete Unicode escape sequence in: " + s);
-                            }
-
-                            xx = s.substring(backSlashIdx + 2, backSlashIdx + 6);
-
-                            try {
-                                c = (char) Integer.parseInt(xx, 16);
-                                sb.append(c);
-                                startIdx = backSlashIdx + 6;
-                            } catch (NumberFormatException var9) {
-                                throw new IllegalArgumentException("Illegal Unicode escape sequence '\\u" + xx + "' in: " + s);
-                            }
-                        } else {
-                            if (c != 'U') {
-                                throw new IllegalArgumentException("Unescaped backslash in: " + s);
-                            }
-
-                            if (backSlashIdx + 9 >= sLength) {
-                                throw new IllegalArgumentException("Incomplete Unicode escape sequence in: " + s);
-                            }
-
-                            xx = s.substring(backSlashIdx + 2, backSlashIdx + 10);
-
-                            try {
-                                sb.appendCodePoint(Integer.parseInt(xx, 16));
-                                startIdx = backSlashIdx + 10;
-                            } catch (NumberFormatException var8) {
-                                throw new IllegalArgumentException("Illegal Unicode escape sequence '\\U" + xx + "' in: " + s);
-                            }
+                        if (c != 'U') {
+                            throw new IllegalArgumentException("Unescaped backslash in: " + s);
+                        }
+
+                        if (backSlashIdx + 9 >= sLength) {
+                            throw new IllegalArgumentException("Incomplete Unicode escape sequence in: " + s);
+                        }
+
+                        xx = s.substring(backSlashIdx + 2, backSlashIdx + 10);
+
+                        try {
+                            sb.appendCodePoint(Integer.parseInt(xx, 16));
+                            startIdx = backSlashIdx + 10;
+                        } catch (NumberFormatException var8) {
+                            throw new IllegalArgumentException("Illegal Unicode escape sequence '\\U" + xx + "' in: " + s);
                         }
                     }
                 }
-
-                sb.append(s.substring(startIdx));
-                return sb.toString();
             }
+
+            sb.append(s.substring(startIdx));
+            return sb.toString();
         }
     }
 }
@@ -4,15 +4,13 @@
 
 package com.franz.agraph.http.handler;
 
-import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.repository.AGValueFactory;
-import org.apache.commons.httpclient.HttpMethod;
+import com.franz.agraph.http.transport.AGHttpResponse;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.TupleQueryResult;
-import org.eclipse.rdf4j.query.impl.MapBindingSet;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 
 import javax.xml.stream.XMLInputFactory;
@@ -20,7 +18,9 @@ import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -36,9 +36,8 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
 
     private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
 
-    private final AGValueFactory vf;
+    private InputStream in;
     private XMLStreamReader xml;
-    private HttpMethod method;
 
     public AGTQRXMLStreamer(AGValueFactory vf) {
         super(TupleQueryResultFormat.SPARQL.getDefaultMIMEType());
@@ -53,7 +52,7 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
     /**
      * False because the Result will release the HTTP resources.
      * For most responses, AGHTTPClient releases resources after
-     * calling {@link #handleResponse(HttpMethod)},
+     * calling {@link #handleResponse(AGHttpResponse)},
      * but here the results are pulled when needed from the {@link Result}.
      */
     @Override
@@ -62,10 +61,11 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
     }
 
     @Override
-    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
-        this.method = method;
+    public void handleResponse(AGHttpResponse response) throws IOException, AGHttpException {
+        this.response = response;
         try {
-            xml = xmlInputFactory.createXMLStreamReader(AGResponseHandler.getInputStream(method));
+            in = AGResponseHandler.getInputStream(response);
+            xml = xmlInputFactory.createXMLStreamReader(in);
         } catch (XMLStreamException e) {
             throw new AGHttpException(e);
         }
@@ -79,8 +79,10 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
     class Result implements TupleQueryResult {
 
         private List<String> bindingNames;
+        private AGBindingSet.Index index;
 
-        private MapBindingSet next = null;
+        private Value[] row;
+        private BindingSet next = null;
         private boolean closed = false;
 
         /**
@@ -89,18 +91,19 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
          */
         private void parseBindingNames() {
             if (bindingNames == null) {
+                List<String> names = null;
                 try {
                     while (xml.hasNext()) {
                         switch (xml.next()) {
                             case XMLStreamConstants.START_ELEMENT:
                                 switch (xml.getLocalName()) {
                                     case "head":
-                                        bindingNames = new ArrayList<>();
+                                        names = new ArrayList<>();
                                         break;
                                     case "variable":
                                         for (int i = 0; i < xml.getAttributeCount(); i++) {
                                             if ("name".equals(xml.getAttributeLocalName(i))) {
-                                                bindingNames.add(xml.getAttributeValue(i));
+                                                names.add(xml.getAttributeValue(i));
                                             }
                                         }
                                         break;
@@ -112,6 +115,7 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
                                 break;
                             case XMLStreamConstants.END_ELEMENT:
                                 if ("head".equals(xml.getLocalName())) {
+                                    setBindingNames(names);
                                     return;
                                 }
                                 break;
@@ -123,6 +127,19 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
             }
         }
 
+        private void setBindingNames(List<String> names) {
+            bindingNames = names == null ? Collections.emptyList() : Collections.unmodifiableList(names);
+            index = new AGBindingSet.Index(bindingNames);
+        }
+
+        private void addBinding(String name, Value value) throws QueryEvaluationException {
+            final int slot = index.slot(name);
+            if (slot < 0) {
+                throw new QueryEvaluationException("Unknown binding name: " + name);
+            }
+            row[slot] = value;
+        }
+
         @Override
         public List<String> getBindingNames() {
             parseBindingNames();
@@ -143,7 +160,7 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
                         if (xml.isStartElement()) {
                             String name = xml.getLocalName();
                             if ("result".equals(name)) {
-                                next = new MapBindingSet(bindingNames.size());
+                                row = new Value[index.size()];
                             } else if ("results".equals(xml.getLocalName())) {
                                 // continue
                             } else if ("binding".equals(name)) {
@@ -177,17 +194,19 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
                                 } else {
                                     value = vf.createLiteral(text);
                                 }
-                                next.addBinding(bindingName, value);
+                                addBinding(bindingName, value);
                             } else if ("uri".equals(name)) {
-                                next.addBinding(bindingName, AGHttpRepoClient.getApplicationResource(vf.createIRI(xml.getElementText()), vf));
+                                addBinding(bindingName, applicationValue(vf.createIRI(xml.getElementText())));
                             } else if ("bnode".equals(name)) {
-                                next.addBinding(bindingName, vf.createBNode(xml.getElementText()));
+                                addBinding(bindingName, vf.createBNode(xml.getElementText()));
                             } else {
                                 log.warn("unknown elem: " + name + " attrs=" + xml.getAttributeCount());
                             }
                         } else if (xml.isEndElement()) {
                             if ("result".equals(xml.getLocalName())) {
-                                return next != null;
+                                next = new AGBindingSet(index, row);
+                                row = null;
+                                return true;
                             } else if ("results".equals(xml.getLocalName())) {
                                 // in normal use, closed will be called here
                                 close();
@@ -228,12 +247,7 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
         public void close() throws QueryEvaluationException {
             if (!closed) {
                 closed = true;
-                try {
-                    method.getResponseBodyAsStream().close();
-                    method.releaseConnection();
-                } catch (IOException e) {
-                    throw new QueryEvaluationException("I/O error closing resources", e);
-                }
+                response.releaseOrAbort(in, getDrainLimit());
             }
         }
 
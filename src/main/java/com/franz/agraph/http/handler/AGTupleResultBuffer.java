@@ -0,0 +1,141 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryResultHandlerException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.TupleQueryResultHandler;
+import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Collects tuple query results in an {@link AGResultBuffer}, like
+ * {@link org.eclipse.rdf4j.query.impl.TupleQueryResultBuilder} but
+ * within a memory budget.
+ *
+ * @since v3.0.6
+ */
+public class AGTupleResultBuffer implements TupleQueryResultHandler, Closeable {
+
+    private final ValueFactory vf;
+    private final long memoryLimit;
+    private List<String> bindingNames = Collections.emptyList();
+    private AGBindingSet.Index index = new AGBindingSet.Index(bindingNames);
+    private AGResultBuffer buffer;
+
+    /**
+     * @param vf          creates the values of rows read back from disk
+     * @param memoryLimit estimated number of bytes to keep on the heap
+     */
+    public AGTupleResultBuffer(ValueFactory vf, long memoryLimit) {
+        this.vf = vf;
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public void startQueryResult(List<String> bindingNames) throws TupleQueryResultHandlerException {
+        this.bindingNames = Collections.unmodifiableList(bindingNames);
+        index = new AGBindingSet.Index(bindingNames);
+        close();
+        buffer = new AGResultBuffer(bindingNames.size(), vf, memoryLimit);
+    }
+
+    @Override
+    public void handleSolution(BindingSet bindingSet) throws TupleQueryResultHandlerException {
+        final List<String> names = index.getNames();
+        final Value[] row = new Value[names.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = bindingSet.getValue(names.get(i));
+        }
+        try {
+            buffer.add(row);
+        } catch (IOException e) {
+            throw new TupleQueryResultHandlerException(e);
+        }
+    }
+
+    @Override
+    public void endQueryResult() throws TupleQueryResultHandlerException {
+        try {
+            buffer.finish();
+        } catch (IOException e) {
+            throw new TupleQueryResultHandlerException(e);
+        }
+    }
+
+    @Override
+    public void handleBoolean(boolean value) throws QueryResultHandlerException {
+        throw new QueryResultHandlerException("Unexpected boolean result");
+    }
+
+    @Override
+    public void handleLinks(List<String> linkUrls) throws QueryResultHandlerException {
+        // ignore
+    }
+
+    /**
+     * @return The underlying buffer, null before the result started.
+     */
+    public AGResultBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns a result over the collected solutions. May be called more
+     * than once, each result starts from the first solution.
+     *
+     * @param closeBuffer whether closing the result, or reading it to the
+     *                    end, also closes this buffer
+     * @return A new result.
+     */
+    public TupleQueryResult getQueryResult(boolean closeBuffer) {
+        if (buffer == null) {
+            return new IteratingTupleQueryResult(bindingNames, Collections.<BindingSet>emptyList());
+        }
+        final AGResultBuffer rows = buffer;
+        final AGBindingSet.Index rowIndex = index;
+        final Iterator<Value[]> it = rows.iterator();
+        final Iterator<BindingSet> solutions = new Iterator<BindingSet>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public BindingSet next() {
+                return new AGBindingSet(rowIndex, it.next());
+            }
+        };
+        return new IteratingTupleQueryResult(bindingNames, () -> solutions) {
+            @Override
+            protected void handleClose() throws QueryEvaluationException {
+                super.handleClose();
+                if (closeBuffer) {
+                    rows.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Deletes the file of the buffer, if any.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+}
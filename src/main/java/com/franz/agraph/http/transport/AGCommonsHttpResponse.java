@@ -0,0 +1,79 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.transport;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Adapts a commons-httpclient {@link HttpMethod} to the {@link AGHttpResponse} interface.
+ *
+ * @since v3.0.6
+ */
+public class AGCommonsHttpResponse implements AGHttpResponse {
+    private final HttpMethod method;
+    private boolean released = false;
+
+    public AGCommonsHttpResponse(HttpMethod method) {
+        this.method = method;
+    }
+
+    @Override
+    public int getStatusCode() {
+        return method.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() {
+        return method.getStatusText();
+    }
+
+    @Override
+    public String getResponseHeader(String name) {
+        Header[] headers = method.getResponseHeaders(name);
+        if (headers == null || headers.length == 0) {
+            return null;
+        }
+        return headers[0].getValue();
+    }
+
+    @Override
+    public InputStream getResponseBody() throws IOException {
+        return method.getResponseBodyAsStream();
+    }
+
+    @Override
+    public String getURI() throws IOException {
+        return method.getURI().getURI();
+    }
+
+    @Override
+    public void release() {
+        if (!released) {
+            released = true;
+            // Note: this will read the response body if necessary
+            // to allow connection reuse.
+            method.releaseConnection();
+        }
+    }
+
+    @Override
+    public void abort() {
+        if (!released) {
+            released = true;
+            // Closes the socket instead of reading the rest of the body.
+            method.abort();
+            method.releaseConnection();
+        }
+    }
+
+    @Override
+    public HttpMethod getHttpMethod() {
+        return method;
+    }
+}
@@ -0,0 +1,282 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.transport;
+
+import com.franz.agraph.http.handler.AGMethodRetryHandler;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Transport based on commons-httpclient 3.x.
+ * <p>
+ * Each request in flight uses one socket from a
+ * {@link MultiThreadedHttpConnectionManager}, and blocks the calling thread
+ * until the response headers have been received. Asynchronous requests
+ * are executed on a shared pool of daemon threads, and cancelling one
+ * aborts its method.</p>
+ *
+ * @since v3.0.6
+ */
+public class AGCommonsHttpTransport implements AGHttpTransport {
+    private static final Logger logger = LoggerFactory.getLogger(AGCommonsHttpTransport.class);
+
+    // Runs blocking requests submitted through executeAsync().
+    // Created lazily in getAsyncExecutor().
+    private static ExecutorService asyncExecutor;
+
+    private final HttpClient httpClient;
+    private final AGMethodRetryHandler retryHandler = new AGMethodRetryHandler();
+    // Only set if the manager was created by this transport
+    // and should be shut down when the transport is closed.
+    private HttpConnectionManager ownedManager;
+
+    /**
+     * Creates a transport that uses the given connection manager.
+     *
+     * @param manager   Connection manager, or null to create a new one.
+     * @param ownManager If true, the manager will be shut down when this transport
+     *                   is closed. Managers created by this constructor are always owned.
+     */
+    public AGCommonsHttpTransport(HttpConnectionManager manager, boolean ownManager) {
+        this(manager, ownManager, 0);
+    }
+
+    private AGCommonsHttpTransport(HttpConnectionManager manager, boolean ownManager, int maxConnections) {
+        if (manager == null) {
+            manager = createManager(null, maxConnections);
+            ownManager = true;
+        }
+        httpClient = new HttpClient(manager);
+        if (ownManager) {
+            ownedManager = manager;
+        }
+    }
+
+    /**
+     * Creates a transport with a new connection manager.
+     *
+     * @param params Connection manager parameters, may be null.
+     */
+    public AGCommonsHttpTransport(HttpConnectionManagerParams params) {
+        this(params, 0);
+    }
+
+    /**
+     * Creates a transport with a new connection manager.
+     *
+     * @param params         Connection manager parameters, may be null.
+     * @param maxConnections Maximum number of connections, 0 or less for no limit.
+     */
+    public AGCommonsHttpTransport(HttpConnectionManagerParams params, int maxConnections) {
+        this(createManager(params, maxConnections), true, maxConnections);
+    }
+
+    /**
+     * Creates a transport with a new connection manager using default settings.
+     */
+    public AGCommonsHttpTransport() {
+        this((HttpConnectionManagerParams) null);
+    }
+
+    /**
+     * Creates a connection manager suitable for concurrent access.
+     *
+     * @param params Connection manager parameters, may be null.
+     * @return A new connection manager.
+     */
+    public static HttpConnectionManager createManager(HttpConnectionManagerParams params) {
+        return createManager(params, 0);
+    }
+
+    /**
+     * Creates a connection manager suitable for concurrent access.
+     *
+     * @param params         Connection manager parameters, may be null.
+     * @param maxConnections Maximum number of connections per host and in total,
+     *                       0 or less for no limit.
+     * @return A new connection manager.
+     */
+    public static HttpConnectionManager createManager(HttpConnectionManagerParams params,
+                                                      int maxConnections) {
+        // Use MultiThreadedHttpConnectionManager to allow concurrent access
+        // on HttpClient
+        final MultiThreadedHttpConnectionManager manager =
+                new MultiThreadedHttpConnectionManager();
+
+        if (params == null) {
+            params = new HttpConnectionManagerParams();
+        }
+
+        // The default is 2 connections per host. Callers limit the number of
+        // requests in flight with AGHttpConnectionLimiter, so the manager only
+        // needs to enforce the same limit as a safety net.
+        final int max = maxConnections > 0 ? maxConnections : Integer.MAX_VALUE;
+        params.setDefaultMaxConnectionsPerHost(max);
+        params.setMaxTotalConnections(max);
+        manager.setParams(params);
+        return manager;
+    }
+
+    private static synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            // Daemon threads, so that the executor will not prevent
+            // the application from shutting down.
+            asyncExecutor = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return asyncExecutor;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public HttpConnectionManager getConnectionManager() {
+        return httpClient.getHttpConnectionManager();
+    }
+
+    @Override
+    public AGHttpResponse execute(AGHttpRequest request) throws IOException {
+        return execute(prepareMethod(request));
+    }
+
+    private HttpMethodBase prepareMethod(AGHttpRequest request) {
+        final HttpMethodBase method = createMethod(request);
+        for (Header header : request.getHeaders()) {
+            method.addRequestHeader(header);
+        }
+        if (request.getQueryParams() != null) {
+            method.setQueryString(request.getQueryParams());
+        }
+        if (method instanceof PostMethod && request.getFormParams() != null) {
+            ((PostMethod) method).setRequestBody(request.getFormParams());
+        } else if (method instanceof EntityEnclosingMethod && request.getEntity() != null) {
+            ((EntityEnclosingMethod) method).setRequestEntity(request.getEntity());
+        }
+        if (httpClient.getParams().isAuthenticationPreemptive()) {
+            method.setDoAuthentication(true);
+        }
+        // This retry handler takes care of retrying the HTTP request in case of
+        // connection problems. It does not deal with retrying in case of HTTP error codes.
+        method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, retryHandler);
+        return method;
+    }
+
+    private AGHttpResponse execute(HttpMethodBase method) throws IOException {
+        try {
+            httpClient.executeMethod(method);
+        } catch (IOException | RuntimeException e) {
+            method.releaseConnection();
+            throw e;
+        }
+        return new AGCommonsHttpResponse(method);
+    }
+
+    private static HttpMethodBase createMethod(AGHttpRequest request) {
+        switch (request.getMethod()) {
+            case AGHttpRequest.GET:
+                return new GetMethod(request.getURL());
+            case AGHttpRequest.POST:
+                return new PostMethod(request.getURL());
+            case AGHttpRequest.PUT:
+                return new PutMethod(request.getURL());
+            case AGHttpRequest.DELETE:
+                return new DeleteMethod(request.getURL());
+            default:
+                throw new IllegalArgumentException("Unsupported HTTP method: " + request.getMethod());
+        }
+    }
+
+    @Override
+    public CompletableFuture<AGHttpResponse> executeAsync(AGHttpRequest request) {
+        final CompletableFuture<AGHttpResponse> result = new CompletableFuture<>();
+        final HttpMethodBase method;
+        try {
+            method = prepareMethod(request);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        getAsyncExecutor().execute(() -> {
+            if (result.isDone()) {
+                // Cancelled before it was sent.
+                return;
+            }
+            final AGHttpResponse response;
+            try {
+                response = execute(method);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (!result.complete(response)) {
+                // Cancelled while waiting for the response headers.
+                response.abort();
+            }
+        });
+        // Closes the socket of a request in flight.
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                method.abort();
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void setCredentials(String serverURL, String username, String password) {
+        if (username != null && password != null) {
+            try {
+                URL server = new URL(serverURL);
+                AuthScope authScope = new AuthScope(server.getHost(), AuthScope.ANY_PORT);
+                httpClient.getState().setCredentials(authScope,
+                        new UsernamePasswordCredentials(username, password));
+                httpClient.getParams().setAuthenticationPreemptive(true);
+            } catch (MalformedURLException e) {
+                logger.warn("Unable to set username and password for malformed URL " + serverURL, e);
+            }
+        } else {
+            httpClient.getState().clearCredentials();
+            httpClient.getParams().setAuthenticationPreemptive(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownedManager instanceof MultiThreadedHttpConnectionManager) {
+            ((MultiThreadedHttpConnectionManager) ownedManager).shutdown();
+        }
+        ownedManager = null;
+    }
+
+    @Override
+    public String toString() {
+        return "{" + super.toString() + " " + httpClient + "}";
+    }
+}
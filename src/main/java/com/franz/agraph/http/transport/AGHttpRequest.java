@@ -0,0 +1,117 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.transport;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transport independent description of an HTTP request.
+ * <p>
+ * Parameters can either be sent in the query string or, for POST requests
+ * without a request entity, as an <code>application/x-www-form-urlencoded</code>
+ * body.</p>
+ *
+ * @since v3.0.6
+ */
+public class AGHttpRequest {
+    public static final String GET = "GET";
+    public static final String POST = "POST";
+    public static final String PUT = "PUT";
+    public static final String DELETE = "DELETE";
+
+    private final String method;
+    private final String url;
+    private final List<Header> headers = new ArrayList<>();
+    private NameValuePair[] queryParams;
+    private NameValuePair[] formParams;
+    private RequestEntity entity;
+
+    /**
+     * Creates a request.
+     *
+     * @param method HTTP method name, one of {@link #GET}, {@link #POST},
+     *               {@link #PUT} or {@link #DELETE}
+     * @param url    Request URL, without the query string.
+     */
+    public AGHttpRequest(String method, String url) {
+        this.method = method;
+        this.url = url;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getURL() {
+        return url;
+    }
+
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    public void addHeader(Header header) {
+        headers.add(header);
+    }
+
+    public void addHeader(String name, String value) {
+        headers.add(new Header(name, value));
+    }
+
+    /**
+     * Gets the value of the first request header with a given name.
+     *
+     * @param name Header name (case insensitive).
+     * @return Header value or null if the header is not present.
+     */
+    public String getHeader(String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    public NameValuePair[] getQueryParams() {
+        return queryParams;
+    }
+
+    public void setQueryParams(NameValuePair[] queryParams) {
+        this.queryParams = queryParams;
+    }
+
+    public NameValuePair[] getFormParams() {
+        return formParams;
+    }
+
+    /**
+     * Sets parameters to be sent as a form encoded request body.
+     * Only meaningful for POST requests without a request entity.
+     *
+     * @param formParams Parameters.
+     */
+    public void setFormParams(NameValuePair[] formParams) {
+        this.formParams = formParams;
+    }
+
+    public RequestEntity getEntity() {
+        return entity;
+    }
+
+    public void setEntity(RequestEntity entity) {
+        this.entity = entity;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url;
+    }
+}
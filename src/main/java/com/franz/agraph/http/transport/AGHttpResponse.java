@@ -0,0 +1,118 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.transport;
+
+import org.apache.commons.httpclient.HttpMethod;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The response to an {@link AGHttpRequest}, as returned by an {@link AGHttpTransport}.
+ * <p>
+ * A response holds on to the underlying connection (or HTTP/2 stream) until
+ * either {@link #release()} or {@link #abort()} is called. Response handlers
+ * that stream results take ownership of the response and must call one of
+ * these methods once they are done with it.</p>
+ *
+ * @since v3.0.6
+ */
+public interface AGHttpResponse {
+
+    int getStatusCode();
+
+    /**
+     * @return The reason phrase sent by the server, or an empty string
+     *         if the transport does not expose it.
+     */
+    String getStatusText();
+
+    /**
+     * Gets the value of the first response header with a given name.
+     *
+     * @param name Header name (case insensitive).
+     * @return Header value or null if the header is not present.
+     */
+    String getResponseHeader(String name);
+
+    /**
+     * Returns the raw (possibly compressed) response body.
+     *
+     * @return A stream or null if the response has no body.
+     * @throws IOException if the body can not be accessed.
+     */
+    InputStream getResponseBody() throws IOException;
+
+    /**
+     * @return The URI of the request that produced this response.
+     * @throws IOException if the URI can not be determined.
+     */
+    String getURI() throws IOException;
+
+    /**
+     * Releases the underlying connection so that it can be reused.
+     * This might read the rest of the response body.
+     * Calling this method more than once has no effect.
+     */
+    void release();
+
+    /**
+     * Discards the underlying connection without reading the rest of
+     * the response body. Use this to stop a large response early.
+     * Calling this method after {@link #release()} has no effect.
+     */
+    void abort();
+
+    /**
+     * Ends a response whose body may not have been read to the end.
+     * <p>
+     * Reads at most {@code drainLimit} more bytes from the body. If it ends
+     * within them the connection is {@link #release() released} so that it
+     * can be reused, otherwise it is {@link #abort() aborted}: for a large
+     * remainder opening a new connection later is cheaper than downloading
+     * data that nobody will look at. Closing the connection is also how the
+     * server learns that it can stop producing the response.</p>
+     *
+     * @param body       the stream the body is being read from, may be null
+     * @param drainLimit maximum number of bytes to read before giving up on the connection
+     */
+    default void releaseOrAbort(InputStream body, long drainLimit) {
+        boolean drained = body == null;
+        if (!drained) {
+            try {
+                // One byte past the limit tells whether the body ends within it.
+                final byte[] buffer = new byte[drainLimit >= 8192 ? 8192 : (int) Math.max(drainLimit, 0) + 1];
+                long left = Math.max(drainLimit, 0);
+                int n;
+                while ((n = body.read(buffer, 0, left < buffer.length ? (int) left + 1 : buffer.length)) >= 0) {
+                    left -= n;
+                    if (left < 0) {
+                        break;
+                    }
+                }
+                drained = n < 0;
+            } catch (IOException e) {
+                drained = false;
+            }
+        }
+        if (drained) {
+            release();
+        } else {
+            abort();
+        }
+    }
+
+    /**
+     * Returns the commons-httpclient method object backing this response.
+     * Used only to support response handlers written against
+     * the pre-transport API.
+     *
+     * @return A method object or null if the response was not produced
+     *         by {@link AGCommonsHttpTransport}.
+     */
+    default HttpMethod getHttpMethod() {
+        return null;
+    }
+}
@@ -0,0 +1,64 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.transport;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The component that actually sends HTTP requests on behalf of
+ * {@link com.franz.agraph.http.AGHTTPClient}.
+ * <p>
+ * A transport owns the network resources (sockets, connection pools,
+ * I/O threads) and is safe to use from multiple threads at once.
+ * The transport does not interpret status codes; this is done
+ * by {@link com.franz.agraph.http.AGHTTPClient} and the response
+ * handlers.</p>
+ *
+ * @see AGCommonsHttpTransport
+ * @see AGJdkHttpTransport
+ * @since v3.0.6
+ */
+public interface AGHttpTransport extends AutoCloseable {
+
+    /**
+     * Sends a request and waits for the response headers.
+     * <p>
+     * The caller must eventually {@link AGHttpResponse#release() release}
+     * or {@link AGHttpResponse#abort() abort} the returned response.</p>
+     *
+     * @param request Request to be sent.
+     * @return The response, with an unread body.
+     * @throws IOException if the request could not be sent.
+     */
+    AGHttpResponse execute(AGHttpRequest request) throws IOException;
+
+    /**
+     * Sends a request without blocking the calling thread.
+     * <p>
+     * Cancelling the returned future before it completes
+     * will abort the request if the transport supports it.</p>
+     *
+     * @param request Request to be sent.
+     * @return A future that completes once response headers are available.
+     */
+    CompletableFuture<AGHttpResponse> executeAsync(AGHttpRequest request);
+
+    /**
+     * Configures credentials for Basic authentication.
+     * Credentials are sent preemptively with each request.
+     *
+     * @param serverURL URL of the server the credentials are meant for.
+     * @param username  User name or null to clear credentials.
+     * @param password  Password or null to clear credentials.
+     */
+    void setCredentials(String serverURL, String username, String password);
+
+    /**
+     * Releases all network resources held by this transport.
+     */
+    @Override
+    void close();
+}
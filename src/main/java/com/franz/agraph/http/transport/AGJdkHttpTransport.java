@@ -0,0 +1,424 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.transport;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transport based on the JDK HTTP client ({@link HttpClient}).
+ * <p>
+ * HTTP/2 is used when the server supports it, in which case all requests
+ * to a server are multiplexed over a single connection. Socket I/O is
+ * non-blocking and done by a small number of threads, so the number of
+ * requests in flight is not limited by the number of sockets or threads.
+ * Requests sent with {@link #executeAsync(AGHttpRequest)} do not block
+ * any thread while waiting for the server.</p>
+ *
+ * <pre>{@code
+ * AGServer server = new AGServer(url, user, password, new AGJdkHttpTransport());
+ * }</pre>
+ *
+ * @since v3.0.6
+ */
+public class AGJdkHttpTransport implements AGHttpTransport {
+    private static final Logger logger = LoggerFactory.getLogger(AGJdkHttpTransport.class);
+
+    // Headers that are managed by the JDK client and can not be set explicitly.
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"));
+
+    // Request entities with a known length up to this size are buffered
+    // in memory, larger ones are streamed.
+    private static final int MAX_BUFFERED_ENTITY_SIZE = 1024 * 1024;
+    // Size of chunks used to stream request entities.
+    private static final int CHUNK_SIZE = 16 * 1024;
+    // Maximum number of chunks waiting to be sent.
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    private final HttpClient client;
+    // Only set if the executor was created by this transport.
+    private final ExecutorService ownedExecutor;
+    private volatile String authorization;
+    private volatile Duration requestTimeout;
+
+    /**
+     * Creates a transport that prefers HTTP/2 and uses its own pool of daemon threads.
+     */
+    public AGJdkHttpTransport() {
+        this((Duration) null);
+    }
+
+    /**
+     * Creates a transport that prefers HTTP/2 and uses its own pool of daemon threads.
+     *
+     * @param connectTimeout Timeout for establishing connections, or null for none.
+     */
+    public AGJdkHttpTransport(Duration connectTimeout) {
+        ownedExecutor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        final HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(ownedExecutor);
+        if (connectTimeout != null) {
+            builder.connectTimeout(connectTimeout);
+        }
+        client = builder.build();
+    }
+
+    /**
+     * Creates a transport that sends requests using an existing client.
+     * <p>
+     * Use this to customize SSL, proxy or executor settings.</p>
+     *
+     * @param client JDK HTTP client.
+     */
+    public AGJdkHttpTransport(HttpClient client) {
+        this.client = client;
+        this.ownedExecutor = null;
+    }
+
+    public HttpClient getHttpClient() {
+        return client;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Sets the maximum time to wait for response headers.
+     * <p>
+     * The JDK client has no socket (read) timeout, so this is also where
+     * {@link com.franz.agraph.pool.AGConnProp#httpSocketTimeout} ends up
+     * when this transport is used. Unlike a socket timeout it does not
+     * limit the time spent reading the response body.
+     * WARNING: this may break long queries.</p>
+     *
+     * @param requestTimeout Timeout or null for no limit (the default).
+     */
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    @Override
+    public AGHttpResponse execute(AGHttpRequest request) throws IOException {
+        // Not retried here: the JDK client already retries idempotent
+        // requests once when the connection is dropped.
+        try {
+            return new Response(client.send(buildRequest(request), BodyHandlers.ofInputStream()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException ioe = new InterruptedIOException("Interrupted: " + request);
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    @Override
+    public CompletableFuture<AGHttpResponse> executeAsync(AGHttpRequest request) {
+        final HttpRequest httpRequest;
+        try {
+            httpRequest = buildRequest(request);
+        } catch (IOException e) {
+            final CompletableFuture<AGHttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        final CompletableFuture<HttpResponse<InputStream>> sent =
+                client.sendAsync(httpRequest, BodyHandlers.ofInputStream());
+        final CompletableFuture<AGHttpResponse> result = sent.thenApply(Response::new);
+        // Propagate cancellation to the HTTP exchange.
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private HttpRequest buildRequest(AGHttpRequest request) throws IOException {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(
+                URI.create(appendQuery(request.getURL(), request.getQueryParams())));
+        for (Header header : request.getHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase())) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        if (authorization != null && request.getHeader("Authorization") == null) {
+            builder.header("Authorization", authorization);
+        }
+        if (requestTimeout != null) {
+            builder.timeout(requestTimeout);
+        }
+        final RequestEntity entity = request.getEntity();
+        final BodyPublisher body;
+        if (request.getFormParams() != null) {
+            if (request.getHeader("Content-Type") == null) {
+                builder.header("Content-Type", "application/x-www-form-urlencoded");
+            }
+            body = BodyPublishers.ofString(encode(request.getFormParams()), StandardCharsets.UTF_8);
+        } else if (entity != null) {
+            if (request.getHeader("Content-Type") == null && entity.getContentType() != null) {
+                builder.header("Content-Type", entity.getContentType());
+            }
+            body = bodyPublisher(entity);
+        } else {
+            body = BodyPublishers.noBody();
+        }
+        return builder.method(request.getMethod(), body).build();
+    }
+
+    private BodyPublisher bodyPublisher(RequestEntity entity) throws IOException {
+        final long length = entity.getContentLength();
+        if (length >= 0 && length <= MAX_BUFFERED_ENTITY_SIZE) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+            entity.writeRequest(out);
+            return BodyPublishers.ofByteArray(out.toByteArray());
+        }
+        // Stream the entity: it is written by a separate task,
+        // in chunks, as fast as the connection can accept them.
+        final AtomicBoolean started = new AtomicBoolean(false);
+        final Flow.Publisher<ByteBuffer> publisher = subscriber -> {
+            if (!started.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IOException("Request entity is not repeatable"));
+                return;
+            }
+            final SubmissionPublisher<ByteBuffer> chunks =
+                    new SubmissionPublisher<>(getExecutor(), MAX_PENDING_CHUNKS);
+            chunks.subscribe(subscriber);
+            getExecutor().execute(() -> {
+                try (OutputStream out = new PublisherOutputStream(chunks)) {
+                    entity.writeRequest(out);
+                } catch (IOException | RuntimeException e) {
+                    chunks.closeExceptionally(e);
+                }
+            });
+        };
+        return length >= 0
+                ? BodyPublishers.fromPublisher(publisher, length)
+                : BodyPublishers.fromPublisher(publisher);
+    }
+
+    private Executor getExecutor() {
+        if (ownedExecutor != null) {
+            return ownedExecutor;
+        }
+        return client.executor().orElseGet(ForkJoinPool::commonPool);
+    }
+
+    private static String appendQuery(String url, NameValuePair[] params) {
+        if (params == null || params.length == 0) {
+            return url;
+        }
+        return url + (url.indexOf('?') < 0 ? '?' : '&') + encode(params);
+    }
+
+    private static String encode(NameValuePair[] params) {
+        final StringBuilder result = new StringBuilder();
+        for (NameValuePair param : params) {
+            if (param.getName() == null) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append('&');
+            }
+            result.append(URLEncoder.encode(param.getName(), StandardCharsets.UTF_8));
+            result.append('=');
+            if (param.getValue() != null) {
+                result.append(URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8));
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public void setCredentials(String serverURL, String username, String password) {
+        if (username != null && password != null) {
+            final String token = username + ":" + password;
+            authorization = "Basic " + Base64.getEncoder().encodeToString(
+                    token.getBytes(StandardCharsets.UTF_8));
+        } else {
+            authorization = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" + super.toString() + " " + client + "}";
+    }
+
+    /**
+     * Splits written data into chunks submitted to a publisher.
+     * Blocks when the connection can not keep up.
+     */
+    private static final class PublisherOutputStream extends OutputStream {
+        private final SubmissionPublisher<ByteBuffer> publisher;
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int count = 0;
+
+        PublisherOutputStream(SubmissionPublisher<ByteBuffer> publisher) {
+            this.publisher = publisher;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                final int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                if (publisher.isClosed() || !publisher.hasSubscribers()) {
+                    throw new IOException("Request body subscriber is gone");
+                }
+                // Chunks are handed over, so a new buffer is needed.
+                publisher.submit(ByteBuffer.wrap(buffer, 0, count));
+                buffer = new byte[CHUNK_SIZE];
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushChunk();
+            publisher.close();
+        }
+    }
+
+    private static final class Response implements AGHttpResponse {
+        private final HttpResponse<InputStream> response;
+        private boolean done = false;
+
+        Response(HttpResponse<InputStream> response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getStatusText() {
+            // HTTP/2 has no reason phrases, and the JDK client
+            // does not expose them for HTTP/1.1.
+            return "";
+        }
+
+        @Override
+        public String getResponseHeader(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public InputStream getResponseBody() {
+            if (response.statusCode() == 204) {
+                return null;
+            }
+            return response.body();
+        }
+
+        @Override
+        public String getURI() {
+            return response.uri().toString();
+        }
+
+        @Override
+        public void release() {
+            if (!done) {
+                done = true;
+                // Read the rest of the body so that an HTTP/1.1
+                // connection can be reused.
+                try (InputStream in = response.body()) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    logger.debug("Error while releasing response", e);
+                }
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (!done) {
+                done = true;
+                // Closing the stream early cancels the exchange.
+                try {
+                    response.body().close();
+                } catch (IOException e) {
+                    logger.debug("Error while aborting response", e);
+                }
+            }
+        }
+    }
+}
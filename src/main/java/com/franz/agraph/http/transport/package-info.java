@@ -0,0 +1,18 @@
+/******************************************************************************
+** See the file LICENSE for the full license governing this code.
+******************************************************************************/
+
+/**
+ * Pluggable HTTP transports used by {@link com.franz.agraph.http.AGHTTPClient}.
+ * <p>
+ * Two implementations are provided:
+ * {@link com.franz.agraph.http.transport.AGCommonsHttpTransport}
+ * (commons-httpclient 3.x, the default) and
+ * {@link com.franz.agraph.http.transport.AGJdkHttpTransport}
+ * (the JDK HTTP client, with HTTP/2 multiplexing and non-blocking I/O).
+ * </p>
+ *
+ * @see com.franz.agraph.http.transport.AGHttpTransport
+ * @since v3.0.6
+ */
+package com.franz.agraph.http.transport;
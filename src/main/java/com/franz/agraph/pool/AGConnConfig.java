@@ -55,6 +55,30 @@ public class AGConnConfig {
      */
     public final Integer httpSocketTimeout;
 
+    /**
+     * @see AGConnProp#httpMaxConnections
+     * @since v3.0.6
+     */
+    public final Integer httpMaxConnections;
+
+    /**
+     * @see AGConnProp#httpMaxConnectionWait
+     * @since v3.0.6
+     */
+    public final Integer httpMaxConnectionWait;
+
+    /**
+     * @see AGConnProp#deferRollback
+     * @since v3.0.6
+     */
+    public final boolean deferRollback;
+
+    /**
+     * @see AGConnProp#warmSessions
+     * @since v3.0.6
+     */
+    public final int warmSessions;
+
     public AGConnConfig(Map<AGConnProp, String> props) {
         serverUrl = getStringRequired(props, AGConnProp.serverUrl);
         username = getStringRequired(props, AGConnProp.username);
@@ -66,6 +90,10 @@ public class AGConnConfig {
                                    Session.SHARED.name()).toUpperCase());
         sessionLifetime = getInt(props, AGConnProp.sessionLifetime);
         httpSocketTimeout = getInt(props, AGConnProp.httpSocketTimeout);
+        httpMaxConnections = getInt(props, AGConnProp.httpMaxConnections);
+        httpMaxConnectionWait = getInt(props, AGConnProp.httpMaxConnectionWait);
+        deferRollback = Boolean.parseBoolean(props.getOrDefault(AGConnProp.deferRollback, "true"));
+        warmSessions = Integer.parseInt(props.getOrDefault(AGConnProp.warmSessions, "0"));
     }
 
     private Integer getInt(Map<AGConnProp, String> props, AGConnProp prop) {
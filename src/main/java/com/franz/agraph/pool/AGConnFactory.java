@@ -5,7 +5,10 @@
 package com.franz.agraph.pool;
 
 import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpConnectionLimiter;
 import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.AGSessionPool;
+import com.franz.agraph.repository.AGAbstractRepository;
 import com.franz.agraph.repository.AGCatalog;
 import com.franz.agraph.repository.AGRepository;
 import com.franz.agraph.repository.AGRepositoryConnection;
@@ -20,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.ConnectException;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Adapts the {@link AGRepositoryConnection} API
@@ -30,48 +34,132 @@ import java.net.ConnectException;
  * @since v4.3.3
  */
 public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnection>
-        implements PooledObjectFactory<AGRepositoryConnection> {
+        implements PooledObjectFactory<AGRepositoryConnection>, AutoCloseable {
 
     private final static Logger log = LoggerFactory.getLogger(AGConnFactory.class);
 
     private final AGConnConfig props;
 
+    // Shared by all connections created by this factory, so that they
+    // draw sockets from a single connection manager. Per-session state
+    // is kept in each connection's AGHttpRepoClient.
+    // Created lazily in getRepository(), guarded by lock.
+    private AGRepository repository;
+    // Held while the repository is opened, so a lock rather than
+    // a monitor, which would pin virtual threads.
+    private final ReentrantLock lock = new ReentrantLock();
+    // Set by the pool using this factory.
+    private volatile AGPoolMetrics metrics = AGPoolMetrics.NONE;
+
     public AGConnFactory(AGConnConfig props) {
         this.props = props;
     }
 
+    /**
+     * @param metrics records how long opening sessions takes for the connections created from now on
+     */
+    void setMetrics(AGPoolMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public AGRepositoryConnection create() throws Exception {
+        AGRepositoryConnection conn = getRepository().getConnection();
+        conn.prepareHttpRepoClient().setMetrics(metrics);
+        if (props.sessionLifetime != null) {
+            conn.setSessionLifetime(props.sessionLifetime);
+        }
+        // Open the session now rather than when the connection is borrowed.
+        setUpSession(conn);
+        return conn;
+    }
+
+    /**
+     * Returns the repository shared by all connections created by
+     * this factory, opening it (and the server) on first use.
+     *
+     * @return A repository object.
+     * @throws RepositoryException if the repository can not be opened.
+     * @since v3.0.6
+     */
+    protected AGRepository getRepository() throws RepositoryException {
+        lock.lock();
+        try {
+            if (repository == null) {
+                repository = openRepository();
+            }
+            return repository;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AGRepository openRepository() throws RepositoryException {
         final HttpConnectionManagerParams params = new HttpConnectionManagerParams();
         if (props.httpSocketTimeout != null) {
             params.setSoTimeout(props.httpSocketTimeout);
         }
-        AGHTTPClient httpClient = new AGHTTPClient(props.serverUrl, params);
+        // All pooled connections share this limit.
+        final AGHttpConnectionLimiter defaults = AGHttpConnectionLimiter.createDefault();
+        final AGHttpConnectionLimiter limiter = new AGHttpConnectionLimiter(
+                props.httpMaxConnections != null
+                        ? props.httpMaxConnections : defaults.getMaxConnections(),
+                props.httpMaxConnectionWait != null
+                        ? props.httpMaxConnectionWait : defaults.getMaxWaitMillis());
+        AGHTTPClient httpClient = new AGHTTPClient(props.serverUrl, params, limiter);
         final AGServer server = new AGServer(props.username, props.password, httpClient);
-        final AGCatalog catalog;
-        if (props.catalog != null) {
-            catalog = server.getCatalog(props.catalog);
-        } else {
-            catalog = server.getRootCatalog();
-        }
+        try {
+            final AGCatalog catalog;
+            if (props.catalog != null) {
+                catalog = server.getCatalog(props.catalog);
+            } else {
+                catalog = server.getRootCatalog();
+            }
 
-        final AGRepository repo;
-        if (!catalog.hasRepository(props.repository)) {
-            // This avoids multiple connections sending create requests
-            // at the same time.
-            synchronized (this) {
+            final AGRepository repo;
+            if (!catalog.hasRepository(props.repository)) {
                 repo = catalog.createRepository(props.repository, false);
+            } else {
+                // Create directly to skip a redundant check
+                repo = new AGRepository(catalog, props.repository);
+                repo.initialize();
             }
-        } else {
-            // Create directly to skip a redundant check
-            repo = new AGRepository(catalog, props.repository);
-            repo.initialize();
+            if (props.warmSessions > 0) {
+                final AGSessionPool sessions = new AGSessionPool(repo, props.warmSessions);
+                if (props.sessionLifetime != null) {
+                    sessions.setSessionLifetime(props.sessionLifetime);
+                }
+                sessions.setAutoCommit(props.session == AGConnProp.Session.DEDICATED);
+                repo.setSessionPool(sessions);
+            }
+            return repo;
+        } catch (RuntimeException e) {
+            server.close();
+            throw e;
         }
-        AGRepositoryConnection conn = repo.getConnection();
-        if (props.sessionLifetime != null) {
-            conn.setSessionLifetime(props.sessionLifetime);
+    }
+
+    /**
+     * Shuts down the shared repository and the HTTP connections
+     * used by the connections created by this factory.
+     * Called when the pool is closed, or, if connections were still
+     * borrowed then, when the last of them is returned.
+     *
+     * @since v3.0.6
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (repository != null) {
+                final AGServer server = repository.getServer();
+                repository.shutDown();
+                server.close();
+                repository = null;
+            }
+        } finally {
+            lock.unlock();
         }
-        return conn;
     }
 
     @Override
@@ -79,15 +167,46 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
         return new DefaultPooledObject<>(conn);
     }
 
+    /**
+     * Refreshes the connection's view of the repository if it is not in
+     * autoCommit mode, by having the server roll back before the first
+     * request made with the connection (see {@link AGConnProp#deferRollback}),
+     * so borrowing a connection does not cost a request.
+     * <p>
+     * The session is normally set up for {@link AGConnProp#session} when
+     * the connection is created or returned to the pool, so this only
+     * sends requests if that was not done.</p>
+     */
     @Override
     public void activateObject(PooledObject<AGRepositoryConnection> pooled)
             throws RepositoryException {
         final AGRepositoryConnection conn = pooled.getObject();
+        setUpSession(conn);
         // if autoCommit is false, then rollback to refresh this connection's view of the repository.
         if (!conn.isAutoCommit()) {
-            conn.rollback();
+            if (props.deferRollback) {
+                conn.prepareHttpRepoClient().setPendingRollback(true);
+            } else {
+                conn.rollback();
+            }
         }
+    }
+
+    /**
+     * Restores the session settings, in case they were changed
+     * while the connection was borrowed.
+     */
+    @Override
+    public void passivateObject(PooledObject<AGRepositoryConnection> pooled)
+            throws RepositoryException {
+        setUpSession(pooled.getObject());
+    }
 
+    /**
+     * Makes the connection's session match {@link AGConnProp#session}.
+     * Sends requests only if it does not match already.
+     */
+    private void setUpSession(AGRepositoryConnection conn) throws RepositoryException {
         switch (props.session) {
             case SHARED:
                 // Typically a shared connection (url through the frontend port) but may be a dedicated
@@ -95,6 +214,7 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
                 if (!conn.isAutoCommit()) {
                     // it must have been set by the user, but restore it anyway
                     // it is no longer actually SHARED but DEDICATED
+                    conn.rollback();
                     conn.setAutoCommit(true);
                     log.debug("Dedicated (not shared) backend: " + conn.prepareHttpRepoClient().getRoot());
                 }
@@ -103,6 +223,9 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
                 // Dedicated Session in autoCommit mode.
                 // Ensure conn is a dedicated session, with autoCommit set to true.
                 if (!conn.prepareHttpRepoClient().isDedicatedSession() || !conn.isAutoCommit()) {
+                    if (!conn.isAutoCommit()) {
+                        conn.rollback();
+                    }
                     // forces conn to a dedicated session if not already.
                     conn.setAutoCommit(true);
                     log.debug("Dedicated backend: " + conn.prepareHttpRepoClient().getRoot());
@@ -119,15 +242,15 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
         }
     }
 
-    // Do nothing when returning a connection to the pool.
     // Users can set TestOnReturn to true to force a rollback on
     // a connection when it is returned to the pool.
     //
     // Setting TestWhileIdle to true (and associated PoolProps) will
     // trigger a rollback when the connection is not being used.
     //
-    // rollback() will always be called when a connection is borrowed
-    // from the pool.
+    // A rollback is always performed when a connection that is not
+    // in autoCommit mode is borrowed from the pool, by default as
+    // part of the first request made with it.
 
     /**
      * Calls {@link AGRepositoryConnection#size(org.eclipse.rdf4j.model.Resource...)}.
@@ -167,8 +290,19 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
                 throw e;
             }
         }
-        // Each pooled connection has dedicated server and repository objects.
-        conn.getRepository().shutDown();
-        conn.getServer().close();
+        // Connections created by subclasses might have their
+        // own server and repository objects.
+        final AGAbstractRepository repo = conn.getRepository();
+        boolean shared;
+        lock.lock();
+        try {
+            shared = repo == repository;
+        } finally {
+            lock.unlock();
+        }
+        if (!shared) {
+            repo.shutDown();
+            conn.getServer().close();
+        }
     }
 }
@@ -6,6 +6,7 @@ package com.franz.agraph.pool;
 
 import com.franz.agraph.repository.AGRepositoryConnection;
 import org.apache.commons.pool2.ObjectPool;
+import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.eclipse.rdf4j.repository.RepositoryException;
@@ -18,6 +19,15 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Pooling for {@link AGRepositoryConnection}s.
@@ -69,7 +79,9 @@ import java.util.Map;
  * <p>Note, when {@link AGConnPool#close()} is called
  * on a {@link AGConnPool}, connections that have not been returned to the pool
  * will *not* be closed. Such connections will be closed immediately when
- * returned to the pool.</p>
+ * returned to the pool. Resources shared by all connections, such as the
+ * server of an {@link AGConnFactory}, are released once the last of them
+ * has been returned.</p>
  *
  * In addition to standard commons-pool parameters this class supports
  * some other features:
@@ -85,6 +97,15 @@ import java.util.Map;
  *         <code>warmupIncludeStrings</code> and <code>warmupIncludeStrings</code>
  *         can be set to false to exclude specific structures from the warmup operation.
  *     </li>
+ *     <li>
+ *         {@link AGPoolConfig#setMetrics(AGPoolMetrics)} records how long borrowing,
+ *         creating, activating and validating connections and opening sessions take, for instance
+ *         with an {@link AGPoolStats}. See also {@link #getNumWaiters()}.
+ *     </li>
+ *     <li>
+ *         {@link #borrowAsync(long, TimeUnit)} borrows a connection without
+ *         blocking the calling thread while the pool is exhausted.
+ *     </li>
  * </ul>
  *
  * @since v4.3.3
@@ -93,15 +114,35 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
 
     private static final Logger log = LoggerFactory.getLogger(AGConnPool.class);
 
-    private final ObjectPool<AGRepositoryConnection> delegate;
+    // Created lazily in getSharedAsyncExecutor().
+    private static ExecutorService sharedAsyncExecutor;
+
+    private final GenericObjectPool<AGRepositoryConnection> delegate;
+    private final PooledObjectFactory<AGRepositoryConnection> factory;
     private final Thread shutdownHook;
+    private final AGPoolMetrics metrics;
+    private final Executor asyncExecutor;
+    // Requests made by borrowAsync(), served in order.
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    // Number of times serveWaiters() was requested, see dispatch().
+    private final AtomicInteger dispatches = new AtomicInteger();
+    private final AtomicBoolean factoryClosed = new AtomicBoolean();
+    // Number of connections being created, see PoolFactory.
+    private final AtomicInteger creating = new AtomicInteger();
 
     /**
      * @see #create(Object...)
      */
     private AGConnPool(PooledObjectFactory<AGRepositoryConnection> factory,
                        AGPoolConfig poolConfig) {
-        delegate = new GenericObjectPool<>(factory, poolConfig);
+        this.factory = factory;
+        this.metrics = poolConfig.getMetrics();
+        if (factory instanceof AGConnFactory) {
+            ((AGConnFactory) factory).setMetrics(metrics);
+        }
+        delegate = new GenericObjectPool<>(new PoolFactory(factory), poolConfig);
+        asyncExecutor = poolConfig.getAsyncExecutor() != null
+                ? poolConfig.getAsyncExecutor() : getSharedAsyncExecutor();
 
         if (poolConfig.initialSize > 0) {
             List<AGRepositoryConnection> conns = new ArrayList<>(poolConfig.initialSize);
@@ -192,11 +233,41 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
         delegate.addObject();
     }
 
+    private static synchronized ExecutorService getSharedAsyncExecutor() {
+        if (sharedAsyncExecutor == null) {
+            // Threads block while creating and validating connections,
+            // which are bounded by the size of the pools.
+            sharedAsyncExecutor = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedAsyncExecutor;
+    }
+
     @Override
     public AGRepositoryConnection borrowObject() throws RepositoryException {
+        final long start = System.nanoTime();
+        try {
+            return borrow(delegate.getMaxWaitMillis());
+        } finally {
+            if (metrics != AGPoolMetrics.NONE) {
+                metrics.recordTime(AGPoolMetrics.Phase.BORROW_WAIT,
+                        System.nanoTime() - start - Attempt.current.get().factoryNanos);
+            }
+        }
+    }
+
+    /**
+     * Borrows a connection, waiting at most maxWaitMillis for one
+     * (forever if negative).
+     */
+    private AGRepositoryConnection borrow(long maxWaitMillis) throws RepositoryException {
+        Attempt.current.get().reset();
         final AGRepositoryConnection conn;
         try {
-            conn = delegate.borrowObject();
+            conn = delegate.borrowObject(maxWaitMillis);
         } catch (Exception e) {
             throw new RepositoryException(e);
         }
@@ -206,6 +277,118 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
         return conn;
     }
 
+    /**
+     * Borrows a connection without blocking, waiting at most
+     * {@link AGPoolProp#maxWait} for one.
+     *
+     * @return A future connection.
+     * @see #borrowAsync(long, TimeUnit)
+     * @since v3.0.6
+     */
+    public CompletableFuture<AGRepositoryConnection> borrowAsync() {
+        return borrowAsync(delegate.getMaxWaitMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection without blocking the calling thread.
+     * <p>
+     * While the pool is exhausted, requests are queued without holding
+     * a thread, and are served in order as connections are returned.
+     * Connections are created, activated and validated on the executor
+     * set by {@link AGPoolConfig#setAsyncExecutor(Executor)}.</p>
+     * <p>
+     * Cancelling the future withdraws the request; a connection that was
+     * borrowed for it is returned to the pool.</p>
+     *
+     * @param timeout how long to wait for a connection, negative to wait forever
+     * @param unit    the unit of the timeout
+     * @return A future completed with the connection, or exceptionally
+     *         with a {@link java.util.concurrent.TimeoutException} if none
+     *         became available in time, or with a {@link RepositoryException}
+     *         if it could not be created.
+     * @since v3.0.6
+     */
+    public CompletableFuture<AGRepositoryConnection> borrowAsync(long timeout, TimeUnit unit) {
+        final Waiter waiter = new Waiter();
+        if (timeout >= 0) {
+            waiter.future.orTimeout(timeout, unit);
+        }
+        waiter.future.whenComplete((conn, e) -> {
+            if (e != null) {
+                waiters.remove(waiter);
+            }
+        });
+        waiters.add(waiter);
+        dispatch();
+        return waiter.future;
+    }
+
+    /**
+     * Makes sure the waiting requests are served, on the executor.
+     */
+    private void dispatch() {
+        // Only one thread serves the requests; others record that it
+        // must try again, since a connection may have become available.
+        if (dispatches.getAndIncrement() == 0) {
+            asyncExecutor.execute(this::serveWaiters);
+        }
+    }
+
+    private void serveWaiters() {
+        int missed = dispatches.get();
+        while (missed != 0) {
+            serveAvailable();
+            missed = dispatches.addAndGet(-missed);
+        }
+    }
+
+    /**
+     * Hands out connections to waiting requests, until there
+     * are no more requests or the pool is exhausted.
+     */
+    private void serveAvailable() {
+        Waiter waiter;
+        while ((waiter = waiters.peek()) != null) {
+            if (waiter.future.isDone()) {
+                waiters.remove(waiter);
+                continue;
+            }
+            final AGRepositoryConnection conn;
+            try {
+                conn = borrow(0);
+            } catch (RepositoryException e) {
+                // The pool throws NoSuchElementException both when it is
+                // exhausted and when a connection it has just created can
+                // not be activated or validated.
+                if (e.getCause() instanceof NoSuchElementException
+                        && !Attempt.current.get().created && !delegate.isClosed()) {
+                    // Served again when a connection is returned or
+                    // destroyed, or when another thread is done creating one.
+                    if (creating.get() == 0
+                            && delegate.getNumActive() + delegate.getNumIdle() < delegate.getMaxTotal()) {
+                        // The pool still counts a connection that failed
+                        // to be created or was destroyed, until the factory
+                        // method that told us returns to it.
+                        dispatch();
+                    }
+                    return;
+                }
+                waiters.remove(waiter);
+                waiter.future.completeExceptionally(e);
+                continue;
+            }
+            waiters.remove(waiter);
+            if (metrics != AGPoolMetrics.NONE) {
+                metrics.recordTime(AGPoolMetrics.Phase.BORROW_WAIT,
+                        System.nanoTime() - waiter.start - Attempt.current.get().factoryNanos);
+            }
+            if (!waiter.future.complete(conn)) {
+                // Timed out or cancelled meanwhile.
+                conn.close();
+            }
+        }
+    }
+
     /**
      * Same as {@link #borrowObject()}.
      *
@@ -231,9 +414,31 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
         return delegate.getNumIdle();
     }
 
+    /**
+     * @return Number of requests waiting to borrow a connection: threads
+     *         blocked in {@link #borrowObject()} and pending
+     *         {@link #borrowAsync(long, TimeUnit)} futures.
+     * @since v3.0.6
+     */
+    public int getNumWaiters() {
+        return delegate.getNumWaiters() + waiters.size();
+    }
+
+    /**
+     * @return The metrics recorded by this pool.
+     * @see AGPoolConfig#setMetrics(AGPoolMetrics)
+     * @since v3.0.6
+     */
+    public AGPoolMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public void invalidateObject(AGRepositoryConnection conn) throws Exception {
         delegate.invalidateObject(conn);
+        if (!waiters.isEmpty()) {
+            dispatch();
+        }
     }
 
     @Override
@@ -242,15 +447,15 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
         // return the connection to the pool again.
         conn.setPool(null);
         delegate.returnObject(conn);
+        if (!waiters.isEmpty()) {
+            dispatch();
+        }
     }
 
     public void ensureIdle(int n) throws Exception {
-        if (delegate instanceof GenericObjectPool) {
-            GenericObjectPool gop = (GenericObjectPool) delegate;
-            gop.setMinIdle(n);
-            if (gop.getMaxIdle() < n) {
-                gop.setMaxIdle(n);
-            }
+        delegate.setMinIdle(n);
+        if (delegate.getMaxIdle() < n) {
+            delegate.setMaxIdle(n);
         }
         for (int i = 0; i < n; i++) {
             addObject();
@@ -263,6 +468,16 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
             log.debug("close " + this);
         }
         delegate.close();
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.future.completeExceptionally(new RepositoryException("Connection pool closed"));
+        }
+        if (delegate.getNumActive() == 0) {
+            closeFactory();
+        } else {
+            log.debug("Closing the connection factory when {} borrowed connections are returned",
+                    delegate.getNumActive());
+        }
         if (shutdownHook != null) {
             // It would be safe to close a pool multiple times,
             // but if we don't delete the hook it will keep a
@@ -278,9 +493,24 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
         }
     }
 
+    /**
+     * Releases the resources shared by all connections, once.
+     */
+    private void closeFactory() {
+        if (factory instanceof AutoCloseable && factoryClosed.compareAndSet(false, true)) {
+            try {
+                ((AutoCloseable) factory).close();
+            } catch (Exception e) {
+                log.warn("Error closing connection factory " + factory, e);
+            }
+        }
+    }
+
     protected void finalize() throws Throwable {
         if (getNumActive() > 0) {
             close();
+            // The borrowed connections are unreachable too.
+            closeFactory();
             log.warn("Finalizing with open connections, please close the pool properly. " + this);
         }
         super.finalize();
@@ -291,9 +521,121 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
         return "{AGConnPool"
                 + " active=" + getNumActive()
                 + " idle=" + getNumIdle()
+                + " waiters=" + getNumWaiters()
                 + " delegate=" + delegate
                 + " this=" + super.toString()
                 + "}";
     }
 
+    /**
+     * A request made by {@link #borrowAsync(long, TimeUnit)}.
+     */
+    private static final class Waiter {
+        final CompletableFuture<AGRepositoryConnection> future = new CompletableFuture<>();
+        final long start = System.nanoTime();
+    }
+
+    /**
+     * What the factory did on a thread while it borrowed a connection.
+     */
+    private static final class Attempt {
+        static final ThreadLocal<Attempt> current = ThreadLocal.withInitial(Attempt::new);
+
+        // Time spent in the factory, excluded from the borrow wait.
+        long factoryNanos;
+        // Whether a connection was created.
+        boolean created;
+
+        void reset() {
+            factoryNanos = 0;
+            created = false;
+        }
+    }
+
+    /**
+     * Records the time spent in the methods of a factory, and serves
+     * the requests of {@link #borrowAsync(long, TimeUnit)} when the
+     * number of connections in the pool may have changed.
+     */
+    private final class PoolFactory implements PooledObjectFactory<AGRepositoryConnection> {
+        private final PooledObjectFactory<AGRepositoryConnection> factory;
+
+        PoolFactory(PooledObjectFactory<AGRepositoryConnection> factory) {
+            this.factory = factory;
+        }
+
+        private void record(AGPoolMetrics.Phase phase, long start) {
+            final long nanos = System.nanoTime() - start;
+            Attempt.current.get().factoryNanos += nanos;
+            metrics.recordTime(phase, nanos);
+        }
+
+        private void dispatchWaiters() {
+            if (!waiters.isEmpty()) {
+                dispatch();
+            }
+        }
+
+        @Override
+        public PooledObject<AGRepositoryConnection> makeObject() throws Exception {
+            final long start = System.nanoTime();
+            creating.incrementAndGet();
+            try {
+                final PooledObject<AGRepositoryConnection> pooled = factory.makeObject();
+                Attempt.current.get().created = true;
+                metrics.connectionCreated();
+                return pooled;
+            } finally {
+                record(AGPoolMetrics.Phase.CREATE, start);
+                creating.decrementAndGet();
+                // A failed creation frees its place in the pool.
+                dispatchWaiters();
+            }
+        }
+
+        @Override
+        public void destroyObject(PooledObject<AGRepositoryConnection> pooled) throws Exception {
+            try {
+                factory.destroyObject(pooled);
+            } finally {
+                metrics.connectionDestroyed();
+                dispatchWaiters();
+                // The last connection borrowed when the pool was closed.
+                if (delegate.isClosed() && delegate.getNumActive() == 0) {
+                    closeFactory();
+                }
+            }
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<AGRepositoryConnection> pooled) {
+            final long start = System.nanoTime();
+            final boolean valid;
+            try {
+                valid = factory.validateObject(pooled);
+            } finally {
+                record(AGPoolMetrics.Phase.VALIDATE, start);
+            }
+            if (!valid) {
+                metrics.validationFailed();
+            }
+            return valid;
+        }
+
+        @Override
+        public void activateObject(PooledObject<AGRepositoryConnection> pooled) throws Exception {
+            final long start = System.nanoTime();
+            try {
+                factory.activateObject(pooled);
+            } finally {
+                record(AGPoolMetrics.Phase.ACTIVATE, start);
+            }
+        }
+
+        @Override
+        public void passivateObject(PooledObject<AGRepositoryConnection> pooled) throws Exception {
+            factory.passivateObject(pooled);
+        }
+    }
+
 }
@@ -4,6 +4,7 @@
 
 package com.franz.agraph.pool;
 
+import com.franz.agraph.http.AGHttpConnectionLimiter;
 import com.franz.agraph.repository.AGCatalog;
 import com.franz.agraph.repository.AGRepositoryConnection;
 import com.franz.agraph.repository.AGServer;
@@ -60,13 +61,68 @@ public enum AGConnProp {
     /**
      * Socket timeout (SO_TIMEOUT) in milliseconds to be used when executing the method.
      * A timeout value of zero is interpreted as an infinite timeout.
+     * With the JDK transport this is the time to wait for response headers,
+     * see {@link com.franz.agraph.http.transport.AGJdkHttpTransport#setRequestTimeout(java.time.Duration)}.
      * <p>WARNING: this may break long queries.</p>
      *
      * @see HttpConnectionParams#setSoTimeout(int)
      * @see HttpMethodParams#SO_TIMEOUT
      * @since v4.4
      */
-    httpSocketTimeout;
+    httpSocketTimeout,
+
+    /**
+     * Maximum number of HTTP requests in flight at the same time,
+     * shared by all connections in a pool.
+     * A value of zero or less means no limit, which is the default
+     * unless the {@value AGHttpConnectionLimiter#PROP_MAX_CONNECTIONS}
+     * system property is set.
+     * <p>Note that each streaming result that has not been closed
+     * counts as a request in flight.</p>
+     *
+     * @see AGHttpConnectionLimiter
+     * @since v3.0.6
+     */
+    httpMaxConnections,
+
+    /**
+     * Milliseconds a request waits for one of the {@link #httpMaxConnections}
+     * connections to become free before failing.
+     * A value of zero or less means wait forever.
+     * Defaults to {@link AGHttpConnectionLimiter#DEFAULT_MAX_WAIT}.
+     *
+     * @see AGHttpConnectionLimiter
+     * @since v3.0.6
+     */
+    httpMaxConnectionWait,
+
+    /**
+     * Whether the rollback that refreshes the view of a borrowed connection
+     * that is not in autoCommit mode is sent with the first request made with
+     * the connection ({@code true}, the default), or as a request of its own
+     * when the connection is borrowed ({@code false}).
+     * <p>When deferred, borrowing does not contact the server, so a session
+     * that has timed out is only noticed by the first request; use
+     * {@link AGPoolProp#testOnBorrow} to check sessions when they are borrowed.</p>
+     *
+     * @see com.franz.agraph.http.AGHttpRepoClient#setPendingRollback(boolean)
+     * @since v3.0.6
+     */
+    deferRollback,
+
+    /**
+     * Number of dedicated sessions to open in advance, with the
+     * {@link #sessionLifetime} of the pool, and reopen in the background
+     * as they are used. Defaults to 0, which opens sessions on demand.
+     * <p>The sessions are in the autoCommit mode used by {@link #session}:
+     * true for {@link Session#DEDICATED}, false otherwise. They save the
+     * time needed to open a session when the pool creates a connection,
+     * or when a {@link Session#SHARED} connection starts a transaction.</p>
+     *
+     * @see com.franz.agraph.http.AGSessionPool
+     * @since v3.0.6
+     */
+    warmSessions;
 
     /**
      * Property values for {@link AGConnProp#session}.
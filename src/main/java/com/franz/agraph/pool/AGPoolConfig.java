@@ -8,6 +8,7 @@ import com.franz.agraph.repository.WarmupConfig;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Extension to {@link GenericObjectPoolConfig} to add more properties.
@@ -32,6 +33,10 @@ public class AGPoolConfig extends GenericObjectPoolConfig {
 
     private WarmupConfig warmupConfig;
 
+    private AGPoolMetrics metrics = AGPoolMetrics.NONE;
+
+    private Executor asyncExecutor;
+
     public AGPoolConfig(Map<AGPoolProp, String> props) {
         if (props.containsKey(AGPoolProp.initialSize)) {
             initialSize = Integer.parseInt(props.get(AGPoolProp.initialSize));
@@ -110,4 +115,45 @@ public class AGPoolConfig extends GenericObjectPoolConfig {
     public void setWarmupConfig(final WarmupConfig warmupConfig) {
         this.warmupConfig = warmupConfig;
     }
+
+    /**
+     * @return The metrics recorded by the pool.
+     * @since v3.0.6
+     */
+    public AGPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets where the pool records the time spent borrowing, creating,
+     * activating and validating connections. Defaults to
+     * {@link AGPoolMetrics#NONE}.
+     *
+     * @param metrics the metrics, for instance an {@link AGPoolStats}
+     * @since v3.0.6
+     */
+    public void setMetrics(final AGPoolMetrics metrics) {
+        this.metrics = metrics == null ? AGPoolMetrics.NONE : metrics;
+    }
+
+    /**
+     * @return The executor used by {@link AGConnPool#borrowAsync(long, java.util.concurrent.TimeUnit)},
+     *         or null to use a shared default.
+     * @since v3.0.6
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Sets the executor that creates, activates and validates connections
+     * borrowed with {@link AGConnPool#borrowAsync(long, java.util.concurrent.TimeUnit)}.
+     * These tasks block while the server is contacted.
+     *
+     * @param asyncExecutor an executor, or null to use a shared default
+     * @since v3.0.6
+     */
+    public void setAsyncExecutor(final Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
 }
@@ -0,0 +1,96 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+/**
+ * Receives timings and events from an {@link AGConnPool}.
+ * <p>
+ * Implement this interface to bridge the pool to a metrics system, or use
+ * {@link AGPoolStats}, which keeps latency histograms and counters in memory.
+ * All methods do nothing by default, see {@link #NONE}. They are called on
+ * the threads using the pool, so they should be fast and thread-safe.</p>
+ *
+ * @see AGPoolConfig#setMetrics(AGPoolMetrics)
+ * @since v3.0.6
+ */
+public interface AGPoolMetrics {
+
+    /**
+     * Metrics that are not recorded, the default.
+     */
+    AGPoolMetrics NONE = new AGPoolMetrics() {
+    };
+
+    /**
+     * Timed phases of the life of a pooled connection.
+     */
+    enum Phase {
+        /**
+         * Time spent in {@link AGConnPool#borrowObject()} waiting for a
+         * connection, that is excluding the time spent creating, activating
+         * and validating connections.
+         */
+        BORROW_WAIT,
+
+        /**
+         * Creating a connection, which includes opening its dedicated
+         * session unless the pool uses {@link AGConnProp.Session#SHARED} sessions.
+         *
+         * @see AGConnFactory#create()
+         */
+        CREATE,
+
+        /**
+         * Activating a borrowed connection, which may roll it back.
+         *
+         * @see AGConnFactory#activateObject(org.apache.commons.pool2.PooledObject)
+         */
+        ACTIVATE,
+
+        /**
+         * Validating a connection, which calls
+         * {@link com.franz.agraph.repository.AGRepositoryConnection#size(org.eclipse.rdf4j.model.Resource...)}.
+         *
+         * @see AGConnFactory#validateObject(org.apache.commons.pool2.PooledObject)
+         */
+        VALIDATE,
+
+        /**
+         * Opening a dedicated session, or taking one opened in advance
+         * (see {@link AGConnProp#warmSessions}). This happens while a connection
+         * is created, activated or passivated, depending on {@link AGConnProp#session},
+         * or later, when the borrower first needs a dedicated session.
+         * Only recorded for connections created by an {@link AGConnFactory}.
+         */
+        SESSION_OPEN
+    }
+
+    /**
+     * Records the time taken by a phase, whether it succeeded or not.
+     *
+     * @param phase the phase
+     * @param nanos elapsed time in nanoseconds
+     */
+    default void recordTime(Phase phase, long nanos) {
+    }
+
+    /**
+     * Records that a connection was created.
+     */
+    default void connectionCreated() {
+    }
+
+    /**
+     * Records that a connection was destroyed.
+     */
+    default void connectionDestroyed() {
+    }
+
+    /**
+     * Records that a connection failed validation, and will be destroyed.
+     */
+    default void validationFailed() {
+    }
+}
@@ -76,8 +76,9 @@ public enum AGPoolProp {
     /**
      * Calls {@link AGRepositoryConnection#size(org.eclipse.rdf4j.model.Resource...)}.
      * <p>
-     * Redundant because {@link AGConnFactory#activateObject(PooledObject)}
-     * always calls {@link AGRepositoryConnection#rollback()}.
+     * Only useful if {@link AGConnProp#deferRollback} is true (the default),
+     * since otherwise {@link AGConnFactory#activateObject(PooledObject)}
+     * contacts the server by calling {@link AGRepositoryConnection#rollback()}.
      *
      * @see GenericObjectPool#setTestOnBorrow(boolean)
      * @see AGConnFactory#validateObject(PooledObject)
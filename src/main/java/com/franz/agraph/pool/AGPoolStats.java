@@ -0,0 +1,234 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the metrics of a pool in memory: a latency histogram for each
+ * {@link AGPoolMetrics.Phase} and counters of connection events.
+ * <p>
+ * Histograms have 8 buckets for each power of two, so percentiles are
+ * accurate to within 12.5%. Recording does not allocate or lock.</p>
+ *
+ * <pre>{@code
+ * AGPoolStats stats = new AGPoolStats();
+ * poolConfig.setMetrics(stats);
+ * ...
+ * long p99 = stats.getLatency(AGPoolMetrics.Phase.BORROW_WAIT).getPercentileNanos(99);
+ * }</pre>
+ *
+ * @since v3.0.6
+ */
+public class AGPoolStats implements AGPoolMetrics {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final Map<Phase, Recorder> recorders = new EnumMap<>(Phase.class);
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+
+    public AGPoolStats() {
+        for (Phase phase : Phase.values()) {
+            recorders.put(phase, new Recorder());
+        }
+    }
+
+    @Override
+    public void recordTime(Phase phase, long nanos) {
+        recorders.get(phase).record(Math.max(nanos, 0));
+    }
+
+    @Override
+    public void connectionCreated() {
+        created.increment();
+    }
+
+    @Override
+    public void connectionDestroyed() {
+        destroyed.increment();
+    }
+
+    @Override
+    public void validationFailed() {
+        validationFailures.increment();
+    }
+
+    /**
+     * @param phase a phase
+     * @return A snapshot of the latencies recorded for the phase.
+     */
+    public Latency getLatency(Phase phase) {
+        return recorders.get(phase).snapshot();
+    }
+
+    /**
+     * @return Number of connections created.
+     */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /**
+     * @return Number of connections destroyed.
+     */
+    public long getDestroyedCount() {
+        return destroyed.sum();
+    }
+
+    /**
+     * @return Number of connections that failed validation.
+     */
+    public long getValidationFailureCount() {
+        return validationFailures.sum();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder("{AGPoolStats");
+        for (Phase phase : Phase.values()) {
+            s.append(' ').append(phase).append('=').append(getLatency(phase));
+        }
+        return s.append(" created=").append(getCreatedCount())
+                .append(" destroyed=").append(getDestroyedCount())
+                .append(" validationFailures=").append(getValidationFailureCount())
+                .append('}').toString();
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return The largest value that falls into a bucket.
+     */
+    static long bucketMax(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long min = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return min + (1L << shift) - 1;
+    }
+
+    /**
+     * Latencies of a phase.
+     */
+    private static final class Recorder {
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        final LongAdder count = new LongAdder();
+        final LongAdder total = new LongAdder();
+        final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            counts.incrementAndGet(bucket(nanos));
+            count.increment();
+            total.add(nanos);
+            if (nanos > max.get()) {
+                max.accumulateAndGet(nanos, Math::max);
+            }
+        }
+
+        Latency snapshot() {
+            final long[] buckets = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = counts.get(i);
+                n += buckets[i];
+            }
+            return new Latency(buckets, n, total.sum(), max.get());
+        }
+    }
+
+    /**
+     * A snapshot of the latencies recorded for a phase, in nanoseconds.
+     */
+    public static final class Latency {
+        private final long[] buckets;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Latency(long[] buckets, long count, long total, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * @return Number of times the phase was recorded.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return Total time spent in the phase.
+         */
+        public long getTotalNanos() {
+            return total;
+        }
+
+        /**
+         * @return Mean time spent in the phase, or 0 if it was never recorded.
+         */
+        public long getMeanNanos() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        /**
+         * @return Longest time spent in the phase.
+         */
+        public long getMaxNanos() {
+            return max;
+        }
+
+        /**
+         * Returns an upper bound of a percentile of the recorded times.
+         *
+         * @param percentile between 0 and 100, such as 50 for the median
+         * @return The percentile, or 0 if the phase was never recorded.
+         */
+        public long getPercentileNanos(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketMax(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count
+                    + " mean=" + getMeanNanos()
+                    + " p50=" + getPercentileNanos(50)
+                    + " p99=" + getPercentileNanos(99)
+                    + " max=" + max
+                    + "}";
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.eclipse.rdf4j.query.resultio.BooleanQueryResultFormat;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implements the Sesame BooleanQuery interface for AllegroGraph.
@@ -43,6 +44,21 @@ public class AGBooleanQuery extends AGQuery implements BooleanQuery {
         return handler.getResult();
     }
 
+    /**
+     * Evaluates the query without blocking the calling thread.
+     * <p>
+     * The result is processed on the {@link #getAsyncExecutor() async executor}.
+     * Cancelling the returned future aborts the request.</p>
+     *
+     * @return a future result, which fails with a {@link QueryEvaluationException}
+     * if the query could not be evaluated
+     * @since v3.0.6
+     */
+    public CompletableFuture<Boolean> evaluateAsync() {
+        AGBQRHandler handler = new AGBQRHandler();
+        return evaluateAsync(handler, handler::getResult);
+    }
+
     /**
      * Evaluates the query and saves the results to a file.
      *
@@ -88,4 +104,19 @@ public class AGBooleanQuery extends AGQuery implements BooleanQuery {
             throw new QueryEvaluationException(e);
         }
     }
+
+    /**
+     * Asynchronous version of {@link #stream(BooleanQueryResultFormat)}.
+     * The future completes as soon as the response starts to arrive.
+     *
+     * @param format Output format.
+     * @return A future input stream containing response data.
+     * The caller MUST close this stream to release connection resources.
+     * @see #evaluateAsync()
+     * @since v3.0.6
+     */
+    public CompletableFuture<InputStream> streamAsync(final BooleanQueryResultFormat format) {
+        final AGRawStreamer handler = new AGRawStreamer(format);
+        return evaluateAsync(handler, handler::getStream);
+    }
 }
@@ -4,23 +4,28 @@
 
 package com.franz.agraph.repository;
 
+import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGDownloadHandler;
+import com.franz.agraph.http.handler.AGGraphResultBuffer;
 import com.franz.agraph.http.handler.AGLongHandler;
 import com.franz.agraph.http.handler.AGRDFHandler;
+import com.franz.agraph.http.handler.AGRDFStreamer;
 import com.franz.agraph.http.handler.AGRawStreamer;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.query.GraphQuery;
 import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
-import org.eclipse.rdf4j.query.impl.IteratingGraphQueryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFHandler;
 import org.eclipse.rdf4j.rio.RDFHandlerException;
-import org.eclipse.rdf4j.rio.helpers.StatementCollector;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  * Implements the Sesame GraphQuery interface for AllegroGraph.
@@ -42,18 +47,30 @@ public class AGGraphQuery extends AGQuery implements GraphQuery {
 
     /**
      * Evaluates the query and returns a GraphQueryResult.
+     * <p>
+     * All statements are read before this method returns. Statements
+     * beyond {@link AGHttpRepoClient#getResultMemoryLimit()} are kept in a
+     * temporary file, which is deleted when the result is closed or read
+     * to the end. Use {@link AGStreamGraphQuery} (or
+     * {@link AGRepositoryConnection#setStreamResults(boolean)}) to read
+     * statements as they arrive instead.</p>
      */
     public GraphQueryResult evaluate() throws QueryEvaluationException {
+        AGGraphResultBuffer buffer = createResultBuffer();
         try {
-            // TODO: make this efficient for large result sets
-            StatementCollector collector = new StatementCollector();
-            evaluate(collector);
-            return new IteratingGraphQueryResult(collector.getNamespaces(),
-                    collector.getStatements());
+            evaluate(buffer);
         } catch (RDFHandlerException e) {
-            // Found a bug in StatementCollector?
-            throw new RuntimeException(e);
+            buffer.close();
+            throw new QueryEvaluationException(e);
+        } catch (RuntimeException e) {
+            buffer.close();
+            throw e;
         }
+        return buffer.getQueryResult(true);
+    }
+
+    private AGGraphResultBuffer createResultBuffer() {
+        return new AGGraphResultBuffer(httpCon.getValueFactory(), httpCon.prepareHttpRepoClient().getResultMemoryLimit());
     }
 
     /**
@@ -61,8 +78,79 @@ public class AGGraphQuery extends AGQuery implements GraphQuery {
      */
     public void evaluate(RDFHandler handler) throws QueryEvaluationException,
             RDFHandlerException {
+        evaluate(createRDFHandler(handler));
+    }
+
+    private AGRDFHandler createRDFHandler(RDFHandler handler) {
         final RDFFormat format = httpCon.prepareHttpRepoClient().getPreferredRDFFormat();
-        evaluate(new AGRDFHandler(format, handler, httpCon.getValueFactory(), httpCon.prepareHttpRepoClient().getAllowExternalBlankNodeIds()));
+        return new AGRDFHandler(format, handler, httpCon.getValueFactory(), httpCon.prepareHttpRepoClient().getAllowExternalBlankNodeIds());
+    }
+
+    /**
+     * Evaluates the query without blocking the calling thread.
+     * <p>
+     * The result is processed on the {@link #getAsyncExecutor() async executor}.
+     * Cancelling the returned future aborts the request.</p>
+     *
+     * @return a future result, which fails with a {@link QueryEvaluationException}
+     * if the query could not be evaluated
+     * @since v3.0.6
+     */
+    public CompletableFuture<GraphQueryResult> evaluateAsync() {
+        final AGGraphResultBuffer buffer = createResultBuffer();
+        final CompletableFuture<GraphQueryResult> result =
+                evaluateAsync(createRDFHandler(buffer), () -> buffer.getQueryResult(true));
+        result.whenComplete((ignored, error) -> {
+            if (error != null) {
+                buffer.close();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Evaluates the query without blocking the calling thread.
+     * <p>
+     * The handler is called on the {@link #getAsyncExecutor() async executor}.
+     * Cancelling the returned future aborts the request.</p>
+     *
+     * @param handler processes the result
+     * @return a future that completes once all statements have been passed to handler
+     * @since v3.0.6
+     */
+    public CompletableFuture<Void> evaluateAsync(RDFHandler handler) {
+        return evaluateAsync(createRDFHandler(handler), () -> null);
+    }
+
+    /**
+     * Evaluates the query when a subscriber requests statements, and
+     * streams the statements to it.
+     * <p>
+     * Statements are read from the http response only as fast as the
+     * subscriber requests them. The query is evaluated, and the
+     * subscriber is called, on the {@link #getAsyncExecutor() async executor}.
+     * Cancelling the subscription closes the response.</p>
+     *
+     * @return a publisher for a single subscriber
+     * @see AGResultPublisher
+     * @since v3.0.6
+     */
+    public Flow.Publisher<Statement> publish() {
+        return new AGResultPublisher<>(this::evaluateStreaming, getAsyncExecutor());
+    }
+
+    /**
+     * Evaluates the query and returns a result that reads from the
+     * http response as statements are requested.
+     *
+     * @see AGStreamGraphQuery
+     */
+    GraphQueryResult evaluateStreaming() throws QueryEvaluationException {
+        AGHttpRepoClient client = httpCon.prepareHttpRepoClient();
+        AGRDFStreamer handler = new AGRDFStreamer(client.getPreferredRDFFormat(), httpCon.getValueFactory(),
+                client.getAllowExternalBlankNodeIds(), getAsyncExecutor());
+        evaluate(handler);
+        return handler.getResult();
     }
 
     /**
@@ -79,6 +167,18 @@ public class AGGraphQuery extends AGQuery implements GraphQuery {
         return handler.getResult();
     }
 
+    /**
+     * Asynchronous version of {@link #count()}.
+     *
+     * @return a future number of results
+     * @see #evaluateAsync()
+     * @since v3.0.6
+     */
+    public CompletableFuture<Long> countAsync() {
+        AGLongHandler handler = new AGLongHandler();
+        return evaluateAsync(handler, handler::getResult);
+    }
+
     /**
      * Evaluates the query and saves the results to a file.
      *
@@ -124,4 +224,34 @@ public class AGGraphQuery extends AGQuery implements GraphQuery {
             throw new QueryEvaluationException(e);
         }
     }
+
+    /**
+     * Evaluates the query and returns the result as a channel.
+     *
+     * @param format Output format.
+     * @return A channel containing response data.
+     * The caller MUST close this channel to release connection resources.
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     * @see #streamChannel(String)
+     * @since v3.0.6
+     */
+    public ReadableByteChannel streamChannel(final RDFFormat format)
+            throws QueryEvaluationException {
+        return streamChannel(format.getDefaultMIMEType());
+    }
+
+    /**
+     * Asynchronous version of {@link #stream(RDFFormat)}.
+     * The future completes as soon as the response starts to arrive.
+     *
+     * @param format Output format.
+     * @return A future input stream containing response data.
+     * The caller MUST close this stream to release connection resources.
+     * @see #evaluateAsync()
+     * @since v3.0.6
+     */
+    public CompletableFuture<InputStream> streamAsync(final RDFFormat format) {
+        final AGRawStreamer handler = new AGRawStreamer(format);
+        return evaluateAsync(handler, handler::getStream);
+    }
 }
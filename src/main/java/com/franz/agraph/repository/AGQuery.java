@@ -21,7 +21,12 @@ import org.eclipse.rdf4j.query.impl.AbstractQuery;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * An abstract query class common to Boolean, Graph and Tuple Queries.
@@ -71,6 +76,7 @@ public abstract class AGQuery extends AbstractQuery {
     protected int offset = -1;
     protected boolean loggingEnabled = false;
     private String engine;
+    private Executor asyncExecutor;
 
 
     public AGQuery(AGRepositoryConnection con, QueryLanguage ql, String queryString, String baseURI) {
@@ -229,7 +235,7 @@ public abstract class AGQuery extends AbstractQuery {
      * Note: this is a no-op pending further cost-benefit analysis of
      * the server's saved query service.
      */
-    synchronized void prepare() {
+    void prepare() {
         //setSaveName(String.valueOf(prepareId++));
     }
 
@@ -302,6 +308,85 @@ public abstract class AGQuery extends AbstractQuery {
         }
     }
 
+    /**
+     * Gets the executor used to process the results of asynchronous evaluation.
+     *
+     * @return the executor set with {@link #setAsyncExecutor(Executor)},
+     * or the default executor of the server
+     * @see AGServer#getAsyncExecutor()
+     * @since v3.0.6
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor != null ? asyncExecutor : httpCon.getServer().getAsyncExecutor();
+    }
+
+    /**
+     * Sets the executor used to process the results of asynchronous evaluation.
+     * Futures returned by the async methods complete on this executor.
+     *
+     * @param asyncExecutor an executor, or null to use the default executor of the server
+     * @since v3.0.6
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Sends the query without waiting for the result.
+     * <p>
+     * The response is processed by handler on the
+     * {@link #getAsyncExecutor() async executor}, then the returned
+     * future is completed with the value computed by result.
+     * Cancelling the future aborts the HTTP request.</p>
+     *
+     * @param handler processes or stores the result
+     * @param result  computes the value of the future once handler is done
+     * @param <T>     the type of the result
+     * @return a future that fails with a {@link QueryEvaluationException}
+     * if the query could not be evaluated
+     * @since v3.0.6
+     */
+    protected <T> CompletableFuture<T> evaluateAsync(AGResponseHandler handler, Callable<T> result) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final CompletableFuture<Void> sent;
+        try {
+            sent = httpCon.prepareHttpRepoClient().queryAsync(this, false, handler, getAsyncExecutor());
+        } catch (AGHttpException e) {
+            future.completeExceptionally(toQueryException(e));
+            return future;
+        }
+        sent.whenComplete((ignored, error) -> {
+            if (error != null) {
+                future.completeExceptionally(toQueryException(error));
+                return;
+            }
+            try {
+                future.complete(result.call());
+            } catch (Exception e) {
+                future.completeExceptionally(toQueryException(e));
+            }
+        });
+        future.whenComplete((ignored, error) -> {
+            if (future.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    private static QueryEvaluationException toQueryException(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof QueryEvaluationException) {
+            return (QueryEvaluationException) error;
+        } else if (error instanceof AGQueryTimeoutException) {
+            return new QueryInterruptedException(error);
+        } else {
+            return new QueryEvaluationException(error);
+        }
+    }
+
     /**
      * Evaluates the query and saves the results to a file.
      * <p>
@@ -350,6 +435,21 @@ public abstract class AGQuery extends AbstractQuery {
         evaluate(new AGDownloadHandler(file, mimeType));
     }
 
+    /**
+     * Evaluates the query and saves the results to a file.
+     * <p>
+     * The handler determines the file, the output format, whether the
+     * file is gzip-compressed and where progress is reported.</p>
+     *
+     * @param handler Writes the results to a file.
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     * @since v3.0.6
+     */
+    public void download(final AGDownloadHandler handler)
+            throws QueryEvaluationException {
+        evaluate(handler);
+    }
+
     /**
      * Evaluates the query and returns the result as an input stream.
      * <p>
@@ -386,6 +486,55 @@ public abstract class AGQuery extends AbstractQuery {
         return stream("*/*");
     }
 
+    /**
+     * Evaluates the query and returns the result as a channel.
+     * <p>
+     * Reading from the channel does not copy the response through
+     * intermediate byte arrays, see {@link AGRawStreamer#getChannel(boolean)}.
+     *
+     * @param mimeType MIME type that will be requested from the server (i.e. output format).
+     * @return A channel containing response data.
+     * The caller MUST close this channel to release connection resources.
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     * @since v3.0.6
+     */
+    public ReadableByteChannel streamChannel(final String mimeType)
+            throws QueryEvaluationException {
+        final AGRawStreamer handler = new AGRawStreamer(mimeType);
+        evaluate(handler);
+        try {
+            return handler.getChannel();
+        } catch (final AGHttpException e) {
+            throw new QueryEvaluationException(e);
+        }
+    }
+
+    /**
+     * Evaluates the query and passes the result to a consumer
+     * in pooled direct buffers.
+     * <p>
+     * Each buffer is only valid during the call to the consumer,
+     * see {@link AGRawStreamer#transferTo(AGRawStreamer.BufferConsumer, boolean)}.
+     * The connection is released before this method returns.
+     *
+     * @param mimeType MIME type that will be requested from the server (i.e. output format).
+     * @param consumer Receives the response data.
+     * @return Number of bytes passed to the consumer.
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     *                                  or the consumer fails
+     * @since v3.0.6
+     */
+    public long stream(final String mimeType, final AGRawStreamer.BufferConsumer consumer)
+            throws QueryEvaluationException {
+        final AGRawStreamer handler = new AGRawStreamer(mimeType);
+        evaluate(handler);
+        try {
+            return handler.transferTo(consumer, true);
+        } catch (final AGHttpException e) {
+            throw new QueryEvaluationException(e);
+        }
+    }
+
     /**
      * Returns the query analysis for the query.
      * <p>
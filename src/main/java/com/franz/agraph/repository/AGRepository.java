@@ -6,8 +6,10 @@ package com.franz.agraph.repository;
 
 import com.franz.agraph.http.AGHTTPClient;
 import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.AGSessionPool;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.pool.AGConnPool;
+import com.franz.agraph.pool.AGConnProp;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.NameValuePair;
 import org.eclipse.rdf4j.model.Value;
@@ -36,6 +38,7 @@ public class AGRepository extends AbstractRepository implements AGAbstractReposi
     private final String repositoryURL;
     private final AGValueFactory vf;
     private AGConnPool pool;
+    private volatile AGSessionPool sessionPool;
 
     /**
      * Creates an AGRepository instance for a repository having the given
@@ -170,6 +173,7 @@ public class AGRepository extends AbstractRepository implements AGAbstractReposi
         } else {
             AGHttpRepoClient repoclient = new AGHttpRepoClient(
                     this, getCatalog().getHTTPClient(), repositoryURL, null, executor);
+            repoclient.setSessionPool(sessionPool);
             return new AGRepositoryConnection(this, repoclient);
         }
     }
@@ -244,6 +248,9 @@ public class AGRepository extends AbstractRepository implements AGAbstractReposi
         if (pool != null) {
             pool.close();
         }
+        if (sessionPool != null) {
+            sessionPool.close();
+        }
     }
 
     /**
@@ -370,6 +377,43 @@ public class AGRepository extends AbstractRepository implements AGAbstractReposi
         this.pool = pool;
     }
 
+    /**
+     * Sets the pool of dedicated sessions opened in advance for the
+     * connections to this repository, and starts it.
+     * <p>
+     * A connection that needs a dedicated session, for instance when
+     * {@link AGRepositoryConnection#begin()} is first called, takes one
+     * from the pool instead of waiting for the server to open it, if the
+     * pool has one with the settings of the connection. The pool is closed
+     * when the Repository is shutdown.
+     * </p>
+     *
+     * <pre>{@code
+     * AGSessionPool sessions = new AGSessionPool(repo, 4);
+     * sessions.setSessionLoadInitFile(true);
+     * repo.setSessionPool(sessions);
+     * }</pre>
+     *
+     * @param sessionPool the session pool, or null to open sessions on demand
+     * @see AGConnProp#warmSessions
+     * @since v3.0.6
+     */
+    public void setSessionPool(AGSessionPool sessionPool) {
+        if (sessionPool != null) {
+            sessionPool.start();
+        }
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * @return The pool of sessions opened in advance, or null.
+     * @see #setSessionPool(AGSessionPool)
+     * @since v3.0.6
+     */
+    public AGSessionPool getSessionPool() {
+        return sessionPool;
+    }
+
     /**
      * Forces a checkpoint for this repository.
      * <p>
@@ -12,17 +12,20 @@ import com.franz.agraph.http.exception.AGMalformedDataException;
 import com.franz.agraph.http.handler.AGDownloadHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
 import com.franz.agraph.http.handler.AGRDFHandler;
+import com.franz.agraph.http.handler.AGRDFStreamer;
 import com.franz.agraph.http.handler.AGRawStreamer;
 import com.franz.agraph.http.handler.AGResponseHandler;
 import com.franz.agraph.pool.AGConnPool;
 import com.franz.agraph.repository.repl.TransactionSettings;
 import com.franz.util.Ctx;
 import org.apache.commons.codec.DecoderException;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.eclipse.rdf4j.OpenRDFUtil;
 import org.eclipse.rdf4j.RDF4JException;
 import org.eclipse.rdf4j.common.io.GZipUtil;
 import org.eclipse.rdf4j.common.io.ZipUtil;
 import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.ExceptionConvertingIteration;
 import org.eclipse.rdf4j.common.iteration.Iteration;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
@@ -64,8 +67,10 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Arrays;
 import java.util.List;
@@ -188,12 +193,44 @@ public class AGRepositoryConnection
     public static final String PROP_USE_ADD_STATEMENT_BUFFER = "com.franz.agraph.repository.AGRepositoryConnection.useAddStatementBuffer";
     public static final String PROP_ADD_STATEMENT_BUFFER_MAX_SIZE = "com.franz.agraph.repository.AGRepositoryConnection.addStatementBufferMaxSize";
     public static final int DEFAULT_ADD_STATEMENT_BUFFER_SIZE = 10000;
+    /**
+     * System property for the default maximum number of statements sent in a single
+     * request by {@link #add(Iterable, Resource...)} within a transaction.
+     *
+     * @see #setUploadBatchSize(int)
+     */
+    public static final String PROP_UPLOAD_BATCH_SIZE = "com.franz.agraph.repository.AGRepositoryConnection.uploadBatchSize";
+    public static final int DEFAULT_UPLOAD_BATCH_SIZE = 100000;
+
+    /**
+     * System property that enables the write-behind buffer for new connections.
+     *
+     * @see #setWriteBehindEnabled(boolean)
+     */
+    public static final String PROP_USE_WRITE_BEHIND = "com.franz.agraph.repository.AGRepositoryConnection.useWriteBehind";
+    /**
+     * System property for the size in bytes at which the write-behind buffer is sent.
+     */
+    public static final String PROP_WRITE_BEHIND_MAX_BYTES = "com.franz.agraph.repository.AGRepositoryConnection.writeBehindMaxBytes";
+    /**
+     * System property for the number of milliseconds after which changes in the
+     * write-behind buffer are sent, even if the buffer is not full.
+     */
+    public static final String PROP_WRITE_BEHIND_FLUSH_INTERVAL = "com.franz.agraph.repository.AGRepositoryConnection.writeBehindFlushInterval";
+    public static final long DEFAULT_WRITE_BEHIND_MAX_BYTES = 1024 * 1024;
+    public static final long DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL = 1000;
 
     private final AGAbstractRepository repository;
     private final AGHttpRepoClient repoclient;
     private final AGValueFactory vf;
-    private final List<JSONArray> addStatementBuffer; // never null
+    // Holds the encoded rows of buffered statements, created when first needed.
+    private AGStatementEncoder addStatementBuffer;
+    private int numBufferedAddStatements;
+    // Encodes statements streamed by add and remove, created when first needed.
+    private AGStatementEncoder statementEncoder;
     private boolean streamResults;
+    private int decodeThreads;
+    private boolean decodeOrdered = true;
     // If not null close will return the connection to this pool instead of closing.
     private AGConnPool pool;
     /**
@@ -201,6 +238,11 @@ public class AGRepositoryConnection
      */
     private boolean addStatementBufferEnabled;
     private int addStatementBufferMaxSize;
+    private int uploadBatchSize;
+    // Not null if write-behind is enabled.
+    private AGWriteBehindBuffer writeBehind;
+    private long writeBehindMaxBytes;
+    private long writeBehindFlushInterval;
 
     /**
      * @param repository a repository name
@@ -226,7 +268,12 @@ public class AGRepositoryConnection
 
         addStatementBufferEnabled = Boolean.parseBoolean(System.getProperty(PROP_USE_ADD_STATEMENT_BUFFER));
         addStatementBufferMaxSize = Integer.parseInt(System.getProperty(PROP_ADD_STATEMENT_BUFFER_MAX_SIZE, "" + DEFAULT_ADD_STATEMENT_BUFFER_SIZE));
-        addStatementBuffer = new ArrayList<>();
+        uploadBatchSize = Integer.parseInt(System.getProperty(PROP_UPLOAD_BATCH_SIZE, "" + DEFAULT_UPLOAD_BATCH_SIZE));
+        writeBehindMaxBytes = Long.parseLong(System.getProperty(PROP_WRITE_BEHIND_MAX_BYTES, "" + DEFAULT_WRITE_BEHIND_MAX_BYTES));
+        writeBehindFlushInterval = Long.parseLong(System.getProperty(PROP_WRITE_BEHIND_FLUSH_INTERVAL, "" + DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL));
+        if (Boolean.parseBoolean(System.getProperty(PROP_USE_WRITE_BEHIND))) {
+            setWriteBehindEnabled(true);
+        }
     }
 
     @Override
@@ -276,6 +323,9 @@ public class AGRepositoryConnection
     }
 
     private AGHttpRepoClient getHttpRepoClientHandlingBuffer(boolean handleBuffer) {
+        if (handleBuffer && writeBehind != null) {
+            writeBehind.flush();
+        }
         if (handleBuffer && addStatementBufferEnabled) {
             forwardBufferedAddStatements();
         }
@@ -315,11 +365,18 @@ public class AGRepositoryConnection
     }
 
     /**
-     * Arrange for the JSON to be buffered and then later sent in a batch.
+     * Arrange for the statement to be encoded into the buffer and then later sent in a batch.
      */
-    private void bufferAddStatement(JSONArray rows) {
-        addStatementBuffer.add(rows);
-        if (addStatementBuffer.size() >= addStatementBufferMaxSize) {
+    private void bufferAddStatement(Statement st, JSONObject attributes, Resource... contexts) {
+        if (addStatementBuffer == null) {
+            addStatementBuffer = createStatementEncoder();
+        }
+        if (numBufferedAddStatements == 0) {
+            addStatementBuffer.begin();
+        }
+        addStatementBuffer.writeRows(st, contexts, attributes == null ? null : attributes.toString());
+        numBufferedAddStatements++;
+        if (numBufferedAddStatements >= addStatementBufferMaxSize) {
             forwardBufferedAddStatements();
         }
     }
@@ -340,28 +397,145 @@ public class AGRepositoryConnection
             throw new IllegalArgumentException("Buffer maxSize must be positive integer");
         }
         addStatementBufferMaxSize = size;
-        if (addStatementBuffer.size() >= addStatementBufferMaxSize) {
+        if (numBufferedAddStatements >= addStatementBufferMaxSize) {
             forwardBufferedAddStatements(); // simply send them all
         }
     }
 
+    /**
+     * @return the maximum number of statements sent in a single request when adding
+     * many statements within a transaction, 0 or less if there is no limit.
+     * @see #setUploadBatchSize(int)
+     */
+    public int getUploadBatchSize() {
+        return uploadBatchSize;
+    }
+
+    /**
+     * Set the maximum number of statements {@link #add(Iterable, Resource...)} and
+     * {@link #add(Iteration, Resource...)} send in a single request within a transaction.
+     * Larger inputs are split into several requests. In autocommit mode the statements
+     * are always sent in a single request.
+     * <p>
+     * This size can also be set by using property {@link #PROP_UPLOAD_BATCH_SIZE}.
+     *
+     * @param size maximum number of statements per request, 0 or less for no limit
+     */
+    public void setUploadBatchSize(int size) {
+        uploadBatchSize = size;
+    }
+
+    /**
+     * @return whether adds and removes are sent to the server in the background.
+     * @see #setWriteBehindEnabled(boolean)
+     */
+    public boolean isWriteBehindEnabled() {
+        return writeBehind != null;
+    }
+
+    /**
+     * Enable or disable the write-behind buffer.
+     * <p>
+     * When enabled, {@link #add(Resource, IRI, Value, Resource...) adds} and
+     * {@link #remove(Resource, IRI, Value, Resource...) removes} of single
+     * statements return immediately. The changes are collected, in order, and
+     * sent to the server on a background thread when they exceed
+     * {@link #getWriteBehindMaxBytes()} bytes, every
+     * {@link #getWriteBehindFlushInterval()} milliseconds, and before any other
+     * request on this connection, such as a query or a commit. This also works in
+     * autocommit mode, where each request sent is committed on its own.</p>
+     * <p>
+     * Errors are not reported by the add or remove that caused them, but by
+     * the next operation that sends or waits for buffered changes (for instance
+     * a query, {@link #commit()} or {@link #flushWriteBehind()}). The changes
+     * in the failed request are lost.</p>
+     * <p>
+     * Write-behind takes precedence over the
+     * {@link #setAddStatementBufferEnabled(boolean) addStatementBuffer}.
+     * It can also be enabled by setting property {@link #PROP_USE_WRITE_BEHIND}.</p>
+     * <p>
+     * Disabling write-behind sends all buffered changes and waits for them.</p>
+     *
+     * @param enabled whether to enable write-behind
+     * @throws RepositoryException if disabling failed to send buffered changes
+     * @since v3.0.6
+     */
+    public void setWriteBehindEnabled(boolean enabled) throws RepositoryException {
+        if (enabled && writeBehind == null) {
+            writeBehind = new AGWriteBehindBuffer(getHttpRepoClientInternal(), createStatementEncoder(),
+                    getServer().getAsyncExecutor(), getServer().getExecutor(),
+                    writeBehindMaxBytes, writeBehindFlushInterval);
+        } else if (!enabled && writeBehind != null) {
+            final AGWriteBehindBuffer buffer = writeBehind;
+            writeBehind = null;
+            buffer.close();
+        }
+    }
+
+    /**
+     * Sends the changes in the write-behind buffer and waits for them to be processed.
+     *
+     * @throws RepositoryException if sending these or earlier buffered changes failed
+     * @see #setWriteBehindEnabled(boolean)
+     * @since v3.0.6
+     */
+    public void flushWriteBehind() throws RepositoryException {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * @return the size in bytes at which the write-behind buffer is sent.
+     * @since v3.0.6
+     */
+    public long getWriteBehindMaxBytes() {
+        return writeBehindMaxBytes;
+    }
+
+    /**
+     * @return the maximum number of milliseconds changes stay in the write-behind buffer,
+     * 0 or less if they are only sent when the buffer is full or before other requests.
+     * @since v3.0.6
+     */
+    public long getWriteBehindFlushInterval() {
+        return writeBehindFlushInterval;
+    }
+
+    /**
+     * Configure the write-behind buffer. Takes effect the next time
+     * write-behind is enabled.
+     * <p>
+     * The defaults can also be set by using properties {@link #PROP_WRITE_BEHIND_MAX_BYTES}
+     * and {@link #PROP_WRITE_BEHIND_FLUSH_INTERVAL}.</p>
+     *
+     * @param maxBytes      size in bytes at which buffered changes are sent
+     * @param flushInterval milliseconds after which buffered changes are sent,
+     *                      0 or less to disable periodic sending
+     * @since v3.0.6
+     */
+    public void setWriteBehindLimits(long maxBytes, long flushInterval) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Buffer maxBytes must be positive");
+        }
+        writeBehindMaxBytes = maxBytes;
+        writeBehindFlushInterval = flushInterval;
+    }
+
     /**
      * Forward the buffered statements to the repo, by sending the JSON over the HTTP connection.
      * Afterwards the buffer will be empty (even if the upload failed: those statements are lost).
      */
     private void forwardBufferedAddStatements() throws RepositoryException {
-        if (!addStatementBuffer.isEmpty()) {
-            // System.out.println("Now uploading " + addStatementBuffer.size()+ " pending \"Add Statement\"");
-            JSONArray totalArray = new JSONArray();
-            for (JSONArray addStmtJson : addStatementBuffer) {
-                append(totalArray, addStmtJson);
-            }
+        if (numBufferedAddStatements > 0) {
+            addStatementBuffer.end();
             try {
-                getHttpRepoClientInternal().uploadJSON(totalArray);
+                getHttpRepoClientInternal().uploadJSON(new ByteArrayRequestEntity(
+                        addStatementBuffer.toByteArray(), AGStatementEncoder.CONTENT_TYPE));
             } catch (AGHttpException e) {
                 throw new RepositoryException(e);
             } finally {
-                addStatementBuffer.clear();
+                numBufferedAddStatements = 0;
             }
         }
     }
@@ -370,7 +544,7 @@ public class AGRepositoryConnection
      * @return the number of buffered statements to be added
      */
     public int getNumBufferedAddStatements() {
-        return addStatementBuffer.size();
+        return numBufferedAddStatements;
     }
 
     @Override
@@ -381,161 +555,219 @@ public class AGRepositoryConnection
     @Override
     protected void addWithoutCommit(Resource subject, IRI predicate,
                                     Value object, Resource... contexts) throws RepositoryException {
-        Statement st = new StatementImpl(subject, predicate, object);
-        JSONArray rows = encodeJSON(st, null, contexts);
-
-        if (isUseAddStatementBuffer()) {
-            bufferAddStatement(rows);
-        } else {
-            try {
-                prepareHttpRepoClient().uploadJSON(rows);
-            } catch (AGHttpException e) {
-                throw new RepositoryException(e);
-            }
-        }
+        addWithoutCommit(subject, predicate, object, null, contexts);
     }
 
     protected void addWithoutCommit(Resource subject, IRI predicate,
                                     Value object, JSONObject attributes, Resource... contexts) throws RepositoryException {
         Statement st = new StatementImpl(subject, predicate, object);
-        JSONArray rows = encodeJSON(st, attributes, contexts);
 
-        if (isUseAddStatementBuffer()) {
-            bufferAddStatement(rows);
+        if (writeBehind != null) {
+            writeBehind.add(st, attributes, contexts);
+        } else if (isUseAddStatementBuffer()) {
+            bufferAddStatement(st, attributes, contexts);
         } else {
-            try {
-                prepareHttpRepoClient().uploadJSON(rows);
-            } catch (AGHttpException e) {
-                throw new RepositoryException(e);
-            }
+            uploadStatement(st, attributes, contexts);
         }
     }
 
     @Override
     protected void removeWithoutCommit(Resource subject, IRI predicate,
                                        Value object, Resource... contexts) throws RepositoryException {
-        prepareHttpRepoClient().deleteStatements(subject, predicate, object,
-                contexts);
+        if (writeBehind != null) {
+            writeBehind.remove(subject, predicate, object, contexts);
+        } else {
+            prepareHttpRepoClient().deleteStatements(subject, predicate, object,
+                    contexts);
+        }
     }
 
+    /**
+     * Adds statements to the repository.
+     * <p>
+     * The statements are encoded while they are sent, so memory use does
+     * not grow with the number of statements. Within a transaction they are
+     * sent in sub-batches of at most {@link #getUploadBatchSize()} statements.
+     * In autocommit mode they are always sent in a single request, so that
+     * they are committed all at once.</p>
+     *
+     * @param statements statements to add
+     * @param contexts   contexts to add the statements to, replacing
+     *                   the contexts of the statements themselves
+     * @throws RepositoryException if the statements could not be added
+     */
     public void add(Iterable<? extends Statement> statements,
                     Resource... contexts) throws RepositoryException {
-        OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        for (Statement st : statements) {
-            JSONArray rows_st = encodeJSON(st, null, contexts);
-            append(rows, rows_st);
-        }
-        try {
-            prepareHttpRepoClient().uploadJSON(rows, contexts);
-        } catch (AGHttpException e) {
-            throw new RepositoryException(e);
-        }
+        add(statements, (JSONObject) null, contexts);
     }
 
+    /**
+     * Adds statements with attributes to the repository.
+     *
+     * @param statements statements to add
+     * @param attributes attributes to set on every statement, may be null
+     * @param contexts   contexts to add the statements to, replacing
+     *                   the contexts of the statements themselves
+     * @throws RepositoryException if the statements could not be added
+     * @see #add(Iterable, Resource...)
+     */
     public void add(Iterable<? extends Statement> statements,
                     JSONObject attributes,
                     Resource... contexts) throws RepositoryException {
         OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        for (Statement st : statements) {
-            JSONArray rows_st = encodeJSON(st, attributes, contexts);
-            append(rows, rows_st);
-        }
-        try {
-            prepareHttpRepoClient().uploadJSON(rows, contexts);
-        } catch (AGHttpException e) {
-            throw new RepositoryException(e);
-        }
+        uploadStatements(statements.iterator(), attributes, contexts, contexts);
     }
 
-    private void append(JSONArray rows, JSONArray rowsSt) {
-        for (int i = 0; i < rowsSt.length(); i++) {
-            try {
-                rows.put(rowsSt.get(i));
-            } catch (JSONException e) {
-                throw new RuntimeException(e);
-            }
-        }
+    /**
+     * Adds statements to the repository.
+     *
+     * @param statementIter statements to add
+     * @param contexts      contexts to add the statements to, replacing
+     *                      the contexts of the statements themselves
+     * @param <E>           type of exception thrown by the iteration
+     * @throws RepositoryException if the statements could not be added
+     * @throws E                   if the iteration failed
+     * @see #add(Iterable, Resource...)
+     */
+    public <E extends Exception> void add(
+            Iteration<? extends Statement, E> statementIter,
+            Resource... contexts) throws RepositoryException, E {
+        add(statementIter, (JSONObject) null, contexts);
     }
 
+    /**
+     * Adds statements with attributes to the repository.
+     *
+     * @param statementIter statements to add
+     * @param attributes    attributes to set on every statement, may be null
+     * @param contexts      contexts to add the statements to, replacing
+     *                      the contexts of the statements themselves
+     * @param <E>           type of exception thrown by the iteration
+     * @throws RepositoryException if the statements could not be added
+     * @throws E                   if the iteration failed
+     * @see #add(Iterable, Resource...)
+     */
     public <E extends Exception> void add(
             Iteration<? extends Statement, E> statementIter,
+            JSONObject attributes,
             Resource... contexts) throws RepositoryException, E {
         OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        while (statementIter.hasNext()) {
-            append(rows, encodeJSON(statementIter.next(), null, contexts));
+        final IterationIterator<Statement, E> statements = new IterationIterator<>(statementIter);
+        try {
+            uploadStatements(statements, attributes, contexts);
+        } catch (RuntimeException e) {
+            // The iteration may have failed on another thread, while
+            // the request was being written.
+            statements.rethrowFailure();
+            throw e;
         }
+    }
+
+    /**
+     * Sends statements to the server, encoding them as they are written
+     * to the connection.
+     *
+     * @param statements      statements to send
+     * @param attributes      attributes to set on every statement, may be null;
+     *                        sent once as a request parameter
+     * @param contexts        contexts to encode into each row
+     * @param requestContexts contexts to pass as request parameters
+     */
+    private void uploadStatements(Iterator<? extends Statement> statements, JSONObject attributes,
+                                  Resource[] contexts, Resource... requestContexts)
+            throws RepositoryException {
+        final AGHttpRepoClient client = prepareHttpRepoClient();
+        // Splitting is only safe within a transaction, in autocommit
+        // mode each request would be committed separately.
+        final long batchSize = client.isAutoCommit() ? 0 : uploadBatchSize;
         try {
-            prepareHttpRepoClient().uploadJSON(rows);
+            do {
+                client.uploadJSON(new AGStatementsRequestEntity(statements, batchSize,
+                        getStatementEncoder(), contexts), attributes, requestContexts);
+            } while (statements.hasNext());
         } catch (AGHttpException e) {
             throw new RepositoryException(e);
         }
     }
 
-    public <E extends Exception> void add(
-            Iteration<? extends Statement, E> statementIter,
-            JSONObject attributes,
-            Resource... contexts) throws RepositoryException, E {
-        OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        while (statementIter.hasNext()) {
-            append(rows, encodeJSON(statementIter.next(), attributes, contexts));
-        }
+    /**
+     * Adds a single statement. Its rows are encoded before the request
+     * is sent, so that the request has a known length and can be retried.
+     */
+    private void uploadStatement(Statement st, JSONObject attributes, Resource[] contexts)
+            throws RepositoryException {
+        final AGStatementEncoder encoder = getStatementEncoder();
+        encoder.begin();
+        encoder.writeRows(st, contexts, null);
+        encoder.end();
         try {
-            prepareHttpRepoClient().uploadJSON(rows);
+            prepareHttpRepoClient().uploadJSON(
+                    new ByteArrayRequestEntity(encoder.toByteArray(), AGStatementEncoder.CONTENT_TYPE),
+                    attributes);
         } catch (AGHttpException e) {
             throw new RepositoryException(e);
         }
     }
 
-    private JSONArray encodeJSON(Statement st, JSONObject attributes, Resource... contexts) {
-        JSONArray rows = new JSONArray();
-        String attrs = null;
+    /**
+     * Presents an {@link Iteration} as an {@link Iterator}, remembering the
+     * checked exceptions it throws so that they can be rethrown later.
+     */
+    private static final class IterationIterator<T, E extends Exception> implements Iterator<T> {
+        private final Iteration<? extends T, E> iteration;
+        private volatile Exception failure;
 
-        if (attributes != null) {
-            attrs = attributes.toString();
+        IterationIterator(Iteration<? extends T, E> iteration) {
+            this.iteration = iteration;
         }
 
-        if (contexts.length == 0) {
-            JSONArray row = new JSONArray().put(encodeValueForStorageJSON(st.getSubject()))
-                    .put(encodeValueForStorageJSON(st.getPredicate()))
-                    .put(encodeValueForStorageJSON(st.getObject()));
-            // there are no contexts passed in, but a context may be encoded in the row.
-            if (st.getContext() != null) {
-                row.put(encodeValueForStorageJSON(st.getContext()));
-            } else {
-                row.put((Object) null);
+        @Override
+        public boolean hasNext() {
+            try {
+                return iteration.hasNext();
+            } catch (Exception e) {
+                throw fail(e);
             }
-            if (attrs != null) {
-                row.put(attrs);
+        }
+
+        @Override
+        public T next() {
+            try {
+                return iteration.next();
+            } catch (Exception e) {
+                throw fail(e);
             }
-            rows.put(row);
-        } else {
-            for (Resource c : contexts) {
-                JSONArray row = new JSONArray().put(encodeValueForStorageJSON(st.getSubject()))
-                        .put(encodeValueForStorageJSON(st.getPredicate()))
-                        .put(encodeValueForStorageJSON(st.getObject()));
-                // contexts passed in as argument to encodeJSON supersede any context that may
-                // be specified in the row itself. A context of null refers to the default Graph.
-                if (c != null) {
-                    row.put(encodeValueForStorageJSON(c));
-                } else {
-                    row.put((Object) null);
-                }
-                if (attrs != null) {
-                    row.put(attrs);
-                }
-                rows.put(row);
+        }
+
+        private RuntimeException fail(Exception e) {
+            failure = e;
+            return new IllegalStateException("Reading statements failed", e);
+        }
+
+        /**
+         * Throws the exception thrown by the iteration, if any.
+         */
+        @SuppressWarnings("unchecked")
+        void rethrowFailure() throws E {
+            final Exception e = failure;
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else if (e != null) {
+                throw (E) e;
             }
         }
-        return rows;
     }
 
-    private String encodeValueForStorageJSON(Value v) {
-        Value storableValue = AGHttpRepoClient.getStorableValue(v, vf, getHttpRepoClientInternal().getAllowExternalBlankNodeIds());
-        return NTriplesUtil.toNTriplesString(storableValue);
+    private AGStatementEncoder getStatementEncoder() {
+        if (statementEncoder == null) {
+            statementEncoder = createStatementEncoder();
+        }
+        return statementEncoder;
+    }
+
+    private AGStatementEncoder createStatementEncoder() {
+        return new AGStatementEncoder(v -> AGHttpRepoClient.getStorableValue(
+                v, vf, getHttpRepoClientInternal().getAllowExternalBlankNodeIds()));
     }
 
     /**
@@ -990,22 +1222,22 @@ public class AGRepositoryConnection
     public void remove(Iterable<? extends Statement> statements,
                        Resource... contexts) throws RepositoryException {
         OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        for (Statement st : statements) {
-            append(rows, encodeJSON(st, null, contexts));
-        }
-        prepareHttpRepoClient().deleteJSON(rows);
+        prepareHttpRepoClient().deleteJSON(new AGStatementsRequestEntity(
+                statements.iterator(), 0, getStatementEncoder(), contexts));
     }
 
     public <E extends Exception> void remove(
             Iteration<? extends Statement, E> statements, Resource... contexts)
             throws RepositoryException, E {
         OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        while (statements.hasNext()) {
-            append(rows, encodeJSON(statements.next(), null, contexts));
+        final IterationIterator<Statement, E> iterator = new IterationIterator<>(statements);
+        try {
+            prepareHttpRepoClient().deleteJSON(new AGStatementsRequestEntity(
+                    iterator, 0, getStatementEncoder(), contexts));
+        } catch (RuntimeException e) {
+            iterator.rethrowFailure();
+            throw e;
         }
-        prepareHttpRepoClient().deleteJSON(rows);
     }
 
     /**
@@ -1122,7 +1354,9 @@ public class AGRepositoryConnection
     }
 
     /**
-     * If true, automatically use {@link AGStreamTupleQuery}.
+     * If true, automatically use {@link AGStreamTupleQuery} and
+     * {@link AGStreamGraphQuery}, and stream the
+     * results of {@link #getStatements(Resource, IRI, Value, boolean, Resource...)}.
      * Default is false.
      *
      * @return boolean the value of the <code>streamResults</code> parameter
@@ -1134,7 +1368,15 @@ public class AGRepositoryConnection
 
     /**
      * Set to true to automatically use {@link AGStreamTupleQuery}
-     * for {@link #prepareTupleQuery(QueryLanguage, String, String)}.
+     * for {@link #prepareTupleQuery(QueryLanguage, String, String)}
+     * and {@link AGStreamGraphQuery} for
+     * {@link #prepareGraphQuery(QueryLanguage, String, String)}.
+     * <p>
+     * This also makes {@link #getStatements(Resource, IRI, Value, boolean, Resource...)}
+     * and {@link #getStatements(String...)} return results that read the statements
+     * from the HTTP response as they are requested, instead of loading all of
+     * them first. Such results hold on to the HTTP response until they are
+     * closed.</p>
      *
      * @param streamResults new setting for the streamResults parameter
      * @see #isStreamResults()
@@ -1143,6 +1385,54 @@ public class AGRepositoryConnection
         this.streamResults = streamResults;
     }
 
+    /**
+     * Decodes streamed results on several threads while they are read.
+     * <p>
+     * Applies to the statements returned by
+     * {@link #getStatements(Resource, IRI, Value, boolean, Resource...)}
+     * and {@link #getStatements(String...)} when results are streamed
+     * (see {@link #setStreamResults(boolean)}), which are then requested
+     * as N-Quads, and is the default for {@link AGStreamTupleQuery}.
+     * The thread reading the result cuts the response into batches of
+     * lines, and up to the given number of batches are decoded at a time
+     * on the {@link AGServer#getAsyncExecutor() async executor}. Decoding
+     * tasks do not block, so the executor needs no dedicated threads.</p>
+     *
+     * @param threads number of decoding threads, 0 (the default) to decode
+     *                on the thread reading the result
+     * @param ordered whether results are returned in the order sent by the
+     *                server; if false, they are returned as soon as they
+     *                are decoded
+     * @see AGStreamTupleQuery#setParallelDecoding(int, boolean)
+     * @since v3.0.6
+     */
+    public void setParallelDecoding(int threads, boolean ordered) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Number of threads must not be negative: " + threads);
+        }
+        this.decodeThreads = threads;
+        this.decodeOrdered = ordered;
+    }
+
+    /**
+     * @return Number of threads decoding streamed results, 0 if they are
+     *         decoded by the thread reading the result.
+     * @see #setParallelDecoding(int, boolean)
+     * @since v3.0.6
+     */
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    /**
+     * @return Whether results decoded in parallel are returned in order.
+     * @see #setParallelDecoding(int, boolean)
+     * @since v3.0.6
+     */
+    public boolean isDecodeOrdered() {
+        return decodeOrdered;
+    }
+
     @Override
     public void clearNamespaces() throws RepositoryException {
         prepareHttpRepoClient().clearNamespaces();
@@ -1156,17 +1446,38 @@ public class AGRepositoryConnection
      */
     @Override
     public void close() throws RepositoryException {
-        if (pool != null) {
-            try {
-                pool.returnObject(this);
-            } catch (final Exception e) {
-                throw new RepositoryException(e);
+        RepositoryException error = null;
+        try {
+            if (writeBehind != null) {
+                // Also stops the periodic flush while the connection is in a pool.
+                writeBehind.suspend();
             }
-        } else {
-            if (isOpen()) {
-                prepareHttpRepoClient().close();
-                super.close();
+        } catch (RepositoryException e) {
+            error = e;
+        }
+        // The connection is returned or closed even if buffered changes failed.
+        try {
+            if (pool != null) {
+                try {
+                    pool.returnObject(this);
+                } catch (final Exception e) {
+                    throw new RepositoryException(e);
+                }
+            } else {
+                if (isOpen()) {
+                    setWriteBehindEnabled(false);
+                    prepareHttpRepoClient().close();
+                    super.close();
+                }
             }
+        } catch (RepositoryException e) {
+            if (error == null) {
+                throw e;
+            }
+            error.addSuppressed(e);
+        }
+        if (error != null) {
+            throw error;
         }
     }
 
@@ -1218,6 +1529,31 @@ public class AGRepositoryConnection
                         .iterator()));
     }
 
+    private AGRDFStreamer createRDFStreamer(AGHttpRepoClient client) {
+        if (decodeThreads > 0) {
+            // Lines of N-Quads can be decoded independently.
+            AGRDFStreamer streamer = new AGRDFStreamer(AGRDFFormat.NQUADS, client.getValueFactory(),
+                    client.getAllowExternalBlankNodeIds(), getServer().getAsyncExecutor());
+            streamer.setParallelDecoding(decodeThreads, decodeOrdered);
+            return streamer;
+        }
+        return new AGRDFStreamer(client.getPreferredRDFFormat(), client.getValueFactory(),
+                client.getAllowExternalBlankNodeIds(), getServer().getAsyncExecutor());
+    }
+
+    /**
+     * Wraps the statements streamed by a handler that has received its response.
+     */
+    private RepositoryResult<Statement> createStreamingRepositoryResult(AGRDFStreamer handler) {
+        return new RepositoryResult<>(
+                new ExceptionConvertingIteration<Statement, RepositoryException>(handler.getResult()) {
+                    @Override
+                    protected RepositoryException convert(Exception e) {
+                        return new RepositoryException(e);
+                    }
+                });
+    }
+
     public String getNamespace(String prefix) throws RepositoryException {
         return prepareHttpRepoClient().getNamespace(prefix);
     }
@@ -1292,6 +1628,12 @@ public class AGRepositoryConnection
     public RepositoryResult<Statement> getStatements(Resource subj, IRI pred,
                                                      Value obj, boolean includeInferred, Resource... contexts)
             throws RepositoryException {
+        if (streamResults) {
+            AGHttpRepoClient client = prepareHttpRepoClient();
+            AGRDFStreamer handler = createRDFStreamer(client);
+            client.getStatements(subj, pred, obj, Boolean.toString(includeInferred), handler, contexts);
+            return createStreamingRepositoryResult(handler);
+        }
         try {
             StatementCollector collector = new StatementCollector();
             exportStatements(subj, pred, obj, includeInferred, collector,
@@ -1451,6 +1793,33 @@ public class AGRepositoryConnection
                 new AGDownloadHandler(file, mimeType), contexts);
     }
 
+    /**
+     * Downloads statements matching given pattern to a file.
+     * <p>
+     * The handler determines the file, the output format, whether the
+     * file is gzip-compressed and where progress is reported.</p>
+     *
+     * @param handler         Writes the statements to a file.
+     * @param subj            Subject filter.
+     * @param pred            Predicate filter.
+     * @param obj             Object filter.
+     * @param includeInferred If true, inferred triples will be included in the result.
+     * @param contexts        Optional list of graphs to export.
+     * @throws AGHttpException .
+     * @see AGDownloadHandler#setCompression(AGDownloadHandler.Compression)
+     * @see AGDownloadHandler#setProgressListener(AGDownloadHandler.ProgressListener)
+     * @since v3.0.6
+     */
+    public void downloadStatements(final AGDownloadHandler handler,
+                                   final Resource subj, final IRI pred, final Value obj,
+                                   final boolean includeInferred,
+                                   final Resource... contexts)
+            throws AGHttpException {
+        prepareHttpRepoClient().getStatements(
+                subj, pred, obj, Boolean.toString(includeInferred),
+                handler, contexts);
+    }
+
     /**
      * Returns statements matching given pattern as an InputStream.
      * <p>
@@ -1535,6 +1904,65 @@ public class AGRepositoryConnection
         return handler.getStream();
     }
 
+    /**
+     * Returns statements matching given pattern as a channel.
+     * <p>
+     * Reading from the channel does not copy the response through
+     * intermediate byte arrays, see {@link AGRawStreamer#getChannel(boolean)}.
+     *
+     * @param mimeType        MIME type that will be requested from the server (output format).
+     * @param subj            Subject filter.
+     * @param pred            Predicate filter.
+     * @param obj             Object filter.
+     * @param includeInferred If true, inferred triples will be included in the result.
+     * @param contexts        Optional list of graphs to export.
+     * @return A channel containing response data.
+     * The caller MUST close this channel to release connection resources.
+     * @throws AGHttpException .
+     * @since v3.0.6
+     */
+    public ReadableByteChannel streamStatementsChannel(final String mimeType,
+                                                       final Resource subj, final IRI pred, final Value obj,
+                                                       final boolean includeInferred,
+                                                       final Resource... contexts)
+            throws AGHttpException {
+        final AGRawStreamer handler = new AGRawStreamer(mimeType);
+        prepareHttpRepoClient().getStatements(
+                subj, pred, obj, Boolean.toString(includeInferred),
+                handler, contexts);
+        return handler.getChannel();
+    }
+
+    /**
+     * Passes statements matching given pattern to a consumer
+     * in pooled direct buffers.
+     * <p>
+     * Each buffer is only valid during the call to the consumer.
+     * The connection is released before this method returns.
+     *
+     * @param mimeType        MIME type that will be requested from the server (output format).
+     * @param consumer        Receives the response data.
+     * @param subj            Subject filter.
+     * @param pred            Predicate filter.
+     * @param obj             Object filter.
+     * @param includeInferred If true, inferred triples will be included in the result.
+     * @param contexts        Optional list of graphs to export.
+     * @return Number of bytes passed to the consumer.
+     * @throws AGHttpException .
+     * @since v3.0.6
+     */
+    public long streamStatements(final String mimeType, final AGRawStreamer.BufferConsumer consumer,
+                                 final Resource subj, final IRI pred, final Value obj,
+                                 final boolean includeInferred,
+                                 final Resource... contexts)
+            throws AGHttpException {
+        final AGRawStreamer handler = new AGRawStreamer(mimeType);
+        prepareHttpRepoClient().getStatements(
+                subj, pred, obj, Boolean.toString(includeInferred),
+                handler, contexts);
+        return handler.transferTo(consumer, true);
+    }
+
     /**
      * Returns statements having the specified ids.
      * <p>
@@ -1552,6 +1980,12 @@ public class AGRepositoryConnection
      */
     public RepositoryResult<Statement> getStatements(String... ids)
             throws RepositoryException {
+        if (streamResults) {
+            AGHttpRepoClient client = prepareHttpRepoClient();
+            AGRDFStreamer handler = createRDFStreamer(client);
+            client.getStatements(handler, ids);
+            return createStreamingRepositoryResult(handler);
+        }
         try {
             StatementCollector collector = new StatementCollector();
             exportStatements(collector, ids);
@@ -1761,6 +2195,9 @@ public class AGRepositoryConnection
         // throw MalformedQueryException, etc.
         AGGraphQuery q = new AGGraphQuery(this, ql, queryString, baseURI);
         q.prepare();
+        if (streamResults) {
+            q = new AGStreamGraphQuery(q);
+        }
         return q;
     }
 
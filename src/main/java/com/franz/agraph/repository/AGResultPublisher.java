@@ -0,0 +1,200 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryResult;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Publishes the elements of a streamed query result to a
+ * {@link Flow.Subscriber}.
+ * <p>
+ * The result is opened when the subscriber first requests elements, and
+ * elements are only read from it, and so from the http response, when
+ * the subscriber has requested them. A subscriber that stops requesting
+ * therefore stops the download instead of having elements pile up in
+ * memory. The subscriber is called on the executor, one signal at a time.</p>
+ * <p>
+ * The result is closed once it is exhausted, fails, or the subscription
+ * is cancelled. Cancelling takes effect before the next element is read;
+ * closing a result that was not read to the end releases or aborts its
+ * connection, see
+ * {@link com.franz.agraph.http.handler.AGResponseHandler#getDrainLimit()}.</p>
+ * <p>
+ * Each publisher evaluates its query once, so it accepts a single
+ * subscriber. Later subscribers receive an {@link IllegalStateException}.</p>
+ *
+ * @param <T> the type of the elements
+ * @see AGTupleQuery#publish()
+ * @see AGGraphQuery#publish()
+ * @since v3.0.6
+ */
+public class AGResultPublisher<T> implements Flow.Publisher<T> {
+
+    private final Supplier<? extends QueryResult<T>> evaluate;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param evaluate evaluates the query, called on executor
+     * @param executor runs the evaluation and calls the subscriber
+     */
+    public AGResultPublisher(Supplier<? extends QueryResult<T>> evaluate, Executor executor) {
+        this.evaluate = evaluate;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("This publisher only accepts one subscriber"));
+            return;
+        }
+        final ResultSubscription subscription = new ResultSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private class ResultSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // Number of times drain() was asked to run; only the first caller runs it.
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        // Only used by drain().
+        private QueryResult<T> result;
+        private boolean done;
+
+        ResultSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " elements, must be positive");
+            } else {
+                demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    cancelled = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (!done) {
+                if (cancelled) {
+                    finish(null, false);
+                    return;
+                }
+                if (invalidRequest != null) {
+                    finish(invalidRequest, true);
+                    return;
+                }
+                final long requested = demand.get();
+                long emitted = 0;
+                while (emitted != requested) {
+                    if (cancelled) {
+                        finish(null, false);
+                        return;
+                    }
+                    final T next;
+                    try {
+                        if (result == null) {
+                            result = evaluate.get();
+                        }
+                        if (!result.hasNext()) {
+                            finish(null, true);
+                            return;
+                        }
+                        next = result.next();
+                    } catch (RuntimeException e) {
+                        finish(e instanceof QueryEvaluationException ? e : new QueryEvaluationException(e), true);
+                        return;
+                    }
+                    try {
+                        subscriber.onNext(next);
+                    } catch (RuntimeException e) {
+                        // The subscriber broke the protocol, treat it as cancelled.
+                        cancelled = true;
+                        finish(null, false);
+                        return;
+                    }
+                    emitted++;
+                }
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                missed = pending.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Closes the result and sends the final signal.
+         *
+         * @param error  the error to send, or null
+         * @param signal whether to send onComplete or onError
+         */
+        private void finish(Throwable error, boolean signal) {
+            done = true;
+            if (result != null) {
+                try {
+                    result.close();
+                } catch (RuntimeException e) {
+                    if (error == null && signal) {
+                        error = e;
+                    }
+                }
+                result = null;
+            }
+            if (signal) {
+                if (error != null) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+            }
+        }
+    }
+}
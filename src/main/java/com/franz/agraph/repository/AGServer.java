@@ -6,9 +6,11 @@ package com.franz.agraph.repository;
 
 import com.franz.agraph.http.AGHTTPClient;
 import com.franz.agraph.http.AGProtocol;
+import com.franz.agraph.http.AGSessionKeepAlive;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGJSONArrayHandler;
 import com.franz.agraph.http.handler.AGRawStreamer;
+import com.franz.agraph.http.transport.AGHttpTransport;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
@@ -30,6 +32,8 @@ import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -66,6 +70,9 @@ public class AGServer implements Closeable {
     // A default, global executor service used to create pinger threads.
     // Created lazily in getSharedExecutorService().
     private static ScheduledThreadPoolExecutor sharedExecutor;
+    // A default, global executor used to process responses of asynchronous queries.
+    // Created lazily in getSharedAsyncExecutor().
+    private static ExecutorService sharedAsyncExecutor;
 
     private final String serverURL;
     private final String user;
@@ -73,6 +80,7 @@ public class AGServer implements Closeable {
     private final AGHTTPClient httpClient;
     private final AGCatalog rootCatalog;
     private ScheduledExecutorService executor = getSharedExecutor();
+    private Executor asyncExecutor;
     private AGServerVersion cachedServerVersion;
 
     /**
@@ -94,6 +102,27 @@ public class AGServer implements Closeable {
         rootCatalog = new AGCatalog(this, AGCatalog.ROOT_CATALOG);
     }
 
+    /**
+     * Creates an instance for interacting with an AllegroGraph server
+     * using a specific HTTP transport.
+     * <p>
+     * Uses Basic authentication. The transport will be closed
+     * when this server object is closed.</p>
+     * <pre>{@code
+     * AGServer server = new AGServer(url, user, password, new AGJdkHttpTransport());
+     * }</pre>
+     *
+     * @param serverURL the URL of the server (trailing slashes are removed)
+     * @param username  a user id for authenticating with the server
+     * @param password  a password for authenticating with the server
+     * @param transport the transport used to send HTTP requests
+     * @see AGHttpTransport
+     * @since v3.0.6
+     */
+    public AGServer(String serverURL, String username, String password, AGHttpTransport transport) {
+        this(username, password, new AGHTTPClient(serverURL, transport));
+    }
+
     /**
      * Creates an instance for interacting with an AllegroGraph server.
      * <p>
@@ -208,6 +237,19 @@ public class AGServer implements Closeable {
         return sharedExecutor;
     }
 
+    private static synchronized ExecutorService getSharedAsyncExecutor() {
+        if (sharedAsyncExecutor == null) {
+            // Threads block while reading responses, so the pool is not bounded;
+            // the number of requests in flight is limited by AGHTTPClient.
+            sharedAsyncExecutor = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedAsyncExecutor;
+    }
+
     /**
      * Creates or opens a repository in the specified catalog.
      *
@@ -1055,6 +1097,42 @@ public class AGServer implements Closeable {
         this.executor = executor;
     }
 
+    /**
+     * Gets the service that keeps the dedicated sessions of connections
+     * using the default executor alive, with counts of the pings it sent
+     * and of those it did not need to send.
+     *
+     * @return The keep-alive service, or null if the executor is null.
+     * @since v3.0.6
+     */
+    public AGSessionKeepAlive getSessionKeepAlive() {
+        final ScheduledExecutorService executor = getExecutor();
+        return executor != null ? AGSessionKeepAlive.forExecutor(executor) : null;
+    }
+
+    /**
+     * Gets the default executor used to process the results
+     * of asynchronous queries, such as {@link AGTupleQuery#evaluateAsync()}.
+     *
+     * @return An executor instance
+     * @since v3.0.6
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor != null ? asyncExecutor : getSharedAsyncExecutor();
+    }
+
+    /**
+     * Changes the default executor used to process the results
+     * of asynchronous queries.
+     *
+     * @param asyncExecutor An executor instance, or null to use a shared default
+     * @see AGQuery#setAsyncExecutor(Executor)
+     * @since v3.0.6
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
     /**
      * Creates or opens a repository in the specified catalog.
      *
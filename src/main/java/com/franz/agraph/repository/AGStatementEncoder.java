@@ -0,0 +1,266 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Encodes statements in the JSON row format accepted by the statements
+ * service: a JSON array of rows, each row being an array of the N-Triples
+ * forms of subject, predicate, object and graph (null for the default
+ * graph), optionally followed by a string of JSON encoded attributes.
+ * <p>
+ * Rows are written straight into a reusable byte buffer, without
+ * intermediate JSON objects or strings. The encoded forms of recently
+ * used predicates and graphs, which tend to repeat, are cached.</p>
+ * <p>
+ * Instances are not thread-safe.</p>
+ */
+class AGStatementEncoder {
+
+    static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private static final int MAX_CACHED_IRIS = 1024;
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final UnaryOperator<Value> storable;
+    private final Map<IRI, byte[]> iriCache = new LinkedHashMap<IRI, byte[]>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IRI, byte[]> eldest) {
+            return size() > MAX_CACHED_IRIS;
+        }
+    };
+    // Escapes whatever NTriplesUtil appends as the contents of a JSON string.
+    private final Appendable jsonString = new JSONStringAppender();
+
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+    private int len;
+    private boolean needComma;
+    private char highSurrogate;
+
+    /**
+     * @param storable converts values to the form in which they can be stored,
+     *                 see {@link com.franz.agraph.http.AGHttpRepoClient#getStorableValue}
+     */
+    AGStatementEncoder(UnaryOperator<Value> storable) {
+        this.storable = storable;
+    }
+
+    /**
+     * Discards the buffer and starts a new JSON array.
+     */
+    void begin() {
+        len = 0;
+        needComma = false;
+        writeByte('[');
+    }
+
+    /**
+     * Ends the JSON array started by {@link #begin()}.
+     */
+    void end() {
+        writeByte(']');
+    }
+
+    /**
+     * Appends the rows for a statement: one row per context,
+     * or a single row in the statement's own context if none are given.
+     *
+     * @param st         the statement
+     * @param contexts   contexts that replace the context of the statement
+     * @param attributes JSON encoded attributes for each row, may be null
+     */
+    void writeRows(Statement st, Resource[] contexts, String attributes) {
+        if (contexts.length == 0) {
+            writeRow(st, st.getContext(), attributes);
+        } else {
+            for (Resource c : contexts) {
+                writeRow(st, c, attributes);
+            }
+        }
+    }
+
+    private void writeRow(Statement st, Resource context, String attributes) {
+        if (needComma) {
+            writeByte(',');
+        }
+        needComma = true;
+        writeByte('[');
+        writeValue(st.getSubject());
+        writeByte(',');
+        writeCachedIRI(st.getPredicate());
+        writeByte(',');
+        writeValue(st.getObject());
+        writeByte(',');
+        if (context == null) {
+            writeBytes(NULL);
+        } else if (context instanceof IRI) {
+            writeCachedIRI((IRI) context);
+        } else {
+            writeValue(context);
+        }
+        if (attributes != null) {
+            writeByte(',');
+            writeByte('"');
+            appendEscaped(attributes, 0, attributes.length());
+            endString();
+        }
+        writeByte(']');
+    }
+
+    private void writeCachedIRI(IRI iri) {
+        byte[] encoded = iriCache.get(iri);
+        if (encoded == null) {
+            final int start = len;
+            writeValue(iri);
+            encoded = Arrays.copyOfRange(buf, start, len);
+            iriCache.put(iri, encoded);
+        } else {
+            writeBytes(encoded);
+        }
+    }
+
+    private void writeValue(Value value) {
+        writeByte('"');
+        try {
+            NTriplesUtil.append(storable.apply(value), jsonString);
+        } catch (IOException e) {
+            // Not thrown when appending to the buffer.
+            throw new IllegalStateException(e);
+        }
+        endString();
+    }
+
+    /**
+     * Ends a JSON string, replacing a high surrogate that was not
+     * followed by a low one.
+     */
+    private void endString() {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            writeByte('?');
+        }
+        writeByte('"');
+    }
+
+    private void appendEscaped(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            appendEscaped(s.charAt(i));
+        }
+    }
+
+    private void appendEscaped(char c) {
+        if (highSurrogate != 0 && !Character.isLowSurrogate(c)) {
+            // Unpaired surrogate, replaced like String.getBytes() does.
+            highSurrogate = 0;
+            writeByte('?');
+        }
+        if (c == '"' || c == '\\') {
+            writeByte('\\');
+            writeByte(c);
+        } else if (c < 0x20) {
+            writeByte('\\');
+            writeByte('u');
+            writeByte('0');
+            writeByte('0');
+            writeByte(HEX[c >> 4]);
+            writeByte(HEX[c & 0xf]);
+        } else if (c < 0x80) {
+            writeByte(c);
+        } else if (c < 0x800) {
+            writeByte(0xc0 | (c >> 6));
+            writeByte(0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c) && highSurrogate != 0) {
+            final int cp = Character.toCodePoint(highSurrogate, c);
+            highSurrogate = 0;
+            writeByte(0xf0 | (cp >> 18));
+            writeByte(0x80 | ((cp >> 12) & 0x3f));
+            writeByte(0x80 | ((cp >> 6) & 0x3f));
+            writeByte(0x80 | (cp & 0x3f));
+        } else if (Character.isLowSurrogate(c)) {
+            writeByte('?');
+        } else {
+            writeByte(0xe0 | (c >> 12));
+            writeByte(0x80 | ((c >> 6) & 0x3f));
+            writeByte(0x80 | (c & 0x3f));
+        }
+    }
+
+    private void writeByte(int b) {
+        if (len == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        buf[len++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        if (len + bytes.length > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + bytes.length));
+        }
+        System.arraycopy(bytes, 0, buf, len, bytes.length);
+        len += bytes.length;
+    }
+
+    /**
+     * @return Number of bytes in the buffer.
+     */
+    int size() {
+        return len;
+    }
+
+    /**
+     * Writes the contents of the buffer to a stream and empties the buffer.
+     * The JSON array that is being written is continued by the next rows.
+     *
+     * @param out where to write to
+     * @throws IOException if writing fails
+     */
+    void drainTo(OutputStream out) throws IOException {
+        out.write(buf, 0, len);
+        len = 0;
+    }
+
+    /**
+     * @return A copy of the contents of the buffer.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, len);
+    }
+
+    private class JSONStringAppender implements Appendable {
+        @Override
+        public Appendable append(CharSequence csq) {
+            appendEscaped(csq, 0, csq.length());
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            appendEscaped(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            appendEscaped(c);
+            return this;
+        }
+    }
+}
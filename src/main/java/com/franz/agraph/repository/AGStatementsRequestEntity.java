@@ -0,0 +1,84 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Request entity that encodes statements as JSON rows while it is
+ * being written to the connection.
+ * <p>
+ * Statements are pulled from an iterator only when the request body is
+ * written, so the encoded payload is never held in memory as a whole.
+ * Each entity takes at most {@code maxStatements} statements from the
+ * iterator, leaving the rest for the next entity; this is how large adds
+ * are split into sub-batches.</p>
+ * <p>
+ * The length of the body is not known in advance, so it is sent with
+ * chunked transfer encoding. The entity is not repeatable.</p>
+ */
+class AGStatementsRequestEntity implements RequestEntity {
+
+    // Encoded rows are sent in chunks of about this size.
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Iterator<? extends Statement> statements;
+    private final long maxStatements;
+    private final AGStatementEncoder encoder;
+    private final Resource[] contexts;
+
+    /**
+     * @param statements    source of the statements, read while the entity is written
+     * @param maxStatements maximum number of statements to take from the iterator,
+     *                      0 or less for no limit
+     * @param encoder       encoder used to write the rows, may be reused by later entities
+     * @param contexts      contexts to add each statement to, see
+     *                      {@link AGStatementEncoder#writeRows(Statement, Resource[], String)}
+     */
+    AGStatementsRequestEntity(Iterator<? extends Statement> statements, long maxStatements,
+                              AGStatementEncoder encoder, Resource... contexts) {
+        this.statements = statements;
+        this.maxStatements = maxStatements;
+        this.encoder = encoder;
+        this.contexts = contexts;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public void writeRequest(OutputStream out) throws IOException {
+        encoder.begin();
+        long count = 0;
+        while ((maxStatements <= 0 || count < maxStatements) && statements.hasNext()) {
+            encoder.writeRows(statements.next(), contexts, null);
+            count++;
+            if (encoder.size() >= CHUNK_SIZE) {
+                encoder.drainTo(out);
+            }
+        }
+        encoder.end();
+        encoder.drainTo(out);
+        out.flush();
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public String getContentType() {
+        return AGStatementEncoder.CONTENT_TYPE;
+    }
+}
@@ -0,0 +1,54 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+/**
+ * Wraps an AGGraphQuery to provide streaming results.
+ * {@link AGGraphQuery#evaluate()} collects all statements in memory
+ * before it returns.
+ * <p>AGStreamGraphQuery returns a result that pulls statements from
+ * the http response as methods such as
+ * {@link GraphQueryResult}.{@link GraphQueryResult#hasNext() hasNext()}
+ * are called, so memory use does not grow with the size of the result.
+ * The result must be closed, which can be done before it is exhausted.
+ * </p>
+ * <p>Usage:</p>
+ * <pre>{@code
+ * AGGraphQuery query = conn.prepareGraphQuery(QueryLanguage.SPARQL, "CONSTRUCT ...");
+ * query = new AGStreamGraphQuery(query);
+ * try (GraphQueryResult results = query.evaluate()) {
+ *     ...
+ * }
+ * }</pre>
+ *
+ * @see AGRepositoryConnection#setStreamResults(boolean)
+ * @see AGStreamTupleQuery
+ * @since v3.0.6
+ */
+public class AGStreamGraphQuery extends AGGraphQuery implements GraphQuery {
+
+    /**
+     * Wraps a query with this object that will stream the response.
+     *
+     * @param query to wrap
+     */
+    public AGStreamGraphQuery(AGGraphQuery query) {
+        super(query.httpCon, query.queryLanguage, query.queryString, query.baseURI);
+    }
+
+    /**
+     * Returns a result object that will read from the http response as
+     * statements are requested, by
+     * {@link GraphQueryResult}.{@link GraphQueryResult#hasNext() hasNext()}.
+     */
+    @Override
+    public GraphQueryResult evaluate() throws QueryEvaluationException {
+        return evaluateStreaming();
+    }
+}
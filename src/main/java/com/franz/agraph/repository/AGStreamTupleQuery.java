@@ -4,7 +4,8 @@
 
 package com.franz.agraph.repository;
 
-import com.franz.agraph.http.handler.AGTQRStreamer;
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.handler.AGTQRTSVStreamer;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
@@ -15,10 +16,9 @@ import javax.xml.stream.XMLStreamReader;
 
 /**
  * Wraps an AGTupleQuery to provide streaming results.
- * The default, TupleQueryResultParser and TupleQueryResultBuilder use
- * SAX to parse and an ArrayList to collect results,
- * so {@link AGTupleQuery#evaluate()} does not return until the
- * entire stream is parsed.
+ * By default, {@link AGTupleQuery#evaluate()} collects the results in an
+ * {@link com.franz.agraph.http.handler.AGTupleResultBuffer}, so it does
+ * not return until the entire stream is parsed.
  * <p>AGStreamTupleQuery uses {@link XMLStreamReader}, so the result is
  * pulled from the http response stream as methods such as
  * {@link TupleQueryResult}.{@link TupleQueryResult#hasNext() hasNext()}
@@ -31,12 +31,17 @@ import javax.xml.stream.XMLStreamReader;
  * TupleQueryResult results = query.evaluate();
  * ...
  * }</pre>
+ * <p>For very large results, the rows can be decoded by several threads
+ * while they are read, see {@link #setParallelDecoding(int, boolean)}.</p>
  *
  * @see AGRepositoryConnection#prepareTupleQuery(org.eclipse.rdf4j.query.QueryLanguage, String)
  * @since v4.3
  */
 public class AGStreamTupleQuery extends AGTupleQuery implements TupleQuery {
 
+    private int decodeThreads;
+    private boolean decodeOrdered = true;
+
     /**
      * Wraps a query with this object that will stream the response.
      *
@@ -44,6 +49,52 @@ public class AGStreamTupleQuery extends AGTupleQuery implements TupleQuery {
      */
     public AGStreamTupleQuery(AGTupleQuery query) {
         super(query.httpCon, query.queryLanguage, query.queryString, query.baseURI);
+        setParallelDecoding(httpCon.getDecodeThreads(), httpCon.isDecodeOrdered());
+    }
+
+    /**
+     * Decodes the results on several threads while they are read.
+     * <p>
+     * The thread reading the result cuts the response into batches of
+     * rows, and up to the given number of batches are turned into binding
+     * sets at a time on the {@link #getAsyncExecutor() async executor}.
+     * Decoding tasks do not block, so the executor needs no dedicated
+     * threads. Results are requested as
+     * TSV, which can be cut into rows without parsing. This helps when
+     * decoding, rather than the network, limits how fast a large result
+     * can be read.</p>
+     *
+     * @param threads number of decoding threads, 0 (the default) to decode
+     *                on the thread reading the result
+     * @param ordered whether solutions are returned in the order sent by the
+     *                server; if false, they are returned as soon as they
+     *                are decoded
+     * @see AGRepositoryConnection#setParallelDecoding(int, boolean)
+     * @since v3.0.6
+     */
+    public void setParallelDecoding(int threads, boolean ordered) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Number of threads must not be negative: " + threads);
+        }
+        this.decodeThreads = threads;
+        this.decodeOrdered = ordered;
+    }
+
+    /**
+     * @return Number of threads decoding the results, 0 if they are
+     *         decoded by the thread reading the result.
+     * @since v3.0.6
+     */
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    /**
+     * @return Whether solutions decoded in parallel are returned in order.
+     * @since v3.0.6
+     */
+    public boolean isDecodeOrdered() {
+        return decodeOrdered;
     }
 
     /**
@@ -55,12 +106,14 @@ public class AGStreamTupleQuery extends AGTupleQuery implements TupleQuery {
      */
     @Override
     public TupleQueryResult evaluate() throws QueryEvaluationException {
-        AGTQRStreamer handler = AGTQRStreamer.createStreamer(httpCon.prepareHttpRepoClient().getPreferredTQRFormat(), httpCon.getRepository().getValueFactory());
-        try {
-            httpCon.prepareHttpRepoClient().query(this, false, handler);
-        } catch (Exception e) {
-            throw new QueryEvaluationException(e);
+        if (decodeThreads == 0) {
+            return evaluateStreaming();
         }
+        AGHttpRepoClient client = httpCon.prepareHttpRepoClient();
+        AGTQRTSVStreamer handler = new AGTQRTSVStreamer(httpCon.getRepository().getValueFactory());
+        handler.setRecoverExternalBNodes(client.getAllowExternalBlankNodeIds());
+        handler.setParallelDecoding(decodeThreads, decodeOrdered, getAsyncExecutor());
+        evaluate(handler);
         return handler.getResult();
     }
 
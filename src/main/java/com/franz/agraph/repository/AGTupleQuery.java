@@ -4,22 +4,30 @@
 
 package com.franz.agraph.repository;
 
+import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.handler.AGColumnarResult;
 import com.franz.agraph.http.handler.AGDownloadHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
 import com.franz.agraph.http.handler.AGRawStreamer;
+import com.franz.agraph.http.handler.AGTQRColumnarHandler;
 import com.franz.agraph.http.handler.AGTQRHandler;
+import com.franz.agraph.http.handler.AGTQRStreamer;
+import com.franz.agraph.http.handler.AGTupleResultBuffer;
+import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.query.TupleQueryResultHandler;
 import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
-import org.eclipse.rdf4j.query.impl.TupleQueryResultBuilder;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  * Implements the Sesame TupleQuery interface for AllegroGraph.
@@ -31,21 +39,127 @@ public class AGTupleQuery extends AGQuery implements TupleQuery {
         super(con, ql, queryString, baseURI);
     }
 
+    /**
+     * Evaluates the query and returns a TupleQueryResult.
+     * <p>
+     * All results are read before this method returns. Results beyond
+     * {@link AGHttpRepoClient#getResultMemoryLimit()} are kept in a
+     * temporary file, which is deleted when the result is closed or read
+     * to the end. Use {@link AGStreamTupleQuery} (or
+     * {@link AGRepositoryConnection#setStreamResults(boolean)}) to read
+     * results as they arrive instead.</p>
+     */
     public TupleQueryResult evaluate() throws QueryEvaluationException {
+        AGTupleResultBuffer buffer = createResultBuffer();
         try {
-            // TODO: make this efficient for large result sets
-            TupleQueryResultBuilder builder = new TupleQueryResultBuilder();
-            evaluate(builder);
-            return builder.getQueryResult();
+            evaluate(buffer);
         } catch (TupleQueryResultHandlerException e) {
-            // Found a bug in TupleQueryResultBuilder?
-            throw new RuntimeException(e);
+            buffer.close();
+            throw new QueryEvaluationException(e);
+        } catch (RuntimeException e) {
+            buffer.close();
+            throw e;
         }
+        return buffer.getQueryResult(true);
+    }
+
+    private AGTupleResultBuffer createResultBuffer() {
+        return new AGTupleResultBuffer(httpCon.getValueFactory(), httpCon.prepareHttpRepoClient().getResultMemoryLimit());
     }
 
     public void evaluate(TupleQueryResultHandler handler)
             throws QueryEvaluationException, TupleQueryResultHandlerException {
-        evaluate(new AGTQRHandler(httpCon.prepareHttpRepoClient().getPreferredTQRFormat(), handler, httpCon.getValueFactory(), httpCon.prepareHttpRepoClient().getAllowExternalBlankNodeIds()));
+        evaluate(createTQRHandler(handler));
+    }
+
+    private AGTQRHandler createTQRHandler(TupleQueryResultHandler handler) {
+        return new AGTQRHandler(httpCon.prepareHttpRepoClient().getPreferredTQRFormat(), handler, httpCon.getValueFactory(), httpCon.prepareHttpRepoClient().getAllowExternalBlankNodeIds());
+    }
+
+    /**
+     * Evaluates the query without blocking the calling thread.
+     * <p>
+     * The result is processed on the {@link #getAsyncExecutor() async executor}.
+     * Cancelling the returned future aborts the request.</p>
+     *
+     * @return a future result, which fails with a {@link QueryEvaluationException}
+     * if the query could not be evaluated
+     * @since v3.0.6
+     */
+    public CompletableFuture<TupleQueryResult> evaluateAsync() {
+        AGTupleResultBuffer buffer = createResultBuffer();
+        CompletableFuture<TupleQueryResult> result = evaluateAsync(createTQRHandler(buffer), () -> buffer.getQueryResult(true));
+        result.whenComplete((ignored, error) -> {
+            if (error != null) {
+                buffer.close();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Evaluates the query without blocking the calling thread.
+     * <p>
+     * The handler is called on the {@link #getAsyncExecutor() async executor}.
+     * Cancelling the returned future aborts the request.</p>
+     *
+     * @param handler processes the result
+     * @return a future that completes once all results have been passed to handler
+     * @since v3.0.6
+     */
+    public CompletableFuture<Void> evaluateAsync(TupleQueryResultHandler handler) {
+        return evaluateAsync(createTQRHandler(handler), () -> null);
+    }
+
+    /**
+     * Evaluates the query when a subscriber requests results, and
+     * streams the results to it.
+     * <p>
+     * Results are read from the http response only as fast as the
+     * subscriber requests them. The query is evaluated, and the
+     * subscriber is called, on the {@link #getAsyncExecutor() async executor}.
+     * Cancelling the subscription closes the response.</p>
+     *
+     * @return a publisher for a single subscriber
+     * @see AGResultPublisher
+     * @since v3.0.6
+     */
+    public Flow.Publisher<BindingSet> publish() {
+        return new AGResultPublisher<>(this::evaluateStreaming, getAsyncExecutor());
+    }
+
+    /**
+     * Evaluates the query and returns a result that reads from the
+     * http response as results are requested.
+     *
+     * @see AGStreamTupleQuery
+     */
+    TupleQueryResult evaluateStreaming() throws QueryEvaluationException {
+        AGHttpRepoClient client = httpCon.prepareHttpRepoClient();
+        AGTQRStreamer handler = AGTQRStreamer.createStreamer(client.getPreferredTQRFormat(),
+                httpCon.getRepository().getValueFactory(), client.getAllowExternalBlankNodeIds());
+        evaluate(handler);
+        return handler.getResult();
+    }
+
+    /**
+     * Evaluates the query and decodes the results into one column per
+     * binding name, for analytic queries over many solutions.
+     * <p>
+     * Numbers and date-times are held in primitive arrays and IRIs in
+     * dictionary-encoded int arrays, decoded from the response without
+     * creating objects for each value. See {@link AGColumnarResult} for
+     * the kinds of columns and the precision of the values.</p>
+     *
+     * @return the results, by column
+     * @throws QueryEvaluationException if there is an error with this request
+     * @since v3.0.6
+     */
+    public AGColumnarResult evaluateColumnar() throws QueryEvaluationException {
+        AGTQRColumnarHandler handler = new AGTQRColumnarHandler(
+                httpCon.prepareHttpRepoClient().getPreferredTQRFormat(), httpCon.getValueFactory());
+        evaluate(handler);
+        return handler.getResult();
     }
 
     /**
@@ -62,6 +176,18 @@ public class AGTupleQuery extends AGQuery implements TupleQuery {
         return handler.getResult();
     }
 
+    /**
+     * Asynchronous version of {@link #count()}.
+     *
+     * @return a future number of results
+     * @see #evaluateAsync()
+     * @since v3.0.6
+     */
+    public CompletableFuture<Long> countAsync() {
+        AGLongHandler handler = new AGLongHandler();
+        return evaluateAsync(handler, handler::getResult);
+    }
+
     /**
      * Evaluates the query and saves the results to a file.
      *
@@ -107,4 +233,34 @@ public class AGTupleQuery extends AGQuery implements TupleQuery {
             throw new QueryEvaluationException(e);
         }
     }
+
+    /**
+     * Evaluates the query and returns the result as a channel.
+     *
+     * @param format Output format.
+     * @return A channel containing response data.
+     * The caller MUST close this channel to release connection resources.
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     * @see #streamChannel(String)
+     * @since v3.0.6
+     */
+    public ReadableByteChannel streamChannel(final TupleQueryResultFormat format)
+            throws QueryEvaluationException {
+        return streamChannel(format.getDefaultMIMEType());
+    }
+
+    /**
+     * Asynchronous version of {@link #stream(TupleQueryResultFormat)}.
+     * The future completes as soon as the response starts to arrive.
+     *
+     * @param format Output format.
+     * @return A future input stream containing response data.
+     * The caller MUST close this stream to release connection resources.
+     * @see #evaluateAsync()
+     * @since v3.0.6
+     */
+    public CompletableFuture<InputStream> streamAsync(final TupleQueryResultFormat format) {
+        final AGRawStreamer handler = new AGRawStreamer(format);
+        return evaluateAsync(handler, handler::getStream);
+    }
 }
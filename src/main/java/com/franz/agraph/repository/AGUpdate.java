@@ -10,6 +10,8 @@ import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.Update;
 import org.eclipse.rdf4j.query.UpdateExecutionException;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Implements the Sesame Update interface for AllegroGraph.
  */
@@ -41,4 +43,33 @@ public class AGUpdate extends AGQuery implements Update {
         }
     }
 
+    /**
+     * Executes the update without blocking the calling thread.
+     * <p>
+     * The future completes on the {@link #getAsyncExecutor() async executor}.
+     * Cancelling it aborts the request, but the server might still
+     * apply the update.</p>
+     *
+     * @return a future that fails with an {@link UpdateExecutionException}
+     * if the update could not be executed
+     * @since v3.0.6
+     */
+    public CompletableFuture<Void> executeAsync() {
+        final CompletableFuture<Void> query = evaluateAsync(new AGBQRHandler(), () -> null);
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        query.whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(new UpdateExecutionException(error));
+            } else {
+                result.complete(null);
+            }
+        });
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                query.cancel(true);
+            }
+        });
+        return result;
+    }
+
 }
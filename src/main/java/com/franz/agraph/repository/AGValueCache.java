@@ -0,0 +1,199 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interning cache for the IRIs and short literals created by an
+ * {@link AGValueFactory}, see {@link AGValueFactory#setInternCacheSize(int)}.
+ * <p>
+ * Values that repeat in query results, such as predicates, classes and
+ * datatypes, are then returned as the same instance instead of being
+ * allocated again for every row.</p>
+ * <p>
+ * The cache is direct-mapped: each value has a single slot chosen by its
+ * hash, and a value that maps to an occupied slot replaces the value in
+ * it. Lookups take no locks and the size never exceeds the capacity.
+ * A value is only stored the second time in a row that its slot is asked
+ * for it, so that values that occur once, such as the subjects of a scan,
+ * do not keep replacing the ones that repeat. Instances are thread-safe.</p>
+ *
+ * @since v3.0.6
+ */
+public final class AGValueCache {
+
+    private final int maxLiteralLength;
+    private final int mask;
+    private final AtomicReferenceArray<IRI> iris;
+    private final AtomicReferenceArray<Literal> literals;
+    // Hash of the last value missed in each slot. Races only cost hits.
+    private final int[] lastIRIMiss;
+    private final int[] lastLiteralMiss;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity         number of IRIs, and number of literals, kept;
+     *                         rounded up to a power of two
+     * @param maxLiteralLength longer literals are not cached
+     */
+    AGValueCache(int capacity, int maxLiteralLength) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        final int size = capacity > 1 << 30 ? 1 << 30 : Integer.highestOneBit(capacity - 1) << 1;
+        this.maxLiteralLength = maxLiteralLength;
+        this.mask = Math.max(size, 1) - 1;
+        this.iris = new AtomicReferenceArray<>(mask + 1);
+        this.literals = new AtomicReferenceArray<>(mask + 1);
+        this.lastIRIMiss = new int[mask + 1];
+        this.lastLiteralMiss = new int[mask + 1];
+    }
+
+    /**
+     * @return Number of IRIs, and number of literals, that the cache can hold.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return Literals with longer labels are not cached.
+     */
+    public int getMaxLiteralLength() {
+        return maxLiteralLength;
+    }
+
+    /**
+     * @return Number of lookups that returned a cached value.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of lookups that had to create a value.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Fraction of lookups that returned a cached value, 0 if there were none.
+     */
+    public double getHitRate() {
+        final long h = getHits();
+        final long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Removes all values and resets the statistics.
+     */
+    public void clear() {
+        for (int i = 0; i <= mask; i++) {
+            iris.set(i, null);
+            literals.set(i, null);
+            lastIRIMiss[i] = 0;
+            lastLiteralMiss[i] = 0;
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * @return Hash of an IRI, for {@link #getIRI} and {@link #putIRI}.
+     */
+    int iriHash(String iri) {
+        return spread(iri.hashCode());
+    }
+
+    /**
+     * @return The cached IRI, or null if the slot holds another one.
+     */
+    IRI getIRI(int hash, String iri) {
+        final IRI cached = iris.get(hash & mask);
+        if (cached != null && cached.stringValue().equals(iri)) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores an IRI after a miss, if the previous miss of its slot had the same hash.
+     */
+    void putIRI(int hash, IRI iri) {
+        final int slot = hash & mask;
+        if (lastIRIMiss[slot] == hash) {
+            iris.lazySet(slot, iri);
+        } else {
+            lastIRIMiss[slot] = hash;
+        }
+    }
+
+    /**
+     * @return Whether literals with this label are cached.
+     */
+    boolean accepts(String label) {
+        return label.length() <= maxLiteralLength;
+    }
+
+    /**
+     * @param datatype datatype of the literal, also for plain and language tagged literals
+     * @return Hash of a literal, for {@link #getLiteral} and {@link #putLiteral}.
+     */
+    int literalHash(String label, String language, IRI datatype) {
+        int hash = label.hashCode() * 31 + (language != null ? language.hashCode() : 0);
+        hash = hash * 31 + datatype.stringValue().hashCode();
+        return spread(hash);
+    }
+
+    /**
+     * @return The cached literal, or null if the slot holds another one.
+     */
+    Literal getLiteral(int hash, String label, String language, IRI datatype) {
+        final Literal cached = literals.get(hash & mask);
+        if (cached != null
+                && cached.getLabel().equals(label)
+                && Objects.equals(cached.getLanguage().orElse(null), language)
+                && cached.getDatatype().equals(datatype)) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores a literal after a miss, if the previous miss of its slot had the same hash.
+     */
+    void putLiteral(int hash, Literal literal) {
+        final int slot = hash & mask;
+        if (lastLiteralMiss[slot] == hash) {
+            literals.lazySet(slot, literal);
+        } else {
+            lastLiteralMiss[slot] = hash;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "AGValueCache{capacity=" + getCapacity()
+                + " hits=" + getHits()
+                + " misses=" + getMisses() + "}";
+    }
+}
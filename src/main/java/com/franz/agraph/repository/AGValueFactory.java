@@ -11,9 +11,11 @@ import org.apache.jena.graph.Node;
 import org.apache.jena.vocabulary.RDF;
 import org.eclipse.rdf4j.model.BNode;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
 
@@ -34,23 +36,26 @@ public class AGValueFactory extends SimpleValueFactory {
     // to the URI specified below.
     private static final String JENA_EMPTY_URL = "http://franz.com/jena-empty-uri";
 
+    private static final IRI LANG_STRING = org.eclipse.rdf4j.model.vocabulary.RDF.LANGSTRING;
+    private static final int DEFAULT_MAX_INTERNED_LITERAL_LENGTH = 64;
+
     private final AGRepository repository;
     private final AGRepositoryConnection conn;
     public String PREFIX_FOR_EXTERNAL_BNODES = "urn:x-bnode:";
     private int blankNodesPerRequest = Integer.parseInt(System.getProperty("com.franz.agraph.repository.blankNodesPerRequest", "100"));
     private String[] blankNodeIds;
     private int index = -1;
+    private volatile AGValueCache internCache;
 
     public AGValueFactory(AGRepository repository) {
-        super();
-        this.repository = repository;
-        this.conn = null;
+        this(repository, null);
     }
 
     public AGValueFactory(AGRepository repository, AGRepositoryConnection conn) {
         super();
         this.repository = repository;
         this.conn = conn;
+        setInternCacheSize(Integer.parseInt(System.getProperty("com.franz.agraph.repository.internCacheSize", "0")));
     }
 
     public AGRepository getRepository() {
@@ -122,6 +127,101 @@ public class AGValueFactory extends SimpleValueFactory {
         return id.substring(2);   // strip off leading '_:';
     }
 
+    /**
+     * Gets the cache of IRIs and short literals created by this factory.
+     *
+     * @return the cache, or null if interning is disabled
+     * @see #setInternCacheSize(int)
+     * @since v3.0.6
+     */
+    public AGValueCache getInternCache() {
+        return internCache;
+    }
+
+    /**
+     * Sets the number of IRIs, and of short literals, that are interned.
+     * <p>
+     * With interning enabled, creating an IRI or literal that is in the
+     * cache returns the cached instance. Query results repeat the same
+     * predicates, classes and datatypes on many rows; interning them
+     * saves allocating each of them again, and equal values that are the
+     * same instance compare faster. Literals longer than 64 characters
+     * are never interned. Hit rates are reported by {@link #getInternCache()}.
+     * <p>
+     * Defaults to the value of System property
+     * com.franz.agraph.repository.internCacheSize
+     * or to 0 (disabled) if that property has not been set.
+     *
+     * @param size number of values to keep, rounded up to a power of two; 0 to disable
+     * @since v3.0.6
+     */
+    public void setInternCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Intern cache size must not be negative: " + size);
+        }
+        internCache = size == 0 ? null : new AGValueCache(size, DEFAULT_MAX_INTERNED_LITERAL_LENGTH);
+    }
+
+    @Override
+    public IRI createIRI(String iri) {
+        final AGValueCache cache = internCache;
+        if (cache == null) {
+            return super.createIRI(iri);
+        }
+        final int hash = cache.iriHash(iri);
+        IRI value = cache.getIRI(hash, iri);
+        if (value == null) {
+            value = super.createIRI(iri);
+            cache.putIRI(hash, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Literal createLiteral(String label) {
+        final AGValueCache cache = internCache;
+        if (cache == null || !cache.accepts(label)) {
+            return super.createLiteral(label);
+        }
+        final int hash = cache.literalHash(label, null, XMLSchema.STRING);
+        Literal value = cache.getLiteral(hash, label, null, XMLSchema.STRING);
+        if (value == null) {
+            value = super.createLiteral(label);
+            cache.putLiteral(hash, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Literal createLiteral(String label, String language) {
+        final AGValueCache cache = internCache;
+        if (cache == null || !cache.accepts(label)) {
+            return super.createLiteral(label, language);
+        }
+        final int hash = cache.literalHash(label, language, LANG_STRING);
+        Literal value = cache.getLiteral(hash, label, language, LANG_STRING);
+        if (value == null) {
+            value = super.createLiteral(label, language);
+            cache.putLiteral(hash, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Literal createLiteral(String label, IRI datatype) {
+        final AGValueCache cache = internCache;
+        if (cache == null || datatype == null || !cache.accepts(label)) {
+            return super.createLiteral(label, datatype);
+        }
+        final int hash = cache.literalHash(label, null, datatype);
+        Literal value = cache.getLiteral(hash, label, null, datatype);
+        if (value == null) {
+            value = super.createLiteral(label, datatype);
+            cache.putLiteral(hash, value);
+        }
+        return value;
+    }
+
     /**
      * Returns a new blank node with the given id.
      * <p>
@@ -0,0 +1,246 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Collects adds and removes of a connection and sends them to the server
+ * in the background.
+ * <p>
+ * Changes are kept in the order in which they were made. Consecutive adds
+ * are sent as a single upload, each remove as its own request. A batch is
+ * sent when it grows beyond {@code maxBytes}, when it has not been sent
+ * for {@code flushInterval} milliseconds, or when {@link #flush()} is
+ * called. At most one batch is on the wire at a time; while it is being
+ * sent the next batch is filled.</p>
+ * <p>
+ * A batch that fails is dropped, and its error is thrown by the next
+ * operation that has to wait for it: sending another batch or
+ * {@link #flush()}.</p>
+ * <p>
+ * The periodic flush is stopped by {@link #suspend()}, for instance while
+ * the connection waits in a pool, and restarted by the next change.</p>
+ */
+class AGWriteBehindBuffer implements AutoCloseable {
+
+    // Rough size of a queued remove, for the byte limit.
+    private static final int REMOVE_SIZE = 128;
+
+    private final AGHttpRepoClient client;
+    private final AGStatementEncoder encoder;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final long maxBytes;
+    private final long flushInterval;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock.
+    private ScheduledFuture<?> timer;
+    private List<Consumer<AGHttpRepoClient>> pending = new ArrayList<>();
+    private long pendingBytes;
+    private int openAdds;
+    private CompletableFuture<Void> inFlight;
+
+    /**
+     * @param client        client used to send the changes
+     * @param encoder       encoder for added statements, used only by this buffer
+     * @param executor      runs the requests
+     * @param scheduler     runs the periodic flush
+     * @param maxBytes      size at which a batch is sent
+     * @param flushInterval milliseconds between periodic flushes, 0 or less for none
+     */
+    AGWriteBehindBuffer(AGHttpRepoClient client, AGStatementEncoder encoder,
+                        Executor executor, ScheduledExecutorService scheduler,
+                        long maxBytes, long flushInterval) {
+        this.client = client;
+        this.encoder = encoder;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.maxBytes = maxBytes;
+        this.flushInterval = flushInterval;
+        startTimer();
+    }
+
+    // Called with the lock held, or from the constructor.
+    private void startTimer() {
+        if (timer == null && flushInterval > 0) {
+            timer = scheduler.scheduleWithFixedDelay(this::flushIfIdle,
+                    flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues a statement to be added.
+     */
+    void add(Statement st, JSONObject attributes, Resource... contexts) throws RepositoryException {
+        lock.lock();
+        try {
+            startTimer();
+            if (openAdds == 0) {
+                encoder.begin();
+            }
+            final int before = encoder.size();
+            encoder.writeRows(st, contexts, attributes == null ? null : attributes.toString());
+            openAdds++;
+            pendingBytes += encoder.size() - before;
+            if (pendingBytes >= maxBytes) {
+                send();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the removal of the statements matching a pattern.
+     */
+    void remove(Resource subj, IRI pred, Value obj, Resource... contexts) throws RepositoryException {
+        lock.lock();
+        try {
+            startTimer();
+            closeAdds();
+            pending.add(c -> c.deleteStatements(subj, pred, obj, contexts));
+            pendingBytes += REMOVE_SIZE;
+            if (pendingBytes >= maxBytes) {
+                send();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends all queued changes and waits until they have been processed.
+     *
+     * @throws RepositoryException if sending this or an earlier batch failed
+     */
+    void flush() throws RepositoryException {
+        lock.lock();
+        try {
+            send();
+            awaitInFlight();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels the periodic flush and sends the queued changes.
+     * The periodic flush starts again with the next change.
+     *
+     * @throws RepositoryException if sending this or an earlier batch failed
+     */
+    void suspend() throws RepositoryException {
+        lock.lock();
+        try {
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+            flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels the periodic flush and sends the queued changes.
+     */
+    @Override
+    public void close() throws RepositoryException {
+        suspend();
+    }
+
+    private void closeAdds() {
+        if (openAdds > 0) {
+            encoder.end();
+            final byte[] rows = encoder.toByteArray();
+            pending.add(c -> c.uploadJSON(
+                    new ByteArrayRequestEntity(rows, AGStatementEncoder.CONTENT_TYPE)));
+            openAdds = 0;
+        }
+    }
+
+    /**
+     * Waits for the previous batch and starts sending the pending one.
+     */
+    private void send() throws RepositoryException {
+        closeAdds();
+        if (pending.isEmpty()) {
+            return;
+        }
+        awaitInFlight();
+        start();
+    }
+
+    private void start() {
+        final List<Consumer<AGHttpRepoClient>> batch = pending;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        inFlight = CompletableFuture.runAsync(() -> {
+            for (Consumer<AGHttpRepoClient> change : batch) {
+                change.accept(client);
+            }
+        }, executor);
+    }
+
+    private void awaitInFlight() throws RepositoryException {
+        if (inFlight == null) {
+            return;
+        }
+        try {
+            inFlight.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RepositoryException) {
+                throw (RepositoryException) cause;
+            }
+            throw new RepositoryException("Sending buffered changes failed", cause);
+        } finally {
+            inFlight = null;
+        }
+    }
+
+    /**
+     * Called periodically. Sends the pending changes unless that would block,
+     * or the previous batch failed: its error is kept for the next flush.
+     */
+    private void flushIfIdle() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (inFlight != null && (!inFlight.isDone() || inFlight.isCompletedExceptionally())) {
+                return;
+            }
+            inFlight = null;
+            closeAdds();
+            if (!pending.isEmpty()) {
+                start();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package test;
+
+import com.franz.agraph.http.handler.AGRDFStreamer;
+import com.franz.agraph.http.handler.AGTQRStreamer;
+import com.franz.agraph.repository.AGRDFFormat;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.TupleQueryResultHandler;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.eclipse.rdf4j.query.resultio.QueryResultIO;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the binary result formats and the fallback to text formats.
+ */
+public class AGBinaryFormatsTest {
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+    private final IRI alice = vf.createIRI("http://example.org/alice");
+    private final IRI name = vf.createIRI("http://example.org/name");
+    private final IRI graph = vf.createIRI("http://example.org/graph");
+
+    private List<BindingSet> solutions() {
+        List<String> names = Arrays.asList("s", "o");
+        List<BindingSet> solutions = new ArrayList<>();
+        solutions.add(new ListBindingSet(names, alice, vf.createLiteral("Alice", "en")));
+        solutions.add(new ListBindingSet(names, alice, vf.createLiteral("42", XMLSchema.INTEGER)));
+        solutions.add(new ListBindingSet(names, vf.createBNode("b1"), null));
+        solutions.add(new ListBindingSet(names, alice, vf.createLiteral("café 😀")));
+        return solutions;
+    }
+
+    private byte[] writeTuples(TupleQueryResultFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TupleQueryResultHandler writer = QueryResultIO.createTupleWriter(format, out);
+        writer.startQueryResult(Arrays.asList("s", "o"));
+        for (BindingSet solution : solutions()) {
+            writer.handleSolution(solution);
+        }
+        writer.endQueryResult();
+        return out.toByteArray();
+    }
+
+    private List<Statement> statements() {
+        List<Statement> statements = new ArrayList<>();
+        statements.add(vf.createStatement(alice, name, vf.createLiteral("Alice"), graph));
+        statements.add(vf.createStatement(alice, name, vf.createLiteral("Alicia", "es")));
+        statements.add(vf.createStatement(vf.createBNode("b1"), name, vf.createLiteral("1", XMLSchema.INT), graph));
+        return statements;
+    }
+
+    @Test
+    public void testBinaryTupleResults() throws Exception {
+        StubHttpResponse response = new StubHttpResponse(writeTuples(TupleQueryResultFormat.BINARY),
+                TupleQueryResultFormat.BINARY.getDefaultMIMEType());
+        AGTQRStreamer handler = AGTQRStreamer.createStreamer(TupleQueryResultFormat.BINARY, vf);
+        Assert.assertTrue(handler.getRequestMIMEType().startsWith(TupleQueryResultFormat.BINARY.getDefaultMIMEType()));
+        handler.handleResponse(response);
+        try (TupleQueryResult result = handler.getResult()) {
+            Assert.assertEquals(Arrays.asList("s", "o"), result.getBindingNames());
+            Assert.assertEquals(solutions(), Iterations.asList(result));
+        }
+        Assert.assertEquals(1, response.released);
+    }
+
+    @Test
+    public void testBinaryTupleResultsFallBackToTSV() throws Exception {
+        StubHttpResponse response = new StubHttpResponse(writeTuples(TupleQueryResultFormat.TSV),
+                TupleQueryResultFormat.TSV.getDefaultMIMEType());
+        AGTQRStreamer handler = AGTQRStreamer.createStreamer(TupleQueryResultFormat.BINARY, vf);
+        handler.handleResponse(response);
+        try (TupleQueryResult result = handler.getResult()) {
+            Assert.assertEquals(solutions().size(), Iterations.asList(result).size());
+        }
+    }
+
+    @Test
+    public void testBinaryRDF() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Rio.write(statements(), out, RDFFormat.BINARY);
+        StubHttpResponse response = new StubHttpResponse(out.toByteArray(), RDFFormat.BINARY.getDefaultMIMEType());
+        AGRDFStreamer handler = new AGRDFStreamer(RDFFormat.BINARY, vf, false, Runnable::run);
+        handler.handleResponse(response);
+        try (GraphQueryResult result = handler.getResult()) {
+            List<Statement> parsed = Iterations.asList(result);
+            Assert.assertEquals(statements(), parsed);
+            Assert.assertEquals(graph, parsed.get(0).getContext());
+        }
+        Assert.assertEquals(1, response.released);
+    }
+
+    @Test
+    public void testBinaryRDFFallsBackToNQuads() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Rio.write(statements(), out, AGRDFFormat.NQUADS);
+        StubHttpResponse response = new StubHttpResponse(out.toByteArray(), AGRDFFormat.NQUADS.getDefaultMIMEType());
+        AGRDFStreamer handler = new AGRDFStreamer(RDFFormat.BINARY, vf, false, Runnable::run);
+        handler.handleResponse(response);
+        try (GraphQueryResult result = handler.getResult()) {
+            List<Value> objects = new ArrayList<>();
+            for (Statement st : Iterations.asList(result)) {
+                objects.add(st.getObject());
+            }
+            Assert.assertEquals(3, objects.size());
+            Assert.assertTrue(objects.contains(vf.createLiteral("Alicia", "es")));
+        }
+    }
+
+    private void assertCorruptRDF(byte[] body, String message) throws Exception {
+        StubHttpResponse response = new StubHttpResponse(body, RDFFormat.BINARY.getDefaultMIMEType());
+        AGRDFStreamer handler = new AGRDFStreamer(RDFFormat.BINARY, vf, false, Runnable::run);
+        handler.handleResponse(response);
+        try (GraphQueryResult result = handler.getResult()) {
+            result.hasNext();
+            Assert.fail("expected an exception");
+        } catch (QueryEvaluationException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCorruptBinaryRDF() throws Exception {
+        byte[] header = {'B', 'R', 'D', 'F', 0, 0, 0, 1};
+        // A statement whose subject refers to a value never declared.
+        assertCorruptRDF(concat(header, new byte[]{1, 6, 0, 0, 0, 5}), "Reference to an undeclared value: 5");
+        // A comment with a negative length.
+        assertCorruptRDF(concat(header, new byte[]{2, -1, -1, -1, -1}), "Invalid string length: -1");
+        // A value declared with a negative id.
+        assertCorruptRDF(concat(header, new byte[]{3, -1, -1, -1, -2}), "Invalid value id: -2");
+    }
+
+    private void assertCorruptTuples(byte[] body, String message) throws Exception {
+        StubHttpResponse response = new StubHttpResponse(body, TupleQueryResultFormat.BINARY.getDefaultMIMEType());
+        AGTQRStreamer handler = AGTQRStreamer.createStreamer(TupleQueryResultFormat.BINARY, vf);
+        handler.handleResponse(response);
+        try (TupleQueryResult result = handler.getResult()) {
+            result.hasNext();
+            Assert.fail("expected an exception");
+        } catch (QueryEvaluationException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCorruptBinaryTuples() throws Exception {
+        // Version 3, with one column named "s".
+        byte[] header = {'B', 'R', 'T', 'R', 0, 0, 0, 3, 0, 0, 0, 1, 0, 0, 0, 1, 's'};
+        // A qualified name in an undeclared namespace.
+        assertCorruptTuples(concat(header, new byte[]{3, 0, 0, 0, 7}), "Reference to an undeclared namespace: 7");
+        // A plain literal with a negative length.
+        assertCorruptTuples(concat(header, new byte[]{6, -1, -1, -1, -1}), "Invalid string length: -1");
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+}
@@ -0,0 +1,89 @@
+package test;
+
+import com.franz.agraph.http.handler.AGBindingSet;
+import com.franz.agraph.http.handler.AGTQRStreamer;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.MapBindingSet;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests for the array-backed binding sets returned by the result streamers.
+ */
+public class AGBindingSetTest {
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    @Test
+    public void testEqualsMapBindingSet() {
+        AGBindingSet.Index index = new AGBindingSet.Index(Arrays.asList("a", "b", "c"));
+        Value x = vf.createIRI("http://example.org/x");
+        Value y = vf.createLiteral("y");
+        AGBindingSet row = new AGBindingSet(index, new Value[]{x, null, y});
+
+        MapBindingSet expected = new MapBindingSet();
+        expected.addBinding("a", x);
+        expected.addBinding("c", y);
+        Assert.assertEquals(expected, row);
+        Assert.assertEquals(expected.hashCode(), row.hashCode());
+        Assert.assertEquals(2, row.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "c")), row.getBindingNames());
+        Assert.assertTrue(row.hasBinding("a"));
+        Assert.assertFalse(row.hasBinding("b"));
+        Assert.assertNull(row.getValue("b"));
+        Assert.assertNull(row.getValue("unknown"));
+        Assert.assertNull(row.getBinding("b"));
+        Assert.assertEquals(y, row.getBinding("c").getValue());
+    }
+
+    @Test
+    public void testEmptyRow() {
+        AGBindingSet.Index index = new AGBindingSet.Index(Collections.emptyList());
+        AGBindingSet row = new AGBindingSet(index, new Value[0]);
+        Assert.assertEquals(0, row.size());
+        Assert.assertFalse(row.iterator().hasNext());
+        Assert.assertEquals(new MapBindingSet(), row);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongLength() {
+        new AGBindingSet(new AGBindingSet.Index(Arrays.asList("a", "b")), new Value[1]);
+    }
+
+    @Test
+    public void testRowsShareIndex() throws Exception {
+        String xml = "<?xml version='1.0'?>"
+                + "<sparql xmlns='http://www.w3.org/2005/sparql-results#'>"
+                + "<head><variable name='a'/><variable name='b'/></head><results>"
+                + "<result><binding name='a'><uri>http://example.org/x</uri></binding></result>"
+                + "<result><binding name='b'><literal>y</literal></binding>"
+                + "<binding name='a'><bnode>b1</bnode></binding></result>"
+                + "</results></sparql>";
+        StubHttpResponse response = new StubHttpResponse(xml.getBytes(StandardCharsets.UTF_8),
+                TupleQueryResultFormat.SPARQL.getDefaultMIMEType());
+        AGTQRStreamer handler = AGTQRStreamer.createStreamer(TupleQueryResultFormat.SPARQL, vf, false);
+        handler.handleResponse(response);
+        try (TupleQueryResult result = handler.getResult()) {
+            List<BindingSet> rows = Iterations.asList(result);
+            Assert.assertEquals(2, rows.size());
+            AGBindingSet first = (AGBindingSet) rows.get(0);
+            AGBindingSet second = (AGBindingSet) rows.get(1);
+            Assert.assertSame(first.getIndex(), second.getIndex());
+            Assert.assertEquals(vf.createIRI("http://example.org/x"), first.getValue("a"));
+            Assert.assertFalse(first.hasBinding("b"));
+            Assert.assertEquals(vf.createBNode("b1"), second.getValue("a"));
+            Assert.assertEquals(vf.createLiteral("y"), second.getValue("b"));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package test;
+
+import com.franz.agraph.http.handler.AGColumnarResult;
+import com.franz.agraph.http.handler.AGTQRColumnarHandler;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Tests for decoding tuple query results into columns.
+ */
+public class AGColumnarResultTest {
+
+    private static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    private AGColumnarResult decode(String body, TupleQueryResultFormat format) throws Exception {
+        StubHttpResponse response = new StubHttpResponse(body.getBytes(StandardCharsets.UTF_8),
+                format.getDefaultMIMEType());
+        AGTQRColumnarHandler handler = new AGTQRColumnarHandler(TupleQueryResultFormat.SPARQL, vf);
+        handler.handleResponse(response);
+        return handler.getResult();
+    }
+
+    @Test
+    public void testPrimitiveColumns() throws Exception {
+        AGColumnarResult result = decode("?s\t?n\t?x\t?t\t?o\n"
+                + "<http://example.org/a>\t1\t\"2.5\"^^<" + XSD + "double>\t\"2020-01-02T03:04:05.678Z\"^^<" + XSD + "dateTime>\t<http://example.org/a>\n"
+                + "<http://example.org/b>\t\t-1.25\t\"2020-01-02T03:04:05+01:00\"^^<" + XSD + "dateTime>\t\"x\"@en\n"
+                + "<http://example.org/a>\t\"-42\"^^<" + XSD + "int>\t7\t\t_:b1\r\n"
+                + "\t123456789012345678901\t1.0e-3\n", TupleQueryResultFormat.TSV);
+        Assert.assertEquals(Arrays.asList("s", "n", "x", "t", "o"), result.getBindingNames());
+        Assert.assertEquals(4, result.size());
+
+        AGColumnarResult.IRIColumn s = (AGColumnarResult.IRIColumn) result.getColumn("s");
+        Assert.assertArrayEquals(new int[]{0, 1, 0, 0}, s.getCodes());
+        Assert.assertTrue(s.isNull(3));
+        Assert.assertEquals("http://example.org/b", s.getIRI(1));
+        Assert.assertEquals(vf.createIRI("http://example.org/a"), s.getValue(2));
+
+        // Does not fit in a long, so the column holds values. Those that
+        // were held as longs have the common datatype of the column.
+        AGColumnarResult.ValueColumn n = (AGColumnarResult.ValueColumn) result.getColumn("n");
+        Assert.assertEquals(vf.createLiteral("1", XMLSchema.INTEGER), n.getValue(0));
+        Assert.assertNull(n.getValue(1));
+        Assert.assertEquals(vf.createLiteral("-42", XMLSchema.INTEGER), n.getValue(2));
+        Assert.assertEquals(vf.createLiteral("123456789012345678901", XMLSchema.INTEGER), n.getValue(3));
+
+        AGColumnarResult.DoubleColumn x = (AGColumnarResult.DoubleColumn) result.getColumn("x");
+        Assert.assertArrayEquals(new double[]{2.5, -1.25, 7, 0.001}, x.getValues(), 0);
+        Assert.assertEquals(XMLSchema.DOUBLE, x.getDatatype());
+
+        AGColumnarResult.DateTimeColumn t = (AGColumnarResult.DateTimeColumn) result.getColumn(3);
+        Assert.assertEquals(Instant.parse("2020-01-02T03:04:05.678Z").toEpochMilli(), t.getEpochMilli(0));
+        Assert.assertEquals(Instant.parse("2020-01-02T02:04:05Z").toEpochMilli(), t.getEpochMilli(1));
+        Assert.assertTrue(t.isNull(2));
+        Assert.assertTrue(t.isNull(3));
+        Assert.assertEquals(0b1100, t.getNullBitmap()[0]);
+
+        AGColumnarResult.ValueColumn o = (AGColumnarResult.ValueColumn) result.getColumn("o");
+        Assert.assertEquals(vf.createIRI("http://example.org/a"), o.getValue(0));
+        Assert.assertEquals(vf.createLiteral("x", "en"), o.getValue(1));
+        Assert.assertEquals(vf.createBNode("b1"), o.getValue(2));
+        Assert.assertNull(o.getValue(3));
+    }
+
+    @Test
+    public void testLongColumn() throws Exception {
+        StringBuilder tsv = new StringBuilder("?i\n");
+        for (int i = 0; i < 100000; i++) {
+            tsv.append(i % 10 == 0 ? "" : Integer.toString(i - 50000)).append('\n');
+        }
+        AGColumnarResult result = decode(tsv.toString(), TupleQueryResultFormat.TSV);
+        Assert.assertEquals(100000, result.size());
+        AGColumnarResult.LongColumn column = (AGColumnarResult.LongColumn) result.getColumn(0);
+        Assert.assertEquals(XMLSchema.INTEGER, column.getDatatype());
+        for (int i = 0; i < 100000; i++) {
+            Assert.assertEquals(i % 10 == 0, column.isNull(i));
+            Assert.assertEquals(i % 10 == 0 ? 0 : i - 50000, column.getLong(i));
+        }
+    }
+
+    @Test
+    public void testOtherFormat() throws Exception {
+        AGColumnarResult result = decode("<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<sparql xmlns='http://www.w3.org/2005/sparql-results#'>"
+                + "<head><variable name='d'/><variable name='s'/></head><results>"
+                + "<result><binding name='d'><literal datatype='" + XSD + "decimal'>1.5</literal></binding>"
+                + "<binding name='s'><uri>http://example.org/a</uri></binding></result>"
+                + "<result><binding name='d'><literal datatype='" + XSD + "integer'>2</literal></binding></result>"
+                + "</results></sparql>", TupleQueryResultFormat.SPARQL);
+        Assert.assertEquals(2, result.size());
+        AGColumnarResult.DoubleColumn d = (AGColumnarResult.DoubleColumn) result.getColumn("d");
+        Assert.assertArrayEquals(new double[]{1.5, 2}, d.getValues(), 0);
+        Assert.assertEquals(XMLSchema.DECIMAL, d.getDatatype());
+        Assert.assertEquals(vf.createLiteral("2.0", XMLSchema.DECIMAL), d.getValue(1));
+        AGColumnarResult.IRIColumn s = (AGColumnarResult.IRIColumn) result.getColumn("s");
+        Assert.assertEquals("http://example.org/a", s.getIRI(0));
+        Assert.assertTrue(s.isNull(1));
+    }
+}
@@ -0,0 +1,110 @@
+package test;
+
+import com.franz.agraph.http.handler.AGDownloadHandler;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import static test.StubHttpResponse.data;
+import static test.StubHttpResponse.gzip;
+
+/**
+ * Tests for writing response bodies to files.
+ */
+public class AGDownloadHandlerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] gunzip(File file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private File download(byte[] body, boolean gzipped, AGDownloadHandler.Compression compression) throws Exception {
+        File file = new File(folder.getRoot(), "sub/out");
+        StubHttpResponse response = new StubHttpResponse(body, "text/plain");
+        if (gzipped) {
+            response.headers.put("Content-Encoding", "gzip");
+        }
+        AGDownloadHandler handler = new AGDownloadHandler(file);
+        handler.setCompression(compression);
+        handler.handleResponse(response);
+        return file;
+    }
+
+    @Test
+    public void testDecompress() throws Exception {
+        byte[] data = data(3 * 1024 * 1024 + 17);
+        File file = download(gzip(data), true, AGDownloadHandler.Compression.DECOMPRESS);
+        Assert.assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+
+        // Several members are concatenated.
+        file = download(gzip(data(100), data(5000)), true, AGDownloadHandler.Compression.DECOMPRESS);
+        Assert.assertEquals(5100, Files.size(file.toPath()));
+
+        file = download(data, false, AGDownloadHandler.Compression.DECOMPRESS);
+        Assert.assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testKeepCompressed() throws Exception {
+        byte[] data = data(2 * 1024 * 1024 + 5);
+        byte[] body = gzip(data);
+        File file = download(body, true, AGDownloadHandler.Compression.GZIP);
+        Assert.assertArrayEquals(body, Files.readAllBytes(file.toPath()));
+
+        file = download(data, false, AGDownloadHandler.Compression.GZIP);
+        Assert.assertArrayEquals(data, gunzip(file));
+
+        file = download(new byte[0], false, AGDownloadHandler.Compression.GZIP);
+        Assert.assertEquals(0, gunzip(file).length);
+    }
+
+    @Test
+    public void testCorruptBody() throws Exception {
+        byte[] body = gzip(data(1000));
+        body[body.length - 6]++;
+        try {
+            download(body, true, AGDownloadHandler.Compression.DECOMPRESS);
+            Assert.fail("expected a corrupt trailer");
+        } catch (ZipException e) {
+            // expected
+        }
+        try {
+            download(data(10), true, AGDownloadHandler.Compression.DECOMPRESS);
+            Assert.fail("expected a bad header");
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testProgress() throws Exception {
+        byte[] body = data(100000);
+        StubHttpResponse response = new StubHttpResponse(body, "text/plain");
+        response.headers.put("Content-Length", Integer.toString(body.length));
+        AGDownloadHandler handler = new AGDownloadHandler(new File(folder.getRoot(), "out"));
+        List<Long> reports = new ArrayList<>();
+        handler.setProgressInterval(0);
+        handler.setProgressListener((file, bytes, contentLength, bytesPerSecond) -> {
+            Assert.assertEquals(body.length, contentLength);
+            Assert.assertTrue(bytesPerSecond > 0);
+            reports.add(bytes);
+        });
+        handler.handleResponse(response);
+        Assert.assertTrue(reports.size() > 1);
+        Assert.assertEquals(body.length, (long) reports.get(reports.size() - 1));
+    }
+}
@@ -5,12 +5,22 @@
 package test;
 
 import com.franz.agraph.repository.AGGraphQuery;
+import com.franz.agraph.repository.AGStreamGraphQuery;
 import junit.framework.Assert;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
 public class AGGraphQueryTests extends AGAbstractTest {
 
     @Test
@@ -41,4 +51,75 @@ public class AGGraphQueryTests extends AGAbstractTest {
         Assert.assertEquals("expected size 7", 7, q.count());
     }
 
+    @Test
+    @Category(TestSuites.Prepush.class)
+    public void graphQuery_countAsync() throws Exception {
+        Util.add(conn, "/test/example.nq", null, RDFFormat.NQUADS);
+        String queryString = "construct {?s ?p ?o} where {?s ?p ?o}";
+        AGGraphQuery q = conn.prepareGraphQuery(QueryLanguage.SPARQL, queryString);
+        Assert.assertEquals("expected size 10", 10, q.countAsync().get().longValue());
+        Assert.assertEquals("expected size 10", 10,
+                Iterations.asList(q.evaluateAsync().get()).size());
+    }
+
+    @Test
+    @Category(TestSuites.Prepush.class)
+    public void graphQuery_stream() throws Exception {
+        Util.add(conn, "/test/example.nq", null, RDFFormat.NQUADS);
+        String queryString = "construct {?s ?p ?o} where {?s ?p ?o}";
+        AGGraphQuery q = new AGStreamGraphQuery(conn.prepareGraphQuery(QueryLanguage.SPARQL, queryString));
+        try (GraphQueryResult result = q.evaluate()) {
+            Assert.assertEquals("expected size 10", 10, Iterations.asList(result).size());
+        }
+        // Closing before the end must leave the connection usable.
+        try (GraphQueryResult result = q.evaluate()) {
+            Assert.assertTrue(result.hasNext());
+            result.next();
+        }
+        Assert.assertEquals("expected size 10", 10, q.count());
+    }
+
+    @Test
+    public void graphQuery_publish() throws Exception {
+        Util.add(conn, "/test/example.nq", null, RDFFormat.NQUADS);
+        String queryString = "construct {?s ?p ?o} where {?s ?p ?o}";
+        AGGraphQuery q = conn.prepareGraphQuery(QueryLanguage.SPARQL, queryString);
+        List<Statement> received = new ArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        // Take 3 statements, one at a time, then cancel.
+        q.publish().subscribe(new Flow.Subscriber<Statement>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Statement item) {
+                received.add(item);
+                if (received.size() < 3) {
+                    subscription.request(1);
+                } else {
+                    subscription.cancel();
+                    done.complete(null);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.get(30, TimeUnit.SECONDS);
+        Assert.assertEquals(3, received.size());
+        Assert.assertEquals("expected size 10", 10, q.count());
+    }
+
 }
@@ -0,0 +1,62 @@
+package test;
+
+import com.franz.agraph.http.AGHttpConnectionLimiter;
+import com.franz.agraph.http.exception.AGHttpException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the connection limiter used by AGHTTPClient.
+ */
+public class AGHttpConnectionLimiterTest {
+    @Test
+    public void testUnlimitedNeverBlocks() {
+        AGHttpConnectionLimiter limiter = AGHttpConnectionLimiter.unlimited();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire();
+        }
+        Assert.assertEquals(0, limiter.getQueueLength());
+    }
+
+    @Test
+    public void testTimeout() {
+        AGHttpConnectionLimiter limiter = new AGHttpConnectionLimiter(1, 10);
+        limiter.acquire();
+        Assert.assertEquals(1, limiter.getActiveConnections());
+        try {
+            limiter.acquire();
+            Assert.fail("Expected a timeout");
+        } catch (AGHttpException e) {
+            // expected
+        }
+        Assert.assertEquals(1, limiter.getTimeoutCount());
+        Assert.assertEquals(1, limiter.getPeakQueueLength());
+        Assert.assertEquals(0, limiter.getQueueLength());
+        limiter.release();
+        limiter.acquire();
+    }
+
+    @Test
+    public void testWaiterGetsReleasedPermit() throws Exception {
+        AGHttpConnectionLimiter limiter = new AGHttpConnectionLimiter(1, 0);
+        limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            limiter.acquire();
+            acquired.countDown();
+        });
+        waiter.start();
+        while (limiter.getQueueLength() == 0) {
+            Thread.sleep(1);
+        }
+        Assert.assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+        limiter.release();
+        Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        Assert.assertEquals(1, limiter.getActiveConnections());
+        Assert.assertEquals(0, limiter.getQueueLength());
+    }
+}
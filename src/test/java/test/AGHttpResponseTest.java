@@ -0,0 +1,75 @@
+package test;
+
+import com.franz.agraph.http.handler.AGRawStreamer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+
+/**
+ * Tests for ending streamed responses that were not read to the end.
+ */
+public class AGHttpResponseTest {
+
+    @Test
+    public void testShortRemainderIsDrained() {
+        StubHttpResponse response = new StubHttpResponse(100);
+        response.releaseOrAbort(response.body, 100);
+        Assert.assertEquals(1, response.released);
+        Assert.assertEquals(0, response.aborted);
+        Assert.assertEquals(0, response.body.available());
+    }
+
+    @Test
+    public void testLongRemainderIsAborted() {
+        StubHttpResponse response = new StubHttpResponse(1000000);
+        response.releaseOrAbort(response.body, 1000);
+        Assert.assertEquals(0, response.released);
+        Assert.assertEquals(1, response.aborted);
+        Assert.assertTrue(response.body.available() > 1000000 - 10000);
+    }
+
+    @Test
+    public void testUnboundedLimit() {
+        StubHttpResponse response = new StubHttpResponse(100000);
+        response.releaseOrAbort(response.body, Long.MAX_VALUE);
+        Assert.assertEquals(1, response.released);
+        Assert.assertEquals(0, response.aborted);
+        Assert.assertEquals(0, response.body.available());
+    }
+
+    @Test
+    public void testExhaustedBodyIsReleasedWithZeroLimit() {
+        StubHttpResponse response = new StubHttpResponse(0);
+        response.releaseOrAbort(response.body, 0);
+        Assert.assertEquals(1, response.released);
+        Assert.assertEquals(0, response.aborted);
+    }
+
+    @Test
+    public void testRawStreamerAbortsOnEarlyClose() throws Exception {
+        StubHttpResponse response = new StubHttpResponse(1000000);
+        AGRawStreamer handler = new AGRawStreamer();
+        handler.setDrainLimit(1000);
+        handler.handleResponse(response);
+        try (InputStream in = handler.getStream()) {
+            Assert.assertTrue(in.read() >= 0);
+        }
+        Assert.assertEquals(0, response.released);
+        Assert.assertEquals(1, response.aborted);
+    }
+
+    @Test
+    public void testRawStreamerReleasesWhenExhausted() throws Exception {
+        StubHttpResponse response = new StubHttpResponse(10);
+        AGRawStreamer handler = new AGRawStreamer();
+        handler.handleResponse(response);
+        try (InputStream in = handler.getStream()) {
+            while (in.read() >= 0) {
+                // read everything
+            }
+        }
+        Assert.assertEquals(1, response.released);
+        Assert.assertEquals(0, response.aborted);
+    }
+}
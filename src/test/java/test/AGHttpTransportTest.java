@@ -0,0 +1,312 @@
+package test;
+
+import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpConnectionLimiter;
+import com.franz.agraph.http.transport.AGCommonsHttpTransport;
+import com.franz.agraph.http.transport.AGHttpRequest;
+import com.franz.agraph.http.transport.AGHttpResponse;
+import com.franz.agraph.http.transport.AGHttpTransport;
+import com.franz.agraph.http.transport.AGJdkHttpTransport;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the HTTP transports, against a stub server in this JVM.
+ */
+public class AGHttpTransportTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AGJdkHttpTransport transport = new AGJdkHttpTransport();
+    private HttpServer server;
+    private String url;
+
+    // What the stub server received, for the last request.
+    private volatile byte[] receivedBody;
+    private volatile Headers receivedHeaders;
+    private final List<Integer> clientPorts = new ArrayList<>();
+    private final CountDownLatch writeFailed = new CountDownLatch(1);
+
+    @Before
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/echo", this::echo);
+        server.createContext("/endless", this::endless);
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stop() {
+        transport.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void echo(HttpExchange exchange) throws IOException {
+        synchronized (clientPorts) {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+        }
+        receivedHeaders = exchange.getRequestHeaders();
+        try (InputStream in = exchange.getRequestBody()) {
+            receivedBody = readAll(in);
+        }
+        final byte[] body = new byte[100 * 1024];
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void endless(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            final byte[] chunk = new byte[64 * 1024];
+            for (int i = 0; i < 10000; i++) {
+                out.write(chunk);
+            }
+        } catch (IOException e) {
+            writeFailed.countDown();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * An entity that writes its content in small pieces.
+     */
+    private static RequestEntity streamed(byte[] content, boolean withLength) {
+        return new RequestEntity() {
+            @Override
+            public boolean isRepeatable() {
+                return false;
+            }
+
+            @Override
+            public void writeRequest(OutputStream out) throws IOException {
+                for (int off = 0; off < content.length; off += 1000) {
+                    out.write(content, off, Math.min(1000, content.length - off));
+                }
+            }
+
+            @Override
+            public long getContentLength() {
+                return withLength ? content.length : -1;
+            }
+
+            @Override
+            public String getContentType() {
+                return "application/octet-stream";
+            }
+        };
+    }
+
+    private void post(RequestEntity entity) throws IOException {
+        AGHttpRequest request = new AGHttpRequest(AGHttpRequest.POST, url + "/echo");
+        request.setEntity(entity);
+        AGHttpResponse response = transport.execute(request);
+        Assert.assertEquals(200, response.getStatusCode());
+        response.release();
+    }
+
+    @Test
+    public void testBufferedBody() throws Exception {
+        byte[] content = randomBytes(1000);
+        post(new ByteArrayRequestEntity(content, "application/octet-stream"));
+        Assert.assertArrayEquals(content, receivedBody);
+        Assert.assertEquals("1000", receivedHeaders.getFirst("Content-Length"));
+        Assert.assertEquals("application/octet-stream", receivedHeaders.getFirst("Content-Type"));
+    }
+
+    @Test
+    public void testStreamedBody() throws Exception {
+        byte[] content = randomBytes(3 * 1024 * 1024 + 17);
+        post(streamed(content, true));
+        Assert.assertArrayEquals(content, receivedBody);
+        Assert.assertEquals(Integer.toString(content.length), receivedHeaders.getFirst("Content-Length"));
+
+        post(streamed(content, false));
+        Assert.assertArrayEquals(content, receivedBody);
+        Assert.assertEquals("chunked", receivedHeaders.getFirst("Transfer-Encoding"));
+    }
+
+    @Test
+    public void testRestrictedHeaders() throws Exception {
+        AGHttpRequest request = new AGHttpRequest(AGHttpRequest.GET, url + "/echo");
+        request.addHeader("Connection", "close");
+        request.addHeader("Content-Length", "12");
+        request.addHeader("Expect", "100-continue");
+        request.addHeader("Host", "example.org");
+        request.addHeader("Upgrade", "websocket");
+        request.addHeader("X-Custom", "kept");
+        AGHttpResponse response = transport.execute(request);
+        Assert.assertEquals(200, response.getStatusCode());
+        response.release();
+        Assert.assertEquals("kept", receivedHeaders.getFirst("X-Custom"));
+        Assert.assertEquals("localhost:" + server.getAddress().getPort(), receivedHeaders.getFirst("Host"));
+        Assert.assertNull(receivedHeaders.getFirst("Expect"));
+        Assert.assertNotEquals("websocket", receivedHeaders.getFirst("Upgrade"));
+    }
+
+    @Test
+    public void testReleaseReusesConnection() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            AGHttpResponse response = transport.execute(new AGHttpRequest(AGHttpRequest.GET, url + "/echo"));
+            Assert.assertEquals(0, response.getResponseBody().read());
+            response.release();
+        }
+        Assert.assertEquals(2, clientPorts.size());
+        Assert.assertEquals(clientPorts.get(0), clientPorts.get(1));
+    }
+
+    @Test
+    public void testAbortClosesConnection() throws Exception {
+        AGHttpResponse response = transport.execute(new AGHttpRequest(AGHttpRequest.GET, url + "/endless"));
+        Assert.assertEquals(0, response.getResponseBody().read());
+        response.abort();
+        Assert.assertTrue(writeFailed.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A server that reads the headers of each request and then closes
+     * the connection, or keeps it open until the client closes it.
+     */
+    private static final class DroppingServer implements AutoCloseable {
+        final ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch clientClosed = new CountDownLatch(1);
+
+        DroppingServer(ExecutorService executor, boolean hold) throws IOException {
+            executor.execute(() -> {
+                while (!socket.isClosed()) {
+                    try (Socket client = socket.accept()) {
+                        InputStream in = client.getInputStream();
+                        readHeaders(in);
+                        requests.incrementAndGet();
+                        received.countDown();
+                        if (hold && in.read() < 0) {
+                            clientClosed.countDown();
+                        }
+                    } catch (IOException e) {
+                        // Closed by the test.
+                    }
+                }
+            });
+        }
+
+        private static void readHeaders(InputStream in) throws IOException {
+            byte[] end = {'\r', '\n', '\r', '\n'};
+            byte[] last = new byte[4];
+            int b;
+            while ((b = in.read()) >= 0) {
+                System.arraycopy(last, 1, last, 0, 3);
+                last[3] = (byte) b;
+                if (Arrays.equals(end, last)) {
+                    return;
+                }
+            }
+        }
+
+        String url() {
+            return "http://localhost:" + socket.getLocalPort() + "/dropped";
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static void assertFails(AGHttpTransport target, AGHttpRequest request) {
+        try {
+            target.execute(request).abort();
+            Assert.fail("expected an exception");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRetryIdempotentOnly() throws Exception {
+        try (DroppingServer dropping = new DroppingServer(executor, false)) {
+            assertFails(transport, new AGHttpRequest(AGHttpRequest.GET, dropping.url()));
+            Assert.assertEquals(2, dropping.requests.get());
+
+            dropping.requests.set(0);
+            assertFails(transport, new AGHttpRequest(AGHttpRequest.POST, dropping.url()));
+            Assert.assertEquals(1, dropping.requests.get());
+        }
+    }
+
+    @Test
+    public void testCommonsCancelAborts() throws Exception {
+        AGCommonsHttpTransport commons = new AGCommonsHttpTransport();
+        try (DroppingServer holding = new DroppingServer(executor, true)) {
+            CompletableFuture<AGHttpResponse> future =
+                    commons.executeAsync(new AGHttpRequest(AGHttpRequest.GET, holding.url()));
+            Assert.assertTrue(holding.received.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(future.cancel(true));
+            Assert.assertTrue(holding.clientClosed.await(5, TimeUnit.SECONDS));
+        } finally {
+            commons.close();
+        }
+    }
+
+    @Test
+    public void testSocketTimeoutWithJdkTransport() throws Exception {
+        HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+        params.setSoTimeout(1500);
+        params.setConnectionTimeout(500);
+        String previous = System.setProperty(AGHTTPClient.PROP_HTTP_TRANSPORT, AGHTTPClient.TRANSPORT_JDK);
+        try (AGHTTPClient client = new AGHTTPClient(url, params, AGHttpConnectionLimiter.createDefault())) {
+            AGJdkHttpTransport jdk = (AGJdkHttpTransport) client.getTransport();
+            Assert.assertEquals(Duration.ofMillis(1500), jdk.getRequestTimeout());
+            Assert.assertEquals(Duration.ofMillis(500), jdk.getHttpClient().connectTimeout().get());
+        } finally {
+            if (previous == null) {
+                System.clearProperty(AGHTTPClient.PROP_HTTP_TRANSPORT);
+            } else {
+                System.setProperty(AGHTTPClient.PROP_HTTP_TRANSPORT, previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package test;
+
+import com.franz.agraph.http.handler.AGRDFStreamer;
+import com.franz.agraph.http.handler.AGTQRTSVStreamer;
+import com.franz.agraph.repository.AGRDFFormat;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests for decoding streamed results on several threads.
+ */
+public class AGParallelDecodingTest {
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    @AfterClass
+    public static void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static String tsv(int rows) {
+        StringBuilder tsv = new StringBuilder("?s\t?n\t?o\n");
+        for (int i = 0; i < rows; i++) {
+            tsv.append("<http://example.org/s").append(i).append(">\t")
+                    .append(i % 5 == 0 ? "" : Integer.toString(i)).append('\t')
+                    .append('"').append("label ").append(i).append(" café\"@fr")
+                    .append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        return tsv.toString();
+    }
+
+    private TupleQueryResult tuples(String body, int threads, boolean ordered) throws Exception {
+        AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(vf);
+        streamer.setParallelDecoding(threads, ordered, executor);
+        streamer.handleResponse(new StubHttpResponse(body.getBytes(StandardCharsets.UTF_8), "text/tab-separated-values"));
+        return streamer.getResult();
+    }
+
+    @Test
+    public void testOrderedTuples() throws Exception {
+        String body = tsv(50000);
+        List<BindingSet> expected;
+        try (TupleQueryResult result = tuples(body, 0, true)) {
+            expected = Iterations.asList(result);
+        }
+        try (TupleQueryResult result = tuples(body, 4, true)) {
+            Assert.assertEquals(Arrays.asList("s", "n", "o"), result.getBindingNames());
+            Assert.assertEquals(expected, Iterations.asList(result));
+        }
+        try (TupleQueryResult result = tuples(body, 3, false)) {
+            List<BindingSet> actual = Iterations.asList(result);
+            Assert.assertEquals(expected.size(), actual.size());
+            Assert.assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        }
+    }
+
+    @Test
+    public void testEmptyTuples() throws Exception {
+        try (TupleQueryResult result = tuples("?a\t?b\n", 2, true)) {
+            Assert.assertEquals(Arrays.asList("a", "b"), result.getBindingNames());
+            Assert.assertFalse(result.hasNext());
+        }
+        try (TupleQueryResult result = tuples("", 2, true)) {
+            Assert.assertFalse(result.hasNext());
+            Assert.assertEquals(0, result.getBindingNames().size());
+        }
+    }
+
+    @Test
+    public void testBoundedExecutor() throws Exception {
+        String body = tsv(20000);
+        List<BindingSet> expected;
+        try (TupleQueryResult result = tuples(body, 0, true)) {
+            expected = Iterations.asList(result);
+        }
+        // Fewer threads than decoding threads, or none at all.
+        ExecutorService single = Executors.newFixedThreadPool(1);
+        try {
+            for (Executor bounded : Arrays.<Executor>asList(single, task -> { })) {
+                for (boolean ordered : new boolean[] {true, false}) {
+                    AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(vf);
+                    streamer.setParallelDecoding(4, ordered, bounded);
+                    streamer.handleResponse(new StubHttpResponse(body.getBytes(StandardCharsets.UTF_8),
+                            "text/tab-separated-values"));
+                    try (TupleQueryResult result = streamer.getResult()) {
+                        List<BindingSet> actual = Iterations.asList(result);
+                        if (ordered) {
+                            Assert.assertEquals(expected, actual);
+                        } else {
+                            Assert.assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+                        }
+                    }
+                }
+            }
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseEarly() throws Exception {
+        StubHttpResponse response = new StubHttpResponse(tsv(100000).getBytes(StandardCharsets.UTF_8),
+                "text/tab-separated-values");
+        AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(vf);
+        streamer.setParallelDecoding(2, true, executor);
+        streamer.handleResponse(response);
+        try (TupleQueryResult result = streamer.getResult()) {
+            Assert.assertEquals("http://example.org/s0", result.next().getValue("s").stringValue());
+        }
+        Assert.assertEquals(0, response.released);
+        Assert.assertEquals(1, response.aborted);
+    }
+
+    private GraphQueryResult statements(StubHttpResponse response, int threads, boolean ordered) throws Exception {
+        AGRDFStreamer streamer = new AGRDFStreamer(AGRDFFormat.NQUADS, vf, false, executor);
+        streamer.setParallelDecoding(threads, ordered);
+        streamer.handleResponse(response);
+        return streamer.getResult();
+    }
+
+    @Test
+    public void testStatements() throws Exception {
+        StringBuilder nquads = new StringBuilder("# comment\n");
+        for (int i = 0; i < 30000; i++) {
+            nquads.append("<http://example.org/s").append(i).append("> <http://example.org/p> \"o ")
+                    .append(i).append("\"").append(i % 2 == 0 ? " <http://example.org/g>" : "").append(" .\n\n");
+        }
+        byte[] body = nquads.toString().getBytes(StandardCharsets.UTF_8);
+        List<Statement> expected;
+        try (GraphQueryResult result = statements(new StubHttpResponse(body, "text/x-nquads"), 0, true)) {
+            expected = Iterations.asList(result);
+        }
+        Assert.assertEquals(30000, expected.size());
+        StubHttpResponse response = new StubHttpResponse(body, "text/x-nquads");
+        try (GraphQueryResult result = statements(response, 4, true)) {
+            Assert.assertEquals(expected, Iterations.asList(result));
+        }
+        Assert.assertEquals(1, response.released);
+        try (GraphQueryResult result = statements(new StubHttpResponse(body, "text/x-nquads"), 4, false)) {
+            Assert.assertEquals(new HashSet<>(expected), new HashSet<>(Iterations.asList(result)));
+        }
+    }
+
+    @Test
+    public void testInvalidStatement() throws Exception {
+        byte[] body = "<http://example.org/s> <http://example.org/p> \"o\" .\n<oops\n"
+                .getBytes(StandardCharsets.UTF_8);
+        StubHttpResponse response = new StubHttpResponse(body, "text/x-nquads");
+        try (GraphQueryResult result = statements(response, 2, true)) {
+            Iterations.asList(result);
+            Assert.fail("expected an exception");
+        } catch (QueryEvaluationException e) {
+            // expected
+        }
+        Assert.assertEquals(1, response.aborted);
+    }
+}
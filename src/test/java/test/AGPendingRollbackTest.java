@@ -0,0 +1,112 @@
+package test;
+
+import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.AGProtocol;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.handler.AGResponseHandler;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for sending a pending rollback with the next request.
+ */
+public class AGPendingRollbackTest {
+
+    // Headers of each request, requests are not sent.
+    private final List<Header[]> requests = new ArrayList<>();
+    // Number of the next requests that fail.
+    private int failures;
+
+    private final AGHTTPClient client = new AGHTTPClient("http://localhost:10035") {
+        @Override
+        public void get(String url, Header[] headers, NameValuePair[] params, AGResponseHandler handler) {
+            requests.add(headers);
+        }
+
+        @Override
+        public void post(String url, Header[] headers, NameValuePair[] params,
+                         RequestEntity requestEntity, AGResponseHandler handler) {
+            requests.add(headers);
+            if (failures > 0) {
+                failures--;
+                throw new AGHttpException(new IOException("Connection refused"));
+            }
+        }
+    };
+
+    private final AGHttpRepoClient repoClient = new AGHttpRepoClient(null, client,
+            "http://localhost:10035/repositories/test", null, null);
+
+    private boolean rollback(int request) {
+        for (Header header : requests.get(request)) {
+            if (header.getName().equalsIgnoreCase(AGProtocol.X_ROLLBACK_HEADER)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testSentWithNextRequestOnly() {
+        Assert.assertFalse(repoClient.isPendingRollback());
+        repoClient.commit();
+        repoClient.setPendingRollback(true);
+        Assert.assertTrue(repoClient.isPendingRollback());
+        repoClient.commit();
+        repoClient.commit();
+        Assert.assertEquals(3, requests.size());
+        Assert.assertFalse(rollback(0));
+        Assert.assertTrue(rollback(1));
+        Assert.assertFalse(rollback(2));
+        Assert.assertFalse(repoClient.isPendingRollback());
+    }
+
+    @Test
+    public void testCancelled() {
+        repoClient.setPendingRollback(true);
+        repoClient.setPendingRollback(false);
+        repoClient.commit();
+        Assert.assertFalse(rollback(0));
+    }
+
+    @Test
+    public void testWithRollbackHeader() {
+        repoClient.setSendRollbackHeader(true);
+        repoClient.setPendingRollback(true);
+        repoClient.commit();
+        repoClient.commit();
+        Assert.assertTrue(rollback(0));
+        Assert.assertTrue(rollback(1));
+        Assert.assertFalse(repoClient.isPendingRollback());
+    }
+
+    @Test
+    public void testKeptWhenRequestFails() {
+        repoClient.setPendingRollback(true);
+        failures = 2;
+        for (int i = 0; i < 2; i++) {
+            try {
+                repoClient.commit();
+                Assert.fail("expected an exception");
+            } catch (AGHttpException e) {
+                // expected
+            }
+            Assert.assertTrue(repoClient.isPendingRollback());
+        }
+        repoClient.commit();
+        repoClient.commit();
+        Assert.assertTrue(rollback(0));
+        Assert.assertTrue(rollback(1));
+        Assert.assertTrue(rollback(2));
+        Assert.assertFalse(rollback(3));
+        Assert.assertFalse(repoClient.isPendingRollback());
+    }
+}
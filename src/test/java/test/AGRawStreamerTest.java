@@ -0,0 +1,122 @@
+package test;
+
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.handler.AGRawStreamer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import static test.StubHttpResponse.data;
+import static test.StubHttpResponse.gzip;
+
+/**
+ * Tests for reading raw responses as channels and buffers.
+ */
+public class AGRawStreamerTest {
+
+    private static AGRawStreamer streamer(StubHttpResponse response) throws Exception {
+        AGRawStreamer streamer = new AGRawStreamer("text/plain");
+        streamer.handleResponse(response);
+        return streamer;
+    }
+
+    private static byte[] readAll(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            byte[] chunk = new byte[buffer.remaining()];
+            buffer.get(chunk);
+            out.write(chunk);
+            buffer.clear();
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testChannel() throws Exception {
+        byte[] data = data(300000);
+        StubHttpResponse response = new StubHttpResponse(data, "text/plain");
+        ReadableByteChannel channel = streamer(response).getChannel();
+        Assert.assertArrayEquals(data, readAll(channel, ByteBuffer.allocate(4096)));
+        // Closed itself at the end of the response.
+        Assert.assertFalse(channel.isOpen());
+        Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        channel.close();
+        Assert.assertEquals(1, response.released);
+        Assert.assertEquals(0, response.aborted);
+    }
+
+    @Test
+    public void testGzipChannel() throws Exception {
+        byte[] first = data(200000);
+        byte[] second = data(5000);
+        byte[] body = gzip(first, second);
+        StubHttpResponse response = new StubHttpResponse(body, "text/plain");
+        response.headers.put("Content-Encoding", "gzip");
+        byte[] expected = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, expected, first.length, second.length);
+        Assert.assertArrayEquals(expected, readAll(streamer(response).getChannel(),
+                ByteBuffer.allocateDirect(1000)));
+
+        response = new StubHttpResponse(body, "text/plain");
+        response.headers.put("Content-Encoding", "gzip");
+        AGRawStreamer streamer = streamer(response);
+        Assert.assertEquals("gzip", streamer.getContentEncoding());
+        Assert.assertArrayEquals(body, readAll(streamer.getChannel(false), ByteBuffer.allocate(1000)));
+        Assert.assertEquals(1, response.released);
+    }
+
+    @Test
+    public void testTransferTo() throws Exception {
+        byte[] data = data(3 * 1024 * 1024 + 17);
+        StubHttpResponse response = new StubHttpResponse(gzip(data), "text/plain");
+        response.headers.put("Content-Encoding", "gzip");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long n = streamer(response).transferTo(Channels.newChannel(out), true);
+        Assert.assertEquals(data.length, n);
+        Assert.assertArrayEquals(data, out.toByteArray());
+        Assert.assertEquals(1, response.released);
+    }
+
+    @Test
+    public void testConsumerFailure() throws Exception {
+        // Larger than the drain limit, so the connection is dropped.
+        StubHttpResponse response = new StubHttpResponse(data(8 * 1024 * 1024), "text/plain");
+        try {
+            streamer(response).transferTo(buffer -> {
+                throw new IOException("stop");
+            }, true);
+            Assert.fail("expected an exception");
+        } catch (AGHttpException e) {
+            Assert.assertEquals("stop", e.getCause().getMessage());
+        }
+        Assert.assertEquals(0, response.released);
+        Assert.assertEquals(1, response.aborted);
+    }
+
+    @Test
+    public void testBodyFailure() throws Exception {
+        StubHttpResponse response = new StubHttpResponse(data(100), "text/plain") {
+            @Override
+            public InputStream getResponseBody() {
+                throw new UncheckedIOException(new IOException("reset"));
+            }
+        };
+        try {
+            streamer(response).getChannel();
+            Assert.fail("expected an exception");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("reset", e.getCause().getMessage());
+        }
+        Assert.assertEquals(0, response.released);
+        Assert.assertEquals(1, response.aborted);
+    }
+}
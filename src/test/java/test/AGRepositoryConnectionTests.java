@@ -18,6 +18,8 @@ import com.franz.agraph.repository.AGXid;
 import com.franz.agraph.http.AGProtocol;
 import com.franz.agraph.http.exception.AGHttpException;
 
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.URI;
@@ -31,6 +33,7 @@ import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFParseException;
 import org.json.JSONObject;
@@ -53,7 +56,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.Map;
 
@@ -1100,6 +1105,73 @@ public class AGRepositoryConnectionTests extends RepositoryConnectionTests {
         assertEquals(0, getTotalStatementCount(conn));
     }
 
+    @Test
+    public void testStreamingGetStatements() throws Exception {
+        try (AGRepositoryConnection c = (AGRepositoryConnection) testRepository.getConnection()) {
+            c.add(alice, name, nameAlice, context1);
+            c.add(bob, name, nameBob, context2);
+            c.add(bob, mbox, mboxBob);
+            c.setStreamResults(true);
+
+            try (RepositoryResult<Statement> result = c.getStatements(null, name, null, false)) {
+                List<Statement> statements = Iterations.asList(result);
+                assertEquals(2, statements.size());
+                assertTrue(statements.contains(vf.createStatement(bob, name, nameBob, context2)));
+            }
+
+            // Closing before the end releases the response,
+            // so the connection can still be used.
+            try (RepositoryResult<Statement> result = c.getStatements(null, null, null, false)) {
+                assertTrue(result.hasNext());
+                result.next();
+            }
+            assertEquals(3, c.size());
+        }
+    }
+
+    @Test
+    public void testWriteBehindInAutoCommit() throws Exception {
+        try (AGRepositoryConnection c = (AGRepositoryConnection) testRepository.getConnection()) {
+            c.setWriteBehindLimits(1024 * 1024, 0);
+            c.setWriteBehindEnabled(true);
+            c.add(alice, mbox, mboxAlice, context1);
+            c.add(bob, mbox, mboxBob, context1);
+            c.remove(alice, mbox, mboxAlice);
+            c.add(alice, name, nameAlice);
+            assertEquals("Changes should still be buffered", 0, getTotalStatementCount(testCon));
+
+            // A read on the same connection sends the buffer first.
+            assertTrue(c.hasStatement(bob, mbox, mboxBob, false, context1));
+            assertFalse("Remove should be applied after the add",
+                    c.hasStatement(alice, mbox, mboxAlice, false));
+            assertEquals(2, getTotalStatementCount(testCon));
+            c.setWriteBehindEnabled(false);
+        }
+    }
+
+    @Test
+    public void testAddIterableInSubBatches() throws Exception {
+        try (AGRepositoryConnection c = (AGRepositoryConnection) testRepository.getConnection()) {
+            AGValueFactory vf = c.getValueFactory();
+            List<Statement> statements = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                statements.add(vf.createStatement(bob, name, vf.createLiteral("Bob " + i)));
+            }
+
+            // Autocommit: one request, split size does not matter.
+            c.setUploadBatchSize(10);
+            c.add(statements, context1);
+            assertEquals(25, getTotalStatementCount(testCon));
+
+            // Transaction: three requests, committed together.
+            c.begin();
+            c.add(new CloseableIteratorIteration<Statement, RuntimeException>(statements.iterator()), context2);
+            assertEquals("Statements should not yet be committed", 25, getTotalStatementCount(testCon));
+            c.commit();
+            assertEquals(50, getTotalStatementCount(testCon));
+        }
+    }
+
     @Test
     public void testGetStoreID() {
         try (AGRepositoryConnection c = (AGRepositoryConnection) testRepository.getConnection()) {
@@ -0,0 +1,167 @@
+package test;
+
+import com.franz.agraph.http.handler.AGGraphResultBuffer;
+import com.franz.agraph.http.handler.AGResultBuffer;
+import com.franz.agraph.http.handler.AGTupleResultBuffer;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for collecting query results within a memory budget.
+ */
+public class AGResultBufferTest {
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+    private final IRI type = vf.createIRI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+
+    private List<BindingSet> solutions(int count) {
+        List<String> names = Arrays.asList("s", "p", "o");
+        List<BindingSet> solutions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Value o;
+            if (i % 4 == 0) {
+                o = vf.createLiteral(Integer.toString(i % 10), XMLSchema.INT);
+            } else if (i % 4 == 1) {
+                o = vf.createLiteral("label " + i + " café", "fr");
+            } else if (i % 4 == 2) {
+                o = vf.createBNode("b" + i);
+            } else {
+                o = null;
+            }
+            solutions.add(new ListBindingSet(names, vf.createIRI("http://example.org/s" + i), type, o));
+        }
+        return solutions;
+    }
+
+    private AGTupleResultBuffer collect(List<BindingSet> solutions, long memoryLimit) throws Exception {
+        AGTupleResultBuffer buffer = new AGTupleResultBuffer(vf, memoryLimit);
+        buffer.startQueryResult(Arrays.asList("s", "p", "o"));
+        for (BindingSet solution : solutions) {
+            buffer.handleSolution(solution);
+        }
+        buffer.endQueryResult();
+        return buffer;
+    }
+
+    @Test
+    public void testSmallResultStaysOnHeap() throws Exception {
+        try (AGTupleResultBuffer buffer = collect(solutions(100), AGResultBuffer.DEFAULT_MEMORY_LIMIT)) {
+            Assert.assertFalse(buffer.getBuffer().isSpilled());
+            try (TupleQueryResult result = buffer.getQueryResult(false)) {
+                Assert.assertEquals(Arrays.asList("s", "p", "o"), result.getBindingNames());
+                Assert.assertEquals(solutions(100), Iterations.asList(result));
+            }
+        }
+    }
+
+    @Test
+    public void testSpilledResult() throws Exception {
+        List<BindingSet> expected = solutions(5000);
+        AGTupleResultBuffer buffer = collect(expected, 16 * 1024);
+        Assert.assertTrue(buffer.getBuffer().isSpilled());
+        Assert.assertEquals(5000, buffer.getBuffer().size());
+        // Can be read more than once.
+        try (TupleQueryResult result = buffer.getQueryResult(false)) {
+            Assert.assertEquals(expected, Iterations.asList(result));
+        }
+        try (TupleQueryResult result = buffer.getQueryResult(true)) {
+            Assert.assertEquals(expected, Iterations.asList(result));
+        }
+        try {
+            buffer.getQueryResult(false);
+            Assert.fail("buffer should be closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEverythingSpilled() throws Exception {
+        List<BindingSet> expected = solutions(50);
+        try (AGTupleResultBuffer buffer = collect(expected, 0)) {
+            try (TupleQueryResult result = buffer.getQueryResult(false)) {
+                Assert.assertEquals(expected, Iterations.asList(result));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyResult() throws Exception {
+        AGTupleResultBuffer buffer = new AGTupleResultBuffer(vf, 0);
+        try (TupleQueryResult result = buffer.getQueryResult(true)) {
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    @Test
+    public void testSpilledStatements() throws Exception {
+        IRI graph = vf.createIRI("http://example.org/graph");
+        List<Statement> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            expected.add(vf.createStatement(vf.createIRI("http://example.org/s" + i), type,
+                    vf.createLiteral("o" + (i % 7)), i % 2 == 0 ? graph : null));
+        }
+        AGGraphResultBuffer buffer = new AGGraphResultBuffer(vf, 8 * 1024);
+        buffer.startRDF();
+        buffer.handleNamespace("ex", "http://example.org/");
+        for (Statement st : expected) {
+            buffer.handleStatement(st);
+        }
+        buffer.endRDF();
+        Assert.assertTrue(buffer.getBuffer().isSpilled());
+        try (GraphQueryResult result = buffer.getQueryResult(true)) {
+            Assert.assertEquals("http://example.org/", result.getNamespaces().get("ex"));
+            List<Statement> actual = Iterations.asList(result);
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(graph, actual.get(1000).getContext());
+            Assert.assertNull(actual.get(1001).getContext());
+        }
+    }
+
+    private static int spillFiles() throws IOException {
+        int count = 0;
+        Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tmp, "agraph-result-*.tmp")) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testDroppedResultDeletesFile() throws Exception {
+        int before = spillFiles();
+        AGTupleResultBuffer buffer = collect(solutions(5000), 16 * 1024);
+        Assert.assertTrue(buffer.getBuffer().isSpilled());
+        Assert.assertEquals(before + 1, spillFiles());
+
+        // Dropped without closing it.
+        buffer = null;
+        long end = System.currentTimeMillis() + 5000;
+        while (spillFiles() > before && System.currentTimeMillis() < end) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(before, spillFiles());
+    }
+}
@@ -0,0 +1,179 @@
+package test;
+
+import com.franz.agraph.repository.AGResultPublisher;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for publishing query results with backpressure.
+ */
+public class AGResultPublisherTest {
+
+    private int read;
+    private int closed;
+
+    private TupleQueryResult result(int size) {
+        List<String> names = Collections.singletonList("n");
+        Iterator<BindingSet> rows = new Iterator<BindingSet>() {
+            @Override
+            public boolean hasNext() {
+                return read < size;
+            }
+
+            @Override
+            public BindingSet next() {
+                return new ListBindingSet(names, SimpleValueFactory.getInstance().createLiteral(read++));
+            }
+        };
+        return new IteratingTupleQueryResult(names, () -> rows) {
+            @Override
+            protected void handleClose() throws QueryEvaluationException {
+                closed++;
+                super.handleClose();
+            }
+        };
+    }
+
+    private static class Recorder implements Flow.Subscriber<BindingSet> {
+        final List<BindingSet> items = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean complete;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(BindingSet item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    @Test
+    public void testReadsOnlyWhatWasRequested() {
+        AGResultPublisher<BindingSet> publisher = new AGResultPublisher<>(() -> result(10), Runnable::run);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        Assert.assertEquals(0, read);
+
+        recorder.subscription.request(3);
+        Assert.assertEquals(3, recorder.items.size());
+        Assert.assertEquals(3, read);
+        Assert.assertFalse(recorder.complete);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        recorder.subscription.request(Long.MAX_VALUE);
+        Assert.assertEquals(10, recorder.items.size());
+        Assert.assertTrue(recorder.complete);
+        Assert.assertNull(recorder.error);
+        Assert.assertEquals(1, closed);
+    }
+
+    @Test
+    public void testCancelClosesResult() {
+        AGResultPublisher<BindingSet> publisher = new AGResultPublisher<>(() -> result(10), Runnable::run);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        recorder.subscription.request(2);
+        recorder.subscription.cancel();
+        recorder.subscription.request(5);
+        Assert.assertEquals(2, recorder.items.size());
+        Assert.assertEquals(1, closed);
+        Assert.assertFalse(recorder.complete);
+        Assert.assertNull(recorder.error);
+    }
+
+    @Test
+    public void testErrors() {
+        AGResultPublisher<BindingSet> failing = new AGResultPublisher<>(() -> {
+            throw new QueryEvaluationException("no server");
+        }, Runnable::run);
+        Recorder recorder = new Recorder();
+        failing.subscribe(recorder);
+        recorder.subscription.request(1);
+        Assert.assertTrue(recorder.error instanceof QueryEvaluationException);
+
+        Recorder second = new Recorder();
+        failing.subscribe(second);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+
+        AGResultPublisher<BindingSet> publisher = new AGResultPublisher<>(() -> result(10), Runnable::run);
+        Recorder invalid = new Recorder();
+        publisher.subscribe(invalid);
+        invalid.subscription.request(1);
+        invalid.subscription.request(0);
+        Assert.assertTrue(invalid.error instanceof IllegalArgumentException);
+        Assert.assertEquals(1, closed);
+    }
+
+    @Test
+    public void testRequestsFromAnotherThread() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AGResultPublisher<BindingSet> publisher = new AGResultPublisher<>(() -> result(1000), executor);
+            CountDownLatch done = new CountDownLatch(1);
+            List<BindingSet> items = Collections.synchronizedList(new ArrayList<>());
+            publisher.subscribe(new Flow.Subscriber<BindingSet>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(BindingSet item) {
+                    items.add(item);
+                    executor.execute(() -> subscription.request(1));
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    done.countDown();
+                }
+            });
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1000, items.size());
+            for (int i = 0; i < items.size(); i++) {
+                Assert.assertEquals(i, ((Literal) items.get(i).getValue("n")).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
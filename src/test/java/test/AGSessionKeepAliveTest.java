@@ -0,0 +1,65 @@
+package test;
+
+import com.franz.agraph.http.AGSessionKeepAlive;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the shared session keep-alive service.
+ */
+public class AGSessionKeepAliveTest {
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+
+    private final AGSessionKeepAlive keepAlive = new AGSessionKeepAlive(executor, 10);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testIdleSessionPinged() throws Exception {
+        AtomicInteger pings = new AtomicInteger();
+        keepAlive.register(100, pings::incrementAndGet);
+        Assert.assertEquals(1, keepAlive.getSessionCount());
+        Thread.sleep(400);
+        Assert.assertTrue("pings: " + pings.get(), pings.get() >= 2);
+        Assert.assertTrue(keepAlive.getPingsSent() >= pings.get());
+    }
+
+    @Test
+    public void testActiveSessionNotPinged() throws Exception {
+        AtomicInteger pings = new AtomicInteger();
+        AGSessionKeepAlive.Session session = keepAlive.register(400, pings::incrementAndGet);
+        long end = System.currentTimeMillis() + 800;
+        while (System.currentTimeMillis() < end) {
+            session.touch();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, pings.get());
+        Assert.assertTrue(keepAlive.getPingsSuppressed() > 0);
+    }
+
+    @Test
+    public void testCancelled() throws Exception {
+        AtomicInteger pings = new AtomicInteger();
+        AGSessionKeepAlive.Session session = keepAlive.register(100, pings::incrementAndGet);
+        AGSessionKeepAlive.Session other = keepAlive.register(100, () -> {
+            throw new IllegalStateException("gone");
+        });
+        session.cancel();
+        session.cancel();
+        Assert.assertEquals(1, keepAlive.getSessionCount());
+        Thread.sleep(300);
+        Assert.assertEquals(0, pings.get());
+        Assert.assertTrue(keepAlive.getPingsFailed() > 0);
+        other.cancel();
+        Assert.assertEquals(0, keepAlive.getSessionCount());
+    }
+}
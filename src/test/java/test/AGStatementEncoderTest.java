@@ -0,0 +1,135 @@
+package test;
+
+import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.handler.AGResponseHandler;
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for encoding added statements as JSON rows.
+ */
+public class AGStatementEncoderTest {
+
+    private static final String REPO = "http://localhost:10035/repositories/test";
+
+    private static final List<String> STRINGS = Arrays.asList(
+            "plain",
+            "",
+            "\u0000\u0001\b\t\n\f\r\u001f",
+            "quote \" backslash \\ slash / </tag>",
+            "café Δ € 中 ￿",
+            "😀 𐀀 􏿿",
+            "high \ud83d",
+            "\ud83dhigh",
+            "low \ude00",
+            "\ude00low",
+            "reversed \ude00\ud83d",
+            "double \ud83d😀",
+            "\ud83d");
+
+    // Bodies of the requests other than those opening sessions.
+    private final List<byte[]> bodies = new ArrayList<>();
+    private final List<RequestEntity> entities = new ArrayList<>();
+
+    private final AGHTTPClient client = new AGHTTPClient("http://localhost:10035") {
+        @Override
+        public void post(String url, Header[] headers, NameValuePair[] params,
+                         RequestEntity requestEntity, AGResponseHandler handler) {
+            try {
+                if (url.equals(REPO + "/session")) {
+                    handler.handleResponse(new StubHttpResponse(
+                            "http://localhost:10035/session/5000/repositories/test".getBytes(StandardCharsets.UTF_8),
+                            "text/plain"));
+                } else if (requestEntity != null) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    requestEntity.writeRequest(out);
+                    entities.add(requestEntity);
+                    bodies.add(out.toByteArray());
+                }
+            } catch (IOException e) {
+                throw new AGHttpException(e);
+            }
+        }
+
+        @Override
+        public void get(String url, Header[] headers, NameValuePair[] params, AGResponseHandler handler) {
+        }
+    };
+
+    private final AGRepositoryConnection conn = new AGRepositoryConnection((AGRepository) null,
+            new AGHttpRepoClient(null, client, REPO, null, null));
+    private final AGValueFactory vf = conn.getValueFactory();
+    private final IRI s = vf.createIRI("http://example.org/s");
+    private final IRI p = vf.createIRI("http://example.org/p");
+
+    /**
+     * @return The string as it is decoded from UTF-8 encoded by the JDK,
+     * which replaces unpaired surrogates with '?'.
+     */
+    private static String utf8(String s) {
+        return new String(s.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSingleAdd() throws Exception {
+        for (String label : STRINGS) {
+            Literal o = vf.createLiteral(label);
+            conn.add(s, p, o);
+            byte[] body = bodies.get(bodies.size() - 1);
+            RequestEntity entity = entities.get(entities.size() - 1);
+            Assert.assertTrue(entity.isRepeatable());
+            Assert.assertEquals(body.length, entity.getContentLength());
+
+            JSONArray row = new JSONArray(new String(body, StandardCharsets.UTF_8)).getJSONArray(0);
+            Assert.assertEquals(NTriplesUtil.toNTriplesString(s), row.getString(0));
+            Assert.assertEquals(NTriplesUtil.toNTriplesString(p), row.getString(1));
+            Assert.assertEquals(label, NTriplesUtil.parseLiteral(row.getString(2), vf).getLabel());
+            Assert.assertTrue(row.isNull(3));
+        }
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        conn.setAutoCommit(false);
+        conn.setAddStatementBufferEnabled(true);
+        conn.setAddStatementBufferMaxSize(STRINGS.size());
+        List<JSONObject> attributes = new ArrayList<>();
+        for (String value : STRINGS) {
+            JSONObject attrs = new JSONObject().put("a", value);
+            attributes.add(attrs);
+            conn.add(s, p, vf.createLiteral("o"), attrs);
+        }
+        Assert.assertEquals(1, bodies.size());
+        byte[] body = bodies.get(0);
+
+        JSONArray rows = new JSONArray(new String(body, StandardCharsets.UTF_8));
+        Assert.assertEquals(STRINGS.size(), rows.length());
+        for (int i = 0; i < STRINGS.size(); i++) {
+            JSONArray row = rows.getJSONArray(i);
+            Assert.assertEquals(utf8(attributes.get(i).toString()), row.getString(4));
+            Assert.assertEquals(utf8(STRINGS.get(i)), new JSONObject(row.getString(4)).getString("a"));
+        }
+        // No invalid UTF-8, such as encoded surrogates.
+        Assert.assertArrayEquals(body, new String(body, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,76 @@
+package test;
+
+import com.franz.agraph.http.handler.AGTQRTSVStreamer;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the TSV tokenizer of AGTQRTSVStreamer.
+ */
+public class AGTQRTSVStreamerTest {
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    private List<BindingSet> parse(String tsv) throws Exception {
+        StubHttpResponse response = new StubHttpResponse(tsv.getBytes(StandardCharsets.UTF_8),
+                TupleQueryResultFormat.TSV.getDefaultMIMEType());
+        AGTQRTSVStreamer handler = new AGTQRTSVStreamer(vf);
+        handler.handleResponse(response);
+        try (TupleQueryResult result = handler.getResult()) {
+            Assert.assertEquals(Arrays.asList("a", "b"), result.getBindingNames());
+            return Iterations.asList(result);
+        }
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        List<BindingSet> rows = parse("?a\t?b\n"
+                + "<http://example.org/x>\t_:b1\n"
+                + "\"tab\\there\"@en\t\"1\"^^<http://www.w3.org/2001/XMLSchema#int>\n"
+                + "42\t-7\n"
+                + "-0\t+1.5\n"
+                + "1.0e-3\t.5\n"
+                + "1.2.3\t12abc\n"
+                + "\t\"café\"\n");
+        Assert.assertEquals(7, rows.size());
+        Assert.assertEquals(vf.createIRI("http://example.org/x"), rows.get(0).getValue("a"));
+        Assert.assertEquals(vf.createBNode("b1"), rows.get(0).getValue("b"));
+        Assert.assertEquals(vf.createLiteral("tab\there", "en"), rows.get(1).getValue("a"));
+        Assert.assertEquals(vf.createLiteral("1", XMLSchema.INT), rows.get(1).getValue("b"));
+        Assert.assertEquals(vf.createLiteral("42", XMLSchema.INTEGER), rows.get(2).getValue("a"));
+        Assert.assertEquals(vf.createLiteral("-7", XMLSchema.NEGATIVE_INTEGER), rows.get(2).getValue("b"));
+        Assert.assertEquals(vf.createLiteral("-0", XMLSchema.INTEGER), rows.get(3).getValue("a"));
+        Assert.assertEquals(vf.createLiteral("+1.5", XMLSchema.DECIMAL), rows.get(3).getValue("b"));
+        Assert.assertEquals(vf.createLiteral("1.0e-3", XMLSchema.DOUBLE), rows.get(4).getValue("a"));
+        Assert.assertEquals(vf.createLiteral(".5", XMLSchema.DECIMAL), rows.get(4).getValue("b"));
+        Assert.assertEquals(vf.createLiteral("1.2.3"), rows.get(5).getValue("a"));
+        Assert.assertEquals(vf.createLiteral("12abc"), rows.get(5).getValue("b"));
+        Assert.assertNull(rows.get(6).getValue("a"));
+        Assert.assertEquals(vf.createLiteral("café"), rows.get(6).getValue("b"));
+    }
+
+    @Test
+    public void testLongCellsAndLineEndings() throws Exception {
+        String label = String.join("", Collections.nCopies(5000, "abc"));
+        List<BindingSet> rows = parse("?a\t?b\r\n"
+                + "\"" + label + "\"\t" + "\"" + label + "\"\r\n"
+                + "1\t2");
+        Assert.assertEquals(2, rows.size());
+        Value literal = vf.createLiteral(label);
+        Assert.assertEquals(literal, rows.get(0).getValue("a"));
+        Assert.assertEquals(literal, rows.get(0).getValue("b"));
+        Assert.assertEquals(vf.createLiteral("2", XMLSchema.INTEGER), rows.get(1).getValue("b"));
+    }
+}
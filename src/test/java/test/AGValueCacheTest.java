@@ -0,0 +1,72 @@
+package test;
+
+import com.franz.agraph.repository.AGValueCache;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * Tests for interning values in AGValueFactory.
+ */
+public class AGValueCacheTest {
+
+    @Test
+    public void testDisabledByDefault() {
+        AGValueFactory vf = new AGValueFactory(null);
+        Assert.assertNull(vf.getInternCache());
+        Assert.assertNotSame(vf.createIRI("http://example.org/x"), vf.createIRI("http://example.org/x"));
+    }
+
+    @Test
+    public void testInterning() {
+        AGValueFactory vf = new AGValueFactory(null);
+        vf.setInternCacheSize(100);
+        AGValueCache cache = vf.getInternCache();
+        Assert.assertEquals(128, cache.getCapacity());
+
+        // Values are kept after they were missed twice.
+        Assert.assertNotSame(vf.createIRI("http://example.org/x"), vf.createIRI("http://example.org/x"));
+        IRI x = vf.createIRI("http://example.org/x");
+        Assert.assertSame(x, vf.createIRI(new String("http://example.org/x")));
+        vf.createLiteral("42");
+        vf.createLiteral("42", XMLSchema.INTEGER);
+        vf.createLiteral("42", "en");
+        Literal plain = vf.createLiteral("42");
+        Literal typed = vf.createLiteral("42", XMLSchema.INTEGER);
+        Literal tagged = vf.createLiteral("42", "en");
+        Assert.assertSame(plain, vf.createLiteral("42"));
+        Assert.assertSame(typed, vf.createLiteral("42", XMLSchema.INTEGER));
+        Assert.assertSame(tagged, vf.createLiteral("42", "en"));
+        Assert.assertEquals(XMLSchema.STRING, plain.getDatatype());
+        Assert.assertEquals(XMLSchema.INTEGER, typed.getDatatype());
+        Assert.assertEquals("en", tagged.getLanguage().orElse(null));
+        Assert.assertNotEquals(plain, typed);
+
+        String label = String.join("", Collections.nCopies(100, "a"));
+        Assert.assertNotSame(vf.createLiteral(label), vf.createLiteral(label));
+
+        Assert.assertEquals(5, cache.getHits());
+        Assert.assertTrue(cache.getHitRate() > 0);
+        cache.clear();
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+        Assert.assertNotSame(x, vf.createIRI("http://example.org/x"));
+    }
+
+    @Test
+    public void testBounded() {
+        AGValueFactory vf = new AGValueFactory(null);
+        vf.setInternCacheSize(4);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("http://example.org/" + i, vf.createIRI("http://example.org/" + i).stringValue());
+        }
+        Assert.assertEquals(4, vf.getInternCache().getCapacity());
+        vf.setInternCacheSize(0);
+        Assert.assertNull(vf.getInternCache());
+    }
+}
@@ -12,11 +12,15 @@ import com.franz.agraph.jena.AGQueryExecutionFactory;
 import com.franz.agraph.jena.AGQueryFactory;
 import com.franz.agraph.repository.AGTupleQuery;
 import junit.framework.Assert;
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.concurrent.CompletableFuture;
+
 public class QueryLimitOffsetTests extends AGAbstractTest {
 
     @Test
@@ -37,6 +41,21 @@ public class QueryLimitOffsetTests extends AGAbstractTest {
         Assert.assertEquals("expected 16 results", 16, tupleQuery.count());
     }
 
+    @Test
+    @Category(TestSuites.Prepush.class)
+    public void sesameQueryLimitOffsetAsync_tests() throws Exception {
+        Util.add(conn, "/tutorial/java-vcards.rdf", null, RDFFormat.RDFXML);
+        String queryString = "SELECT ?s ?p ?o  WHERE {?s ?p ?o .}";
+        AGTupleQuery all = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
+        AGTupleQuery limited = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
+        limited.setLimit(5);
+        // Both queries are in flight at the same time.
+        CompletableFuture<Long> allCount = all.countAsync();
+        CompletableFuture<TupleQueryResult> limitedResult = limited.evaluateAsync();
+        Assert.assertEquals("expected 16 results", 16, allCount.get().longValue());
+        Assert.assertEquals("expected 5 results", 5, Iterations.asList(limitedResult.get()).size());
+    }
+
     @Test
     @Category(TestSuites.Prepush.class)
     public void jenaQueryLimitOffset_tests() throws Exception {
@@ -0,0 +1,99 @@
+package test;
+
+import com.franz.agraph.http.transport.AGHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response with a body held in memory, for testing response handlers
+ * without a server. Counts calls to {@link #release()} and {@link #abort()}.
+ */
+public class StubHttpResponse implements AGHttpResponse {
+    final ByteArrayInputStream body;
+    final String contentType;
+    // Other headers, such as Content-Encoding.
+    final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    int released;
+    int aborted;
+
+    StubHttpResponse(int size) {
+        this(new byte[size], null);
+    }
+
+    public StubHttpResponse(byte[] body, String contentType) {
+        this.body = new ByteArrayInputStream(body);
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return A body that compresses well, but not trivially.
+     */
+    static byte[] data(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    /**
+     * @return The members gzip encoded one after the other.
+     */
+    static byte[] gzip(byte[]... members) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] member : members) {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+                @Override
+                public void close() throws IOException {
+                    finish();
+                }
+            }) {
+                gzip.write(member);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public int getStatusCode() {
+        return 200;
+    }
+
+    @Override
+    public String getStatusText() {
+        return "OK";
+    }
+
+    @Override
+    public String getResponseHeader(String name) {
+        return "Content-Type".equalsIgnoreCase(name) ? contentType : headers.get(name);
+    }
+
+    @Override
+    public InputStream getResponseBody() {
+        return body;
+    }
+
+    @Override
+    public String getURI() {
+        return "http://localhost/";
+    }
+
+    @Override
+    public void release() {
+        released++;
+    }
+
+    @Override
+    public void abort() {
+        aborted++;
+    }
+}
@@ -9,9 +9,12 @@ import org.junit.experimental.categories.Categories.ExcludeCategory;
 import org.junit.experimental.categories.Categories.IncludeCategory;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite.SuiteClasses;
+import test.pool.AGConnPoolAsyncTest;
 import test.pool.AGConnPoolClosingTest;
 import test.pool.AGConnPoolSessionTest;
 import test.pool.AGConnPoolWarmupTest;
+import test.pool.AGPoolMetricsTest;
+import test.pool.AGSessionPoolTest;
 import test.stress.TransactionStressTest;
 
 public class TestSuites {
@@ -80,7 +83,26 @@ public class TestSuites {
             ReplHeaderTest.class,
             AGServerVersionTests.class,
             AGHTTPClientTests.class,
+            AGHttpConnectionLimiterTest.class,
             WarmupTests.class,
+            AGHttpResponseTest.class,
+            AGBinaryFormatsTest.class,
+            AGTQRTSVStreamerTest.class,
+            AGBindingSetTest.class,
+            AGValueCacheTest.class,
+            AGResultPublisherTest.class,
+            AGResultBufferTest.class,
+            AGColumnarResultTest.class,
+            AGDownloadHandlerTest.class,
+            AGRawStreamerTest.class,
+            AGParallelDecodingTest.class,
+            AGPendingRollbackTest.class,
+            AGSessionKeepAliveTest.class,
+            AGSessionPoolTest.class,
+            AGPoolMetricsTest.class,
+            AGConnPoolAsyncTest.class,
+            AGStatementEncoderTest.class,
+            AGHttpTransportTest.class,
     })
     public static class Prepush {
     }
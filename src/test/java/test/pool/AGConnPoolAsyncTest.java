@@ -0,0 +1,179 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.pool;
+
+import com.franz.agraph.pool.AGConnPool;
+import com.franz.agraph.pool.AGPoolConfig;
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for borrowing pooled connections without blocking.
+ */
+public class AGConnPoolAsyncTest {
+
+    private final AGConnPool pool;
+
+    public AGConnPoolAsyncTest() {
+        AGPoolConfig config = new AGPoolConfig(Collections.emptyMap());
+        config.setMaxTotal(1);
+        pool = AGConnPool.create(new BasePooledObjectFactory<AGRepositoryConnection>() {
+            @Override
+            public AGRepositoryConnection create() {
+                return new AGRepositoryConnection((AGRepository) null, null);
+            }
+
+            @Override
+            public PooledObject<AGRepositoryConnection> wrap(AGRepositoryConnection conn) {
+                return new DefaultPooledObject<>(conn);
+            }
+        }, config);
+    }
+
+    @After
+    public void close() {
+        pool.close();
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (TimeoutException e) {
+            Assert.fail("future not completed");
+        }
+        Assert.fail("expected an exception");
+        return null;
+    }
+
+    @Test
+    public void testWaitForReturn() throws Exception {
+        AGRepositoryConnection conn = pool.borrowAsync().get(5, TimeUnit.SECONDS);
+        CompletableFuture<AGRepositoryConnection> cancelled = pool.borrowAsync(-1, TimeUnit.SECONDS);
+        CompletableFuture<AGRepositoryConnection> timedOut = pool.borrowAsync(50, TimeUnit.MILLISECONDS);
+        CompletableFuture<AGRepositoryConnection> waiting = pool.borrowAsync(-1, TimeUnit.SECONDS);
+        Assert.assertEquals(3, pool.getNumWaiters());
+        cancelled.cancel(false);
+        Assert.assertTrue(failure(timedOut) instanceof TimeoutException);
+        Assert.assertEquals(1, pool.getNumWaiters());
+        Assert.assertFalse(waiting.isDone());
+
+        conn.close();
+        Assert.assertSame(conn, waiting.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, pool.getNumWaiters());
+        Assert.assertEquals(1, pool.getNumActive());
+        waiting.get().close();
+        Assert.assertEquals(1, pool.getNumIdle());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        pool.borrowObject();
+        CompletableFuture<AGRepositoryConnection> waiting = pool.borrowAsync(-1, TimeUnit.SECONDS);
+        pool.close();
+        Assert.assertTrue(failure(waiting) instanceof RepositoryException);
+    }
+
+    @Test
+    public void testWaitForCreate() throws Exception {
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch created = new CountDownLatch(1);
+        AtomicBoolean fail = new AtomicBoolean(true);
+        AGPoolConfig config = new AGPoolConfig(Collections.emptyMap());
+        config.setMaxTotal(1);
+        AGConnPool slowPool = AGConnPool.create(new BasePooledObjectFactory<AGRepositoryConnection>() {
+            @Override
+            public AGRepositoryConnection create() throws Exception {
+                creating.countDown();
+                created.await();
+                if (fail.getAndSet(false)) {
+                    throw new RepositoryException("create failed");
+                }
+                return new AGRepositoryConnection((AGRepository) null, null);
+            }
+
+            @Override
+            public PooledObject<AGRepositoryConnection> wrap(AGRepositoryConnection conn) {
+                return new DefaultPooledObject<>(conn);
+            }
+        }, config);
+        try {
+            CompletableFuture<AGRepositoryConnection> blocking = CompletableFuture.supplyAsync(slowPool::borrowObject);
+            creating.await(5, TimeUnit.SECONDS);
+            // The pool is full while the other borrower creates a connection.
+            CompletableFuture<AGRepositoryConnection> waiting = slowPool.borrowAsync(-1, TimeUnit.SECONDS);
+            Thread.sleep(50);
+            Assert.assertFalse(waiting.isDone());
+            Assert.assertEquals(1, slowPool.getNumWaiters());
+
+            // The failed creation frees the place in the pool.
+            created.countDown();
+            Assert.assertTrue(failure(blocking) instanceof RepositoryException);
+            AGRepositoryConnection conn = waiting.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(1, slowPool.getNumActive());
+            conn.close();
+        } finally {
+            slowPool.close();
+        }
+    }
+
+    private static class ClosingFactory extends BasePooledObjectFactory<AGRepositoryConnection>
+            implements AutoCloseable {
+        final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public AGRepositoryConnection create() {
+            return new AGRepositoryConnection((AGRepository) null, null);
+        }
+
+        @Override
+        public PooledObject<AGRepositoryConnection> wrap(AGRepositoryConnection conn) {
+            return new DefaultPooledObject<>(conn);
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testCloseFactoryWhenReturned() throws Exception {
+        ClosingFactory factory = new ClosingFactory();
+        AGConnPool closingPool = AGConnPool.create(factory, new AGPoolConfig(Collections.emptyMap()));
+        AGRepositoryConnection first = closingPool.borrowObject();
+        AGRepositoryConnection second = closingPool.borrowObject();
+        closingPool.close();
+        // The borrowed connections still use the shared resources.
+        Assert.assertEquals(0, factory.closed.get());
+        first.close();
+        Assert.assertEquals(0, factory.closed.get());
+        second.close();
+        Assert.assertEquals(1, factory.closed.get());
+
+        ClosingFactory idleFactory = new ClosingFactory();
+        AGConnPool idlePool = AGConnPool.create(idleFactory, new AGPoolConfig(Collections.emptyMap()));
+        idlePool.borrowObject().close();
+        idlePool.close();
+        Assert.assertEquals(1, idleFactory.closed.get());
+    }
+}
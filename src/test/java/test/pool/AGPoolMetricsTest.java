@@ -0,0 +1,190 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.pool;
+
+import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.handler.AGResponseHandler;
+import com.franz.agraph.pool.AGConnConfig;
+import com.franz.agraph.pool.AGConnFactory;
+import com.franz.agraph.pool.AGConnPool;
+import com.franz.agraph.pool.AGConnProp;
+import com.franz.agraph.pool.AGPoolConfig;
+import com.franz.agraph.pool.AGPoolMetrics;
+import com.franz.agraph.pool.AGPoolStats;
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import com.franz.agraph.repository.AGServer;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.junit.Assert;
+import org.junit.Test;
+import test.StubHttpResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the metrics recorded by connection pools.
+ */
+public class AGPoolMetricsTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Creates connections that are never used, taking some time in each phase.
+     */
+    private static class SlowFactory extends BasePooledObjectFactory<AGRepositoryConnection> {
+        boolean valid = true;
+
+        @Override
+        public AGRepositoryConnection create() throws Exception {
+            Thread.sleep(30);
+            return new AGRepositoryConnection((AGRepository) null, null);
+        }
+
+        @Override
+        public PooledObject<AGRepositoryConnection> wrap(AGRepositoryConnection conn) {
+            return new DefaultPooledObject<>(conn);
+        }
+
+        @Override
+        public void activateObject(PooledObject<AGRepositoryConnection> pooled) throws Exception {
+            Thread.sleep(10);
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<AGRepositoryConnection> pooled) {
+            return valid;
+        }
+    }
+
+    @Test
+    public void testHistogram() {
+        AGPoolStats stats = new AGPoolStats();
+        AGPoolStats.Latency empty = stats.getLatency(AGPoolMetrics.Phase.CREATE);
+        Assert.assertEquals(0, empty.getCount());
+        Assert.assertEquals(0, empty.getPercentileNanos(99));
+        for (long i = 1; i <= 1000; i++) {
+            stats.recordTime(AGPoolMetrics.Phase.CREATE, i * 1000);
+        }
+        AGPoolStats.Latency latency = stats.getLatency(AGPoolMetrics.Phase.CREATE);
+        Assert.assertEquals(1000, latency.getCount());
+        Assert.assertEquals(500500, latency.getMeanNanos());
+        Assert.assertEquals(1000000, latency.getMaxNanos());
+        Assert.assertEquals(1000000, latency.getPercentileNanos(100));
+        long median = latency.getPercentileNanos(50);
+        Assert.assertTrue("median: " + median, median >= 500000 && median <= 500000 * 1.125);
+        long p99 = latency.getPercentileNanos(99);
+        Assert.assertTrue("p99: " + p99, p99 >= 990000 && p99 <= 1000000);
+    }
+
+    @Test
+    public void testPoolMetrics() throws Exception {
+        AGPoolStats stats = new AGPoolStats();
+        AGPoolConfig config = new AGPoolConfig(Collections.emptyMap());
+        config.setMetrics(stats);
+        config.setTestOnBorrow(true);
+        SlowFactory factory = new SlowFactory();
+        try (AGConnPool pool = AGConnPool.create(factory, config)) {
+            Assert.assertSame(stats, pool.getMetrics());
+            AGRepositoryConnection conn = pool.borrowObject();
+            pool.returnObject(conn);
+            factory.valid = false;
+            try {
+                pool.borrowObject();
+                Assert.fail("expected an exception");
+            } catch (RuntimeException e) {
+                // expected: the new connection is not valid either
+            }
+            Assert.assertEquals(0, pool.getNumWaiters());
+        }
+        Assert.assertEquals(2, stats.getCreatedCount());
+        Assert.assertEquals(2, stats.getDestroyedCount());
+        Assert.assertEquals(2, stats.getValidationFailureCount());
+        Assert.assertEquals(2, stats.getLatency(AGPoolMetrics.Phase.CREATE).getCount());
+        Assert.assertTrue(stats.getLatency(AGPoolMetrics.Phase.CREATE).getMeanNanos() >= 30 * MILLIS);
+        Assert.assertEquals(3, stats.getLatency(AGPoolMetrics.Phase.ACTIVATE).getCount());
+        Assert.assertEquals(3, stats.getLatency(AGPoolMetrics.Phase.VALIDATE).getCount());
+        AGPoolStats.Latency wait = stats.getLatency(AGPoolMetrics.Phase.BORROW_WAIT);
+        Assert.assertEquals(2, wait.getCount());
+        // Creating and activating connections is not counted as waiting.
+        Assert.assertTrue("wait: " + wait, wait.getMaxNanos() < 10 * MILLIS);
+    }
+
+    /**
+     * Answers requests to open sessions after a delay, and ignores other requests.
+     */
+    private final AGHTTPClient client = new AGHTTPClient("http://localhost:10035") {
+        @Override
+        public void post(String url, Header[] headers, NameValuePair[] params,
+                         RequestEntity requestEntity, AGResponseHandler handler) {
+            if (url.endsWith("/repositories/test/session")) {
+                try {
+                    Thread.sleep(20);
+                    handler.handleResponse(new StubHttpResponse(
+                            "http://localhost:10035/session/5000/repositories/test".getBytes(StandardCharsets.UTF_8),
+                            "text/plain"));
+                } catch (IOException | InterruptedException e) {
+                    throw new AGHttpException(e);
+                }
+            }
+        }
+
+        @Override
+        public void get(String url, Header[] headers, NameValuePair[] params, AGResponseHandler handler) {
+        }
+    };
+
+    private AGConnPool createPool(AGConnProp.Session session, AGPoolStats stats) {
+        Map<AGConnProp, String> props = new EnumMap<>(AGConnProp.class);
+        props.put(AGConnProp.serverUrl, client.getServerURL());
+        props.put(AGConnProp.username, "test");
+        props.put(AGConnProp.password, "xyzzy");
+        props.put(AGConnProp.repository, "test");
+        props.put(AGConnProp.session, session.name());
+        AGRepository repository = new AGRepository(new AGServer("test", "xyzzy", client).getRootCatalog(), "test");
+        AGConnFactory factory = new AGConnFactory(new AGConnConfig(props)) {
+            @Override
+            protected AGRepository getRepository() {
+                return repository;
+            }
+        };
+        AGPoolConfig config = new AGPoolConfig(Collections.emptyMap());
+        config.setMetrics(stats);
+        return AGConnPool.create(factory, config);
+    }
+
+    @Test
+    public void testSessionOpen() throws Exception {
+        // Opened when the connection is created.
+        AGPoolStats dedicated = new AGPoolStats();
+        try (AGConnPool pool = createPool(AGConnProp.Session.DEDICATED, dedicated)) {
+            pool.borrowObject().close();
+            pool.borrowObject().close();
+        }
+        Assert.assertEquals(1, dedicated.getLatency(AGPoolMetrics.Phase.SESSION_OPEN).getCount());
+        Assert.assertTrue(dedicated.getLatency(AGPoolMetrics.Phase.SESSION_OPEN).getMeanNanos() >= 20 * MILLIS);
+
+        // Opened by the borrower.
+        AGPoolStats shared = new AGPoolStats();
+        try (AGConnPool pool = createPool(AGConnProp.Session.SHARED, shared)) {
+            try (AGRepositoryConnection conn = pool.borrowObject()) {
+                Assert.assertEquals(0, shared.getLatency(AGPoolMetrics.Phase.SESSION_OPEN).getCount());
+                conn.setAutoCommit(false);
+            }
+        }
+        Assert.assertEquals(1, shared.getLatency(AGPoolMetrics.Phase.SESSION_OPEN).getCount());
+        Assert.assertTrue(shared.getLatency(AGPoolMetrics.Phase.SESSION_OPEN).getMeanNanos() >= 20 * MILLIS);
+    }
+}
@@ -0,0 +1,142 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.pool;
+
+import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.AGSessionPool;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.handler.AGResponseHandler;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import test.StubHttpResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for handing out sessions opened in advance.
+ */
+public class AGSessionPoolTest {
+
+    private static final String REPO = "http://localhost:10035/repositories/test";
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+
+    private final AtomicInteger sessionsOpened = new AtomicInteger();
+
+    // Urls of the requests other than those opening sessions.
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    private final AGHTTPClient client = new AGHTTPClient("http://localhost:10035") {
+        @Override
+        public void post(String url, Header[] headers, NameValuePair[] params,
+                         RequestEntity requestEntity, AGResponseHandler handler) {
+            if (url.equals(REPO + "/session")) {
+                String session = "http://localhost:10035/session/" + (5000 + sessionsOpened.incrementAndGet())
+                        + "/repositories/test";
+                try {
+                    handler.handleResponse(new StubHttpResponse(session.getBytes(StandardCharsets.UTF_8),
+                            "text/plain"));
+                } catch (IOException e) {
+                    throw new AGHttpException(e);
+                }
+            } else {
+                requests.add(url);
+            }
+        }
+
+        @Override
+        public void get(String url, Header[] headers, NameValuePair[] params, AGResponseHandler handler) {
+            requests.add(url);
+        }
+    };
+
+    private final AGSessionPool pool = new AGSessionPool(client, REPO, 2, executor);
+
+    @After
+    public void shutdown() {
+        pool.close();
+        executor.shutdownNow();
+    }
+
+    private void awaitIdle(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (pool.getIdleCount() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(count, pool.getIdleCount());
+    }
+
+    @Test
+    public void testTakeAndRefill() throws Exception {
+        pool.start();
+        awaitIdle(2);
+        Assert.assertEquals(2, sessionsOpened.get());
+
+        AGHttpRepoClient repoClient = new AGHttpRepoClient(null, client, REPO, null, null);
+        repoClient.setSessionPool(pool);
+        repoClient.setAutoCommit(false);
+        Assert.assertTrue(repoClient.isDedicatedSession());
+        Assert.assertTrue(repoClient.getRoot().startsWith("http://localhost:10035/session/500"));
+        Assert.assertEquals(1, pool.getTakenCount());
+        // Only the request setting the autoCommit mode was made.
+        Assert.assertEquals(1, requests.size());
+        Assert.assertTrue(requests.get(0).startsWith(repoClient.getRoot()));
+
+        awaitIdle(2);
+        Assert.assertEquals(3, sessionsOpened.get());
+        repoClient.close();
+    }
+
+    @Test
+    public void testSettingsMismatch() throws Exception {
+        pool.start();
+        awaitIdle(2);
+        AGHttpRepoClient repoClient = new AGHttpRepoClient(null, client, REPO, null, null);
+        repoClient.setSessionPool(pool);
+        repoClient.setSessionLoadInitFile(true);
+        repoClient.setAutoCommit(false);
+        Assert.assertTrue(repoClient.isDedicatedSession());
+        Assert.assertEquals(0, pool.getTakenCount());
+        Assert.assertEquals(3, sessionsOpened.get());
+        Assert.assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    public void testSettingsAfterStart() {
+        pool.start();
+        try {
+            pool.setSessionLifetime(10);
+            Assert.fail("expected an exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        pool.start();
+        awaitIdle(2);
+        pool.close();
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertEquals(2, requests.stream().filter(url -> url.endsWith("/session/close")).count());
+
+        AGHttpRepoClient repoClient = new AGHttpRepoClient(null, client, REPO, null, null);
+        repoClient.setSessionPool(pool);
+        repoClient.setAutoCommit(false);
+        Assert.assertEquals(0, pool.getTakenCount());
+        Assert.assertEquals(3, sessionsOpened.get());
+    }
+}